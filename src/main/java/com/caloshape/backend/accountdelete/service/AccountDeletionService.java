@@ -4,6 +4,7 @@ import com.caloshape.backend.accountdelete.dto.AccountDeletionPreviewResponse;
 import com.caloshape.backend.accountdelete.entity.AccountDeletionRequestEntity;
 import com.caloshape.backend.accountdelete.repo.AccountDeletionRequestRepository;
 import com.caloshape.backend.auth.repo.AuthTokenRepo;
+import com.caloshape.backend.auth.security.AccessTokenRevocationBus;
 import com.caloshape.backend.entitlement.entity.UserEntitlementEntity;
 import com.caloshape.backend.entitlement.repo.UserEntitlementRepository;
 import com.caloshape.backend.users.user.entity.User;
@@ -31,6 +32,7 @@ public class AccountDeletionService {
     private final UserEntitlementRepository entitlementRepository;
     private final JdbcTemplate jdbc;
     private final AccountDeletionPseudonymizer pseudonymizer;
+    private final AccessTokenRevocationBus tokenRevocationBus;
 
     @Transactional(readOnly = true)
     public AccountDeletionPreviewResponse getDeletionPreview(Long userId) {
@@ -105,6 +107,7 @@ public class AccountDeletionService {
 
         // 3) revoke tokens（強制登出）
         authTokenRepo.revokeAllByUserId(userId, now);
+        tokenRevocationBus.userRevokedAfterCommit(userId);
 
         return req;
     }
@@ -0,0 +1,50 @@
+package com.caloshape.backend.auth.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * AccessTokenFilter 的 in-process token 快取。
+ * 撤銷透過 Redis pub/sub 通知所有 pod；ttl 是 pub/sub 漏訊息時的最長延遲上限。
+ */
+@ConfigurationProperties(prefix = "app.auth.token-cache")
+public class AccessTokenCacheProperties {
+
+    private boolean enabled = false;
+    private Duration ttl = Duration.ofSeconds(30);
+    private int maxEntries = 50_000;
+    private String redisPrefix = "caloshape";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public String getRedisPrefix() {
+        return redisPrefix;
+    }
+
+    public void setRedisPrefix(String redisPrefix) {
+        this.redisPrefix = redisPrefix;
+    }
+}
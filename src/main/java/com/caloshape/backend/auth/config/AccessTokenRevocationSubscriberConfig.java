@@ -0,0 +1,33 @@
+package com.caloshape.backend.auth.config;
+
+import com.caloshape.backend.auth.security.AccessTokenRevocationBus;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * token 快取開啟時才訂閱：其他 pod 撤銷的 token 透過 Redis pub/sub 清掉本 pod 的快取。
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.auth.token-cache", name = "enabled", havingValue = "true")
+public class AccessTokenRevocationSubscriberConfig {
+
+    @Bean
+    public RedisMessageListenerContainer accessTokenRevocationListenerContainer(
+            RedisConnectionFactory connectionFactory,
+            AccessTokenRevocationBus bus
+    ) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(
+                (message, pattern) -> bus.onMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(bus.channel())
+        );
+        return container;
+    }
+}
@@ -0,0 +1,132 @@
+package com.caloshape.backend.auth.security;
+
+import com.caloshape.backend.auth.config.AccessTokenCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已驗證的 ACCESS token：token hash -> (userId, expiresAt)。
+ * - 只放「驗證通過」的 token；查不到 / 已撤銷 / 過期一律回 DB 判斷，不做 negative cache
+ * - 每筆最多留 ttl，也不會超過 token 本身的 expiresAt
+ * - 撤銷：AccessTokenRevocationBus 收到通知後呼叫 invalidate*
+ */
+@Component
+public class AccessTokenCache {
+
+    public record Entry(Long userId, Instant tokenExpiresAt, Instant cachedUntil) {}
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AccessTokenCacheProperties props;
+    private final Clock clock;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public AccessTokenCache(AccessTokenCacheProperties props, Clock clock, MeterRegistry meterRegistry) {
+        this.props = props;
+        this.clock = clock;
+
+        this.hits = Counter.builder("auth.access_token.cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("auth.access_token.cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("auth.access_token.cache.size", entries, Map::size)
+                .register(meterRegistry);
+        Gauge.builder("auth.access_token.cache.hit_ratio", this, AccessTokenCache::hitRatio)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return props.isEnabled();
+    }
+
+    /**
+     * @return 仍有效的 entry；沒有或已過期回 null（計入 miss）
+     */
+    public Entry getActive(String tokenHash) {
+        Entry e = entries.get(tokenHash);
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+
+        Instant now = clock.instant();
+        if (!e.cachedUntil().isAfter(now) || !e.tokenExpiresAt().isAfter(now)) {
+            entries.remove(tokenHash, e);
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return e;
+    }
+
+    public void put(String tokenHash, Long userId, Instant tokenExpiresAt) {
+        Instant now = clock.instant();
+        Instant cachedUntil = now.plus(props.getTtl());
+        if (tokenExpiresAt.isBefore(cachedUntil)) {
+            cachedUntil = tokenExpiresAt;
+        }
+        if (!cachedUntil.isAfter(now)) {
+            return;
+        }
+
+        if (entries.size() >= Math.max(1, props.getMaxEntries())) {
+            evict(now);
+        }
+        entries.put(tokenHash, new Entry(userId, tokenExpiresAt, cachedUntil));
+    }
+
+    public void invalidateToken(String tokenHash) {
+        if (tokenHash != null) {
+            entries.remove(tokenHash);
+        }
+    }
+
+    /** 全域登出 / 刪帳號：很少發生，直接掃一遍 */
+    public void invalidateUser(Long userId) {
+        if (userId != null) {
+            entries.values().removeIf(e -> userId.equals(e.userId()));
+        }
+    }
+
+    public double hitRatio() {
+        double h = hits.count();
+        double total = h + misses.count();
+        return total == 0 ? 0d : h / total;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * 滿了：先清掉過期的；還是滿就隨機丟掉約 1/10（ConcurrentHashMap 迭代順序近似隨機），
+     * 被丟掉的 token 下一次請求回 DB 查一次而已。
+     */
+    private void evict(Instant now) {
+        entries.values().removeIf(e -> !e.cachedUntil().isAfter(now));
+
+        int max = Math.max(1, props.getMaxEntries());
+        if (entries.size() < max) {
+            return;
+        }
+
+        int toDrop = Math.max(1, max / 10);
+        Iterator<String> it = entries.keySet().iterator();
+        while (toDrop-- > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
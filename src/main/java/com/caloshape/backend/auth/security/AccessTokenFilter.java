@@ -25,8 +25,12 @@ public class AccessTokenFilter extends OncePerRequestFilter {
 
     private final AuthTokenRepo tokens;
 
-    public AccessTokenFilter(AuthTokenRepo tokens) {
+    /** 已驗證 token 的 in-process 快取；關閉（app.auth.token-cache.enabled=false）時每次都查 DB */
+    private final AccessTokenCache cache;
+
+    public AccessTokenFilter(AuthTokenRepo tokens, AccessTokenCache cache) {
         this.tokens = tokens;
+        this.cache = cache;
     }
 
     // OncePerRequestFilter 層級：避免這個 Filter 參與 async / error redispatch。
@@ -81,7 +85,17 @@ public class AccessTokenFilter extends OncePerRequestFilter {
             return;
         }
 
-        Optional<AuthToken> found = tokens.findByToken(AuthTokenHash.sha256(raw));
+        String tokenHash = AuthTokenHash.sha256(raw);
+        boolean useCache = cache.isEnabled();
+
+        AccessTokenCache.Entry cached = useCache ? cache.getActive(tokenHash) : null;
+        if (cached != null) {
+            authenticate(req, cached.userId());
+            chain.doFilter(req, res);
+            return;
+        }
+
+        Optional<AuthToken> found = tokens.findByToken(tokenHash);
         if (found.isEmpty()) {
             unauthorized(res, "Invalid or expired access token");
             return;
@@ -109,6 +123,15 @@ public class AccessTokenFilter extends OncePerRequestFilter {
             return;
         }
 
+        if (useCache) {
+            cache.put(tokenHash, uid, at.getExpiresAt());
+        }
+
+        authenticate(req, uid);
+        chain.doFilter(req, res);
+    }
+
+    private static void authenticate(HttpServletRequest req, Long uid) {
         UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                 uid,
                 null,
@@ -118,8 +141,6 @@ public class AccessTokenFilter extends OncePerRequestFilter {
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
         req.setAttribute("userId", uid);
-
-        chain.doFilter(req, res);
     }
 
     private static void unauthorized(HttpServletResponse res, String message) throws IOException {
@@ -0,0 +1,108 @@
+package com.caloshape.backend.auth.security;
+
+import com.caloshape.backend.auth.config.AccessTokenCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * token 撤銷通知：
+ * - commit 後先清本 pod 的 AccessTokenCache
+ * - 再透過 Redis pub/sub 通知其他 pod（best effort；漏掉的最晚 ttl 後自然過期）
+ * 訊息格式：t:{tokenHash} / u:{userId}
+ */
+@Slf4j
+@Component
+public class AccessTokenRevocationBus {
+
+    private static final String TOKEN_PREFIX = "t:";
+    private static final String USER_PREFIX = "u:";
+
+    private final StringRedisTemplate redis;
+    private final AccessTokenCache cache;
+    private final boolean enabled;
+    private final String channel;
+
+    public AccessTokenRevocationBus(
+            StringRedisTemplate redis,
+            AccessTokenCache cache,
+            AccessTokenCacheProperties props
+    ) {
+        this.redis = redis;
+        this.cache = cache;
+        this.enabled = props.isEnabled();
+        this.channel = normalizePrefix(props.getRedisPrefix()) + ":auth:tokens:revoked";
+    }
+
+    public String channel() {
+        return channel;
+    }
+
+    public void tokenRevokedAfterCommit(String tokenHash) {
+        if (tokenHash == null || tokenHash.isBlank()) return;
+        runAfterCommitOrNow(() -> publish(TOKEN_PREFIX + tokenHash));
+    }
+
+    public void userRevokedAfterCommit(Long userId) {
+        if (userId == null) return;
+        runAfterCommitOrNow(() -> publish(USER_PREFIX + userId));
+    }
+
+    /**
+     * Redis 訊息進來（含自己發出的那一則；重複清除無副作用）。
+     */
+    public void onMessage(String body) {
+        if (body == null) return;
+
+        if (body.startsWith(TOKEN_PREFIX)) {
+            cache.invalidateToken(body.substring(TOKEN_PREFIX.length()));
+        } else if (body.startsWith(USER_PREFIX)) {
+            try {
+                cache.invalidateUser(Long.parseLong(body.substring(USER_PREFIX.length())));
+            } catch (NumberFormatException ex) {
+                log.warn("auth_token_revoke_bad_message channel={}", channel);
+            }
+        }
+    }
+
+    private void publish(String body) {
+        onMessage(body);
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            redis.convertAndSend(channel, body);
+        } catch (RuntimeException ex) {
+            log.warn("auth_token_revoke_publish_failed channel={} errorType={}",
+                    channel, ex.getClass().getSimpleName());
+        }
+    }
+
+    private static void runAfterCommitOrNow(Runnable action) {
+        boolean txActive = TransactionSynchronizationManager.isActualTransactionActive();
+        boolean syncActive = TransactionSynchronizationManager.isSynchronizationActive();
+
+        if (txActive && syncActive) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+            return;
+        }
+
+        action.run();
+    }
+
+    private static String normalizePrefix(String raw) {
+        String s = (raw == null || raw.isBlank()) ? "caloshape" : raw.trim();
+        while (s.endsWith(":")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        return s;
+    }
+}
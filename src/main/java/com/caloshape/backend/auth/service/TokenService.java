@@ -5,6 +5,7 @@ import com.caloshape.backend.auth.entity.AuthToken;
 import com.caloshape.backend.users.user.entity.User;
 import com.caloshape.backend.auth.repo.AuthTokenRepo;
 import com.caloshape.backend.auth.utils.SecureToken;
+import com.caloshape.backend.auth.security.AccessTokenRevocationBus;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -18,14 +19,19 @@ public class TokenService {
     private final long accessTtlSeconds;
     private final long refreshTtlSeconds;
 
+    /** 撤銷後通知各 pod 清 AccessTokenFilter 快取 */
+    private final AccessTokenRevocationBus revocationBus;
+
     public TokenService(
             AuthTokenRepo repo,
             @Value("${app.auth.access-ttl-sec:900}") long accessTtlSeconds,     // 15 分
-            @Value("${app.auth.refresh-ttl-sec:2592000}") long refreshTtlSeconds // 30 天
+            @Value("${app.auth.refresh-ttl-sec:2592000}") long refreshTtlSeconds, // 30 天
+            AccessTokenRevocationBus revocationBus
     ) {
         this.repo = repo;
         this.accessTtlSeconds = accessTtlSeconds;
         this.refreshTtlSeconds = refreshTtlSeconds;
+        this.revocationBus = revocationBus;
     }
 
     @Transactional
@@ -63,6 +69,7 @@ public class TokenService {
         }
         // 旋轉：撤銷舊 RT，發新 AT/RT
         tk.setRevoked(true);
+        notifyRevoked(tk.getToken());
         var pair = issue(tk.getUser(), deviceId, ip, ua);
         tk.setReplacedBy(AuthTokenHash.sha256(pair.refreshToken()));
         return pair;
@@ -81,8 +88,13 @@ public class TokenService {
                 .ifPresent(t -> {
                     t.setRevoked(true);
                     repo.save(t);
+                    notifyRevoked(t.getToken());
                 });
     }
 
+    private void notifyRevoked(String tokenHash) {
+        revocationBus.tokenRevokedAfterCommit(tokenHash);
+    }
+
     public record AuthPair(String accessToken, String refreshToken) {}
 }
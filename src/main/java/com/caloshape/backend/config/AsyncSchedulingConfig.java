@@ -4,6 +4,7 @@ package com.caloshape.backend.config;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
@@ -56,4 +57,52 @@ public class AsyncSchedulingConfig {
         ex.initialize();
         return ex;
     }
+
+    /**
+     * FoodLogTaskWorker 並行模式用：每個任務一條 virtual thread。
+     * 同時數量由 FoodLogTaskWorker 的 slot / provider 名額控制，這裡不另外設上限。
+     */
+    @Bean("foodLogTaskExecutor")
+    public TaskExecutor foodLogTaskExecutor() {
+        SimpleAsyncTaskExecutor ex = new SimpleAsyncTaskExecutor("foodlog-task-");
+        ex.setVirtualThreads(true);
+        ex.setTaskTerminationTimeout(30_000);
+        return ex;
+    }
+
+    /**
+     * FoodLogResultWaitService 用：long-poll 被喚醒後重查 DB，每次一條 virtual thread。
+     * 同時數量受 app.foodlog.result-wait.max-waiters 限制，這裡不另外設上限。
+     */
+    @Bean("foodLogResultWaitExecutor")
+    public TaskExecutor foodLogResultWaitExecutor() {
+        SimpleAsyncTaskExecutor ex = new SimpleAsyncTaskExecutor("foodlog-result-wait-");
+        ex.setVirtualThreads(true);
+        ex.setTaskTerminationTimeout(30_000);
+        return ex;
+    }
+
+    /**
+     * EmailOutboxSenderWorker 寄送用：每份一條 virtual thread（大部分時間在等 SMTP）。
+     * 同時份數由 referral.email-outbox.concurrency 控制，這裡不另外設上限。
+     */
+    @Bean("emailOutboxExecutor")
+    public TaskExecutor emailOutboxExecutor() {
+        SimpleAsyncTaskExecutor ex = new SimpleAsyncTaskExecutor("email-outbox-");
+        ex.setVirtualThreads(true);
+        ex.setTaskTerminationTimeout(30_000);
+        return ex;
+    }
+
+    /**
+     * GooglePlayEntitlementReverifyWorker 用：每個 Publisher API 呼叫一條 virtual thread。
+     * 同時數量由 app.entitlement.google-play-reverify.concurrency 與 Redis token bucket 控制。
+     */
+    @Bean("googlePlayReverifyExecutor")
+    public TaskExecutor googlePlayReverifyExecutor() {
+        SimpleAsyncTaskExecutor ex = new SimpleAsyncTaskExecutor("play-reverify-");
+        ex.setVirtualThreads(true);
+        ex.setTaskTerminationTimeout(30_000);
+        return ex;
+    }
 }
@@ -0,0 +1,25 @@
+package com.caloshape.backend.config.database;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+
+/**
+ * food_log_tasks 的 QUEUED claim / 終態 purge 索引。
+ * 到期 FAILED 的 claim 沿用 V1 的 idx_food_log_tasks_status (task_status, next_retry_at_utc)。
+ */
+@Component
+public final class V3__FoodLogTaskClaimIndexes extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            statement.execute("""
+                    CREATE INDEX idx_food_log_tasks_queue
+                        ON food_log_tasks (task_status, created_at_utc)
+                    """);
+        }
+    }
+}
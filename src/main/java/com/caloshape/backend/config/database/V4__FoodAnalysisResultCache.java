@@ -0,0 +1,40 @@
+package com.caloshape.backend.config.database;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+
+/**
+ * 跨使用者 AI 分析結果快取（app.foodlog.result-cache）。
+ */
+@Component
+public final class V4__FoodAnalysisResultCache extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            statement.execute("""
+                    CREATE TABLE food_analysis_result_cache
+                    (
+                        cache_key        CHAR(64)    NOT NULL,
+                        image_sha256     CHAR(64)    NOT NULL,
+                        method           VARCHAR(16) NOT NULL,
+                        model_tier       VARCHAR(32) NOT NULL,
+                        provider         VARCHAR(32) NOT NULL,
+                        prompt_version   VARCHAR(64) NOT NULL,
+                        effective_text   LONGTEXT    NOT NULL,
+                        hit_count        BIGINT      NOT NULL DEFAULT 0,
+                        created_at_utc   DATETIME(3) NOT NULL,
+                        last_used_at_utc DATETIME(3) NOT NULL,
+                        expires_at_utc   DATETIME(3) NOT NULL,
+                        PRIMARY KEY (cache_key),
+                        KEY idx_farc_expires_at (expires_at_utc),
+                        KEY idx_farc_last_used_at (last_used_at_utc)
+                    ) ENGINE = InnoDB
+                      DEFAULT CHARSET = utf8mb4
+                    """);
+        }
+    }
+}
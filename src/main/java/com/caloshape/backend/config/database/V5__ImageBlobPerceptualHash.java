@@ -0,0 +1,25 @@
+package com.caloshape.backend.config.database;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+
+/**
+ * image_blobs 加上 dHash 欄位與「使用者近期 blob」索引（app.foodlog.near-dup）。
+ */
+@Component
+public final class V5__ImageBlobPerceptualHash extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            statement.execute("""
+                    ALTER TABLE image_blobs
+                        ADD COLUMN phash BIGINT NULL AFTER ext,
+                        ADD INDEX idx_image_blobs_user_updated (user_id, updated_at_utc)
+                    """);
+        }
+    }
+}
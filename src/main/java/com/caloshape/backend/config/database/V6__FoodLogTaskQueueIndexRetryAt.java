@@ -0,0 +1,26 @@
+package com.caloshape.backend.config.database;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+
+/**
+ * QUEUED claim 開始過濾 next_retry_at_utc（circuit breaker 延後的任務）：
+ * idx_food_log_tasks_queue 補上 next_retry_at_utc，過濾條件在索引上判斷，claim 仍不需要回表。
+ */
+@Component
+public final class V6__FoodLogTaskQueueIndexRetryAt extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            statement.execute("""
+                    ALTER TABLE food_log_tasks
+                        DROP INDEX idx_food_log_tasks_queue,
+                        ADD INDEX idx_food_log_tasks_queue (task_status, created_at_utc, next_retry_at_utc)
+                    """);
+        }
+    }
+}
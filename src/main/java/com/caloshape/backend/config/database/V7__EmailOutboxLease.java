@@ -0,0 +1,29 @@
+package com.caloshape.backend.config.database;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+
+/**
+ * email_outbox 多 pod 寄送：SKIP LOCKED claim 後標成 SENDING 並帶 lease（lease_until_utc + claim_token），
+ * 失敗依 next_attempt_at_utc 指數退避。既有列的 next_attempt_at_utc 取 migration 當下（立即可寄）。
+ */
+@Component
+public final class V7__EmailOutboxLease extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            statement.execute("""
+                    ALTER TABLE email_outbox
+                        ADD COLUMN next_attempt_at_utc DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) AFTER status,
+                        ADD COLUMN lease_until_utc DATETIME(6) NULL AFTER next_attempt_at_utc,
+                        ADD COLUMN claim_token VARCHAR(36) NULL AFTER lease_until_utc,
+                        ADD INDEX idx_email_outbox_status_next_attempt (status, next_attempt_at_utc),
+                        ADD INDEX idx_email_outbox_status_lease (status, lease_until_utc)
+                    """);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.caloshape.backend.config.database;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+
+/**
+ * Google Play reverify 分片掃描：到期的列依 valid_to_utc 由近到遠處理。
+ */
+@Component
+public final class V8__EntitlementReverifyExpiryIndex extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            statement.execute("""
+                    ALTER TABLE user_entitlements
+                        ADD INDEX idx_entitlements_reverify_expiry (source, status, valid_to_utc)
+                    """);
+        }
+    }
+}
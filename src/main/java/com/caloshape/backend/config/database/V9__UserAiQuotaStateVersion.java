@@ -0,0 +1,24 @@
+package com.caloshape.backend.config.database;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+
+/**
+ * Redis quota engine 的 write-back 版本號（app.ai.quota.engine=redis）：只有較新的 snapshot 才能覆寫 MySQL。
+ */
+@Component
+public final class V9__UserAiQuotaStateVersion extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            statement.execute("""
+                    ALTER TABLE user_ai_quota_state
+                        ADD COLUMN state_version BIGINT NOT NULL DEFAULT 0 AFTER cooldown_reason
+                    """);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.caloshape.backend.entitlement.entity;
 
+import com.caloshape.backend.entitlement.service.UserEntitlementTierCacheListener;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
@@ -10,6 +11,7 @@ import java.util.UUID;
 @Getter
 @Setter
 @Entity
+@EntityListeners(UserEntitlementTierCacheListener.class)
 @Table(
         name = "user_entitlements",
         uniqueConstraints = {
@@ -35,6 +37,10 @@ import java.util.UUID;
                         name = "idx_entitlements_reverify",
                         columnList = "source,status,last_google_verified_at_utc"
                 ),
+                @Index(
+                        name = "idx_entitlements_reverify_expiry",
+                        columnList = "source,status,valid_to_utc"
+                ),
                 @Index(
                         name = "idx_entitlements_payment_state",
                         columnList = "payment_state,status,valid_to_utc"
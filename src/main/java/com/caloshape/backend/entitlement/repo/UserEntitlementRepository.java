@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -294,6 +295,14 @@ public interface UserEntitlementRepository extends JpaRepository<UserEntitlement
     """)
     boolean existsAnyGooglePlayPaidSubscriptionHistory(@Param("userId") Long userId);
 
+    /** closeActiveByPurchaseTokenHash 會關掉的 rows 的持有者（同一個 token 可能掛在不只一個 user 底下） */
+    @Query("""
+    select distinct e.userId from UserEntitlementEntity e
+     where e.purchaseTokenHash = :purchaseTokenHash
+       and e.status = 'ACTIVE'
+""")
+    List<Long> findActiveUserIdsByPurchaseTokenHash(@Param("purchaseTokenHash") String purchaseTokenHash);
+
     @Modifying(flushAutomatically = true, clearAutomatically = true)
     @Query("""
     update UserEntitlementEntity e
@@ -351,6 +360,11 @@ public interface UserEntitlementRepository extends JpaRepository<UserEntitlement
             @Param("now") Instant now
     );
 
+    /**
+     * 背景 reverify 的到期清單（單一 shard）。
+     * idPrefixes：id（UUID）第一個 hex 字元屬於這個 shard 的集合，見 GooglePlayEntitlementReverifyWorker.shardIdPrefixes。
+     * 快到期的排前面：續訂 / 扣款失敗最可能發生在到期附近，RTDN 漏掉時要先補這些。
+     */
     @Query("""
     select e from UserEntitlementEntity e
     where e.source = 'GOOGLE_PLAY'
@@ -380,12 +394,14 @@ public interface UserEntitlementRepository extends JpaRepository<UserEntitlement
           )
       )
       and (e.lastGoogleVerifiedAtUtc is null or e.lastGoogleVerifiedAtUtc <= :verifiedBefore)
-    order by case when e.lastGoogleVerifiedAtUtc is null then 0 else 1 end asc,
-             e.lastGoogleVerifiedAtUtc asc,
-             e.updatedAtUtc asc
+      and substring(e.id, 1, 1) in :idPrefixes
+    order by e.validToUtc asc,
+             case when e.lastGoogleVerifiedAtUtc is null then 0 else 1 end asc,
+             e.lastGoogleVerifiedAtUtc asc
 """)
     List<UserEntitlementEntity> findActiveGooglePlayDueForReverify(
             @Param("verifiedBefore") Instant verifiedBefore,
+            @Param("idPrefixes") Collection<String> idPrefixes,
             Pageable pageable
     );
 
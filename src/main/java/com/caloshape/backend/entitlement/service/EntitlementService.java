@@ -1,7 +1,6 @@
 package com.caloshape.backend.entitlement.service;
 
 import com.caloshape.backend.entitlement.repo.UserEntitlementRepository;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
@@ -9,7 +8,6 @@ import org.springframework.stereotype.Service;
 import java.time.Instant;
 import java.util.Locale;
 
-@RequiredArgsConstructor
 @Slf4j
 @Service
 public class EntitlementService {
@@ -17,12 +15,39 @@ public class EntitlementService {
     public enum Tier { NONE, TRIAL, MONTHLY, YEARLY }
 
     private final UserEntitlementRepository repo;
+    private final EntitlementTierCache tierCache;
+
+    public EntitlementService(UserEntitlementRepository repo, EntitlementTierCache tierCache) {
+        this.repo = repo;
+        this.tierCache = tierCache;
+    }
 
     public boolean hasActiveEntitlement(Long userId, Instant nowUtc) {
         return !repo.findActiveBestFirst(userId, nowUtc, PageRequest.of(0, 1)).isEmpty();
     }
 
+    /**
+     * 每個 AI 請求都會呼叫：tier 快取開啟時先查快取，miss 才查 DB 並寫回（保留到有效 entitlement 最早的 validTo）。
+     */
     public Tier resolveTier(Long userId, Instant nowUtc) {
+        if (!tierCache.isEnabled() || userId == null || nowUtc == null) {
+            return loadTier(userId, nowUtc).tier();
+        }
+
+        EntitlementTierCache.Lookup cached = tierCache.lookup(userId, nowUtc);
+        if (cached.tier() != null) {
+            return cached.tier();
+        }
+
+        LoadedTier loaded = loadTier(userId, nowUtc);
+        tierCache.put(userId, loaded.tier(), loaded.validUntil(), nowUtc, cached);
+        return loaded.tier();
+    }
+
+    /** validUntil：結果會改變的最早時間點（有效 entitlement 的最小 validTo）；沒有有效 entitlement 時為 null */
+    private record LoadedTier(Tier tier, Instant validUntil) {}
+
+    private LoadedTier loadTier(Long userId, Instant nowUtc) {
         var list = repo.findActive(userId, nowUtc, PageRequest.of(0, 5));
 
         if (log.isDebugEnabled()) {
@@ -33,10 +58,14 @@ public class EntitlementService {
             log.warn("multiple_active_entitlements userId={} count={}", userId, list.size());
         }
 
-        if (list.isEmpty()) return Tier.NONE;
+        if (list.isEmpty()) return new LoadedTier(Tier.NONE, null);
 
         Tier best = Tier.NONE;
+        Instant validUntil = null;
         for (var e : list) {
+            if (e.getValidToUtc() != null && (validUntil == null || e.getValidToUtc().isBefore(validUntil))) {
+                validUntil = e.getValidToUtc();
+            }
             Tier t = parseTier(e.getEntitlementType());
 
             if (t == Tier.NONE && e.getEntitlementType() != null && !e.getEntitlementType().isBlank()) {
@@ -60,7 +89,7 @@ public class EntitlementService {
         if (log.isDebugEnabled()) {
             log.debug("resolveTier result userId={} tier={}", userId, best);
         }
-        return best;
+        return new LoadedTier(best, validUntil);
     }
 
     private static Tier parseTier(String raw) {
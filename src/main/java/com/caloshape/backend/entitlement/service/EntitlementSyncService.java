@@ -36,6 +36,7 @@ public class EntitlementSyncService {
     private final PurchaseTokenCrypto purchaseTokenCrypto;
     private final UserRepo userRepo;
     private final EntitlementTransferAuditRepository entitlementTransferAuditRepository;
+    private final EntitlementTierInvalidationBus tierInvalidationBus;
 
     @Transactional
     public EntitlementSyncResponse sync(Long userId, EntitlementSyncRequest req) {
@@ -102,7 +103,7 @@ public class EntitlementSyncService {
                         "client_sync"
                 );
 
-                entitlementRepo.closeActiveByPurchaseTokenHash(
+                closeActiveByPurchaseTokenHash(
                         tokenHash,
                         inactiveCloseStatus(v.subscriptionState()),
                         now,
@@ -196,7 +197,7 @@ public class EntitlementSyncService {
                     "rtdn_known_token"
             );
 
-            entitlementRepo.closeActiveByPurchaseTokenHash(
+            closeActiveByPurchaseTokenHash(
                     tokenHash,
                     inactiveCloseStatus(v.subscriptionState()),
                     now,
@@ -245,7 +246,7 @@ public class EntitlementSyncService {
                 ? "GOOGLE_PLAY_REVOKED"
                 : "GOOGLE_PLAY_EXPIRED";
 
-        entitlementRepo.closeActiveByPurchaseTokenHash(
+        closeActiveByPurchaseTokenHash(
                 purchaseTokenHash,
                 status,
                 now,
@@ -302,6 +303,7 @@ public class EntitlementSyncService {
             if (canTransferDeletedUserGooglePlayEntitlement(e, v)) {
                 e.setUserId(userId);
                 transferredFromDeletedUser = true;
+                tierInvalidationBus.userChangedAfterCommit(previousOwnerUserId);
 
                 Instant transferValidToUtc = resolveValidToUtcToStore(e, v, rawPurchaseToken, now, true);
                 recordEntitlementTransferAudit(
@@ -378,6 +380,7 @@ public class EntitlementSyncService {
                 saved.getId(),
                 now
         );
+        tierInvalidationBus.userChangedAfterCommit(userId);
 
         boolean ackOk = purchaseAcknowledger.acknowledgeWithRetry(
                 v.productId(),
@@ -737,6 +740,37 @@ public class EntitlementSyncService {
         return (int) Math.max(1, Math.ceil(seconds / 86_400.0));
     }
 
+    /**
+     * JPQL bulk update 不會觸發 UserEntitlementTierCacheListener：先找出會被關掉的 rows 的所有持有者，commit 後讓他們的 tier 快取失效。
+     */
+    private int closeActiveByPurchaseTokenHash(
+            String purchaseTokenHash,
+            String status,
+            Instant now,
+            Instant revokedAtUtc,
+            Instant lastRtdnAtUtc,
+            String subscriptionState,
+            String paymentState,
+            String closeReason,
+            Instant lastGoogleVerifiedAtUtc
+    ) {
+        for (Long userId : entitlementRepo.findActiveUserIdsByPurchaseTokenHash(purchaseTokenHash)) {
+            tierInvalidationBus.userChangedAfterCommit(userId);
+        }
+
+        return entitlementRepo.closeActiveByPurchaseTokenHash(
+                purchaseTokenHash,
+                status,
+                now,
+                revokedAtUtc,
+                lastRtdnAtUtc,
+                subscriptionState,
+                paymentState,
+                closeReason,
+                lastGoogleVerifiedAtUtc
+        );
+    }
+
     public static String sha256Hex(String s) {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
@@ -876,7 +910,7 @@ public class EntitlementSyncService {
                     closeStatus
             );
 
-            entitlementRepo.closeActiveByPurchaseTokenHash(
+            closeActiveByPurchaseTokenHash(
                     linkedHash,
                     closeStatus,
                     now,
@@ -888,7 +922,7 @@ public class EntitlementSyncService {
                     now
             );
 
-            entitlementRepo.closeActiveByPurchaseTokenHash(
+            closeActiveByPurchaseTokenHash(
                     tokenHash,
                     closeStatus,
                     now,
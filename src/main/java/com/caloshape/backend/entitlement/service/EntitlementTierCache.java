@@ -0,0 +1,262 @@
+package com.caloshape.backend.entitlement.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * userId -> (tier, cachedUntil) 的 read-through 快取：本機 ConcurrentHashMap 在前，Redis 在後。
+ *
+ * - cachedUntil = min(有效 entitlement 的 validTo)：過了這個時間 findActive 的結果一定會變，所以到期邊界不會算錯
+ *   （validFrom 一律是寫入當下，不會有「未來才生效」的 row）
+ * - tier 只會因為寫入改變；寫入路徑 commit 後呼叫 invalidate（見 EntitlementTierInvalidationBus）
+ * - 讀 DB 與寫回快取之間若剛好發生 invalidate，寫回會被擋掉：
+ *   本機看 epoch（每次 invalidate +1），Redis 看每個 user 的 generation key（invalidate 時 INCR）
+ * - Redis 不可用時只用本機快取（最多 localTtl）
+ */
+@Slf4j
+@Component
+public class EntitlementTierCache {
+
+    /** lookup 的結果；tier == null 為 miss，其餘欄位給 put 判斷期間是否被 invalidate */
+    public record Lookup(EntitlementService.Tier tier, long localEpoch, String redisGeneration, boolean redisOk) {}
+
+    private record Entry(EntitlementService.Tier tier, Instant cachedUntil) {}
+
+    /** KEYS[1] = tier key, KEYS[2] = generation key；ARGV[1] = 讀取時看到的 generation, ARGV[2] = value, ARGV[3] = ttl ms */
+    private static final DefaultRedisScript<Long> PUT_IF_GENERATION = new DefaultRedisScript<>("""
+            local g = redis.call('GET', KEYS[2]) or ''
+            if g ~= ARGV[1] then return 0 end
+            redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3])
+            return 1
+            """, Long.class);
+
+    /** KEYS[1] = tier key, KEYS[2] = generation key；ARGV[1] = generation key ttl ms */
+    private static final DefaultRedisScript<Long> INVALIDATE = new DefaultRedisScript<>("""
+            redis.call('INCR', KEYS[2])
+            redis.call('PEXPIRE', KEYS[2], ARGV[1])
+            redis.call('DEL', KEYS[1])
+            return 1
+            """, Long.class);
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+    private final StringRedisTemplate redis;
+    private final EntitlementTierCacheProperties props;
+    private final String keyPrefix;
+
+    private final Counter localHits;
+    private final Counter redisHits;
+    private final Counter misses;
+
+    public EntitlementTierCache(
+            StringRedisTemplate redis,
+            EntitlementTierCacheProperties props,
+            MeterRegistry meterRegistry
+    ) {
+        this.redis = redis;
+        this.props = props;
+        this.keyPrefix = normalizePrefix(props.getRedisPrefix()) + ":entitlement:tier:";
+
+        this.localHits = Counter.builder("entitlement.tier.cache")
+                .tag("result", "hit_local")
+                .register(meterRegistry);
+        this.redisHits = Counter.builder("entitlement.tier.cache")
+                .tag("result", "hit_redis")
+                .register(meterRegistry);
+        this.misses = Counter.builder("entitlement.tier.cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("entitlement.tier.cache.size", entries, Map::size)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return props.isEnabled();
+    }
+
+    public Lookup lookup(Long userId, Instant now) {
+        long localEpoch = epoch.get();
+
+        Entry e = entries.get(userId);
+        if (e != null) {
+            if (e.cachedUntil().isAfter(now)) {
+                localHits.increment();
+                return new Lookup(e.tier(), localEpoch, null, true);
+            }
+            entries.remove(userId, e);
+        }
+
+        List<String> values;
+        try {
+            values = redis.opsForValue().multiGet(List.of(tierKey(userId), generationKey(userId)));
+        } catch (RuntimeException ex) {
+            log.warn("entitlement_tier_cache_redis_unavailable op=get errorType={}", ex.getClass().getSimpleName());
+            misses.increment();
+            return new Lookup(null, localEpoch, null, false);
+        }
+
+        String raw = values == null || values.isEmpty() ? null : values.get(0);
+        String generation = values == null || values.size() < 2 || values.get(1) == null ? "" : values.get(1);
+
+        Entry fromRedis = decode(raw);
+        if (fromRedis != null && fromRedis.cachedUntil().isAfter(now)) {
+            putLocal(userId, fromRedis, now, localEpoch);
+            redisHits.increment();
+            return new Lookup(fromRedis.tier(), localEpoch, generation, true);
+        }
+
+        misses.increment();
+        return new Lookup(null, localEpoch, generation, true);
+    }
+
+    /**
+     * 寫回 DB 讀到的 tier。lookup 之後若有 invalidate，這次寫回直接放棄（下次再讀 DB）。
+     */
+    public void put(Long userId, EntitlementService.Tier tier, Instant validUntil, Instant now, Lookup seen) {
+        Instant until = now.plus(props.getRedisTtl());
+        if (validUntil != null && validUntil.isBefore(until)) {
+            until = validUntil;
+        }
+        if (!until.isAfter(now)) {
+            return;
+        }
+
+        Entry entry = new Entry(tier, until);
+
+        if (seen.redisOk()) {
+            try {
+                Long stored = redis.execute(
+                        PUT_IF_GENERATION,
+                        List.of(tierKey(userId), generationKey(userId)),
+                        seen.redisGeneration() == null ? "" : seen.redisGeneration(),
+                        encode(entry),
+                        Long.toString(Math.max(1L, Duration.between(now, until).toMillis()))
+                );
+                if (stored == null || stored == 0L) {
+                    return;
+                }
+            } catch (RuntimeException ex) {
+                log.warn("entitlement_tier_cache_redis_unavailable op=put errorType={}", ex.getClass().getSimpleName());
+            }
+        }
+
+        putLocal(userId, entry, now, seen.localEpoch());
+    }
+
+    /** 本 pod 發起的 invalidate：清本機 + Redis（generation +1 讓進行中的寫回失效） */
+    public void invalidate(Long userId) {
+        if (userId == null) return;
+        invalidateLocal(userId);
+
+        try {
+            long generationTtlMs = props.getRedisTtl().plusMinutes(1).toMillis();
+            redis.execute(
+                    INVALIDATE,
+                    List.of(tierKey(userId), generationKey(userId)),
+                    Long.toString(generationTtlMs)
+            );
+        } catch (RuntimeException ex) {
+            log.warn(
+                    "entitlement_tier_cache_redis_unavailable op=invalidate userId={} errorType={}",
+                    userId,
+                    ex.getClass().getSimpleName()
+            );
+        }
+    }
+
+    /** 其他 pod 透過 pub/sub 通知：只清本機 */
+    public void invalidateLocal(Long userId) {
+        if (userId == null) return;
+        epoch.incrementAndGet();
+        entries.remove(userId);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void putLocal(Long userId, Entry entry, Instant now, long seenEpoch) {
+        Instant localUntil = now.plus(props.getLocalTtl());
+        if (entry.cachedUntil().isBefore(localUntil)) {
+            localUntil = entry.cachedUntil();
+        }
+        if (!localUntil.isAfter(now) || epoch.get() != seenEpoch) {
+            return;
+        }
+
+        if (entries.size() >= Math.max(1, props.getMaxEntries())) {
+            evict(now);
+        }
+        entries.put(userId, new Entry(entry.tier(), localUntil));
+
+        // put 與 invalidate 交錯：invalidate 在 epoch 檢查之後才發生時，把剛放進去的清掉
+        if (epoch.get() != seenEpoch) {
+            entries.remove(userId);
+        }
+    }
+
+    /** 同 AccessTokenCache：先清過期，還是滿就丟掉約 1/10 */
+    private void evict(Instant now) {
+        entries.values().removeIf(e -> !e.cachedUntil().isAfter(now));
+
+        int max = Math.max(1, props.getMaxEntries());
+        if (entries.size() < max) {
+            return;
+        }
+
+        int toDrop = Math.max(1, max / 10);
+        Iterator<Long> it = entries.keySet().iterator();
+        while (toDrop-- > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private String tierKey(Long userId) {
+        return keyPrefix + userId;
+    }
+
+    private String generationKey(Long userId) {
+        return keyPrefix + "gen:" + userId;
+    }
+
+    /** 格式：{tier}|{cachedUntil epoch millis} */
+    private static String encode(Entry e) {
+        return e.tier().name() + "|" + e.cachedUntil().toEpochMilli();
+    }
+
+    private static Entry decode(String raw) {
+        if (raw == null) return null;
+        int sep = raw.indexOf('|');
+        if (sep <= 0) return null;
+        try {
+            return new Entry(
+                    EntitlementService.Tier.valueOf(raw.substring(0, sep)),
+                    Instant.ofEpochMilli(Long.parseLong(raw.substring(sep + 1)))
+            );
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private static String normalizePrefix(String raw) {
+        String s = (raw == null || raw.isBlank()) ? "caloshape" : raw.trim();
+        while (s.endsWith(":")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,27 @@
+package com.caloshape.backend.entitlement.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * EntitlementService.resolveTier 的 tier 快取（本機 + Redis）。
+ * 寫入路徑 commit 後透過 EntitlementTierInvalidationBus 通知所有 pod。
+ */
+@Data
+@ConfigurationProperties(prefix = "app.entitlement.tier-cache")
+public class EntitlementTierCacheProperties {
+
+    private boolean enabled = false;
+
+    /** 本機快取最長保留時間：pub/sub 漏訊息時，其他 pod 最長看到舊 tier 的時間 */
+    private Duration localTtl = Duration.ofMinutes(1);
+
+    /** Redis 快取最長保留時間（實際為 min(有效 entitlement 的 validTo, now + redisTtl)） */
+    private Duration redisTtl = Duration.ofHours(6);
+
+    private int maxEntries = 100_000;
+
+    private String redisPrefix = "caloshape";
+}
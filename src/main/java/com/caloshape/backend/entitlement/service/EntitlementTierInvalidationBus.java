@@ -0,0 +1,92 @@
+package com.caloshape.backend.entitlement.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * entitlement 寫入後的 tier 快取失效通知：
+ * - commit 後清本 pod 快取與 Redis 快取（EntitlementTierCache.invalidate）
+ * - 再透過 Redis pub/sub 通知其他 pod 清本機快取（best effort；漏掉的最晚 localTtl 後自然過期）
+ * 訊息格式：{userId}
+ */
+@Slf4j
+@Component
+public class EntitlementTierInvalidationBus {
+
+    private final StringRedisTemplate redis;
+    private final EntitlementTierCache cache;
+    private final boolean enabled;
+    private final String channel;
+
+    public EntitlementTierInvalidationBus(
+            StringRedisTemplate redis,
+            EntitlementTierCache cache,
+            EntitlementTierCacheProperties props
+    ) {
+        this.redis = redis;
+        this.cache = cache;
+        this.enabled = props.isEnabled();
+        this.channel = normalizePrefix(props.getRedisPrefix()) + ":entitlement:tier:invalidated";
+    }
+
+    public String channel() {
+        return channel;
+    }
+
+    public void userChangedAfterCommit(Long userId) {
+        if (userId == null || !enabled) return;
+        runAfterCommitOrNow(() -> {
+            cache.invalidate(userId);
+            publish(userId);
+        });
+    }
+
+    /**
+     * Redis 訊息進來（含自己發出的那一則；重複清除無副作用）。
+     */
+    public void onMessage(String body) {
+        if (body == null) return;
+        try {
+            cache.invalidateLocal(Long.parseLong(body.trim()));
+        } catch (NumberFormatException ex) {
+            log.warn("entitlement_tier_invalidate_bad_message channel={}", channel);
+        }
+    }
+
+    private void publish(Long userId) {
+        try {
+            redis.convertAndSend(channel, userId.toString());
+        } catch (RuntimeException ex) {
+            log.warn("entitlement_tier_invalidate_publish_failed channel={} userId={} errorType={}",
+                    channel, userId, ex.getClass().getSimpleName());
+        }
+    }
+
+    private static void runAfterCommitOrNow(Runnable action) {
+        boolean txActive = TransactionSynchronizationManager.isActualTransactionActive();
+        boolean syncActive = TransactionSynchronizationManager.isSynchronizationActive();
+
+        if (txActive && syncActive) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+            return;
+        }
+
+        action.run();
+    }
+
+    private static String normalizePrefix(String raw) {
+        String s = (raw == null || raw.isBlank()) ? "caloshape" : raw.trim();
+        while (s.endsWith(":")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,32 @@
+package com.caloshape.backend.entitlement.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * tier 快取開啟時才訂閱：其他 pod 的 entitlement 寫入透過 Redis pub/sub 清掉本 pod 的快取。
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.entitlement.tier-cache", name = "enabled", havingValue = "true")
+public class EntitlementTierInvalidationSubscriberConfig {
+
+    @Bean
+    public RedisMessageListenerContainer entitlementTierInvalidationListenerContainer(
+            RedisConnectionFactory connectionFactory,
+            EntitlementTierInvalidationBus bus
+    ) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(
+                (message, pattern) -> bus.onMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(bus.channel())
+        );
+        return container;
+    }
+}
@@ -0,0 +1,114 @@
+package com.caloshape.backend.entitlement.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 所有 pod 共用的 Google Play Developer API token bucket（存在 Redis）。
+ *
+ * - 時間取 Redis TIME，不依賴各 pod 的時鐘
+ * - 拿不到 token 時 script 回傳還要等幾毫秒，呼叫端睡到那時再試，最多等 maxWait
+ * - Redis 不可用時 fail closed（回 false），和 EntitlementWorkerLease 一致：背景工作寧可晚一輪，也不要打爆 quota
+ */
+@Slf4j
+@Component
+public class GooglePlayApiRateLimiter {
+
+    /**
+     * KEYS[1] = bucket key；ARGV[1] = 每秒補充的 token 數；ARGV[2] = bucket 容量；ARGV[3] = key TTL (ms)
+     * 回傳 0 = 拿到 token；> 0 = 還要等幾毫秒
+     */
+    private static final DefaultRedisScript<Long> TAKE = new DefaultRedisScript<>("""
+            local rate = tonumber(ARGV[1])
+            local burst = tonumber(ARGV[2])
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(state[1]) or burst
+            local ts = tonumber(state[2]) or now
+            if now > ts then
+              tokens = math.min(burst, tokens + (now - ts) * rate / 1000)
+            end
+            local wait = 0
+            if tokens >= 1 then
+              tokens = tokens - 1
+            else
+              wait = math.ceil((1 - tokens) * 1000 / rate)
+            end
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now))
+            redis.call('PEXPIRE', KEYS[1], ARGV[3])
+            return wait
+            """, Long.class);
+
+    private final StringRedisTemplate redis;
+    private final String prefix;
+
+    /** Android Publisher API 預設 quota 為每天 200,000 次，和 RTDN / 使用者同步共用，背景工作只拿一小部分 */
+    @Value("${app.google.play.api-rate-limit.permits-per-second:2.0}")
+    private double permitsPerSecond = 2.0;
+
+    @Value("${app.google.play.api-rate-limit.burst:10}")
+    private int burst = 10;
+
+    @Value("${app.google.play.api-rate-limit.max-wait:PT10S}")
+    private Duration maxWait = Duration.ofSeconds(10);
+
+    public GooglePlayApiRateLimiter(
+            StringRedisTemplate redis,
+            @Value("${app.entitlement.worker-lease.redis-prefix:caloshape}") String prefix
+    ) {
+        this.redis = redis;
+        this.prefix = prefix == null || prefix.isBlank() ? "caloshape" : prefix.trim();
+    }
+
+    /**
+     * 取得一次 API 呼叫的名額；等超過 maxWait、Redis 不可用或被 interrupt 時回 false。
+     */
+    public boolean acquire(String bucket) {
+        String key = prefix + ":google-play:rate:" + bucket;
+        double rate = Math.max(0.001, permitsPerSecond);
+        int capacity = Math.max(1, burst);
+        // bucket 從空補到滿的時間之後就沒有保留的必要
+        long ttlMs = (long) Math.ceil(capacity * 1000 / rate) + 60_000L;
+        long deadline = System.nanoTime() + maxWait.toNanos();
+
+        while (true) {
+            Long waitMs;
+            try {
+                waitMs = redis.execute(
+                        TAKE,
+                        List.of(key),
+                        Double.toString(rate),
+                        Integer.toString(capacity),
+                        Long.toString(ttlMs)
+                );
+            } catch (RuntimeException ex) {
+                log.warn(
+                        "google_play_rate_limit_unavailable bucket={} errorType={}",
+                        bucket,
+                        ex.getClass().getSimpleName()
+                );
+                return false;
+            }
+
+            if (waitMs == null) return false;
+            if (waitMs <= 0) return true;
+
+            long remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+            if (remainingMs <= 0) return false;
+
+            try {
+                Thread.sleep(Math.min(waitMs, remainingMs));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
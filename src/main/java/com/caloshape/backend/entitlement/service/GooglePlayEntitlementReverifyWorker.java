@@ -2,8 +2,9 @@ package com.caloshape.backend.entitlement.service;
 
 import com.caloshape.backend.entitlement.entity.UserEntitlementEntity;
 import com.caloshape.backend.entitlement.repo.UserEntitlementRepository;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -11,30 +12,82 @@ import org.springframework.stereotype.Component;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 定期向 Google Play 重新驗證 ACTIVE 訂閱，補 RTDN 漏掉的 ON_HOLD / EXPIRED / REVOKED / GRACE 轉換。
+ *
+ * ✅ 分片：依 entitlement id（UUID）第一個 hex 字元切成 shardCount 片，每片各自一把 Redis lease。
+ *    每個 pod 從隨機的 shard 開始輪，拿得到 lease 的才做，所以多個 pod 會自然分到不同 shard 並行。
+ * ✅ 並行：shard 內最多 concurrency 個 Publisher API 呼叫同時進行（virtual thread）。
+ * ✅ 限流：每次呼叫前向 GooglePlayApiRateLimiter（Redis token bucket，所有 pod 共用）拿名額；
+ *    拿不到就停止這一片，剩下的留給下一輪。
+ * ✅ 優先順序：到期清單依 valid_to_utc 排序，快到期的先驗。
+ */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class GooglePlayEntitlementReverifyWorker {
 
+    static final String LEASE_NAME = "google-play-reverify";
+    static final String RATE_LIMIT_BUCKET = "publisher-api";
+
+    private static final String HEX = "0123456789abcdef";
+
     private final UserEntitlementRepository entitlementRepository;
     private final EntitlementSyncService entitlementSyncService;
     private final PurchaseTokenCrypto purchaseTokenCrypto;
     private final EntitlementWorkerLease workerLease;
+    private final GooglePlayApiRateLimiter rateLimiter;
+    private final Executor executor;
 
     @Value("${app.entitlement.google-play-reverify.lease-ttl:PT45M}")
-    private Duration leaseTtl;
+    private Duration leaseTtl = Duration.ofMinutes(45);
 
     @Value("${app.entitlement.google-play-reverify.stale-after:PT6H}")
-    private Duration staleAfter;
+    private Duration staleAfter = Duration.ofHours(6);
 
+    /** 每次從 DB 撈的筆數（單一 shard） */
     @Value("${app.entitlement.google-play-reverify.batch-size:50}")
-    private int batchSize;
+    private int batchSize = 50;
+
+    /** 每個 shard 每輪最多撈幾頁 */
+    @Value("${app.entitlement.google-play-reverify.max-pages-per-shard:10}")
+    private int maxPagesPerShard = 10;
+
+    /** 1..16；建議用 16 的因數，shard 之間才會一樣大 */
+    @Value("${app.entitlement.google-play-reverify.shard-count:8}")
+    private int shardCount = 8;
+
+    /** 單一 pod 同時進行的 Publisher API 呼叫數 */
+    @Value("${app.entitlement.google-play-reverify.concurrency:8}")
+    private int concurrency = 8;
+
+    @Autowired
+    public GooglePlayEntitlementReverifyWorker(
+            UserEntitlementRepository entitlementRepository,
+            EntitlementSyncService entitlementSyncService,
+            PurchaseTokenCrypto purchaseTokenCrypto,
+            EntitlementWorkerLease workerLease,
+            GooglePlayApiRateLimiter rateLimiter,
+            @Qualifier("googlePlayReverifyExecutor") Executor executor
+    ) {
+        this.entitlementRepository = entitlementRepository;
+        this.entitlementSyncService = entitlementSyncService;
+        this.purchaseTokenCrypto = purchaseTokenCrypto;
+        this.workerLease = workerLease;
+        this.rateLimiter = rateLimiter;
+        this.executor = executor;
+    }
 
-    /**
-     * Periodically re-verifies active Google Play entitlements.
-     * This closes the RTDN-missed gap for ON_HOLD / EXPIRED / REVOKED / GRACE transitions.
-     */
     @Scheduled(fixedDelayString = "${app.entitlement.google-play-reverify.fixed-delay:PT30M}")
     public void reverifyActiveGooglePlayEntitlements() {
         if (!purchaseTokenCrypto.enabled()) {
@@ -42,60 +95,177 @@ public class GooglePlayEntitlementReverifyWorker {
             return;
         }
 
-        EntitlementWorkerLease.Lease lease = workerLease.tryAcquire("google-play-reverify", leaseTtl);
-        if (lease == null) {
-            log.info("google_play_reverify_skipped lease_not_acquired=true");
-            return;
+        int shards = effectiveShardCount();
+        int start = shards == 1 ? 0 : ThreadLocalRandom.current().nextInt(shards);
+        int leased = 0;
+
+        for (int i = 0; i < shards; i++) {
+            int shard = (start + i) % shards;
+
+            EntitlementWorkerLease.Lease lease = workerLease.tryAcquire(leaseName(shard, shards), leaseTtl);
+            if (lease == null) continue;
+            leased++;
+
+            boolean keepGoing;
+            try {
+                keepGoing = reverifyShard(shard, shards);
+            } finally {
+                workerLease.release(lease);
+            }
+            if (!keepGoing) break;
         }
 
-        try {
-            reverifyActiveGooglePlayEntitlementsWithLease();
-        } finally {
-            workerLease.release(lease);
+        if (leased == 0) {
+            log.info("google_play_reverify_skipped lease_not_acquired=true shards={}", shards);
         }
     }
 
-    private void reverifyActiveGooglePlayEntitlementsWithLease() {
-
+    /**
+     * @return false = 被限流擋下，這一輪不要再做其他 shard
+     */
+    private boolean reverifyShard(int shard, int shards) {
         Instant now = Instant.now();
         Instant verifiedBefore = now.minus(staleAfter);
+        List<String> prefixes = shardIdPrefixes(shard, shards);
+        int pageSize = Math.max(1, batchSize);
+
+        // 驗證失敗的 row 不會更新 last_google_verified_at_utc，下一頁還會出現：記下來跳過，避免同一輪重打
+        Set<String> attempted = new HashSet<>();
+        Stats stats = new Stats();
+        long t0 = System.nanoTime();
 
-        var due = entitlementRepository.findActiveGooglePlayDueForReverify(
-                verifiedBefore,
-                PageRequest.of(0, Math.max(1, batchSize))
-        );
-
-        for (UserEntitlementEntity e : due) {
-            String purchaseToken = purchaseTokenCrypto.decryptOrNull(e.getPurchaseTokenCiphertext());
-            if (purchaseToken == null || purchaseToken.isBlank()) {
-                log.warn(
-                        "google_play_reverify_token_decrypt_failed entitlementId={} userId={} tokenHash={}",
-                        e.getId(),
-                        e.getUserId(),
-                        e.getPurchaseTokenHash()
-                );
-                continue;
+        for (int page = 0; page < Math.max(1, maxPagesPerShard) && !stats.throttled.get(); page++) {
+            List<UserEntitlementEntity> due = entitlementRepository.findActiveGooglePlayDueForReverify(
+                    verifiedBefore,
+                    prefixes,
+                    PageRequest.of(0, pageSize)
+            );
+
+            List<UserEntitlementEntity> fresh = new ArrayList<>(due.size());
+            for (UserEntitlementEntity e : due) {
+                if (attempted.add(e.getId())) fresh.add(e);
             }
+            if (fresh.isEmpty()) break;
+
+            reverifyAll(fresh, now, stats);
+
+            if (due.size() < pageSize) break;
+        }
 
+        if (stats.total() > 0 || stats.throttled.get()) {
+            log.info(
+                    "google_play_reverify_done shard={}/{} ok={} failed={} throttled={} elapsedMs={} verifiedBefore={}",
+                    shard,
+                    shards,
+                    stats.ok.get(),
+                    stats.failed.get(),
+                    stats.throttled.get(),
+                    (System.nanoTime() - t0) / 1_000_000L,
+                    verifiedBefore
+            );
+        }
+        return !stats.throttled.get();
+    }
+
+    /** 最多 concurrency 個同時進行；全部結束才回傳（lease 期間內做完） */
+    private void reverifyAll(List<UserEntitlementEntity> batch, Instant now, Stats stats) {
+        Semaphore slots = new Semaphore(Math.max(1, concurrency));
+        List<CompletableFuture<Void>> running = new ArrayList<>(batch.size());
+
+        for (UserEntitlementEntity e : batch) {
+            if (stats.throttled.get()) break;
+            try {
+                slots.acquire();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
             try {
-                entitlementSyncService.syncKnownPurchaseTokenFromRtdn(
-                        e.getUserId(),
-                        purchaseToken,
-                        now
-                );
-            } catch (Exception ex) {
-                log.warn(
-                        "google_play_reverify_failed entitlementId={} userId={} tokenHash={} error={}",
-                        e.getId(),
-                        e.getUserId(),
-                        e.getPurchaseTokenHash(),
-                        ex.getClass().getSimpleName()
-                );
+                running.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        reverifyOne(e, now, stats);
+                    } finally {
+                        slots.release();
+                    }
+                }, executor));
+            } catch (RuntimeException rejected) {
+                slots.release();
+                log.warn("google_play_reverify_submit_rejected entitlementId={} errorType={}",
+                        e.getId(), rejected.getClass().getSimpleName());
+                break;
             }
         }
 
-        if (!due.isEmpty()) {
-            log.info("google_play_reverify_done count={} verifiedBefore={}", due.size(), verifiedBefore);
+        CompletableFuture.allOf(running.toArray(CompletableFuture[]::new)).join();
+    }
+
+    private void reverifyOne(UserEntitlementEntity e, Instant now, Stats stats) {
+        if (stats.throttled.get()) return;
+
+        String purchaseToken = purchaseTokenCrypto.decryptOrNull(e.getPurchaseTokenCiphertext());
+        if (purchaseToken == null || purchaseToken.isBlank()) {
+            stats.failed.incrementAndGet();
+            log.warn(
+                    "google_play_reverify_token_decrypt_failed entitlementId={} userId={} tokenHash={}",
+                    e.getId(),
+                    e.getUserId(),
+                    e.getPurchaseTokenHash()
+            );
+            return;
+        }
+
+        if (rateLimiter != null && !rateLimiter.acquire(RATE_LIMIT_BUCKET)) {
+            stats.throttled.set(true);
+            return;
+        }
+
+        try {
+            entitlementSyncService.syncKnownPurchaseTokenFromRtdn(
+                    e.getUserId(),
+                    purchaseToken,
+                    now
+            );
+            stats.ok.incrementAndGet();
+        } catch (Exception ex) {
+            stats.failed.incrementAndGet();
+            log.warn(
+                    "google_play_reverify_failed entitlementId={} userId={} tokenHash={} error={}",
+                    e.getId(),
+                    e.getUserId(),
+                    e.getPurchaseTokenHash(),
+                    ex.getClass().getSimpleName()
+            );
+        }
+    }
+
+    private int effectiveShardCount() {
+        return Math.min(HEX.length(), Math.max(1, shardCount));
+    }
+
+    /** shardCount = 1 時沿用原本單一 lease 的名稱，升級期間新舊版本仍互斥 */
+    static String leaseName(int shard, int shards) {
+        return shards == 1 ? LEASE_NAME : LEASE_NAME + ":" + shards + ":" + shard;
+    }
+
+    /** UUID 第一個 hex 字元 d 屬於 shard (d % shards)；大小寫都列，避免舊資料是大寫 UUID */
+    static List<String> shardIdPrefixes(int shard, int shards) {
+        List<String> prefixes = new ArrayList<>();
+        for (int d = 0; d < HEX.length(); d++) {
+            if (d % shards != shard) continue;
+            String c = String.valueOf(HEX.charAt(d));
+            prefixes.add(c);
+            if (Character.isLetter(c.charAt(0))) prefixes.add(c.toUpperCase());
+        }
+        return prefixes;
+    }
+
+    private static final class Stats {
+        final AtomicInteger ok = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicBoolean throttled = new AtomicBoolean();
+
+        int total() {
+            return ok.get() + failed.get();
         }
     }
 }
@@ -0,0 +1,34 @@
+package com.caloshape.backend.entitlement.service;
+
+import com.caloshape.backend.entitlement.entity.UserEntitlementEntity;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * 透過 JPA 寫入 user_entitlements（save / dirty checking / delete）時讓該 user 的 tier 快取失效。
+ * JPQL bulk update 與 JdbcTemplate 不會觸發，這些路徑要自己呼叫 EntitlementTierInvalidationBus。
+ *
+ * ObjectProvider：@DataJpaTest 之類沒有 bus bean 的環境下 Hibernate 仍能建立 listener。
+ */
+@Component
+public class UserEntitlementTierCacheListener {
+
+    private final ObjectProvider<EntitlementTierInvalidationBus> bus;
+
+    public UserEntitlementTierCacheListener(ObjectProvider<EntitlementTierInvalidationBus> bus) {
+        this.bus = bus;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    void onWrite(UserEntitlementEntity e) {
+        EntitlementTierInvalidationBus b = bus.getIfAvailable();
+        if (b != null) {
+            b.userChangedAfterCommit(e.getUserId());
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.caloshape.backend.common.web.RequestIdFilter;
 import com.caloshape.backend.foodlog.barcode.openfoodfacts.OpenFoodFactsLang;
 import com.caloshape.backend.foodlog.dto.*;
 import com.caloshape.backend.foodlog.service.*;
+import com.caloshape.backend.foodlog.service.query.FoodLogResultWaitService;
 import com.caloshape.backend.foodlog.service.support.FoodLogRequestNormalizer;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
@@ -13,6 +14,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.time.LocalDate;
@@ -30,6 +32,7 @@ public class FoodLogController {
     private final FoodLogOverrideService overrideService;
     private final UserDailyNutritionSummaryService dailySummaryService;
     private final ProgressAveragesService progressAveragesService;
+    private final FoodLogResultWaitService resultWaitService;
 
     @PostMapping(value = "/album", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public FoodLogEnvelope album(
@@ -126,6 +129,22 @@ public class FoodLogController {
         return service.getOne(uid, id, requestId);
     }
 
+    /**
+     * long-poll：PENDING 時掛著等 worker 完成（最多 waitSec 秒，上限見 app.foodlog.result-wait.max-wait）
+     * 完成就回最新 envelope；逾時回當下的 envelope（仍是 PENDING），client 直接再發一次。
+     * 回應格式與 GET /{id} 相同，取代每 pollAfterSec 秒輪詢一次。
+     */
+    @GetMapping("/{id}/result")
+    public DeferredResult<FoodLogEnvelope> awaitResult(
+            @PathVariable String id,
+            @RequestParam(value = "waitSec", required = false) Integer waitSec,
+            HttpServletRequest req
+    ) {
+        Long uid = auth.requireUserId();
+        String requestId = RequestIdFilter.getOrCreate(req);
+        return resultWaitService.await(uid, id, waitSec, requestId);
+    }
+
     @PostMapping("/{id}/retry")
     public FoodLogEnvelope retry(
             @PathVariable String id,
@@ -2,61 +2,145 @@ package com.caloshape.backend.foodlog.controller;
 
 import com.caloshape.backend.auth.security.AuthContext;
 import com.caloshape.backend.foodlog.service.FoodLogService;
+import com.caloshape.backend.foodlog.service.image.ImageOpenResult;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.InputStream;
+import java.io.File;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * 原圖讀取。blob 以 SHA-256 內容定址、寫入後不會變：
+ * - ETag = "sha256"（strong），If-None-Match 命中直接 304，不碰 storage
+ * - Cache-Control private + immutable，max-age 到原圖 retention 到期為止
+ * - 回傳 Resource：Range 由 Spring MVC 回 206；Tomcat 支援 sendfile 時整檔交給 connector 送（zero-copy）
+ */
 @RequiredArgsConstructor
 @RestController
 public class FoodLogImageController {
 
+    /** Tomcat NIO connector 的 sendfile 介面（同 DefaultServlet） */
+    static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
     private final AuthContext auth;
     private final FoodLogService service;
 
     @GetMapping("/api/v1/food-logs/{id}/image")
-    public ResponseEntity<StreamingResponseBody> image(
-            @PathVariable("id") String foodLogId
-    ) {
+    public ResponseEntity<Resource> image(
+            @PathVariable("id") String foodLogId,
+            HttpServletRequest request
+    ) throws Exception {
         Long uid = auth.requireUserId();
 
         var opened = service.openImage(uid, foodLogId);
 
-        StreamingResponseBody body = outputStream -> {
-            try (InputStream in = service.openImageStream(opened.objectKey())) {
-                byte[] buf = new byte[8192];
-                int n;
-                while ((n = in.read(buf)) >= 0) {
-                    outputStream.write(buf, 0, n);
-                }
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+        HttpHeaders headers = new HttpHeaders();
+        String etag = etagOf(opened);
+        if (etag != null) {
+            headers.setETag(etag);
+            headers.setCacheControl(CacheControl.maxAge(opened.cacheMaxAgeSec(), TimeUnit.SECONDS)
+                    .cachePrivate()
+                    .immutable());
+
+            if (matchesIfNoneMatch(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
             }
-        };
+        } else {
+            // 舊資料沒有 sha256：維持原本的短快取
+            headers.setCacheControl(CacheControl.maxAge(60, TimeUnit.SECONDS).cachePrivate());
+        }
 
-        HttpHeaders headers = new HttpHeaders();
         String ct = (opened.contentType() == null || opened.contentType().isBlank())
                 ? MediaType.APPLICATION_OCTET_STREAM_VALUE
                 : opened.contentType();
         headers.set(HttpHeaders.CONTENT_TYPE, ct);
 
-        // Home recent-upload 預覽圖：允許 private cache，但避免被共享代理快取
-        headers.setCacheControl(CacheControl.maxAge(60, TimeUnit.SECONDS).cachePrivate());
+        Resource resource = service.openImageResource(opened.objectKey());
+
+        if (trySendfile(request, resource, headers)) {
+            return ResponseEntity.ok().headers(headers).build();
+        }
 
-        if (opened.sizeBytes() > 0) {
+        if (resource instanceof InputStreamResource && opened.sizeBytes() > 0) {
+            // 串流型 Resource 不會自己算長度
             headers.setContentLength(opened.sizeBytes());
         }
 
         return ResponseEntity.ok()
                 .headers(headers)
-                .body(body);
+                .body(resource);
+    }
+
+    private static String etagOf(ImageOpenResult opened) {
+        String sha = opened.sha256();
+        return (sha == null || sha.isBlank()) ? null : "\"" + sha + "\"";
+    }
+
+    /**
+     * If-None-Match 用 weak comparison（RFC 9110 13.1.2）：W/ 前綴忽略，支援多值與 *
+     */
+    static boolean matchesIfNoneMatch(String header, String etag) {
+        if (header == null || header.isBlank()) {
+            return false;
+        }
+        for (String raw : header.split(",")) {
+            String candidate = raw.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 整檔 GET（非 HEAD、沒有 Range）且 connector 支援時，讓 Tomcat 以 sendfile 直接送檔，
+     * response body 留空；其他情況（Range、測試環境、非檔案 storage）回 false 走一般 Resource 寫出。
+     */
+    private static boolean trySendfile(HttpServletRequest request, Resource resource, HttpHeaders headers) {
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            return false;
+        }
+        if (!HttpMethod.GET.matches(request.getMethod()) || request.getHeader(HttpHeaders.RANGE) != null) {
+            return false;
+        }
+        if (!resource.isFile()) {
+            return false;
+        }
+
+        try {
+            File file = resource.getFile();
+            long length = file.length();
+            if (length <= 0) {
+                return false;
+            }
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.getAbsolutePath());
+            request.setAttribute(SENDFILE_START_ATTR, 0L);
+            request.setAttribute(SENDFILE_END_ATTR, length);
+            headers.setContentLength(length);
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
     }
 }
@@ -11,7 +11,10 @@ import java.util.UUID;
 @Entity
 @Table(name = "food_log_tasks",
         uniqueConstraints = @UniqueConstraint(name = "ux_food_log_tasks_food_log_id", columnNames = "food_log_id"),
-        indexes = @Index(name = "idx_food_log_tasks_status", columnList = "task_status,next_retry_at_utc")
+        indexes = {
+                @Index(name = "idx_food_log_tasks_status", columnList = "task_status,next_retry_at_utc"),
+                @Index(name = "idx_food_log_tasks_queue", columnList = "task_status,created_at_utc,next_retry_at_utc")
+        }
 )
 public class FoodLogTaskEntity {
 
@@ -66,6 +69,7 @@ public class FoodLogTaskEntity {
     public void markRunning(Instant now) {
         this.taskStatus = TaskStatus.RUNNING;
         this.attempts += 1;
+        this.nextRetryAtUtc = null;
         this.updatedAtUtc = now;
     }
 
@@ -83,6 +87,16 @@ public class FoodLogTaskEntity {
         this.updatedAtUtc = now;
     }
 
+    /** provider 暫時不可用（circuit breaker open）：退回 QUEUED 到 retryAt 再 claim，這次不計入 attempts */
+    public void markRequeued(Instant now, Instant retryAt, String code, String message) {
+        this.taskStatus = TaskStatus.QUEUED;
+        this.attempts = Math.max(0, this.attempts - 1);
+        this.lastErrorCode = code;
+        this.lastErrorMessage = message;
+        this.nextRetryAtUtc = retryAt;
+        this.updatedAtUtc = now;
+    }
+
     /** ✅ 明確取消：不再重試 */
     public void markCancelled(Instant now, String code, String message) {
         this.taskStatus = TaskStatus.CANCELLED;
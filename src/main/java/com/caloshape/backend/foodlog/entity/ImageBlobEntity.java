@@ -12,7 +12,10 @@ import java.time.Instant;
 @Table(
         name = "image_blobs",
         uniqueConstraints = @UniqueConstraint(name = "uk_image_blobs_user_sha", columnNames = {"user_id", "sha256"}),
-        indexes = @Index(name = "idx_image_blobs_user", columnList = "user_id")
+        indexes = {
+                @Index(name = "idx_image_blobs_user", columnList = "user_id"),
+                @Index(name = "idx_image_blobs_user_updated", columnList = "user_id,updated_at_utc")
+        }
 )
 public class ImageBlobEntity {
 
@@ -38,6 +41,10 @@ public class ImageBlobEntity {
     @Column(length=8, nullable=false)
     private String ext;
 
+    /** 64-bit dHash（近似重複比對用）；格式不支援或功能關閉時為 null */
+    @Column(name="phash")
+    private Long phash;
+
     @Column(name="ref_count", nullable=false)
     private Integer refCount = 1;
 
@@ -0,0 +1,132 @@
+package com.caloshape.backend.foodlog.image;
+
+import com.caloshape.backend.foodlog.entity.FoodLogEntity;
+import com.caloshape.backend.foodlog.service.ImageBlobService;
+import com.caloshape.backend.foodlog.storage.StorageService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * StorageService 與 Gemini processor 之間的前處理：
+ * 1. 以原圖 sha256 找衍生檔，有就直接用（重試 / 重新分析不重算）
+ * 2. 沒有：縮到長邊上限、轉正、去 metadata、重新編碼 JPEG，存成衍生檔
+ * 3. 關閉、格式不支援或處理失敗：送原圖
+ * capturedAt 在建立 food log 時已由 ExifTimeExtractor 從原圖讀完，這裡去掉 EXIF 不影響時間判斷。
+ */
+@Slf4j
+@Component
+public class FoodImagePreprocessor {
+
+    private static final String DERIVED_CONTENT_TYPE = "image/jpeg";
+    private static final Pattern SHA256_HEX_64 = Pattern.compile("^[0-9a-f]{64}$");
+
+    private final ImageBlobService blobService;
+    private final ImagePrepProperties props;
+
+    public FoodImagePreprocessor(ImageBlobService blobService, ImagePrepProperties props) {
+        this.blobService = blobService;
+        this.props = props;
+
+        if (props.isEnabled()) {
+            blobService.registerDerivedVariant(variant(props.getMaxEdge()));
+            blobService.registerDerivedVariant(variant(props.getLabelMaxEdge()));
+        }
+    }
+
+    /**
+     * 開啟要送給 provider 的圖片。
+     * 回傳的 contentType 是實際內容的 MIME（衍生檔一律 image/jpeg；原圖沿用 entity 記錄）。
+     *
+     * @param label true = LABEL（用 labelMaxEdge）
+     */
+    public StorageService.OpenResult open(FoodLogEntity entity, StorageService storage, boolean label) throws Exception {
+        String sha256 = normalizeSha(entity.getImageSha256());
+        if (!props.isEnabled() || entity.getUserId() == null || sha256 == null) {
+            return openOriginal(entity, storage);
+        }
+
+        int maxEdge = label ? props.getLabelMaxEdge() : props.getMaxEdge();
+        String derivedKey = blobService.derivedObjectKey(entity.getUserId(), sha256, variant(maxEdge));
+
+        if (storage.exists(derivedKey)) {
+            StorageService.OpenResult cached = storage.open(derivedKey);
+            return new StorageService.OpenResult(cached.inputStream(), cached.sizeBytes(), DERIVED_CONTENT_TYPE);
+        }
+
+        byte[] jpeg;
+        try {
+            jpeg = downscale(entity.getImageObjectKey(), storage, maxEdge);
+        } catch (Exception ex) {
+            log.warn("image_prep_failed foodLogId={} errorType={}", entity.getId(), ex.getClass().getSimpleName());
+            return openOriginal(entity, storage);
+        }
+
+        if (jpeg == null) {
+            return openOriginal(entity, storage);
+        }
+
+        try {
+            blobService.storeDerived(derivedKey, jpeg, DERIVED_CONTENT_TYPE);
+        } catch (Exception ex) {
+            // 快取寫不進去不影響這次送出，下次再算
+            log.warn("image_prep_store_failed foodLogId={} errorType={}", entity.getId(), ex.getClass().getSimpleName());
+        }
+
+        return new StorageService.OpenResult(new ByteArrayInputStream(jpeg), jpeg.length, DERIVED_CONTENT_TYPE);
+    }
+
+    /**
+     * 送給 provider 的圖片版本（長邊上限 + JPEG quality；關閉前處理 = original），給結果快取對齊用。
+     */
+    public String variantFor(boolean label) {
+        if (!props.isEnabled()) {
+            return "original";
+        }
+        return variant(label ? props.getLabelMaxEdge() : props.getMaxEdge());
+    }
+
+    /**
+     * 原圖：contentType 用 entity 記錄的值（storage probe 出來的不可靠）。
+     */
+    public static StorageService.OpenResult openOriginal(FoodLogEntity entity, StorageService storage) throws Exception {
+        StorageService.OpenResult raw = storage.open(entity.getImageObjectKey());
+        return new StorageService.OpenResult(raw.inputStream(), raw.sizeBytes(), entity.getImageContentType());
+    }
+
+    private byte[] downscale(String objectKey, StorageService storage, int maxEdge) throws Exception {
+        int orientation;
+        try (InputStream in = storage.open(objectKey).inputStream()) {
+            orientation = ImageDownscaler.readExifOrientation(in);
+        }
+
+        StorageService.OpenResult original = storage.open(objectKey);
+        try (InputStream in = original.inputStream()) {
+            return ImageDownscaler.downscaleToJpegOrNull(
+                    in,
+                    original.sizeBytes(),
+                    orientation,
+                    maxEdge,
+                    props.getJpegQuality(),
+                    props.getPassthroughMaxBytes()
+            );
+        }
+    }
+
+    private String variant(int maxEdge) {
+        int q = Math.round(props.getJpegQuality() * 100);
+        return "prep-" + maxEdge + "q" + q;
+    }
+
+    private static String normalizeSha(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        String s = raw.trim().toLowerCase(Locale.ROOT);
+        return SHA256_HEX_64.matcher(s).matches() ? s : null;
+    }
+}
@@ -0,0 +1,180 @@
+package com.caloshape.backend.foodlog.image;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * 縮圖 + 重新編碼成 JPEG（ImageIO，無額外相依）。
+ * - 解碼時用 source subsampling（只能整數倍率，解出來的長邊仍需 >= maxEdge）：
+ *   長邊達 maxEdge 兩倍以上才會少解像素；12MP（4032x3024）在 maxEdge 1536 時倍率 2，
+ *   在 labelMaxEdge 2048 時倍率 1，會整張解進記憶體（3 bytes/px 約 36MB，另加縮放 / 轉正各約 12MB），
+ *   同時處理的張數受 worker 的 max-in-flight 限制
+ * - 套用 EXIF orientation 後輸出，輸出不帶任何 metadata（EXIF / GPS 一併去掉）
+ * - ImageIO 讀不了的格式（HEIC / WebP）回 null，由呼叫端改送原圖
+ */
+public final class ImageDownscaler {
+
+    private ImageDownscaler() {}
+
+    /**
+     * 讀 EXIF orientation（1~8）；讀不到一律當 1。
+     */
+    public static int readExifOrientation(InputStream in) {
+        try {
+            Metadata metadata = ImageMetadataReader.readMetadata(in);
+            ExifIFD0Directory dir = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+            if (dir == null || !dir.containsTag(ExifIFD0Directory.TAG_ORIENTATION)) {
+                return 1;
+            }
+            int o = dir.getInt(ExifIFD0Directory.TAG_ORIENTATION);
+            return (o >= 1 && o <= 8) ? o : 1;
+        } catch (Exception e) {
+            return 1;
+        }
+    }
+
+    /**
+     * @param sourceBytes         原圖大小（未知給 -1）
+     * @param orientation         EXIF orientation
+     * @param passthroughMaxBytes 原圖已在 maxEdge 內且不超過此大小時不處理
+     * @return JPEG bytes；不需要處理或格式不支援時回 null
+     */
+    public static byte[] downscaleToJpegOrNull(
+            InputStream in,
+            long sourceBytes,
+            int orientation,
+            int maxEdge,
+            float quality,
+            long passthroughMaxBytes
+    ) throws IOException {
+        if (maxEdge <= 0) {
+            throw new IllegalArgumentException("maxEdge must be > 0");
+        }
+
+        try (ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+            if (iis == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int w = reader.getWidth(0);
+                int h = reader.getHeight(0);
+                int longEdge = Math.max(w, h);
+
+                boolean fits = longEdge <= maxEdge;
+                if (fits && orientation == 1 && sourceBytes >= 0 && sourceBytes <= passthroughMaxBytes) {
+                    return null;
+                }
+
+                // 解出來的長邊 >= maxEdge 的最大整數倍率，後面再做平滑縮放；
+                // 長邊不到 maxEdge 兩倍時倍率是 1（整張解碼），再加大就會低於 maxEdge、損失解析度
+                int subsample = Math.max(1, longEdge / maxEdge);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsample, subsample, 0, 0);
+                BufferedImage decoded = reader.read(0, param);
+
+                BufferedImage scaled = scaleToRgb(decoded, maxEdge);
+                BufferedImage oriented = applyOrientation(scaled, orientation);
+                return encodeJpeg(oriented, quality);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage scaleToRgb(BufferedImage src, int maxEdge) {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        double ratio = Math.min(1.0d, (double) maxEdge / Math.max(w, h));
+        int tw = Math.max(1, (int) Math.round(w * ratio));
+        int th = Math.max(1, (int) Math.round(h * ratio));
+
+        BufferedImage out = new BufferedImage(tw, th, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            // PNG 透明背景壓成白底
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, tw, th);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(src, 0, 0, tw, th, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    /**
+     * EXIF orientation 2~8：輸出不再帶 EXIF，所以要先把像素轉正。
+     */
+    static BufferedImage applyOrientation(BufferedImage src, int orientation) {
+        if (orientation <= 1 || orientation > 8) {
+            return src;
+        }
+
+        int w = src.getWidth();
+        int h = src.getHeight();
+        boolean swap = orientation >= 5;
+
+        AffineTransform t = new AffineTransform();
+        switch (orientation) {
+            case 2 -> { t.translate(w, 0); t.scale(-1, 1); }
+            case 3 -> { t.translate(w, h); t.rotate(Math.PI); }
+            case 4 -> { t.translate(0, h); t.scale(1, -1); }
+            case 5 -> { t.rotate(-Math.PI / 2); t.scale(-1, 1); }
+            case 6 -> { t.translate(h, 0); t.rotate(Math.PI / 2); }
+            case 7 -> { t.translate(h, w); t.rotate(Math.PI / 2); t.scale(-1, 1); }
+            case 8 -> { t.translate(0, w); t.rotate(3 * Math.PI / 2); }
+            default -> { }
+        }
+
+        BufferedImage out = new BufferedImage(swap ? h : w, swap ? w : h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.drawImage(src, t, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage img, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256 * 1024);
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(bos)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(Math.max(0.1f, Math.min(1.0f, quality)));
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bos.toByteArray();
+    }
+}
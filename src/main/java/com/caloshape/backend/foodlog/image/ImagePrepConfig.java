@@ -0,0 +1,8 @@
+package com.caloshape.backend.foodlog.image;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(ImagePrepProperties.class)
+public class ImagePrepConfig {}
@@ -0,0 +1,41 @@
+package com.caloshape.backend.foodlog.image;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * application.yml:
+ * app.foodlog.image-prep.
+ * 送 provider 前的圖片前處理：縮到 max edge、去掉 metadata、重新編碼成 JPEG。
+ * 結果以原圖 sha256 為 key 存成衍生檔，重試 / 重新分析直接沿用。
+ */
+@Data
+@ConfigurationProperties(prefix = "app.foodlog.image-prep")
+public class ImagePrepProperties {
+
+    /**
+     * 一鍵開關（預設關閉：直接送原圖）
+     */
+    private boolean enabled = false;
+
+    /**
+     * PHOTO / ALBUM 長邊上限（px）
+     */
+    private int maxEdge = 1536;
+
+    /**
+     * LABEL 長邊上限（px）：營養標示要看得清小字，給大一點。
+     * 原圖長邊不到此值兩倍時無法 subsample（12MP 手機照 4032px 在 2048 下要整張解碼，約 36MB / 張）
+     */
+    private int labelMaxEdge = 2048;
+
+    /**
+     * JPEG 品質（0~1）
+     */
+    private float jpegQuality = 0.85f;
+
+    /**
+     * 原圖已在長邊上限內、且不超過這個大小時，直接送原圖不重新編碼
+     */
+    private long passthroughMaxBytes = 1024 * 1024;
+}
@@ -0,0 +1,37 @@
+package com.caloshape.backend.foodlog.image;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * application.yml:
+ * app.foodlog.near-dup.
+ * 同一使用者短時間內上傳「幾乎一樣」的照片（重拍、重新壓縮的副本）時，
+ * 沿用上一張的分析結果，不再送 provider、不扣 quota。
+ */
+@Data
+@ConfigurationProperties(prefix = "app.foodlog.near-dup")
+public class NearDuplicateProperties {
+
+    /**
+     * 一鍵開關（預設關閉：只做 sha256 完全相同的去重）
+     */
+    private boolean enabled = false;
+
+    /**
+     * dHash hamming distance 上限（0~64，越小越嚴格）
+     */
+    private int maxDistance = 6;
+
+    /**
+     * 只跟這段時間內用過的 blob 比
+     */
+    private Duration window = Duration.ofMinutes(10);
+
+    /**
+     * 每次最多拿幾張近期 blob 來比
+     */
+    private int maxCandidates = 32;
+}
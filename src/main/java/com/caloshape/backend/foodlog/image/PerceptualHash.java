@@ -0,0 +1,109 @@
+package com.caloshape.backend.foodlog.image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * 64-bit dHash（difference hash）：
+ * 1. 以 source subsampling 只解出小圖（長邊約 128px），不會把 12MP 原圖整張解進記憶體
+ * 2. 套 EXIF orientation，再把灰階平均到 9x8 格
+ * 3. 每列相鄰兩格比亮度，左 > 右 記 1
+ * 同一盤菜隔一秒重拍、或同一張圖被重新壓縮，hamming distance 通常 <= 6；不同餐點多半 > 20。
+ * ImageIO 讀不了的格式（HEIC / WebP）回 null。
+ */
+public final class PerceptualHash {
+
+    private static final int COLS = 9;
+    private static final int ROWS = 8;
+    private static final int DECODE_TARGET_EDGE = 128;
+
+    private PerceptualHash() {}
+
+    public static Long dHashOrNull(InputStream in, int orientation) throws IOException {
+        BufferedImage small = decodeSmallOrNull(in);
+        if (small == null) {
+            return null;
+        }
+        return dHash(ImageDownscaler.applyOrientation(small, orientation));
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    static long dHash(BufferedImage img) {
+        double[] cells = averageLuma(img);
+        long hash = 0L;
+        for (int r = 0; r < ROWS; r++) {
+            for (int c = 0; c < COLS - 1; c++) {
+                hash <<= 1;
+                if (cells[r * COLS + c] > cells[r * COLS + c + 1]) {
+                    hash |= 1L;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 區塊平均（不是取樣）：縮得很小時不會因為剛好取到某個亮點而不穩定。
+     */
+    private static double[] averageLuma(BufferedImage img) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        double[] sum = new double[COLS * ROWS];
+        int[] count = new int[COLS * ROWS];
+
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            img.getRGB(0, y, w, 1, row, 0, w);
+            int cy = Math.min(ROWS - 1, y * ROWS / h);
+            for (int x = 0; x < w; x++) {
+                int cx = Math.min(COLS - 1, x * COLS / w);
+                int rgb = row[x];
+                int r = (rgb >> 16) & 0xFF;
+                int g = (rgb >> 8) & 0xFF;
+                int b = rgb & 0xFF;
+                int idx = cy * COLS + cx;
+                sum[idx] += 0.299 * r + 0.587 * g + 0.114 * b;
+                count[idx]++;
+            }
+        }
+
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] = count[i] == 0 ? 0 : sum[i] / count[i];
+        }
+        return sum;
+    }
+
+    private static BufferedImage decodeSmallOrNull(InputStream in) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+            if (iis == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int longEdge = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int subsample = Math.max(1, longEdge / DECODE_TARGET_EDGE);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsample, subsample, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.caloshape.backend.foodlog.job.cleanup;
 
+import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.job.retention.FoodLogRetentionProperties;
 import com.caloshape.backend.foodlog.repo.FoodLogTaskRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -7,6 +9,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 
@@ -18,11 +21,13 @@ public class FoodLogTaskReaper {
     private static final Duration RUNNING_TIMEOUT = Duration.ofMinutes(2);
 
     private final FoodLogTaskRepository taskRepo;
+    private final FoodLogRetentionProperties retentionProps;
+    private final Clock clock;
 
     @Scheduled(fixedDelay = 30_000)
     @Transactional
     public void reap() {
-        Instant now = Instant.now();
+        Instant now = clock.instant();
         Instant staleBefore = now.minus(RUNNING_TIMEOUT);
 
         int n = taskRepo.resetStaleRunningAndMarkLogsFailed(
@@ -34,4 +39,25 @@ public class FoodLogTaskReaper {
 
         if (n > 0) log.warn("reaped stale RUNNING tasks+logs: count={}", n);
     }
+
+    /**
+     * 終態 task 分批刪掉，讓 claim 用的 food_log_tasks 維持小表。
+     */
+    @Scheduled(fixedDelayString = "${app.retention.foodlog.task-purge-delay:PT10M}")
+    @Transactional
+    public void purgeTerminal() {
+        if (!retentionProps.isEnabled()) {
+            return;
+        }
+
+        Instant cutoff = clock.instant().minus(retentionProps.getKeepTerminalTask());
+        int limit = Math.max(1, retentionProps.getTaskPurgeBatchSize());
+
+        int succeeded = taskRepo.purgeCreatedBefore(FoodLogTaskEntity.TaskStatus.SUCCEEDED.name(), cutoff, limit);
+        int cancelled = taskRepo.purgeCreatedBefore(FoodLogTaskEntity.TaskStatus.CANCELLED.name(), cutoff, limit);
+
+        if (succeeded + cancelled > 0) {
+            log.info("purged terminal tasks: succeeded={} cancelled={}", succeeded, cancelled);
+        }
+    }
 }
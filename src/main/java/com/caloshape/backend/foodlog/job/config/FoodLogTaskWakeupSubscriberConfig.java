@@ -0,0 +1,42 @@
+package com.caloshape.backend.foodlog.job.config;
+
+import com.caloshape.backend.foodlog.job.worker.FoodLogResultNotifier;
+import com.caloshape.backend.foodlog.job.worker.FoodLogTaskWakeup;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * push 模式才訂閱：
+ * - 其他 pod 建立的 task 透過 Redis pub/sub 喚醒本 pod 的 worker
+ * - 其他 pod 完成的 food log 透過 Redis pub/sub 喚醒本 pod 的 long-poll 等待者
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.foodlog.worker", name = "push-enabled", havingValue = "true")
+public class FoodLogTaskWakeupSubscriberConfig {
+
+    @Bean
+    public RedisMessageListenerContainer foodLogTaskWakeupListenerContainer(
+            RedisConnectionFactory connectionFactory,
+            FoodLogTaskWakeup wakeup,
+            FoodLogResultNotifier resultNotifier
+    ) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(
+                (message, pattern) -> wakeup.signalLocal(),
+                new ChannelTopic(wakeup.channel())
+        );
+        container.addMessageListener(
+                (message, pattern) -> resultNotifier.signalLocal(
+                        new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(resultNotifier.channel())
+        );
+        return container;
+    }
+}
@@ -0,0 +1,8 @@
+package com.caloshape.backend.foodlog.job.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(FoodLogTaskWorkerProperties.class)
+public class FoodLogTaskWorkerConfig {}
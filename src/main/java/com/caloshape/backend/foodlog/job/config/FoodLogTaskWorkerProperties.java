@@ -0,0 +1,115 @@
+package com.caloshape.backend.foodlog.job.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "app.foodlog.worker")
+public class FoodLogTaskWorkerProperties {
+
+    /** 每次 claim 最多撿幾筆 */
+    private int batchSize = 10;
+
+    /**
+     * true：claim 到的任務丟到 virtual thread 並行執行，有空位就繼續 claim
+     * false：沿用 scheduler thread 逐筆處理
+     */
+    private boolean concurrent = false;
+
+    /** 單一 pod 同時在跑的任務上限（所有 provider / tier 合計） */
+    private int maxInFlight = 16;
+
+    /** 未列在 providerMaxInFlight 的 provider 使用的上限 */
+    private int defaultProviderMaxInFlight = 8;
+
+    /** key = provider code（GEMINI / STUB ...），value = 單一 pod 同時呼叫上限 */
+    private Map<String, Integer> providerMaxInFlight = new HashMap<>();
+
+    /**
+     * key = model tier（同 app.ai.modelTiers 的 key：MODEL_TIER_HIGH / MODEL_TIER_LOW）
+     * value = 單一 pod 對該 tier 的同時呼叫上限；未設定則只受 provider 上限限制
+     */
+    private Map<String, Integer> tierMaxInFlight = new HashMap<>();
+
+    /**
+     * provider / tier 名額（含 adaptive limit）已滿的任務延後多久再 claim，
+     * 讓同一輪 claim 先撿其他 tier 的任務；不計 attempts
+     */
+    private Duration busyBackoff = Duration.ofSeconds(1);
+
+    /**
+     * true：task commit 後透過 Redis pub/sub 喚醒各 pod 的 worker 立刻 claim，
+     * app.foodlog.worker.poll-interval 的輪詢只當保險
+     */
+    private boolean pushEnabled = false;
+
+    /**
+     * 單一任務呼叫 provider 的截止時間（含 hedge）；到期取消請求並以 PROVIDER_TIMEOUT 結束。
+     * 0 / 未設定 = 不設截止時間，只靠 transport 的 read timeout
+     */
+    private Duration providerDeadline = Duration.ofSeconds(45);
+
+    /**
+     * food_log_tasks backlog gauge 的取樣間隔（FoodLogTaskQueueMetrics，排程讀 app.foodlog.worker.queue-metrics-interval）
+     */
+    private Duration queueMetricsInterval = Duration.ofSeconds(15);
+
+    /** wake-up channel / circuit breaker 的 Redis key 前綴 */
+    private String redisPrefix = "caloshape";
+
+    /** provider 健康度保護：per (provider, modelId) 的 adaptive concurrency + 跨 pod circuit breaker */
+    private Health health = new Health();
+
+    @Data
+    public static class Health {
+
+        /** false：只受 providerMaxInFlight / tierMaxInFlight 靜態上限限制，失敗一律照舊結束任務 */
+        private boolean enabled = false;
+
+        // ===== circuit breaker（狀態放 Redis，所有 pod 共用）=====
+
+        /** 錯誤率統計窗（固定窗，到期歸零） */
+        private Duration window = Duration.ofSeconds(30);
+
+        /** 統計窗內至少幾次呼叫才判斷錯誤率，避免低流量時一次失敗就 open */
+        private int minCalls = 10;
+
+        /** 429 / 5xx / timeout / 連線錯誤佔比達到此值就 open（0~1） */
+        private double failureRateThreshold = 0.5;
+
+        /** 第一次 open 的時間；half-open probe 失敗就倍增，最多 maxOpenDuration */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        private Duration maxOpenDuration = Duration.ofMinutes(5);
+
+        /**
+         * half-open 時只放一個 probe；probe 的 pod 掛掉沒回報時，到期改放下一個。
+         * 需大於 providerDeadline。
+         */
+        private Duration probeTimeout = Duration.ofSeconds(60);
+
+        /** half-open 期間非 probe 的任務多久後再試 */
+        private Duration halfOpenRetry = Duration.ofSeconds(5);
+
+        /**
+         * 任務從建立起最多因 breaker 延後多久；超過就以 PROVIDER_CIRCUIT_OPEN 結束，
+         * 不讓 client 無限期等下去
+         */
+        private Duration maxQueueDelay = Duration.ofMinutes(10);
+
+        // ===== adaptive concurrency（AIMD，單一 pod）=====
+
+        /** AIMD 下限；上限沿用 tierMaxInFlight / providerMaxInFlight */
+        private int minLimit = 1;
+
+        /** 成功但 latency 超過此值視為壅塞，不再加大上限 */
+        private Duration latencyTarget = Duration.ofSeconds(20);
+
+        /** 429 / 5xx / timeout / 連線錯誤時上限乘上此值（0~1） */
+        private double decreaseFactor = 0.5;
+    }
+}
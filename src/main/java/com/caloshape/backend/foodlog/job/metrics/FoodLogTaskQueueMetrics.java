@@ -0,0 +1,109 @@
+package com.caloshape.backend.foodlog.job.metrics;
+
+import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.repo.FoodLogTaskRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * food_log_tasks backlog（整個叢集，每個 pod 各自取樣，看板取 max 即可）。
+ *
+ * 查詢只在排程取樣時跑（app.foodlog.worker.queue-metrics-interval，預設 15s），scrape 時只讀快取：
+ * - foodlog.tasks.backlog{status}：QUEUED / RUNNING / FAILED 筆數
+ * - foodlog.tasks.deferred：circuit breaker / 名額不足延後、還沒到 next_retry_at_utc 的 QUEUED
+ * - foodlog.tasks.oldest_queued_age：最舊 QUEUED 已等待秒數（scrape 當下依快取的 created_at 計算）
+ */
+@Slf4j
+@Component
+public class FoodLogTaskQueueMetrics {
+
+    static final List<FoodLogTaskEntity.TaskStatus> ACTIVE_STATUSES = List.of(
+            FoodLogTaskEntity.TaskStatus.QUEUED,
+            FoodLogTaskEntity.TaskStatus.RUNNING,
+            FoodLogTaskEntity.TaskStatus.FAILED
+    );
+
+    /** 最近一次取樣結果；sampledAt = null 代表還沒取樣成功過 */
+    public record Snapshot(
+            Map<FoodLogTaskEntity.TaskStatus, Long> backlog,
+            long deferred,
+            Instant oldestQueuedAt,
+            Instant sampledAt
+    ) {
+        public Long oldestQueuedAgeSec(Instant now) {
+            if (oldestQueuedAt == null) return null;
+            return Math.max(0L, Duration.between(oldestQueuedAt, now).getSeconds());
+        }
+    }
+
+    private final FoodLogTaskRepository taskRepo;
+    private final Clock clock;
+
+    private final Map<FoodLogTaskEntity.TaskStatus, AtomicLong> backlog = new EnumMap<>(FoodLogTaskEntity.TaskStatus.class);
+    private final AtomicLong deferred = new AtomicLong();
+    private final AtomicReference<Snapshot> last = new AtomicReference<>(
+            new Snapshot(Map.of(), 0L, null, null));
+
+    @Autowired
+    public FoodLogTaskQueueMetrics(FoodLogTaskRepository taskRepo, Clock clock, MeterRegistry meterRegistry) {
+        this.taskRepo = taskRepo;
+        this.clock = clock;
+
+        for (FoodLogTaskEntity.TaskStatus s : ACTIVE_STATUSES) {
+            AtomicLong v = new AtomicLong();
+            backlog.put(s, v);
+            Gauge.builder("foodlog.tasks.backlog", v, AtomicLong::get)
+                    .tag("status", s.name())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("foodlog.tasks.deferred", deferred, AtomicLong::get)
+                .register(meterRegistry);
+        Gauge.builder("foodlog.tasks.oldest_queued_age", this, FoodLogTaskQueueMetrics::oldestQueuedAgeSec)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.foodlog.worker.queue-metrics-interval:PT15S}")
+    public void sample() {
+        Instant now = clock.instant();
+        try {
+            Map<FoodLogTaskEntity.TaskStatus, Long> counts = new EnumMap<>(FoodLogTaskEntity.TaskStatus.class);
+            for (FoodLogTaskEntity.TaskStatus s : ACTIVE_STATUSES) counts.put(s, 0L);
+            for (Object[] row : taskRepo.countByStatusIn(ACTIVE_STATUSES)) {
+                counts.put((FoodLogTaskEntity.TaskStatus) row[0], ((Number) row[1]).longValue());
+            }
+
+            long deferredNow = taskRepo.countByTaskStatusAndNextRetryAtUtcAfter(FoodLogTaskEntity.TaskStatus.QUEUED, now);
+            Instant oldest = taskRepo.findOldestCreatedAt(FoodLogTaskEntity.TaskStatus.QUEUED).orElse(null);
+
+            counts.forEach((s, n) -> backlog.get(s).set(n));
+            deferred.set(deferredNow);
+            last.set(new Snapshot(Map.copyOf(counts), deferredNow, oldest, now));
+        } catch (RuntimeException e) {
+            // 取樣失敗保留上一次的值，不影響 worker
+            log.warn("food_log_tasks queue metrics sample failed errorType={}", e.getClass().getSimpleName());
+        }
+    }
+
+    public Snapshot snapshot() {
+        return last.get();
+    }
+
+    private double oldestQueuedAgeSec() {
+        Long age = last.get().oldestQueuedAgeSec(clock.instant());
+        return (age == null) ? 0d : age;
+    }
+}
@@ -0,0 +1,80 @@
+package com.caloshape.backend.foodlog.job.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * /actuator/foodlogworker：本 pod worker 吞吐量 + 叢集 backlog 摘要（給 on-call 快速看，不取代 Prometheus）。
+ *
+ * throughput 為最近 1 / 5 / 15 分鐘各 outcome 的次數與每分鐘平均。
+ */
+@Component
+@Endpoint(id = "foodlogworker")
+public class FoodLogWorkerEndpoint {
+
+    private final FoodLogWorkerStats stats;
+    private final FoodLogTaskQueueMetrics queueMetrics;
+    private final Clock clock;
+
+    public FoodLogWorkerEndpoint(FoodLogWorkerStats stats, FoodLogTaskQueueMetrics queueMetrics, Clock clock) {
+        this.stats = stats;
+        this.queueMetrics = queueMetrics;
+        this.clock = clock;
+    }
+
+    @ReadOperation
+    public Map<String, Object> summary() {
+        Instant now = clock.instant();
+
+        Map<String, Object> totals = new LinkedHashMap<>();
+        for (FoodLogWorkerStats.Outcome o : FoodLogWorkerStats.Outcome.values()) {
+            totals.put(key(o), stats.total(o));
+        }
+
+        Map<String, Object> throughput = new LinkedHashMap<>();
+        for (int minutes : new int[]{1, 5, 15}) {
+            throughput.put(minutes + "m", window(minutes));
+        }
+
+        FoodLogTaskQueueMetrics.Snapshot q = queueMetrics.snapshot();
+        Map<String, Object> backlog = new LinkedHashMap<>();
+        q.backlog().forEach((s, n) -> backlog.put(s.name(), n));
+
+        Map<String, Object> queue = new LinkedHashMap<>();
+        queue.put("backlog", backlog);
+        queue.put("deferred", q.deferred());
+        queue.put("oldestQueuedAgeSec", q.oldestQueuedAgeSec(now));
+        queue.put("sampledAtUtc", q.sampledAt());
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("running", stats.running());
+        out.put("totals", totals);
+        out.put("throughput", throughput);
+        out.put("queue", queue);
+        return out;
+    }
+
+    private Map<String, Object> window(int minutes) {
+        Map<FoodLogWorkerStats.Outcome, Long> counts = stats.lastMinutes(minutes);
+
+        long completed = counts.get(FoodLogWorkerStats.Outcome.SUCCEEDED)
+                + counts.get(FoodLogWorkerStats.Outcome.CACHE_HIT)
+                + counts.get(FoodLogWorkerStats.Outcome.FAILED);
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        counts.forEach((o, n) -> m.put(key(o), n));
+        m.put("completedPerMin", Math.round(completed * 100.0 / minutes) / 100.0);
+        return m;
+    }
+
+    private static String key(FoodLogWorkerStats.Outcome o) {
+        return o.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,134 @@
+package com.caloshape.backend.foodlog.job.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本 pod 的 FoodLogTaskWorker 吞吐量。
+ *
+ * Metrics（/actuator/metrics）：
+ * - foodlog.worker.tasks{outcome}：任務結束次數（succeeded / cache_hit / failed / deferred）
+ * - foodlog.worker.task.duration{outcome}：markRunning 到結果回寫的時間
+ * - foodlog.worker.queue.wait：任務建立到開始呼叫 provider 的等待時間
+ * - foodlog.worker.running：本 pod 正在呼叫 provider 的任務數
+ *
+ * 另外保留最近 15 分鐘、每分鐘一格的計數，給 /actuator/foodlogworker 算 1m / 5m / 15m 吞吐量。
+ */
+@Component
+public class FoodLogWorkerStats {
+
+    public enum Outcome { SUCCEEDED, CACHE_HIT, FAILED, DEFERRED }
+
+    static final int WINDOW_MINUTES = 15;
+
+    private final Clock clock;
+    private final AtomicInteger running = new AtomicInteger();
+    private final Map<Outcome, Counter> counters = new EnumMap<>(Outcome.class);
+    private final Map<Outcome, Timer> durations = new EnumMap<>(Outcome.class);
+    private final Timer queueWait;
+
+    /** ring buffer：index = epochMinute % WINDOW_MINUTES */
+    private final long[] bucketMinute = new long[WINDOW_MINUTES];
+    private final long[][] bucketCounts = new long[WINDOW_MINUTES][Outcome.values().length];
+
+    @Autowired
+    public FoodLogWorkerStats(MeterRegistry meterRegistry, Clock clock) {
+        this.clock = clock;
+        for (Outcome o : Outcome.values()) {
+            String tag = o.name().toLowerCase(Locale.ROOT);
+            counters.put(o, Counter.builder("foodlog.worker.tasks")
+                    .tag("outcome", tag)
+                    .register(meterRegistry));
+            durations.put(o, Timer.builder("foodlog.worker.task.duration")
+                    .tag("outcome", tag)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry));
+        }
+        this.queueWait = Timer.builder("foodlog.worker.queue.wait")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("foodlog.worker.running", running, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    public FoodLogWorkerStats(Clock clock) {
+        this(new SimpleMeterRegistry(), clock);
+    }
+
+    /** markRunning 之後、呼叫 provider 之前 */
+    public void started(Duration queuedFor) {
+        running.incrementAndGet();
+        if (queuedFor != null && !queuedFor.isNegative()) {
+            queueWait.record(queuedFor);
+        }
+    }
+
+    /** started 之後的任務結束（成功 / 失敗 / breaker 退回 QUEUED） */
+    public void finished(Outcome outcome, Duration took) {
+        running.decrementAndGet();
+        durations.get(outcome).record(took.isNegative() ? Duration.ZERO : took);
+        count(outcome);
+    }
+
+    /** 沒有呼叫 provider 就結束的任務（結果快取命中、breaker open 延後） */
+    public void skipped(Outcome outcome) {
+        count(outcome);
+    }
+
+    public int running() {
+        return running.get();
+    }
+
+    public long total(Outcome outcome) {
+        return (long) counters.get(outcome).count();
+    }
+
+    /**
+     * 最近 minutes 分鐘（含目前這一分鐘）各 outcome 的次數
+     */
+    public synchronized Map<Outcome, Long> lastMinutes(int minutes) {
+        int span = Math.max(1, Math.min(WINDOW_MINUTES, minutes));
+        long nowMinute = epochMinute();
+
+        Map<Outcome, Long> out = new EnumMap<>(Outcome.class);
+        for (Outcome o : Outcome.values()) out.put(o, 0L);
+
+        for (int i = 0; i < WINDOW_MINUTES; i++) {
+            long age = nowMinute - bucketMinute[i];
+            if (age < 0 || age >= span) continue;
+            for (Outcome o : Outcome.values()) {
+                out.merge(o, bucketCounts[i][o.ordinal()], Long::sum);
+            }
+        }
+        return out;
+    }
+
+    private synchronized void count(Outcome outcome) {
+        counters.get(outcome).increment();
+
+        long minute = epochMinute();
+        int idx = (int) Math.floorMod(minute, (long) WINDOW_MINUTES);
+        if (bucketMinute[idx] != minute) {
+            bucketMinute[idx] = minute;
+            Arrays.fill(bucketCounts[idx], 0L);
+        }
+        bucketCounts[idx][outcome.ordinal()]++;
+    }
+
+    private long epochMinute() {
+        return Math.floorDiv(clock.millis(), 60_000L);
+    }
+}
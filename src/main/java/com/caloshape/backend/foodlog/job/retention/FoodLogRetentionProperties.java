@@ -27,6 +27,12 @@ public class FoodLogRetentionProperties {
     /** DELETED tombstone 保留 10 天 */
     private Duration keepDeletedTombstone = Duration.ofDays(10);
 
+    /** SUCCEEDED / CANCELLED 的 food_log_tasks 保留多久（讀取端不再使用，只留給排查） */
+    private Duration keepTerminalTask = Duration.ofDays(2);
+
+    /** food_log_tasks purge 每種 status 每次最多刪幾筆 */
+    private int taskPurgeBatchSize = 2000;
+
     /** Progress daily summary 保留天數（預設 63 天） */
     private int keepDailySummaryDays = 63;
 
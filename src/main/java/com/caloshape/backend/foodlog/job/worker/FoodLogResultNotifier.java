@@ -0,0 +1,153 @@
+package com.caloshape.backend.foodlog.job.worker;
+
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * food log 結果完成的通知通道（給 long-poll 等待者用）：
+ * - worker 回寫結果的交易 commit 後：喚醒本 pod 等待該 foodLogId 的 request
+ * - push 模式另外透過 Redis pub/sub 廣播 foodLogId，其他 pod 的等待者也會被喚醒
+ * 通知只代表「狀態可能變了」，等待者一律重新查 DB 再回應；漏掉的通知由等待逾時兜底。
+ */
+@Slf4j
+@Component
+public class FoodLogResultNotifier {
+
+    private final StringRedisTemplate redis;
+    private final boolean pushEnabled;
+    private final String channel;
+
+    /** foodLogId -> 本 pod 的等待者 */
+    private final ConcurrentHashMap<String, List<Runnable>> waiters = new ConcurrentHashMap<>();
+    private final AtomicInteger waiterCount = new AtomicInteger();
+
+    public FoodLogResultNotifier(StringRedisTemplate redis, FoodLogTaskWorkerProperties props) {
+        this.redis = redis;
+        this.pushEnabled = props.isPushEnabled();
+        this.channel = normalizePrefix(props.getRedisPrefix()) + ":foodlog:results:done";
+    }
+
+    public String channel() {
+        return channel;
+    }
+
+    /**
+     * 在回寫結果的交易內呼叫：commit 成功才通知，rollback 不會讓等待者拿到舊狀態就返回。
+     * 沒有交易時立即通知。
+     */
+    public void notifyDoneAfterCommit(String foodLogId) {
+        if (foodLogId == null) {
+            return;
+        }
+
+        boolean txActive = TransactionSynchronizationManager.isActualTransactionActive();
+        boolean syncActive = TransactionSynchronizationManager.isSynchronizationActive();
+
+        if (txActive && syncActive) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    notifyDone(foodLogId);
+                }
+            });
+            return;
+        }
+
+        notifyDone(foodLogId);
+    }
+
+    void notifyDone(String foodLogId) {
+        signalLocal(foodLogId);
+        if (!pushEnabled) {
+            return;
+        }
+
+        try {
+            redis.convertAndSend(channel, foodLogId);
+        } catch (RuntimeException ex) {
+            log.warn("foodlog_result_publish_failed channel={} errorType={}",
+                    channel, ex.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * 喚醒本 pod 所有等待該 foodLogId 的 request（每個等待者只會被叫一次）。
+     * 由 Redis listener thread 呼叫，callback 內不可做阻塞 I/O。
+     */
+    public void signalLocal(String foodLogId) {
+        if (foodLogId == null || foodLogId.isBlank()) {
+            return;
+        }
+
+        List<Runnable> list = waiters.remove(foodLogId.trim());
+        if (list == null) {
+            return;
+        }
+
+        waiterCount.addAndGet(-list.size());
+        for (Runnable r : list) {
+            try {
+                r.run();
+            } catch (RuntimeException ex) {
+                log.warn("foodlog_result_waiter_failed foodLogId={} errorType={}",
+                        foodLogId, ex.getClass().getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * 登記等待者。
+     *
+     * @param maxWaiters 本 pod 等待者上限；超過回 null，呼叫端應直接回目前狀態讓 client 改用輪詢
+     * @return 取消登記用的 handle；null = 已滿
+     */
+    public Registration register(String foodLogId, Runnable onDone, int maxWaiters) {
+        if (waiterCount.incrementAndGet() > maxWaiters) {
+            waiterCount.decrementAndGet();
+            return null;
+        }
+
+        waiters.compute(foodLogId, (k, list) -> {
+            List<Runnable> l = (list == null) ? new ArrayList<>(1) : list;
+            l.add(onDone);
+            return l;
+        });
+        return () -> cancel(foodLogId, onDone);
+    }
+
+    public int waiterCount() {
+        return waiterCount.get();
+    }
+
+    private void cancel(String foodLogId, Runnable onDone) {
+        waiters.computeIfPresent(foodLogId, (k, list) -> {
+            if (list.remove(onDone)) {
+                waiterCount.decrementAndGet();
+            }
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private static String normalizePrefix(String raw) {
+        String s = (raw == null || raw.isBlank()) ? "caloshape" : raw.trim();
+        while (s.endsWith(":")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        return s;
+    }
+
+    /** 等待結束（完成 / 逾時 / 連線中斷）時取消登記；重複呼叫無副作用 */
+    @FunctionalInterface
+    public interface Registration {
+        void cancel();
+    }
+}
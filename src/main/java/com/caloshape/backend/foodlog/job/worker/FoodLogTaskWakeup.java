@@ -0,0 +1,100 @@
+package com.caloshape.backend.foodlog.job.worker;
+
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * food_log_tasks 的喚醒通道：
+ * - 本 pod 建立 / 重新排入 task：commit 後直接喚醒本地 worker
+ * - 其他 pod：透過 Redis pub/sub 廣播（best effort，失敗就靠 poll 保險）
+ * 多次喚醒會合併成一次，worker 一輪 claim 就會把 queue 裡的都撿走。
+ */
+@Slf4j
+@Component
+public class FoodLogTaskWakeup {
+
+    private final StringRedisTemplate redis;
+    private final boolean pushEnabled;
+    private final String channel;
+
+    private final Semaphore signal = new Semaphore(0);
+
+    public FoodLogTaskWakeup(StringRedisTemplate redis, FoodLogTaskWorkerProperties props) {
+        this.redis = redis;
+        this.pushEnabled = props.isPushEnabled();
+        this.channel = normalizePrefix(props.getRedisPrefix()) + ":foodlog:tasks:wakeup";
+    }
+
+    public String channel() {
+        return channel;
+    }
+
+    /**
+     * 在建立 task 的交易內呼叫：commit 成功才喚醒，rollback 不會發出假通知。
+     * 沒有交易時（例如 unit test 直接呼叫）立即喚醒。
+     */
+    public void notifyQueuedAfterCommit() {
+        boolean txActive = TransactionSynchronizationManager.isActualTransactionActive();
+        boolean syncActive = TransactionSynchronizationManager.isSynchronizationActive();
+
+        if (txActive && syncActive) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    notifyQueued();
+                }
+            });
+            return;
+        }
+
+        notifyQueued();
+    }
+
+    void notifyQueued() {
+        signalLocal();
+        if (!pushEnabled) {
+            return;
+        }
+
+        try {
+            redis.convertAndSend(channel, "1");
+        } catch (RuntimeException ex) {
+            log.warn("foodlog_task_wakeup_publish_failed channel={} errorType={}",
+                    channel, ex.getClass().getSimpleName());
+        }
+    }
+
+    /** 本地喚醒；已經有待處理的喚醒時不重複累加 */
+    public void signalLocal() {
+        if (signal.availablePermits() == 0) {
+            signal.release();
+        }
+    }
+
+    /**
+     * 等待喚醒。
+     *
+     * @return true = 被喚醒；false = 逾時
+     */
+    boolean await(Duration timeout) throws InterruptedException {
+        boolean woke = signal.tryAcquire(Math.max(1L, timeout.toMillis()), TimeUnit.MILLISECONDS);
+        signal.drainPermits();
+        return woke;
+    }
+
+    private static String normalizePrefix(String raw) {
+        String s = (raw == null || raw.isBlank()) ? "caloshape" : raw.trim();
+        while (s.endsWith(":")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        return s;
+    }
+}
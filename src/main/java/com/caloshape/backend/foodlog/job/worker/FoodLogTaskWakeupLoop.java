@@ -0,0 +1,67 @@
+package com.caloshape.backend.foodlog.job.worker;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * push 模式：一條常駐 virtual thread 等 FoodLogTaskWakeup 的通知，收到就立刻跑一輪 claim。
+ * FoodLogTaskWorker 的 @Scheduled 輪詢仍在，只是間隔放長當保險。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.foodlog.worker", name = "push-enabled", havingValue = "true")
+public class FoodLogTaskWakeupLoop implements SmartLifecycle {
+
+    private static final Duration WAIT_SLICE = Duration.ofSeconds(30);
+
+    private final FoodLogTaskWakeup wakeup;
+    private final FoodLogTaskWorker worker;
+
+    private volatile boolean running;
+    private volatile Thread thread;
+
+    public FoodLogTaskWakeupLoop(FoodLogTaskWakeup wakeup, FoodLogTaskWorker worker) {
+        this.wakeup = wakeup;
+        this.worker = worker;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        thread = Thread.ofVirtual().name("foodlog-task-wakeup").start(this::loop);
+        log.info("foodlog task wakeup loop started channel={}", wakeup.channel());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread t = thread;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void loop() {
+        while (running) {
+            try {
+                if (wakeup.await(WAIT_SLICE)) {
+                    worker.runOnce();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("foodlog task wakeup round failed", e);
+            }
+        }
+    }
+}
@@ -2,12 +2,19 @@ package com.caloshape.backend.foodlog.job.worker;
 
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
 import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import com.caloshape.backend.foodlog.job.metrics.FoodLogWorkerStats;
 import com.caloshape.backend.foodlog.model.FoodLogMethod;
 import com.caloshape.backend.foodlog.model.FoodLogStatus;
 import com.caloshape.backend.foodlog.processing.effective.FoodLogEffectivePostProcessor;
+import com.caloshape.backend.foodlog.provider.cache.FoodAnalysisResultCache;
 import com.caloshape.backend.foodlog.provider.support.ProviderErrorMapper;
 import com.caloshape.backend.foodlog.provider.routing.ProviderRouter;
+import com.caloshape.backend.foodlog.provider.spi.ProviderCallDeadline;
 import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
+import com.caloshape.backend.foodlog.provider.spi.ProviderHedgeGate;
+import com.caloshape.backend.foodlog.quota.model.ModelTier;
+import com.caloshape.backend.foodlog.quota.support.DegradeLevelToModelTierResolver;
 import com.caloshape.backend.foodlog.repo.FoodLogRepository;
 import com.caloshape.backend.foodlog.repo.FoodLogTaskRepository;
 import com.caloshape.backend.foodlog.service.UserDailyNutritionSummaryService;
@@ -16,21 +23,29 @@ import com.caloshape.backend.foodlog.unit.FoodLogWarning;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Slf4j
 @Component
 public class FoodLogTaskWorker {
 
-    private static final int BATCH_SIZE = 10;
-
     private final FoodLogTaskRepository taskRepo;
     private final FoodLogRepository logRepo;
     private final ProviderRouter router;
@@ -39,7 +54,33 @@ public class FoodLogTaskWorker {
     private final UserDailyNutritionSummaryService dailySummaryService;
     private final TransactionTemplate txTemplate;
     private final Clock clock;
+    private final FoodLogTaskWorkerProperties props;
+    private final Executor executor;
+    private final ProviderConcurrencyBudget budget;
+
+    /** 跨使用者結果快取；關閉時（isEnabled=false）不查也不寫 */
+    private final FoodAnalysisResultCache resultCache;
+
+    /** 結果回寫 commit 後喚醒 long-poll 等待者 */
+    private final FoodLogResultNotifier resultNotifier;
+
+    /** provider adaptive concurrency + 跨 pod circuit breaker；關閉時只受靜態上限限制 */
+    private final ProviderHealthGuard health;
+
+    /** 吞吐量 metrics 與 /actuator/foodlogworker */
+    private final FoodLogWorkerStats stats;
 
+    /** 本 pod 已派工、尚未結束的 taskId（避免同一輪 claim 到還沒 markRunning 的任務又派一次） */
+    private final Set<String> dispatched = ConcurrentHashMap.newKeySet();
+
+    /** scheduler / wakeup loop / 任務結束都可能觸發 runOnce：同時只跑一輪，期間的觸發合併成再跑一輪 */
+    private final ReentrantLock roundLock = new ReentrantLock();
+    private final AtomicBoolean rerunRequested = new AtomicBoolean(false);
+
+    /** 上一輪因 slot / provider / tier 名額用完而停下：有任務結束就立刻再 claim，不等下一次 poll */
+    private final AtomicBoolean saturated = new AtomicBoolean(false);
+
+    @Autowired
     public FoodLogTaskWorker(
             FoodLogTaskRepository taskRepo,
             FoodLogRepository logRepo,
@@ -47,7 +88,13 @@ public class FoodLogTaskWorker {
             StorageService storage,
             FoodLogEffectivePostProcessor postProcessor, UserDailyNutritionSummaryService dailySummaryService,
             PlatformTransactionManager txManager,
-            Clock clock
+            Clock clock,
+            FoodLogTaskWorkerProperties props,
+            @Qualifier("foodLogTaskExecutor") Executor executor,
+            FoodAnalysisResultCache resultCache,
+            FoodLogResultNotifier resultNotifier,
+            ProviderHealthGuard health,
+            FoodLogWorkerStats stats
     ) {
         this.taskRepo = taskRepo;
         this.logRepo = logRepo;
@@ -57,18 +104,39 @@ public class FoodLogTaskWorker {
         this.dailySummaryService = dailySummaryService;
         this.txTemplate = new TransactionTemplate(txManager);
         this.clock = clock;
+        this.props = props;
+        this.executor = executor;
+        this.budget = new ProviderConcurrencyBudget(props);
+        this.resultCache = resultCache;
+        this.resultNotifier = resultNotifier;
+        this.health = health;
+        this.stats = stats;
     }
 
-    @Scheduled(fixedDelay = 2000)
+    /**
+     * poll-interval 預設 2s；push 模式（app.foodlog.worker.push-enabled）下只當保險，可放長。
+     */
+    @Scheduled(fixedDelayString = "${app.foodlog.worker.poll-interval:PT2S}")
     public void runOnce() {
-        Instant claimAt = clock.instant();
+        rerunRequested.set(true);
+        while (rerunRequested.get() && roundLock.tryLock()) {
+            try {
+                while (rerunRequested.getAndSet(false)) {
+                    runRound();
+                }
+            } finally {
+                roundLock.unlock();
+            }
+        }
+    }
 
-        List<String> taskIds = txTemplate.execute(status ->
-                taskRepo.claimRunnableForUpdate(claimAt, BATCH_SIZE).stream()
-                        .map(FoodLogTaskEntity::getId)
-                        .toList()
-        );
+    private void runRound() {
+        if (props.isConcurrent()) {
+            dispatchWhileSlotsFree();
+            return;
+        }
 
+        List<String> taskIds = claim(Math.max(1, props.getBatchSize()));
         if (taskIds == null || taskIds.isEmpty()) {
             return;
         }
@@ -78,16 +146,118 @@ public class FoodLogTaskWorker {
         }
     }
 
+    /**
+     * 並行模式：
+     * 1. 只 claim 目前空出來的 slot 數
+     * 2. 每筆丟到 executor（virtual thread），本執行緒不等結果
+     * 3. 還有空位就繼續 claim；這一輪撿不到新任務（全是已派工 / 名額不足被留在 QUEUED 的）就停
+     */
+    private void dispatchWhileSlotsFree() {
+        int batchSize = Math.max(1, props.getBatchSize());
+        Set<String> seenThisRound = new HashSet<>();
+
+        while (true) {
+            int free = budget.availableSlots();
+            if (free <= 0) {
+                saturated.set(true);
+                return;
+            }
+
+            int limit = Math.min(batchSize, free);
+            List<String> taskIds = claim(limit);
+            if (taskIds == null || taskIds.isEmpty()) {
+                return;
+            }
+
+            int fresh = 0;
+            for (String taskId : taskIds) {
+                if (!seenThisRound.add(taskId)) {
+                    continue;
+                }
+                fresh++;
+
+                if (!dispatched.add(taskId)) {
+                    continue;
+                }
+                if (!budget.tryAcquireSlot()) {
+                    dispatched.remove(taskId);
+                    saturated.set(true);
+                    return;
+                }
+
+                try {
+                    executor.execute(() -> {
+                        try {
+                            processOne(taskId);
+                        } catch (Exception e) {
+                            log.error("task dispatch crashed: {}", taskId, e);
+                        } finally {
+                            dispatched.remove(taskId);
+                            budget.releaseSlot();
+                        }
+                        if (saturated.compareAndSet(true, false)) {
+                            try {
+                                runOnce();
+                            } catch (Exception e) {
+                                log.warn("task re-claim after slot release failed", e);
+                            }
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // executor 已關閉（shutdown 中）：任務維持 QUEUED
+                    dispatched.remove(taskId);
+                    budget.releaseSlot();
+                    log.warn("task dispatch rejected: {}", taskId, e);
+                    return;
+                }
+            }
+
+            if (fresh == 0 || taskIds.size() < limit) {
+                return;
+            }
+        }
+    }
+
+    private List<String> claim(int limit) {
+        Instant claimAt = clock.instant();
+
+        return txTemplate.execute(status -> taskRepo.claimRunnableIdsForUpdate(claimAt, limit));
+    }
+
     private void processOne(String taskId) {
-        TaskExecution execution = txTemplate.execute(status -> prepareExecution(taskId));
+        Permits permits = new Permits();
+        TaskExecution execution;
+        try {
+            execution = txTemplate.execute(status -> prepareExecution(taskId, permits));
+        } catch (RuntimeException e) {
+            // 名額已拿但交易沒 commit 成功：還回去
+            permits.close();
+            throw e;
+        }
         if (execution == null) {
             return;
         }
 
+        try (permits) {
+            execute(execution);
+        }
+    }
+
+    private void execute(TaskExecution execution) {
+        Instant startedAt = clock.instant();
+        stats.started(execution.createdAtUtc() == null ? null : Duration.between(execution.createdAtUtc(), startedAt));
+        FoodLogWorkerStats.Outcome outcome = FoodLogWorkerStats.Outcome.FAILED;
         try {
-            // 外部 I/O：交易外執行
+            // 外部 I/O：交易外執行；截止時間從這裡起算，processor 透過 ProviderCallDeadline 取得
             ProviderClient client = router.pickStrict(execution.logEntity());
-            var result = client.process(execution.logEntity(), storage);
+            ProviderClient.ProviderResult result;
+            long startNanos = System.nanoTime();
+            String provider = execution.logEntity().getProvider();
+            try (ProviderCallDeadline.Scope ignored = ProviderCallDeadline.open(props.getProviderDeadline());
+                 ProviderHedgeGate.Scope hedgeGate = ProviderHedgeGate.open(tier -> tryAcquireHedge(provider, tier))) {
+                result = client.process(execution.logEntity(), storage);
+            }
+            health.onSuccess(execution.admission(), (System.nanoTime() - startNanos) / 1_000_000L);
 
             if (result == null || result.effective() == null) {
                 throw new IllegalStateException("PROVIDER_RETURNED_EMPTY");
@@ -107,11 +277,24 @@ public class FoodLogTaskWorker {
                     applySuccess(execution.taskId(), execution.foodLogId(), result.provider(), finalEff)
             );
 
+            outcome = FoodLogWorkerStats.Outcome.SUCCEEDED;
+            storeInResultCache(execution.logEntity(), result.provider(), finalEff);
+
         } catch (Exception e) {
             log.warn("task failed: {}", execution.taskId(), e);
 
             ProviderErrorMapper.Mapped mapped = ProviderErrorMapper.map(e);
 
+            // breaker open 中的 429 / 5xx / timeout：退回 QUEUED 等 provider 恢復，不當成失敗
+            Instant deferUntil = health.onFailure(execution.admission(), mapped.code());
+            if (deferUntil != null && !health.exceedsMaxQueueDelay(execution.createdAtUtc(), deferUntil)) {
+                txTemplate.executeWithoutResult(status ->
+                        applyDeferred(execution.taskId(), execution.foodLogId(), mapped, deferUntil)
+                );
+                outcome = FoodLogWorkerStats.Outcome.DEFERRED;
+                return;
+            }
+
             txTemplate.executeWithoutResult(status ->
                     applyFailure(
                             execution.taskId(),
@@ -121,6 +304,8 @@ public class FoodLogTaskWorker {
                             mapped
                     )
             );
+        } finally {
+            stats.finished(outcome, Duration.between(startedAt, clock.instant()));
         }
     }
 
@@ -128,10 +313,13 @@ public class FoodLogTaskWorker {
      * 短交易：
      * 1. 取 task/log
      * 2. 做 early-exit 檢查
-     * 3. markRunning
-     * 4. 回傳 detached logEntity 給交易外 process 使用
+     * 3. 跨使用者結果快取命中：直接完成，不佔 provider 名額、不呼叫 provider
+     * 4. 取 provider / tier 名額（拿不到就維持 QUEUED、不動 attempts，短暫延後避免擋住其他 tier）
+     * 5. adaptive limit / circuit breaker：limit 滿同 4；breaker open 設 next_retry_at_utc 延後再 claim
+     * 6. markRunning
+     * 7. 回傳 detached logEntity 給交易外 process 使用
      */
-    private TaskExecution prepareExecution(String taskId) {
+    private TaskExecution prepareExecution(String taskId, Permits permits) {
         FoodLogTaskEntity task = taskRepo.findByIdForUpdate(taskId).orElse(null);
         if (task == null) {
             return null;
@@ -141,6 +329,12 @@ public class FoodLogTaskWorker {
 
         // claim 與真正執行之間，重新確認仍是 runnable
         // ✅ 已關閉自動 retry：只允許 QUEUED，不允許 FAILED 再次進入執行
+        if (task.getTaskStatus() == FoodLogTaskEntity.TaskStatus.FAILED && task.getNextRetryAtUtc() != null) {
+            // 例如 reaper 重置的 stale RUNNING：清掉 next_retry_at_utc，避免每一輪都被 due-retry claim 撿回來
+            task.setNextRetryAtUtc(null);
+            taskRepo.save(task);
+            return null;
+        }
         if (task.getTaskStatus() != FoodLogTaskEntity.TaskStatus.QUEUED) {
             return null;
         }
@@ -173,6 +367,7 @@ public class FoodLogTaskWorker {
             logEntity.setLastErrorCode("IMAGE_OBJECT_KEY_MISSING");
             logEntity.setLastErrorMessage("missing imageObjectKey");
             logRepo.save(logEntity);
+            notifyResult(logEntity.getId());
             return null;
         }
 
@@ -185,8 +380,30 @@ public class FoodLogTaskWorker {
             logEntity.setLastErrorCode("MAX_ATTEMPTS_EXCEEDED");
             logEntity.setLastErrorMessage("cancelled after max attempts");
             logRepo.save(logEntity);
+            notifyResult(logEntity.getId());
+            return null;
+        }
+
+        if (completeFromResultCache(task, logEntity, now)) {
+            return null;
+        }
+
+        ModelTier tier = DegradeLevelToModelTierResolver.resolve(logEntity.getDegradeLevel());
+        ProviderConcurrencyBudget.Lease lease = budget.tryAcquire(logEntity.getProvider(), tier);
+        if (lease == null) {
+            deferForBusyTier(task, now);
+            return null;
+        }
+        permits.lease = lease;
+
+        ProviderHealthGuard.Admission admission = health.admit(
+                logEntity.getProvider(), tier, budget.staticLimit(logEntity.getProvider(), tier));
+        if (!admission.allowed()) {
+            permits.close();
+            deferForOpenCircuit(task, logEntity, admission.retryAtOrNull(), now);
             return null;
         }
+        permits.admission = admission;
 
         task.markRunning(now);
         taskRepo.save(task);
@@ -196,10 +413,121 @@ public class FoodLogTaskWorker {
                 logEntity.getId(),
                 logEntity.getMethod(),
                 task.getAttempts(), // markRunning 後的 attempts
-                logEntity
+                task.getCreatedAtUtc(),
+                logEntity,
+                permits.admission
         );
     }
 
+    /**
+     * hedge 補打的那一發：跟主請求一樣要拿 provider / tier lease 與 health admission，拿不到就不 hedge。
+     * 不佔 slot（slot 算的是任務數，hedge 屬於同一個任務）。
+     */
+    private ProviderHedgeGate.Permit tryAcquireHedge(String provider, ModelTier tier) {
+        ProviderConcurrencyBudget.Lease lease = budget.tryAcquire(provider, tier);
+        if (lease == null) {
+            return null;
+        }
+
+        ProviderHealthGuard.Admission admission = health.admit(provider, tier, budget.staticLimit(provider, tier));
+        if (!admission.allowed()) {
+            lease.close();
+            return null;
+        }
+        return new HedgePermit(lease, admission);
+    }
+
+    /**
+     * breaker open：任務維持 QUEUED、不動 attempts，next_retry_at_utc 之前不會再被 claim。
+     * 已經等超過 maxQueueDelay 就直接結束，不讓 client 無限期等。
+     * retryAt = null 代表只是 adaptive limit 滿了，照名額不足處理。
+     */
+    private void deferForOpenCircuit(FoodLogTaskEntity task, FoodLogEntity logEntity, Instant retryAt, Instant now) {
+        if (retryAt == null) {
+            deferForBusyTier(task, now);
+            return;
+        }
+
+        if (health.exceedsMaxQueueDelay(task.getCreatedAtUtc(), retryAt)) {
+            task.markCancelled(now, "PROVIDER_CIRCUIT_OPEN", "provider unavailable (circuit open)");
+            taskRepo.save(task);
+
+            logEntity.setStatus(FoodLogStatus.FAILED);
+            logEntity.setLastErrorCode("PROVIDER_CIRCUIT_OPEN");
+            logEntity.setLastErrorMessage("provider unavailable (circuit open)");
+            logRepo.save(logEntity);
+            notifyResult(logEntity.getId());
+            return;
+        }
+
+        task.setNextRetryAtUtc(retryAt);
+        task.setUpdatedAtUtc(now);
+        taskRepo.save(task);
+        stats.skipped(FoodLogWorkerStats.Outcome.DEFERRED);
+    }
+
+    /**
+     * provider / tier 名額不足：任務維持 QUEUED、不動 attempts。
+     * claim 一律撿最舊的 QUEUED，不延後的話同一批滿 tier 的任務每輪都排在最前面，其他 tier 的任務撿不到；
+     * 設 next_retry_at_utc = now + busyBackoff 讓 claim 先跳過它們，並標記 saturated，有任務結束就立刻再 claim。
+     */
+    private void deferForBusyTier(FoodLogTaskEntity task, Instant now) {
+        task.setNextRetryAtUtc(now.plus(props.getBusyBackoff()));
+        task.setUpdatedAtUtc(now);
+        taskRepo.save(task);
+        saturated.set(true);
+    }
+
+    /**
+     * 在 prepareExecution 的交易內：命中就把 task / log 直接標成完成。
+     * 快取查詢失敗一律當 miss，走正常 provider 流程。
+     */
+    private boolean completeFromResultCache(FoodLogTaskEntity task, FoodLogEntity logEntity, Instant now) {
+        if (!resultCache.isEnabled()) {
+            return false;
+        }
+
+        Optional<FoodAnalysisResultCache.Hit> hit;
+        try {
+            hit = resultCache.lookup(logEntity);
+        } catch (Exception e) {
+            log.warn("result cache lookup failed: {}", task.getId(), e);
+            return false;
+        }
+        if (hit.isEmpty()) {
+            return false;
+        }
+
+        logEntity.setEffective(hit.get().effective());
+        logEntity.setProvider(hit.get().provider());
+        logEntity.setStatus(FoodLogStatus.DRAFT);
+        logEntity.setLastErrorCode(null);
+        logEntity.setLastErrorMessage(null);
+
+        task.markSucceeded(now);
+
+        logRepo.save(logEntity);
+        taskRepo.save(task);
+        dailySummaryService.recomputeDay(logEntity.getUserId(), logEntity.getCapturedLocalDate());
+        notifyResult(logEntity.getId());
+        stats.skipped(FoodLogWorkerStats.Outcome.CACHE_HIT);
+        return true;
+    }
+
+    /**
+     * 成功回寫之後才寫快取（獨立交易），寫失敗不影響這一筆。
+     */
+    private void storeInResultCache(FoodLogEntity logEntity, String provider, ObjectNode finalEff) {
+        if (!resultCache.isEnabled()) {
+            return;
+        }
+        try {
+            resultCache.store(logEntity, provider, finalEff);
+        } catch (Exception e) {
+            log.warn("result cache store failed: {}", logEntity.getId(), e);
+        }
+    }
+
     /**
      * 短交易：成功結果回寫
      */
@@ -210,6 +538,7 @@ public class FoodLogTaskWorker {
         }
 
         FoodLogEntity logEntity = logRepo.findByIdForUpdate(foodLogId).orElse(null);
+        notifyResult(foodLogId);
         if (logEntity == null) {
             task.markCancelled(clock.instant(), "FOOD_LOG_NOT_FOUND", "food_log missing");
             taskRepo.save(task);
@@ -256,6 +585,7 @@ public class FoodLogTaskWorker {
         }
 
         FoodLogEntity logEntity = logRepo.findByIdForUpdate(foodLogId).orElse(null);
+        notifyResult(foodLogId);
         if (logEntity == null) {
             task.markCancelled(clock.instant(), "FOOD_LOG_NOT_FOUND", "food_log missing");
             taskRepo.save(task);
@@ -322,6 +652,36 @@ public class FoodLogTaskWorker {
         logRepo.save(logEntity);
     }
 
+    /**
+     * 短交易：provider 不健康且 breaker 已 open，任務退回 QUEUED（不計 attempts），food log 維持 PENDING。
+     * log 已不存在 / 已刪除 / 已完成時照一般失敗處理。
+     */
+    private void applyDeferred(String taskId, String foodLogId, ProviderErrorMapper.Mapped mapped, Instant retryAt) {
+        FoodLogTaskEntity task = taskRepo.findByIdForUpdate(taskId).orElse(null);
+        if (task == null) {
+            return;
+        }
+
+        FoodLogEntity logEntity = logRepo.findByIdForUpdate(foodLogId).orElse(null);
+        if (task.getTaskStatus() != FoodLogTaskEntity.TaskStatus.RUNNING
+            || logEntity == null
+            || logEntity.getStatus() != FoodLogStatus.PENDING) {
+            applyFailure(taskId, foodLogId, logEntity == null ? null : logEntity.getMethod(), task.getAttempts(), mapped);
+            return;
+        }
+
+        task.markRequeued(clock.instant(), retryAt, mapped.code(), mapped.message());
+        taskRepo.save(task);
+        log.info("task deferred: {} code={} retryAt={}", taskId, mapped.code(), retryAt);
+    }
+
+    /**
+     * 在回寫交易內登記：commit 後喚醒等待該 food log 的 long-poll（rollback 不通知）。
+     */
+    private void notifyResult(String foodLogId) {
+        resultNotifier.notifyDoneAfterCommit(foodLogId);
+    }
+
     private static int maxAttemptsForMethod(String method) {
         return 1;
     }
@@ -371,6 +731,47 @@ public class FoodLogTaskWorker {
             String foodLogId,
             String method,
             int attemptsAfterStart,
-            FoodLogEntity logEntity
+            Instant createdAtUtc,
+            FoodLogEntity logEntity,
+            ProviderHealthGuard.Admission admission
     ) {}
+
+    /** hedge 的名額：結果照主請求的方式回報給 health，close 時一起還 */
+    private final class HedgePermit implements ProviderHedgeGate.Permit {
+        private final ProviderConcurrencyBudget.Lease lease;
+        private final ProviderHealthGuard.Admission admission;
+
+        private HedgePermit(ProviderConcurrencyBudget.Lease lease, ProviderHealthGuard.Admission admission) {
+            this.lease = lease;
+            this.admission = admission;
+        }
+
+        @Override
+        public void onSuccess(long latencyMs) {
+            health.onSuccess(admission, latencyMs);
+        }
+
+        @Override
+        public void onFailure(Exception error) {
+            health.onFailure(admission, ProviderErrorMapper.map(error).code());
+        }
+
+        @Override
+        public void close() {
+            admission.close();
+            lease.close();
+        }
+    }
+
+    /** prepareExecution 拿到的名額；任務結束（或交易失敗）一起還 */
+    private static final class Permits implements AutoCloseable {
+        private ProviderConcurrencyBudget.Lease lease;
+        private ProviderHealthGuard.Admission admission;
+
+        @Override
+        public void close() {
+            if (admission != null) admission.close();
+            if (lease != null) lease.close();
+        }
+    }
 }
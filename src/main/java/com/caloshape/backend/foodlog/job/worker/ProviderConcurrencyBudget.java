@@ -0,0 +1,113 @@
+package com.caloshape.backend.foodlog.job.worker;
+
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import com.caloshape.backend.foodlog.quota.model.ModelTier;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 單一 pod 內的 provider 呼叫名額：
+ * - slot：整個 pod 同時在跑的任務數（決定還能 claim 幾筆）
+ * - lease：每個 provider、每個 provider+tier 同時呼叫數
+ * 全部是 non-blocking tryAcquire，拿不到名額的任務維持 QUEUED，交給下一輪或其他 pod。
+ */
+class ProviderConcurrencyBudget {
+
+    private final Semaphore slots;
+    private final int defaultProviderMax;
+    private final Map<String, Integer> providerMax;
+    private final Map<String, Integer> tierMax;
+
+    private final ConcurrentHashMap<String, Semaphore> byProvider = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Semaphore> byProviderTier = new ConcurrentHashMap<>();
+
+    ProviderConcurrencyBudget(FoodLogTaskWorkerProperties props) {
+        this.slots = new Semaphore(Math.max(1, props.getMaxInFlight()));
+        this.defaultProviderMax = Math.max(1, props.getDefaultProviderMaxInFlight());
+        this.providerMax = normKeys(props.getProviderMaxInFlight());
+        this.tierMax = normKeys(props.getTierMaxInFlight());
+    }
+
+    int availableSlots() {
+        return slots.availablePermits();
+    }
+
+    boolean tryAcquireSlot() {
+        return slots.tryAcquire();
+    }
+
+    void releaseSlot() {
+        slots.release();
+    }
+
+    /**
+     * @return 拿到名額回傳 Lease（用完一定要 close）；provider 或 tier 已滿回傳 null
+     */
+    Lease tryAcquire(String provider, ModelTier tier) {
+        String p = norm(provider);
+        if (p == null) p = "UNKNOWN";
+
+        Semaphore ps = byProvider.computeIfAbsent(p, k -> new Semaphore(providerMax.getOrDefault(k, defaultProviderMax)));
+        if (!ps.tryAcquire()) {
+            return null;
+        }
+
+        Integer tMax = (tier == null) ? null : tierMax.get(tier.name());
+        if (tMax == null) {
+            return new Lease(ps, null);
+        }
+
+        Semaphore ts = byProviderTier.computeIfAbsent(p + "|" + tier.name(), k -> new Semaphore(Math.max(1, tMax)));
+        if (!ts.tryAcquire()) {
+            ps.release();
+            return null;
+        }
+        return new Lease(ps, ts);
+    }
+
+    /** provider / tier 靜態上限取小者（adaptive limit 的天花板） */
+    int staticLimit(String provider, ModelTier tier) {
+        String p = norm(provider);
+        int max = providerMax.getOrDefault(p == null ? "UNKNOWN" : p, defaultProviderMax);
+        Integer tMax = (tier == null) ? null : tierMax.get(tier.name());
+        return (tMax == null) ? max : Math.min(max, tMax);
+    }
+
+    static final class Lease implements AutoCloseable {
+        private final Semaphore provider;
+        private final Semaphore tier;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Lease(Semaphore provider, Semaphore tier) {
+            this.provider = provider;
+            this.tier = tier;
+        }
+
+        @Override
+        public void close() {
+            if (!released.compareAndSet(false, true)) return;
+            if (tier != null) tier.release();
+            provider.release();
+        }
+    }
+
+    private static Map<String, Integer> normKeys(Map<String, Integer> raw) {
+        Map<String, Integer> m = new ConcurrentHashMap<>();
+        if (raw == null) return m;
+        raw.forEach((k, v) -> {
+            String key = norm(k);
+            if (key != null && v != null) m.put(key, Math.max(1, v));
+        });
+        return m;
+    }
+
+    private static String norm(String s) {
+        if (s == null) return null;
+        String v = s.trim().toUpperCase(Locale.ROOT);
+        return v.isEmpty() ? null : v;
+    }
+}
@@ -0,0 +1,467 @@
+package com.caloshape.backend.foodlog.job.worker;
+
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import com.caloshape.backend.foodlog.model.ModelMode;
+import com.caloshape.backend.foodlog.provider.routing.AiModelTierRouter;
+import com.caloshape.backend.foodlog.quota.model.ModelTier;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * provider 健康度保護，key = (provider, modelId)：
+ * - circuit breaker：狀態放 Redis hash，一次 Lua script 完成判斷 / 轉換，所有 pod 共用
+ *   CLOSED → 統計窗內錯誤率超標 → OPEN → 到期 → HALF_OPEN（全叢集只放一個 probe）→ 成功 CLOSED / 失敗再 OPEN（時間倍增）
+ * - adaptive concurrency（AIMD，單一 pod）：成功且 latency 未超標 +1/limit，429 / 5xx / timeout / 連線錯誤乘上 decreaseFactor，
+ *   上限是 ProviderConcurrencyBudget 的靜態上限
+ *
+ * 只有 429 / 5xx / timeout / 連線錯誤算「不健康」；安全拒答、壞回應等內容問題代表 provider 有正常回應。
+ * Redis 不可用時 breaker fail-open（照常放行），只剩 adaptive limit 保護。
+ */
+@Slf4j
+@Component
+public class ProviderHealthGuard {
+
+    static final Set<String> UNHEALTHY_CODES = Set.of(
+            "PROVIDER_RATE_LIMITED",
+            "PROVIDER_TIMEOUT",
+            "PROVIDER_UPSTREAM_5XX",
+            "PROVIDER_NETWORK_ERROR"
+    );
+
+    /**
+     * KEYS[1] = breaker hash
+     * ARGV[1] = now ms, ARGV[2] = probeTimeout ms, ARGV[3] = halfOpenRetry ms, ARGV[4] = key TTL ms
+     *
+     * 回傳：{'PASS'} CLOSED；{'PROBE'} 拿到 half-open probe；{'OPEN', retryAtMs} 不放行
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> ADMIT = new DefaultRedisScript<>("""
+            local k = KEYS[1]
+            local now = tonumber(ARGV[1])
+            local s = redis.call('HMGET', k, 'st', 'ou', 'pu')
+            local st = s[1] or 'C'
+            if st == 'C' then return {'PASS'} end
+            local ou = tonumber(s[2]) or 0
+            if st == 'O' and now < ou then return {'OPEN', tostring(ou)} end
+            -- open 到期：同一時間只放一個 probe，其他任務稍後再試
+            local pu = tonumber(s[3]) or 0
+            if now < pu then return {'OPEN', tostring(math.min(pu, now + tonumber(ARGV[3])))} end
+            redis.call('HSET', k, 'st', 'H', 'pu', tostring(now + tonumber(ARGV[2])))
+            redis.call('PEXPIRE', k, ARGV[4])
+            return {'PROBE'}
+            """, List.class);
+
+    /**
+     * KEYS[1] = breaker hash
+     * ARGV[1] = now ms, ARGV[2] = '1' 健康 / '0' 不健康, ARGV[3] = '1' 是 probe,
+     * ARGV[4] = window ms, ARGV[5] = minCalls, ARGV[6] = failureRateThreshold,
+     * ARGV[7] = openDuration ms, ARGV[8] = maxOpenDuration ms, ARGV[9] = key TTL ms, ARGV[10] = halfOpenRetry ms
+     *
+     * 回傳：
+     * {'COUNTED'}             CLOSED，只更新統計
+     * {'CLOSED'}              probe 成功，回到 CLOSED
+     * {'OPENED', openUntilMs} 這次結果讓 breaker open（或 probe 失敗再 open）
+     * {'OPEN', retryAtMs}     breaker 已不是 CLOSED（open 前送出的呼叫），不影響狀態
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> RECORD = new DefaultRedisScript<>("""
+            local k = KEYS[1]
+            local now = tonumber(ARGV[1])
+            local healthy = ARGV[2] == '1'
+            local s = redis.call('HMGET', k, 'st', 'ws', 'ok', 'ko', 'ou', 'on')
+            local st = s[1] or 'C'
+            local on = tonumber(s[6]) or 0
+
+            local function open()
+              on = on + 1
+              local ou = now + math.floor(math.min(tonumber(ARGV[8]), tonumber(ARGV[7]) * 2 ^ (on - 1)))
+              redis.call('HSET', k, 'st', 'O', 'ou', tostring(ou), 'on', tostring(on), 'pu', '',
+                'ws', tostring(now), 'ok', '0', 'ko', '0')
+              redis.call('PEXPIRE', k, ARGV[9])
+              return {'OPENED', tostring(ou)}
+            end
+
+            if st ~= 'C' then
+              if ARGV[3] == '1' and st == 'H' then
+                if not healthy then return open() end
+                redis.call('HSET', k, 'st', 'C', 'ou', '', 'on', '0', 'pu', '', 'ws', tostring(now), 'ok', '0', 'ko', '0')
+                redis.call('PEXPIRE', k, ARGV[9])
+                return {'CLOSED'}
+              end
+              local ou = tonumber(s[5]) or 0
+              if st == 'O' and ou > now then return {'OPEN', tostring(ou)} end
+              return {'OPEN', tostring(now + tonumber(ARGV[10]))}
+            end
+
+            local ws, nok, nko = tonumber(s[2]) or 0, tonumber(s[3]) or 0, tonumber(s[4]) or 0
+            if now - ws >= tonumber(ARGV[4]) then ws = now; nok = 0; nko = 0 end
+            if healthy then nok = nok + 1 else nko = nko + 1 end
+            local total = nok + nko
+            if (not healthy) and total >= tonumber(ARGV[5]) and nko >= tonumber(ARGV[6]) * total then
+              return open()
+            end
+            redis.call('HSET', k, 'st', 'C', 'ws', tostring(ws), 'ok', tostring(nok), 'ko', tostring(nko))
+            redis.call('PEXPIRE', k, ARGV[9])
+            return {'COUNTED'}
+            """, List.class);
+
+    private final StringRedisTemplate redis;
+    private final FoodLogTaskWorkerProperties.Health cfg;
+    private final AiModelTierRouter modelRouter;
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+    private final String keyPrefix;
+
+    private final ConcurrentHashMap<String, AdaptiveLimit> limits = new ConcurrentHashMap<>();
+
+    /** admit 每次都會計數：counter 依 (name, provider, model, result) 快取，不在熱路徑上重新 register */
+    private final ConcurrentHashMap<CounterKey, Counter> counters = new ConcurrentHashMap<>();
+
+    private record CounterKey(String name, String provider, String modelId, String result) {}
+
+    @Autowired
+    public ProviderHealthGuard(
+            StringRedisTemplate redis,
+            FoodLogTaskWorkerProperties props,
+            AiModelTierRouter modelRouter,
+            Clock clock,
+            MeterRegistry meterRegistry
+    ) {
+        this.redis = redis;
+        this.cfg = (props.getHealth() == null) ? new FoodLogTaskWorkerProperties.Health() : props.getHealth();
+        this.modelRouter = modelRouter;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.keyPrefix = normalizePrefix(props.getRedisPrefix()) + ":foodlog:breaker:";
+    }
+
+    public boolean isEnabled() {
+        return cfg.isEnabled();
+    }
+
+    /**
+     * 任務要呼叫 provider 之前：先看 adaptive limit，再問 breaker。
+     *
+     * @param staticLimit 這個 provider / tier 的靜態上限（adaptive limit 的天花板）
+     * @return 不放行時 allowed()=false；breaker open 造成的會帶 retryAtOrNull()，adaptive limit 滿了則為 null
+     */
+    public Admission admit(String provider, ModelTier tier, int staticLimit) {
+        if (!cfg.isEnabled()) {
+            return Admission.unguarded();
+        }
+
+        String p = normProvider(provider);
+        String modelId = modelIdFor(p, tier);
+
+        AdaptiveLimit limit = limits.computeIfAbsent(p + "|" + modelId, k -> newLimit(p, modelId, staticLimit));
+        if (!limit.tryAcquire(staticLimit)) {
+            count("foodlog.provider.adaptive.rejected", p, modelId, null);
+            return new Admission(false, null, p, modelId, false, null);
+        }
+
+        Instant now = clock.instant();
+        String result;
+        Instant retryAt = null;
+        try {
+            @SuppressWarnings("unchecked")
+            List<Object> reply = redis.execute(ADMIT, List.of(key(p, modelId)),
+                    Long.toString(now.toEpochMilli()),
+                    Long.toString(cfg.getProbeTimeout().toMillis()),
+                    Long.toString(cfg.getHalfOpenRetry().toMillis()),
+                    Long.toString(keyTtlMs()));
+            result = (reply == null || reply.isEmpty()) ? "PASS" : String.valueOf(reply.get(0));
+            if ("OPEN".equals(result)) {
+                retryAt = Instant.ofEpochMilli(Long.parseLong(String.valueOf(reply.get(1))));
+            }
+        } catch (RuntimeException ex) {
+            log.warn("provider_breaker_admit_failed provider={} modelId={} errorType={}",
+                    p, modelId, ex.getClass().getSimpleName());
+            result = "ERROR";
+        }
+
+        count("foodlog.provider.breaker.admit", p, modelId, result);
+
+        if ("OPEN".equals(result)) {
+            limit.release();
+            return new Admission(false, retryAt, p, modelId, false, null);
+        }
+        return new Admission(true, null, p, modelId, "PROBE".equals(result), limit);
+    }
+
+    /** provider 有正常回應（含內容類錯誤） */
+    public void onSuccess(Admission admission, long latencyMs) {
+        if (admission == null || !admission.settle()) return;
+
+        admission.limit.onSuccess(latencyMs, cfg.getLatencyTarget().toMillis());
+        record(admission, true);
+    }
+
+    /**
+     * provider 呼叫失敗。
+     *
+     * @return 錯誤屬於 provider 不健康、且 breaker 目前 open 時，回傳任務應延後到的時間；否則 null（照一般失敗處理）
+     */
+    public Instant onFailure(Admission admission, String errorCode) {
+        if (admission == null || !admission.settle()) return null;
+
+        if (errorCode == null || !UNHEALTHY_CODES.contains(errorCode)) {
+            admission.limit.onIgnore();
+            record(admission, true);
+            return null;
+        }
+
+        admission.limit.onDrop(cfg.getDecreaseFactor(), Math.max(1, cfg.getMinLimit()));
+        return record(admission, false);
+    }
+
+    /**
+     * breaker 造成的延後是否已超過任務可等待的上限
+     */
+    public boolean exceedsMaxQueueDelay(Instant createdAtUtc, Instant retryAt) {
+        if (createdAtUtc == null || retryAt == null) return false;
+        return retryAt.isAfter(createdAtUtc.plus(cfg.getMaxQueueDelay()));
+    }
+
+    /** 測試 / 觀測用：目前 adaptive limit（未建立時為 -1） */
+    double currentLimit(String provider, ModelTier tier) {
+        String p = normProvider(provider);
+        AdaptiveLimit l = limits.get(p + "|" + modelIdFor(p, tier));
+        return (l == null) ? -1 : l.limit();
+    }
+
+    private Instant record(Admission admission, boolean healthy) {
+        Instant now = clock.instant();
+        try {
+            @SuppressWarnings("unchecked")
+            List<Object> reply = redis.execute(RECORD, List.of(key(admission.provider, admission.modelId)),
+                    Long.toString(now.toEpochMilli()),
+                    healthy ? "1" : "0",
+                    admission.probe ? "1" : "0",
+                    Long.toString(cfg.getWindow().toMillis()),
+                    Integer.toString(Math.max(1, cfg.getMinCalls())),
+                    Double.toString(cfg.getFailureRateThreshold()),
+                    Long.toString(cfg.getOpenDuration().toMillis()),
+                    Long.toString(cfg.getMaxOpenDuration().toMillis()),
+                    Long.toString(keyTtlMs()),
+                    Long.toString(cfg.getHalfOpenRetry().toMillis()));
+            if (reply == null || reply.isEmpty()) return null;
+
+            String result = String.valueOf(reply.get(0));
+            switch (result) {
+                case "OPENED" -> {
+                    Instant openUntil = Instant.ofEpochMilli(Long.parseLong(String.valueOf(reply.get(1))));
+                    log.warn("provider_breaker_opened provider={} modelId={} probe={} openUntil={}",
+                            admission.provider, admission.modelId, admission.probe, openUntil);
+                    count("foodlog.provider.breaker.transition", admission.provider, admission.modelId, "OPEN");
+                    return healthy ? null : openUntil;
+                }
+                case "CLOSED" -> {
+                    log.info("provider_breaker_closed provider={} modelId={}", admission.provider, admission.modelId);
+                    count("foodlog.provider.breaker.transition", admission.provider, admission.modelId, "CLOSED");
+                    return null;
+                }
+                case "OPEN" -> {
+                    return healthy ? null : Instant.ofEpochMilli(Long.parseLong(String.valueOf(reply.get(1))));
+                }
+                default -> {
+                    return null;
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.warn("provider_breaker_record_failed provider={} modelId={} errorType={}",
+                    admission.provider, admission.modelId, ex.getClass().getSimpleName());
+            return null;
+        }
+    }
+
+    private AdaptiveLimit newLimit(String provider, String modelId, int staticLimit) {
+        AdaptiveLimit l = new AdaptiveLimit(Math.max(1, staticLimit));
+        Gauge.builder("foodlog.provider.adaptive.limit", l, AdaptiveLimit::limit)
+                .tag("provider", provider)
+                .tag("model", modelId)
+                .register(meterRegistry);
+        Gauge.builder("foodlog.provider.adaptive.inflight", l, AdaptiveLimit::inFlight)
+                .tag("provider", provider)
+                .tag("model", modelId)
+                .register(meterRegistry);
+        return l;
+    }
+
+    private void count(String name, String provider, String modelId, String result) {
+        counters.computeIfAbsent(new CounterKey(name, provider, modelId, result), this::registerCounter)
+                .increment();
+    }
+
+    private Counter registerCounter(CounterKey k) {
+        Counter.Builder b = Counter.builder(k.name())
+                .tag("provider", k.provider())
+                .tag("model", k.modelId());
+        if (k.result() != null) {
+            b.tag(k.name().endsWith("transition") ? "state" : "result", k.result().toLowerCase(Locale.ROOT));
+        }
+        return b.register(meterRegistry);
+    }
+
+    /**
+     * worker 的任務都帶圖片：依 tier 的 VISION 設定取 modelId；provider 對不上或沒設定時退回 tier 名稱
+     */
+    private String modelIdFor(String provider, ModelTier tier) {
+        ModelTier t = (tier == null) ? ModelTier.MODEL_TIER_LOW : tier;
+        if (modelRouter != null) {
+            try {
+                AiModelTierRouter.Resolved r = modelRouter.resolveOrThrow(t, ModelMode.VISION);
+                if (provider.equals(r.provider())) {
+                    return r.modelId();
+                }
+            } catch (RuntimeException ignored) {
+                // 沒設定就用 tier 名稱
+            }
+        }
+        return t.name();
+    }
+
+    private String key(String provider, String modelId) {
+        return keyPrefix + provider + ":" + modelId;
+    }
+
+    private long keyTtlMs() {
+        long longest = Math.max(cfg.getWindow().toMillis(), cfg.getMaxOpenDuration().toMillis());
+        return 2 * (longest + cfg.getProbeTimeout().toMillis());
+    }
+
+    private static String normProvider(String provider) {
+        if (provider == null || provider.isBlank()) return "UNKNOWN";
+        return provider.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static String normalizePrefix(String raw) {
+        String s = (raw == null || raw.isBlank()) ? "caloshape" : raw.trim();
+        while (s.endsWith(":")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        return s;
+    }
+
+    /**
+     * 一次 provider 呼叫的放行結果；allowed 時用完一定要 close（或回報 onSuccess / onFailure）。
+     */
+    public static final class Admission implements AutoCloseable {
+
+        private static final Admission UNGUARDED = new Admission(true, null, null, null, false, null);
+
+        private final boolean allowed;
+        private final Instant retryAt;
+        private final String provider;
+        private final String modelId;
+        private final boolean probe;
+        private final AdaptiveLimit limit;
+        private final AtomicBoolean settled = new AtomicBoolean(false);
+
+        private Admission(boolean allowed, Instant retryAt, String provider, String modelId,
+                          boolean probe, AdaptiveLimit limit) {
+            this.allowed = allowed;
+            this.retryAt = retryAt;
+            this.provider = provider;
+            this.modelId = modelId;
+            this.probe = probe;
+            this.limit = limit;
+        }
+
+        /** 未啟用保護：永遠放行，回報與 close 都是 no-op */
+        public static Admission unguarded() {
+            return UNGUARDED;
+        }
+
+        public boolean allowed() {
+            return allowed;
+        }
+
+        /** breaker open 時任務應延後到的時間；adaptive limit 滿或放行時為 null */
+        public Instant retryAtOrNull() {
+            return retryAt;
+        }
+
+        public boolean probe() {
+            return probe;
+        }
+
+        /** 第一次回報 / close 回傳 true；probe 沒回報結果時由 probeTimeout 到期放下一個 */
+        private boolean settle() {
+            return limit != null && settled.compareAndSet(false, true);
+        }
+
+        @Override
+        public void close() {
+            if (settle()) {
+                limit.onIgnore();
+            }
+        }
+    }
+
+    /**
+     * AIMD：上限 limit 為小數，實際可用名額取整數部分。
+     */
+    static final class AdaptiveLimit {
+
+        private double limit;
+        private int max;
+        private int inFlight;
+
+        AdaptiveLimit(int initial) {
+            this.limit = initial;
+            this.max = initial;
+        }
+
+        /** max 跟著靜態上限走（設定變更時不需重建） */
+        synchronized boolean tryAcquire(int max) {
+            this.max = Math.max(1, max);
+            if (limit > this.max) limit = this.max;
+            if (inFlight >= Math.max(1, (int) limit)) return false;
+            inFlight++;
+            return true;
+        }
+
+        synchronized void release() {
+            if (inFlight > 0) inFlight--;
+        }
+
+        synchronized void onSuccess(long latencyMs, long latencyTargetMs) {
+            release();
+            if (latencyTargetMs <= 0 || latencyMs <= latencyTargetMs) {
+                limit = Math.min(max, limit + 1.0 / Math.max(1.0, limit));
+            }
+        }
+
+        synchronized void onDrop(double factor, int min) {
+            release();
+            double f = (factor <= 0 || factor >= 1) ? 0.5 : factor;
+            limit = Math.max(min, limit * f);
+        }
+
+        synchronized void onIgnore() {
+            release();
+        }
+
+        synchronized double limit() {
+            return limit;
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+    }
+}
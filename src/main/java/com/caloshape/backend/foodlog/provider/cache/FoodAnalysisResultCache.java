@@ -0,0 +1,287 @@
+package com.caloshape.backend.foodlog.provider.cache;
+
+import com.caloshape.backend.foodlog.entity.FoodLogEntity;
+import com.caloshape.backend.foodlog.image.FoodImagePreprocessor;
+import com.caloshape.backend.foodlog.model.FoodLogMethod;
+import com.caloshape.backend.foodlog.model.ModelMode;
+import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiHedgedCaller;
+import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiRequestBuilder;
+import com.caloshape.backend.foodlog.provider.prompt.GeminiPromptFactory;
+import com.caloshape.backend.foodlog.provider.routing.AiModelTierRouter;
+import com.caloshape.backend.foodlog.quota.model.ModelTier;
+import com.caloshape.backend.foodlog.quota.support.DegradeLevelToModelTierResolver;
+import com.caloshape.backend.foodlog.unit.FoodLogWarning;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 跨使用者的 AI 分析結果快取。
+ * - key：圖片 sha256 + method + model tier + provider + request 版本
+ *   （prompt 指紋 + 實際 modelId + system instruction / function schema + 圖片前處理版本，任一項改了自動失效）
+ * - value：FoodLogEffectivePostProcessor 處理後的 effective JSON
+ * - 只收「正常辨識成功」的結果；NO_FOOD / UNKNOWN_FOOD / LOW_CONFIDENCE 等降級結果不共用
+ * 目前只有 GEMINI 有 prompt 版本可以對齊，其他 provider 一律不快取。
+ */
+@Slf4j
+@Service
+public class FoodAnalysisResultCache {
+
+    private static final ObjectMapper OM = new ObjectMapper();
+    private static final Pattern SHA256_HEX_64 = Pattern.compile("^[0-9a-f]{64}$");
+
+    /** 這些 warning 代表結果跟圖片品質 / 模型當下判斷高度相關，不值得給別人重用 */
+    private static final Set<String> NON_CACHEABLE_WARNINGS = Set.of(
+            FoodLogWarning.NO_FOOD_DETECTED.name(),
+            FoodLogWarning.UNKNOWN_FOOD.name(),
+            FoodLogWarning.NO_LABEL_DETECTED.name(),
+            FoodLogWarning.MISSING_NUTRITION_FACTS.name(),
+            FoodLogWarning.LOW_CONFIDENCE.name()
+    );
+
+    public record Hit(String provider, ObjectNode effective) {}
+
+    private final FoodAnalysisResultCacheRepository repo;
+    private final FoodAnalysisResultCacheProperties props;
+    private final GeminiPromptFactory promptFactory;
+    private final AiModelTierRouter modelRouter;
+    private final FoodImagePreprocessor imagePrep;
+    private final ObjectProvider<GeminiRequestBuilder> requestBuilder;
+    private final Clock clock;
+
+    public FoodAnalysisResultCache(
+            FoodAnalysisResultCacheRepository repo,
+            FoodAnalysisResultCacheProperties props,
+            GeminiPromptFactory promptFactory,
+            AiModelTierRouter modelRouter,
+            FoodImagePreprocessor imagePrep,
+            ObjectProvider<GeminiRequestBuilder> requestBuilder,
+            Clock clock
+    ) {
+        this.repo = repo;
+        this.props = props;
+        this.promptFactory = promptFactory;
+        this.modelRouter = modelRouter;
+        this.imagePrep = imagePrep;
+        this.requestBuilder = requestBuilder;
+        this.clock = clock;
+    }
+
+    /**
+     * 查快取；命中時累加 hit_count / last_used_at_utc（給容量淘汰用）。
+     * 回傳的 effective 已標上 aiMeta.resultFromCache=true。
+     * 在 worker 的 prepare 交易內被呼叫：只讀，命中統計等交易 commit 後另開交易更新（best-effort），
+     * 不讓熱門快取列的 row lock 跟著 task / food log 的鎖一起持有。
+     */
+    public Optional<Hit> lookup(FoodLogEntity foodLog) {
+        Key key = keyOf(foodLog);
+        if (key == null) return Optional.empty();
+
+        Instant now = clock.instant();
+        FoodAnalysisResultCacheEntity e = repo.findById(key.cacheKey()).orElse(null);
+        if (e == null || e.getExpiresAtUtc() == null || !e.getExpiresAtUtc().isAfter(now)) {
+            return Optional.empty();
+        }
+
+        ObjectNode effective = parseObjectOrNull(e.getEffectiveText());
+        if (effective == null) return Optional.empty();
+
+        touchAfterCommit(key.cacheKey(), now);
+        markResultFromCache(effective);
+        return Optional.of(new Hit(e.getProvider(), effective));
+    }
+
+    /**
+     * 寫入快取（獨立交易：失敗不影響 food log 成功回寫）。
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void store(FoodLogEntity foodLog, String provider, ObjectNode finalEffective) {
+        if (finalEffective == null || !isCacheable(finalEffective)) return;
+        if (!sameProvider(foodLog.getProvider(), provider)) return;
+
+        Key key = keyOf(foodLog);
+        if (key == null) return;
+
+        Instant now = clock.instant();
+        FoodAnalysisResultCacheEntity e = repo.findById(key.cacheKey()).orElse(null);
+        if (e == null) {
+            e = new FoodAnalysisResultCacheEntity();
+            e.setCacheKey(key.cacheKey());
+            e.setHitCount(0);
+        }
+
+        e.setImageSha256(key.imageSha256());
+        e.setMethod(key.method());
+        e.setModelTier(key.modelTier());
+        e.setProvider(key.provider());
+        e.setPromptVersion(key.promptVersion());
+        e.setEffectiveText(stripPerRequestMeta(finalEffective).toString());
+        e.setCreatedAtUtc(now);
+        e.setLastUsedAtUtc(now);
+        e.setExpiresAtUtc(now.plus(props.getTtl()));
+
+        repo.save(e);
+    }
+
+    public boolean isEnabled() {
+        return props.isEnabled();
+    }
+
+    private void touchAfterCommit(String cacheKey, Instant now) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    touch(cacheKey, now);
+                }
+            });
+            return;
+        }
+        touch(cacheKey, now);
+    }
+
+    private void touch(String cacheKey, Instant now) {
+        try {
+            repo.touch(cacheKey, now);
+        } catch (RuntimeException ex) {
+            log.warn("food_analysis_result_cache_touch_failed errorType={}", ex.getClass().getSimpleName());
+        }
+    }
+
+    static boolean isCacheable(ObjectNode eff) {
+        JsonNode warnings = eff.get("warnings");
+        if (warnings != null && warnings.isArray()) {
+            for (JsonNode w : warnings) {
+                if (w != null && NON_CACHEABLE_WARNINGS.contains(w.asText())) return false;
+            }
+        }
+
+        JsonNode aiMeta = eff.get("aiMeta");
+        if (aiMeta != null && aiMeta.hasNonNull("degradedReason")) return false;
+        // hedge 由 LOW tier 勝出：結果不是 key 上那個 tier 產生的，不能給同 tier 的其他人用
+        if (aiMeta != null && GeminiHedgedCaller.Decision.HEDGED_HEDGE_WON.name().equals(aiMeta.path("hedgeDecision").asText(null))) return false;
+
+        JsonNode meta = eff.get("healthScoreMeta");
+        return meta == null || !meta.path("degraded").asBoolean(false);
+    }
+
+    Key keyOf(FoodLogEntity foodLog) {
+        if (!props.isEnabled() || foodLog == null) return null;
+
+        String sha = normalizeSha(foodLog.getImageSha256());
+        String method = norm(foodLog.getMethod());
+        String provider = norm(foodLog.getProvider());
+        if (sha == null || method == null || provider == null) return null;
+
+        ModelTier modelTier = DegradeLevelToModelTierResolver.resolve(foodLog.getDegradeLevel());
+        String promptVersion = requestVersionOf(provider, method, modelTier);
+        if (promptVersion == null) return null;
+
+        String tier = modelTier.name();
+        String cacheKey = sha256Hex(String.join("|", sha, method, tier, provider, promptVersion));
+        return new Key(cacheKey, sha, method, tier, provider, promptVersion);
+    }
+
+    /**
+     * 存在 prompt_version 欄位：prompt 指紋 + 其他會影響結果的設定（modelId / request 形狀 / 圖片版本）的摘要。
+     * 解析不出來（非 GEMINI、tier 未設定 model）就不快取。
+     */
+    private String requestVersionOf(String provider, String method, ModelTier tier) {
+        if (!"GEMINI".equals(provider)) return null;
+
+        GeminiRequestBuilder builder = requestBuilder.getIfAvailable();
+        if (builder == null) return null;
+
+        String modelId;
+        try {
+            modelId = modelRouter.resolveOrThrow(tier, ModelMode.VISION).modelId();
+        } catch (IllegalStateException ex) {
+            return null;
+        }
+
+        FoodLogMethod m = FoodLogMethod.from(method);
+        boolean label = m != null && m.isLabel();
+        String settings = String.join("|", modelId, builder.requestVersion(label), imagePrep.variantFor(label));
+        return promptFactory.promptVersion() + "-" + sha256Hex(settings).substring(0, 16);
+    }
+
+    /** resultFromCache 是「這一筆」的屬性，不能存進共用的結果裡 */
+    private static ObjectNode stripPerRequestMeta(ObjectNode eff) {
+        ObjectNode copy = eff.deepCopy();
+        if (copy.get("aiMeta") instanceof ObjectNode aiMeta) {
+            aiMeta.remove("resultFromCache");
+        }
+        return copy;
+    }
+
+    private static void markResultFromCache(ObjectNode effective) {
+        JsonNode aiMetaNode = effective.get("aiMeta");
+        ObjectNode aiMeta = (aiMetaNode instanceof ObjectNode o) ? o : effective.putObject("aiMeta");
+        aiMeta.put("resultFromCache", true);
+    }
+
+    private static ObjectNode parseObjectOrNull(String text) {
+        if (text == null || text.isBlank()) return null;
+        try {
+            JsonNode n = OM.readTree(text);
+            return (n instanceof ObjectNode o) ? o : null;
+        } catch (Exception ex) {
+            log.warn("food_analysis_result_cache_corrupt_row errorType={}", ex.getClass().getSimpleName());
+            return null;
+        }
+    }
+
+    private static boolean sameProvider(String a, String b) {
+        String x = norm(a);
+        return x != null && x.equals(norm(b));
+    }
+
+    private static String normalizeSha(String raw) {
+        if (raw == null) return null;
+        String s = raw.trim().toLowerCase(Locale.ROOT);
+        return SHA256_HEX_64.matcher(s).matches() ? s : null;
+    }
+
+    private static String norm(String s) {
+        if (s == null) return null;
+        String v = s.trim().toUpperCase(Locale.ROOT);
+        return v.isEmpty() ? null : v;
+    }
+
+    private static String sha256Hex(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 unavailable", ex);
+        }
+    }
+
+    record Key(
+            String cacheKey,
+            String imageSha256,
+            String method,
+            String modelTier,
+            String provider,
+            String promptVersion
+    ) {}
+}
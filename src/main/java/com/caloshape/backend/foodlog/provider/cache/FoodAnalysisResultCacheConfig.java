@@ -0,0 +1,8 @@
+package com.caloshape.backend.foodlog.provider.cache;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(FoodAnalysisResultCacheProperties.class)
+public class FoodAnalysisResultCacheConfig {}
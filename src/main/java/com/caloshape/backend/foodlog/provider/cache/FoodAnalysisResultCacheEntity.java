@@ -0,0 +1,60 @@
+package com.caloshape.backend.foodlog.provider.cache;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * 跨使用者的 AI 分析結果快取（content-addressed）。
+ * cacheKey = sha256(imageSha256 | method | modelTier | provider | promptVersion)，
+ * 只存 post-process 後的 effective JSON，不含任何 userId / foodLogId。
+ */
+@Getter
+@Setter
+@Entity
+@Table(
+        name = "food_analysis_result_cache",
+        indexes = {
+                @Index(name = "idx_farc_expires_at", columnList = "expires_at_utc"),
+                @Index(name = "idx_farc_last_used_at", columnList = "last_used_at_utc")
+        }
+)
+public class FoodAnalysisResultCacheEntity {
+
+    @Id
+    @Column(name = "cache_key", length = 64, nullable = false)
+    private String cacheKey;
+
+    @Column(name = "image_sha256", length = 64, nullable = false)
+    private String imageSha256;
+
+    @Column(name = "method", length = 16, nullable = false)
+    private String method;
+
+    @Column(name = "model_tier", length = 32, nullable = false)
+    private String modelTier;
+
+    @Column(name = "provider", length = 32, nullable = false)
+    private String provider;
+
+    @Column(name = "prompt_version", length = 64, nullable = false)
+    private String promptVersion;
+
+    @Lob
+    @Column(name = "effective_text", columnDefinition = "LONGTEXT", nullable = false)
+    private String effectiveText;
+
+    @Column(name = "hit_count", nullable = false)
+    private long hitCount;
+
+    @Column(name = "created_at_utc", nullable = false)
+    private Instant createdAtUtc;
+
+    @Column(name = "last_used_at_utc", nullable = false)
+    private Instant lastUsedAtUtc;
+
+    @Column(name = "expires_at_utc", nullable = false)
+    private Instant expiresAtUtc;
+}
@@ -0,0 +1,37 @@
+package com.caloshape.backend.foodlog.provider.cache;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * application.yml:
+ * app.foodlog.result-cache.
+ * 同一張圖（sha256）+ method + model tier + prompt 版本，跨使用者共用 AI 分析結果。
+ * 命中時 worker 直接完成任務，不呼叫 provider。
+ */
+@Data
+@ConfigurationProperties(prefix = "app.foodlog.result-cache")
+public class FoodAnalysisResultCacheProperties {
+
+    /**
+     * 一鍵開關（預設關閉）
+     */
+    private boolean enabled = false;
+
+    /**
+     * 每筆結果保留多久（從寫入起算，命中不延長）
+     */
+    private Duration ttl = Duration.ofDays(30);
+
+    /**
+     * 表的筆數上限：超過時由 purger 依 last_used_at_utc 淘汰最舊的
+     */
+    private long maxEntries = 200_000;
+
+    /**
+     * 單次 purge 最多刪幾筆（避免一次清太久）
+     */
+    private int maxPurgePerRun = 100_000;
+}
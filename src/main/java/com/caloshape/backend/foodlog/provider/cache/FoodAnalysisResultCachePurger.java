@@ -0,0 +1,66 @@
+package com.caloshape.backend.foodlog.provider.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 1. 先刪過期（TTL）
+ * 2. 還超過 max-entries：依 last_used_at_utc 從舊到新淘汰到上限內
+ * 每批獨立交易；關閉快取時不動既有資料（重新開啟還能用到未過期的）。
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class FoodAnalysisResultCachePurger {
+
+    private final FoodAnalysisResultCacheRepository repo;
+    private final FoodAnalysisResultCachePurgerTx tx;
+    private final FoodAnalysisResultCacheProperties props;
+    private final Clock clock;
+
+    @Scheduled(fixedDelayString = "${app.foodlog.result-cache.purge-delay:PT1H}")
+    public void purge() {
+        int limit = Math.max(1, props.getMaxPurgePerRun());
+        int expired = purgeExpired(clock.instant(), limit);
+        int evicted = evictOverCapacity(limit - expired);
+
+        if (expired > 0 || evicted > 0) {
+            log.info("Purged food analysis result cache rows expired={} evicted={}", expired, evicted);
+        }
+    }
+
+    private int purgeExpired(Instant now, int limit) {
+        int total = 0;
+        while (total < limit) {
+            List<FoodAnalysisResultCacheEntity> batch =
+                    repo.findTop1000ByExpiresAtUtcBeforeOrderByExpiresAtUtcAsc(now);
+            if (batch.isEmpty()) break;
+
+            total += tx.deleteBatch(batch);
+        }
+        return total;
+    }
+
+    private int evictOverCapacity(int limit) {
+        long maxEntries = Math.max(0, props.getMaxEntries());
+        long over = repo.count() - maxEntries;
+
+        int total = 0;
+        while (over > 0 && total < limit) {
+            List<FoodAnalysisResultCacheEntity> batch = repo.findTop1000ByOrderByLastUsedAtUtcAsc();
+            if (batch.isEmpty()) break;
+
+            int take = (int) Math.min(batch.size(), Math.min(over, limit - total));
+            int deleted = tx.deleteBatch(batch.subList(0, take));
+            total += deleted;
+            over -= deleted;
+        }
+        return total;
+    }
+}
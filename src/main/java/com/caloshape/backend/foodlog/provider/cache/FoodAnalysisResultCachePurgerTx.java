@@ -0,0 +1,22 @@
+package com.caloshape.backend.foodlog.provider.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class FoodAnalysisResultCachePurgerTx {
+
+    private final FoodAnalysisResultCacheRepository repo;
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int deleteBatch(List<FoodAnalysisResultCacheEntity> batch) {
+        if (batch == null || batch.isEmpty()) return 0;
+        repo.deleteAllInBatch(batch);
+        return batch.size();
+    }
+}
@@ -0,0 +1,30 @@
+package com.caloshape.backend.foodlog.provider.cache;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface FoodAnalysisResultCacheRepository extends JpaRepository<FoodAnalysisResultCacheEntity, String> {
+
+    List<FoodAnalysisResultCacheEntity> findTop1000ByExpiresAtUtcBeforeOrderByExpiresAtUtcAsc(Instant now);
+
+    /** 超過 max-entries 時，從最久沒被用到的開始淘汰 */
+    List<FoodAnalysisResultCacheEntity> findTop1000ByOrderByLastUsedAtUtcAsc();
+
+    /** 命中統計：獨立交易，不在呼叫端交易裡鎖住共用的快取列 */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update FoodAnalysisResultCacheEntity c
+               set c.hitCount = c.hitCount + 1,
+                   c.lastUsedAtUtc = :now
+             where c.cacheKey = :cacheKey
+            """)
+    int touch(@Param("cacheKey") String cacheKey, @Param("now") Instant now);
+}
@@ -8,15 +8,23 @@ import com.caloshape.backend.foodlog.provider.gemini.GeminiProviderClient;
 import com.caloshape.backend.foodlog.quota.model.ModelTier;
 import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
 import com.caloshape.backend.foodlog.provider.stub.StubProviderClient;
+import com.caloshape.backend.foodlog.provider.support.ProviderHttpRequestFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
+@Slf4j
 @Configuration
 @EnableConfigurationProperties({GeminiProperties.class, AiModelTiersProperties.class})
 public class FoodLogProviderConfig {
@@ -50,14 +58,49 @@ public class FoodLogProviderConfig {
             havingValue = "true",
             matchIfMissing = false
     )
-    public RestClient geminiRestClient(GeminiProperties props) {
-        SimpleClientHttpRequestFactory f = new SimpleClientHttpRequestFactory();
-        f.setConnectTimeout((int) props.getConnectTimeout().toMillis());
-        f.setReadTimeout((int) props.getReadTimeout().toMillis());
+    public RestClient geminiRestClient(
+            GeminiProperties props,
+            ObjectProvider<MeterRegistry> meterRegistry,
+            ObjectProvider<ObservationRegistry> observationRegistry
+    ) {
+        GeminiProperties.Transport t = props.getTransport();
+
+        // ✅ 預設 JDK HttpClient：連線重用 + HTTP/2 多工；simple 保留給需要退回舊行為的環境
+        ClientHttpRequestFactory transport;
+        if ("simple".equalsIgnoreCase(t.getType())) {
+            SimpleClientHttpRequestFactory f = new SimpleClientHttpRequestFactory();
+            f.setConnectTimeout((int) props.getConnectTimeout().toMillis());
+            f.setReadTimeout((int) props.getReadTimeout().toMillis());
+            transport = f;
+        } else {
+            transport = ProviderHttpRequestFactory.jdk(props.getConnectTimeout(), props.getReadTimeout(), t.isHttp2());
+        }
+
+        ProviderHttpRequestFactory f = new ProviderHttpRequestFactory(
+                transport,
+                "gemini",
+                t.getMaxConcurrentPerHost(),
+                t.getAcquireTimeout(),
+                t.isGzipRequests(),
+                meterRegistry.getIfAvailable(SimpleMeterRegistry::new)
+        );
+
+        // keep-alive 是 JVM 全域設定（見 railway.json startCommand），這裡只記錄實際生效值
+        log.info(
+                "gemini_http_transport type={} http2={} maxConcurrentPerHost={} acquireTimeout={} gzipRequests={} keepAliveSec={} keepAliveH2Sec={}",
+                t.getType(),
+                t.isHttp2(),
+                t.getMaxConcurrentPerHost(),
+                t.getAcquireTimeout(),
+                t.isGzipRequests(),
+                System.getProperty("jdk.httpclient.keepalive.timeout", "30"),
+                System.getProperty("jdk.httpclient.keepalive.timeout.h2", "30")
+        );
 
         return RestClient.builder()
                 .baseUrl(props.getBaseUrl())
                 .requestFactory(f)
+                .observationRegistry(observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP))
                 .build();
     }
 
@@ -50,6 +50,16 @@ public class GeminiProperties {
      */
     private TextOnlyTuning textOnly = new TextOnlyTuning();
 
+    /**
+     * HTTP transport（連線池 / HTTP/2 / 每 host 併發上限 / gzip request）
+     */
+    private Transport transport = new Transport();
+
+    /**
+     * PHOTO / ALBUM / LABEL 的 hedged request（HIGH tier 過慢時補打一發 LOW tier）
+     */
+    private Hedge hedge = new Hedge();
+
     @Data
     public static class RequestTuning {
         /** 每次 request 的輸出 token 上限 */
@@ -73,4 +83,50 @@ public class GeminiProperties {
         private RequestTuning looseDefault = new RequestTuning(768, 0.0);
 
     }
+
+    @Data
+    public static class Transport {
+        /** jdk = java.net.http.HttpClient（連線重用、HTTP/2）；simple = 舊的 HttpURLConnection */
+        private String type = "jdk";
+
+        /** 走 TLS ALPN 協商 HTTP/2；對方不支援時 JDK 會自動退回 HTTP/1.1 */
+        private boolean http2 = true;
+
+        /** 每個 host 同時在途的 request 上限（HTTP/2 下即同一條連線上的 stream 數） */
+        private int maxConcurrentPerHost = 32;
+
+        /** 等 permit 的上限；等不到視為 timeout（PROVIDER_TIMEOUT），不無限排隊 */
+        private Duration acquireTimeout = Duration.ofSeconds(5);
+
+        /** request body 以 gzip 送出（Content-Encoding: gzip）；base64 圖片大約省 25% 上傳量 */
+        private boolean gzipRequests = false;
+    }
+
+    @Data
+    public static class Hedge {
+        /** 關閉時維持單發；截止時間（worker 的 provider-deadline）仍然生效 */
+        private boolean enabled = false;
+
+        /** 主請求超過此百分位數的 latency 還沒回來就補打 LOW tier */
+        private double percentile = 0.95;
+
+        /** 每個 model 保留最近幾筆 latency 來學百分位數 */
+        private int window = 200;
+
+        /** 樣本數不足時用 initialDelay */
+        private int minSamples = 20;
+
+        private Duration initialDelay = Duration.ofSeconds(8);
+
+        /** 學到的值夾在 [minDelay, maxDelay]：避免冷啟動或網路抖動時過早 / 過晚補打 */
+        private Duration minDelay = Duration.ofSeconds(2);
+        private Duration maxDelay = Duration.ofSeconds(20);
+
+        /**
+         * hedge 預算：每一發主請求累積 budgetRatio 個 token，補打一發花 1 個，最多存 budgetBurst 個。
+         * 0.1 = 長期最多 10% 的請求會多打一發；上游整體變慢時不會把花費翻倍。
+         */
+        private double budgetRatio = 0.1;
+        private double budgetBurst = 5;
+    }
 }
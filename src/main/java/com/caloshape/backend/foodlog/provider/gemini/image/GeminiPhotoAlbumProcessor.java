@@ -6,12 +6,14 @@ import com.caloshape.backend.foodlog.provider.gemini.spi.GeminiModeProcessor;
 import com.caloshape.backend.foodlog.provider.gemini.routing.GeminiVisionRoutePolicy;
 import com.caloshape.backend.foodlog.provider.routing.AiModelTierRouter;
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
+import com.caloshape.backend.foodlog.image.FoodImagePreprocessor;
 import com.caloshape.backend.foodlog.provider.support.ProviderErrorMapper;
 import com.caloshape.backend.foodlog.model.ModelMode;
 import com.caloshape.backend.foodlog.provider.gemini.config.GeminiEnabledComponent;
 import com.caloshape.backend.foodlog.provider.prompt.GeminiPromptFactory;
+import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiHedgedCaller;
+import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiInlineImage;
 import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiTransportSupport;
-import com.caloshape.backend.foodlog.image.ImageMimeResolver;
 import com.caloshape.backend.foodlog.quota.model.ModelTier;
 import com.caloshape.backend.foodlog.storage.StorageService;
 import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
@@ -22,7 +24,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.InputStream;
 import java.util.Locale;
 
 /**
@@ -33,6 +34,7 @@ import java.util.Locale;
  * 3. 不做 image retry
  * 4. 不做 OFF fallback
  * 5. 只做 normalize + 輕量品質保護
+ * 6. HIGH tier 過慢時可由 GeminiHedgedCaller 補打一發 LOW tier（兩發取先回來且可用的那個）
  */
 
 @Slf4j
@@ -50,6 +52,8 @@ public class GeminiPhotoAlbumProcessor implements GeminiModeProcessor {
     private final ObjectMapper om;
     private final ProviderTelemetry telemetry;
     private final AiModelTierRouter modelRouter;
+    private final FoodImagePreprocessor imagePreprocessor;
+    private final GeminiHedgedCaller hedgedCaller;
 
     public GeminiPhotoAlbumProcessor(
             GeminiTransportSupport transportSupport,
@@ -57,7 +61,9 @@ public class GeminiPhotoAlbumProcessor implements GeminiModeProcessor {
             GeminiPromptFactory promptFactory,
             ObjectMapper om,
             ProviderTelemetry telemetry,
-            AiModelTierRouter modelRouter
+            AiModelTierRouter modelRouter,
+            FoodImagePreprocessor imagePreprocessor,
+            GeminiHedgedCaller hedgedCaller
     ) {
         this.transportSupport = transportSupport;
         this.jsonParsingSupport = jsonParsingSupport;
@@ -65,42 +71,33 @@ public class GeminiPhotoAlbumProcessor implements GeminiModeProcessor {
         this.om = om;
         this.telemetry = telemetry;
         this.modelRouter = modelRouter;
+        this.imagePreprocessor = imagePreprocessor;
+        this.hedgedCaller = hedgedCaller;
     }
 
     public ProviderClient.ProviderResult process(FoodLogEntity entity, StorageService storage) throws Exception {
         long t0 = System.nanoTime();
+        ModelTier tier = resolveTierFromDegradeLevel(entity.getDegradeLevel());
         String modelId = resolveModelIdVision(entity);
 
         try {
-            byte[] bytes;
-            try (InputStream in = storage.open(entity.getImageObjectKey()).inputStream()) {
-                bytes = in.readAllBytes();
-            }
-
-            if (bytes.length == 0) {
-                throw new IllegalStateException("EMPTY_IMAGE");
-            }
-
-            String mime = ImageMimeResolver.resolveOrDefault(entity.getImageContentType(), bytes);
             String prompt = promptFactory.mainPrompt(false);
 
-            GeminiTransportSupport.CallResult result = transportSupport.callAndExtract(
-                    bytes,
-                    mime,
-                    prompt,
-                    modelId,
-                    false,
-                    entity.getId()
+            GeminiHedgedCaller.Outcome<GeminiTransportSupport.CallResult> outcome = hedgedCaller.call(
+                    tier,
+                    ModelMode.VISION,
+                    entity.getId(),
+                    mid -> callOnce(entity, storage, prompt, mid),
+                    r -> parseRootObjectOrNull(r) != null
             );
+            GeminiTransportSupport.CallResult result = outcome.value();
+            modelId = outcome.modelId();
+            Served served = new Served(modelId, outcome);
 
-            JsonNode parsed = (result.functionArgs() != null)
-                    ? result.functionArgs()
-                    : jsonParsingSupport.tryParseJson(result.text());
-
-            parsed = GeminiEffectiveJsonSupport.unwrapRootObjectOrNull(parsed);
+            JsonNode parsed = parseRootObjectOrNull(result);
 
             if (parsed == null || !parsed.isObject()) {
-                return okAndReturn(modelId, entity, t0, result.tok(), fallbackUnknownFood());
+                return okAndReturn(served, entity, t0, result.tok(), fallbackUnknownFood());
             }
 
             ObjectNode effective;
@@ -110,11 +107,11 @@ public class GeminiPhotoAlbumProcessor implements GeminiModeProcessor {
             } catch (Exception ex) {
                 log.warn("photo_album_normalize_failed foodLogId={} errorType={}",
                         entity.getId(), ex.getClass().getSimpleName());
-                return okAndReturn(modelId, entity, t0, result.tok(), fallbackUnknownFood());
+                return okAndReturn(served, entity, t0, result.tok(), fallbackUnknownFood());
             }
 
             if (GeminiEffectiveJsonSupport.hasWarning(parsed, FoodLogWarning.NO_FOOD_DETECTED.name())) {
-                return okAndReturn(modelId, entity, t0, result.tok(), effective);
+                return okAndReturn(served, entity, t0, result.tok(), effective);
             }
 
             String foodName = textOrNull(effective, "foodName");
@@ -122,14 +119,14 @@ public class GeminiPhotoAlbumProcessor implements GeminiModeProcessor {
             boolean lowConfidence = (confidence == null || confidence < 0.5d);
 
             if (foodName == null) {
-                return okAndReturn(modelId, entity, t0, result.tok(), fallbackUnknownFood());
+                return okAndReturn(served, entity, t0, result.tok(), fallbackUnknownFood());
             }
 
             if (GeminiPhotoAlbumJsonSupport.isWholeContainerLike(effective)
                 && GeminiPhotoAlbumJsonSupport.allCoreQuartetZero(effective)
                 && lowConfidence) {
                 return okAndReturn(
-                        modelId,
+                        served,
                         entity,
                         t0,
                         result.tok(),
@@ -137,25 +134,60 @@ public class GeminiPhotoAlbumProcessor implements GeminiModeProcessor {
                 );
             }
 
-            return okAndReturn(modelId, entity, t0, result.tok(), effective);
+            return okAndReturn(served, entity, t0, result.tok(), effective);
 
         } catch (Exception e) {
             ProviderErrorMapper.Mapped mapped = ProviderErrorMapper.map(e);
-            telemetry.fail("GEMINI", modelId, entity.getId(), msSince(t0), mapped.code(), mapped.retryAfterSec());
+            telemetry.fail("GEMINI", modelId, entity.getMethod(), entity.getId(), msSince(t0), mapped.code(), mapped.retryAfterSec());
             throw e;
         }
     }
 
+    private GeminiTransportSupport.CallResult callOnce(
+            FoodLogEntity entity,
+            StorageService storage,
+            String prompt,
+            String modelId
+    ) throws Exception {
+        StorageService.OpenResult opened = imagePreprocessor.open(entity, storage, false);
+
+        try (GeminiInlineImage image = GeminiInlineImage.open(opened.inputStream(), opened.contentType())) {
+            if (image.isEmpty()) {
+                throw new IllegalStateException("EMPTY_IMAGE");
+            }
+
+            return transportSupport.callAndExtract(
+                    image,
+                    prompt,
+                    modelId,
+                    false,
+                    entity.getId()
+            );
+        }
+    }
+
+    /** functionArgs 優先，否則從 text 解析；不是 JSON object 回 null */
+    private JsonNode parseRootObjectOrNull(GeminiTransportSupport.CallResult result) {
+        JsonNode parsed = (result.functionArgs() != null)
+                ? result.functionArgs()
+                : jsonParsingSupport.tryParseJson(result.text());
+
+        parsed = GeminiEffectiveJsonSupport.unwrapRootObjectOrNull(parsed);
+        return (parsed != null && parsed.isObject()) ? parsed : null;
+    }
+
     private ProviderClient.ProviderResult okAndReturn(
-            String modelId,
+            Served served,
             FoodLogEntity entity,
             long t0,
             GeminiTransportSupport.Tok tok,
             ObjectNode effective
     ) {
+        served.outcome().annotate(effective);
         telemetry.ok(
                 "GEMINI",
-                modelId,
+                served.modelId(),
+                entity.getMethod(),
                 entity.getId(),
                 msSince(t0),
                 tok.promptTok(),
@@ -269,4 +301,8 @@ public class GeminiPhotoAlbumProcessor implements GeminiModeProcessor {
         String s = v.asText(null);
         return (s == null || s.isBlank()) ? null : s.trim();
     }
+
+    /** 實際回應的 model（hedge 勝出時是 LOW tier）與 hedge 決策 */
+    private record Served(String modelId, GeminiHedgedCaller.Outcome<?> outcome) {
+    }
 }
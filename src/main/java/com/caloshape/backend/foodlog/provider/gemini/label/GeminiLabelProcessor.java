@@ -2,15 +2,17 @@ package com.caloshape.backend.foodlog.provider.gemini.label;
 
 import com.caloshape.backend.foodlog.provider.routing.AiModelTierRouter;
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
+import com.caloshape.backend.foodlog.image.FoodImagePreprocessor;
 import com.caloshape.backend.foodlog.provider.support.ProviderErrorMapper;
 import com.caloshape.backend.foodlog.model.ModelMode;
 import com.caloshape.backend.foodlog.provider.gemini.support.GeminiEffectiveJsonSupport;
 import com.caloshape.backend.foodlog.provider.gemini.support.GeminiJsonParsingSupport;
 import com.caloshape.backend.foodlog.provider.gemini.spi.GeminiModeProcessor;
 import com.caloshape.backend.foodlog.provider.gemini.routing.GeminiVisionRoutePolicy;
-import com.caloshape.backend.foodlog.image.ImageMimeResolver;
 import com.caloshape.backend.foodlog.provider.gemini.config.GeminiEnabledComponent;
 import com.caloshape.backend.foodlog.provider.prompt.GeminiPromptFactory;
+import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiHedgedCaller;
+import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiInlineImage;
 import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiTransportSupport;
 import com.caloshape.backend.foodlog.quota.model.ModelTier;
 import com.caloshape.backend.foodlog.storage.StorageService;
@@ -24,7 +26,6 @@ import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.InputStream;
 import java.util.Locale;
 
 @Slf4j
@@ -39,6 +40,8 @@ public class GeminiLabelProcessor implements GeminiModeProcessor {
     private final GeminiLabelFallbackSupport labelFallbackSupport;
     private final GeminiTransportSupport transportSupport;
     private final GeminiPromptFactory promptFactory;
+    private final FoodImagePreprocessor imagePreprocessor;
+    private final GeminiHedgedCaller hedgedCaller;
 
     public GeminiLabelProcessor(
             ObjectMapper om,
@@ -46,8 +49,12 @@ public class GeminiLabelProcessor implements GeminiModeProcessor {
             AiModelTierRouter modelRouter,
             GeminiJsonParsingSupport jsonParsingSupport,
             GeminiTransportSupport transportSupport,
-            GeminiPromptFactory promptFactory
+            GeminiPromptFactory promptFactory,
+            FoodImagePreprocessor imagePreprocessor,
+            GeminiHedgedCaller hedgedCaller
     ) {
+        this.imagePreprocessor = imagePreprocessor;
+        this.hedgedCaller = hedgedCaller;
         this.om = om;
         this.telemetry = telemetry;
         this.modelRouter = modelRouter;
@@ -68,21 +75,6 @@ public class GeminiLabelProcessor implements GeminiModeProcessor {
         String modelId = null;
 
         try {
-            byte[] bytes;
-            try (InputStream in = storage.open(entity.getImageObjectKey()).inputStream()) {
-                bytes = in.readAllBytes();
-            }
-            if (bytes.length == 0) {
-                throw new IllegalStateException("EMPTY_IMAGE");
-            }
-
-            String mime = ImageMimeResolver.resolveOrDefault(entity.getImageContentType(), bytes);
-
-            if (entity.getImageContentType() == null || entity.getImageContentType().isBlank()) {
-                log.warn("image_content_type_missing_resolved foodLogId={} resolvedMime={}",
-                        entity.getId(), mime);
-            }
-
             log.info(
                     "label_route_policy foodLogId={} method={} maxGeminiCalls={}",
                     entity.getId(),
@@ -96,7 +88,15 @@ public class GeminiLabelProcessor implements GeminiModeProcessor {
             log.info("gemini_call_1_main_start foodLogId={} method={} modelId={}",
                     entity.getId(), entity.getMethod(), modelId);
 
-            CallResult r1 = callAndExtract(bytes, mime, promptMain, modelId, entity.getId());
+            GeminiHedgedCaller.Outcome<CallResult> outcome = hedgedCaller.call(
+                    resolveTierFromDegradeLevel(entity.getDegradeLevel()),
+                    ModelMode.VISION,
+                    entity.getId(),
+                    mid -> callOnce(entity, storage, promptMain, mid),
+                    this::isUsableLabelResult
+            );
+            CallResult r1 = outcome.value();
+            modelId = outcome.modelId();
             Tok tok = r1.tok();
 
             JsonNode parsed = (r1.functionArgs() != null) ? r1.functionArgs() : tryParseJson(r1.text());
@@ -149,14 +149,14 @@ public class GeminiLabelProcessor implements GeminiModeProcessor {
                 // provider 明確回 no-label
                 if (hasWarning(raw, FoodLogWarning.NO_LABEL_DETECTED.name())) {
                     ObjectNode effective = normalizeToEffective(raw);
-                    return okAndReturn(modelId, entity, t0, tok, raw, effective);
+                    return okAndReturn(modelId, outcome, entity, t0, tok, raw, effective);
                 }
 
                 // 空殼 / 幾乎無內容
                 if (isLabelEmptyArgs(raw)) {
                     raw = fallbackLabelPartialDetected(r1.text());
                     ObjectNode effective = normalizeToEffective(raw);
-                    return okAndReturn(modelId, entity, t0, tok, raw, effective);
+                    return okAndReturn(modelId, outcome, entity, t0, tok, raw, effective);
                 }
 
                 if (isLabelIncomplete(raw)) {
@@ -165,11 +165,11 @@ public class GeminiLabelProcessor implements GeminiModeProcessor {
 
                     // ✅ 不再強行覆蓋 confidence，保留 Gemini 原值；若沒有就維持 null
                     ObjectNode effective = normalizeToEffective(raw);
-                    return okAndReturn(modelId, entity, t0, tok, raw, effective);
+                    return okAndReturn(modelId, outcome, entity, t0, tok, raw, effective);
                 }
 
                 ObjectNode effective = normalizeToEffective(raw);
-                return okAndReturn(modelId, entity, t0, tok, raw, effective);
+                return okAndReturn(modelId, outcome, entity, t0, tok, raw, effective);
             }
 
             // 完全 parse 不出來時的 deterministic fallback
@@ -182,11 +182,11 @@ public class GeminiLabelProcessor implements GeminiModeProcessor {
             }
 
             ObjectNode effective = normalizeToEffective(raw);
-            return okAndReturn(modelId, entity, t0, tok, raw, effective);
+            return okAndReturn(modelId, outcome, entity, t0, tok, raw, effective);
 
         } catch (Exception e) {
             ProviderErrorMapper.Mapped mapped = ProviderErrorMapper.map(e);
-            telemetry.fail("GEMINI", modelId, entity.getId(), msSince(t0), mapped.code(), mapped.retryAfterSec());
+            telemetry.fail("GEMINI", modelId, entity.getMethod(), entity.getId(), msSince(t0), mapped.code(), mapped.retryAfterSec());
             throw e;
         }
     }
@@ -235,17 +235,48 @@ public class GeminiLabelProcessor implements GeminiModeProcessor {
         GeminiLabelFallbackSupport.addWarningIfMissing(raw, w);
     }
 
+    private CallResult callOnce(
+            FoodLogEntity entity,
+            StorageService storage,
+            String promptMain,
+            String modelId
+    ) throws Exception {
+        StorageService.OpenResult opened = imagePreprocessor.open(entity, storage, true);
+
+        try (GeminiInlineImage image = GeminiInlineImage.open(opened.inputStream(), opened.contentType())) {
+            if (image.isEmpty()) {
+                throw new IllegalStateException("EMPTY_IMAGE");
+            }
+
+            if (entity.getImageContentType() == null || entity.getImageContentType().isBlank()) {
+                log.warn("image_content_type_missing_resolved foodLogId={} resolvedMime={}",
+                        entity.getId(), image.mimeType());
+            }
+
+            return callAndExtract(image, promptMain, modelId, entity.getId());
+        }
+    }
+
+    /**
+     * hedge 競賽時「可用」的定義：functionArgs / JSON / 本地 repair 任一能拿到 object。
+     * 只回純文字（之後只能走 deterministic fallback）的結果不算可用，會繼續等另一發。
+     */
+    private boolean isUsableLabelResult(CallResult r) {
+        if (r.functionArgs() != null) return true;
+        JsonNode parsed = unwrapRootObjectOrNull(tryParseJson(r.text()));
+        if (parsed != null && parsed.isObject()) return true;
+        return GeminiLabelJsonRepairUtil.repairOrExtract(om, r.text(), true) != null;
+    }
+
     private CallResult callAndExtract(
-            byte[] imageBytes,
-            String mimeType,
+            GeminiInlineImage image,
             String userPrompt,
             String modelId,
             String foodLogIdForLog
     ) {
         GeminiTransportSupport.CallResult r =
                 transportSupport.callAndExtract(
-                        imageBytes,
-                        mimeType,
+                        image,
                         userPrompt,
                         modelId,
                         true,
@@ -297,6 +328,7 @@ public class GeminiLabelProcessor implements GeminiModeProcessor {
 
     private ProviderClient.ProviderResult okAndReturn(
             String modelIdForTelemetry,
+            GeminiHedgedCaller.Outcome<?> outcome,
             FoodLogEntity entity,
             long t0,
             Tok tok,
@@ -307,10 +339,12 @@ public class GeminiLabelProcessor implements GeminiModeProcessor {
         normalizeWholePackageQuantity(effective);
         normalizeLabelFoodName(effective);
         sanitizeLabelWarnings(effective);
+        outcome.annotate(effective);
 
         telemetry.ok(
                 "GEMINI",
                 modelIdForTelemetry,
+                entity.getMethod(),
                 entity.getId(),
                 msSince(t0),
                 tok.promptTok(),
@@ -21,6 +21,7 @@ public final class GeminiVisionRoutePolicy {
      * - 一律只允許 1 次 Gemini
      * - 不允許 text-repair second pass
      * - 不允許 OFF fallback
+     * - 例外：GeminiHedgedCaller 的 hedge 是同時送出的 LOW tier 備援（非重試），受 hedge budget 限制
      * BARCODE：
      * - 不在 GeminiProviderClient 內處理
      * - 仍由 FoodLogService#createBarcodeMvp() 走 OFF
@@ -0,0 +1,356 @@
+package com.caloshape.backend.foodlog.provider.gemini.transport;
+
+import com.caloshape.backend.foodlog.model.ModelMode;
+import com.caloshape.backend.foodlog.provider.gemini.config.GeminiEnabledComponent;
+import com.caloshape.backend.foodlog.provider.gemini.config.GeminiProperties;
+import com.caloshape.backend.foodlog.provider.routing.AiModelTierRouter;
+import com.caloshape.backend.foodlog.provider.spi.ProviderCallDeadline;
+import com.caloshape.backend.foodlog.provider.spi.ProviderHedgeGate;
+import com.caloshape.backend.foodlog.provider.support.LatencyPercentileTracker;
+import com.caloshape.backend.foodlog.provider.support.ProviderTelemetry;
+import com.caloshape.backend.foodlog.quota.model.ModelTier;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * Deadline-aware + hedged Gemini 呼叫。
+ *
+ * 1. 主請求用 entity 的 tier；整體受 ProviderCallDeadline 限制，到期就取消並以 TimeoutException 結束
+ *    （ProviderErrorMapper → PROVIDER_TIMEOUT），不再一律等滿 read timeout
+ * 2. 只有 MODEL_TIER_HIGH 會 hedge：主請求超過該 model 學到的 p95 還沒回來，補打一發 MODEL_TIER_LOW
+ * 3. 兩發誰先回來「且結果可用」就用誰，另一發直接取消；都不可用時以主請求為準（沿用原本的 fallback 流程）
+ * 4. hedge 受 token budget 限制（見 GeminiProperties.Hedge），長期多打的比例有上限
+ * 5. hedge 那一發跟主請求一樣要拿 provider 名額（ProviderHedgeGate：LOW tier lease + health admission），
+ *    拿不到就不 hedge，只等主請求；結果回報給 health，名額在本次呼叫結束時歸還
+ *
+ * 決策寫進 effective.aiMeta（hedgeDecision / servedModelTier / servedModelId / hedgeAfterMs）
+ * 與 ProviderTelemetry；沒有觸發 hedge 的請求不寫 aiMeta，effective 與原本完全相同。
+ */
+@Slf4j
+@GeminiEnabledComponent
+public class GeminiHedgedCaller {
+
+    public enum Decision {
+        /** 不符合 hedge 條件（非 HIGH tier / 關閉 / LOW 與 HIGH 同 model） */
+        NOT_ELIGIBLE,
+        /** 主請求在 hedge 門檻內回來 */
+        NOT_NEEDED,
+        /** 超過門檻但 budget 不足，只等主請求 */
+        SKIPPED_BUDGET,
+        /** 超過門檻但 LOW tier 沒有 provider 名額（滿了 / breaker 不放行），只等主請求 */
+        SKIPPED_CAPACITY,
+        HEDGED_PRIMARY_WON,
+        HEDGED_HEDGE_WON
+    }
+
+    /**
+     * 單次呼叫：在呼叫端提供的 thread 上開圖、送出、解析；每一發都會各自開一次圖。
+     */
+    @FunctionalInterface
+    public interface Attempt<T> {
+        T call(String modelId) throws Exception;
+    }
+
+    public record Outcome<T>(
+            T value,
+            String modelId,
+            ModelTier tier,
+            Decision decision,
+            long hedgeAfterMs
+    ) {
+        /** 有送出 / 考慮過 hedge 才寫；NOT_ELIGIBLE / NOT_NEEDED 不動 effective */
+        public void annotate(ObjectNode effective) {
+            if (effective == null) return;
+            if (decision == Decision.NOT_ELIGIBLE || decision == Decision.NOT_NEEDED) return;
+
+            JsonNode existing = effective.get("aiMeta");
+            ObjectNode aiMeta = (existing instanceof ObjectNode o) ? o : effective.putObject("aiMeta");
+            aiMeta.put("hedgeDecision", decision.name());
+            aiMeta.put("servedModelTier", tier.name());
+            aiMeta.put("servedModelId", modelId);
+            aiMeta.put("hedgeAfterMs", hedgeAfterMs);
+        }
+    }
+
+    private enum Role { PRIMARY, HEDGE }
+
+    private record Finished<T>(Role role, T value, Exception error, long latencyMs) {
+        boolean ok() {
+            return error == null;
+        }
+    }
+
+    private final GeminiProperties.Hedge props;
+    private final AiModelTierRouter modelRouter;
+    private final ProviderTelemetry telemetry;
+    private final LatencyPercentileTracker latencies;
+    private final HedgeBudget budget;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public GeminiHedgedCaller(
+            GeminiProperties props,
+            AiModelTierRouter modelRouter,
+            ProviderTelemetry telemetry
+    ) {
+        this.props = props.getHedge();
+        this.modelRouter = modelRouter;
+        this.telemetry = telemetry;
+        this.latencies = new LatencyPercentileTracker(this.props.getWindow());
+        this.budget = new HedgeBudget(this.props.getBudgetRatio(), this.props.getBudgetBurst());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public <T> Outcome<T> call(
+            ModelTier primaryTier,
+            ModelMode mode,
+            String foodLogId,
+            Attempt<T> attempt,
+            Predicate<T> usable
+    ) throws Exception {
+        ProviderCallDeadline deadline = ProviderCallDeadline.currentOrNull();
+        ProviderHedgeGate gate = ProviderHedgeGate.currentOrNull();
+        String primaryModelId = modelRouter.resolveOrThrow(primaryTier, mode).modelId();
+        String hedgeModelId = hedgeModelIdOrNull(primaryTier, mode, primaryModelId);
+
+        if (hedgeModelId == null && deadline == null) {
+            // 沒有截止時間也不 hedge：直接在呼叫端 thread 跑，行為與原本單發相同
+            return new Outcome<>(attempt.call(primaryModelId), primaryModelId, primaryTier, Decision.NOT_ELIGIBLE, -1L);
+        }
+
+        long t0 = System.nanoTime();
+        CompletionService<Finished<T>> cs = new ExecutorCompletionService<>(executor);
+        Future<Finished<T>> primary = cs.submit(() -> run(Role.PRIMARY, attempt, primaryModelId));
+        Future<Finished<T>> hedge = null;
+        ProviderHedgeGate.Permit hedgePermit = null;
+
+        budget.onPrimary();
+        long hedgeAfterMs = (hedgeModelId == null) ? -1L : hedgeDelayMs(primaryModelId);
+
+        try {
+            Finished<T> first = (hedgeAfterMs < 0)
+                    ? pollUntilDeadline(cs, deadline, Long.MAX_VALUE)
+                    : pollUntilDeadline(cs, deadline, hedgeAfterMs);
+
+            if (first != null) {
+                latencies.record(primaryModelId, first.latencyMs());
+                Decision d = (hedgeAfterMs < 0) ? Decision.NOT_ELIGIBLE : Decision.NOT_NEEDED;
+                return outcomeOrThrow(first, primaryTier, primaryModelId, d, hedgeAfterMs);
+            }
+
+            // 超過 hedge 門檻（或已到截止時間）
+            if (deadline != null && deadline.expired()) {
+                throw deadlineExceeded(primaryModelId, t0);
+            }
+
+            Decision skipped = null;
+            if (!budget.tryAcquire()) {
+                skipped = Decision.SKIPPED_BUDGET;
+            } else if (gate != null) {
+                hedgePermit = gate.tryAcquire(ModelTier.MODEL_TIER_LOW);
+                if (hedgePermit == null) {
+                    budget.refund();
+                    skipped = Decision.SKIPPED_CAPACITY;
+                }
+            }
+
+            if (skipped != null) {
+                telemetry.hedge("GEMINI", foodLogId, skipped.name(),
+                        primaryModelId, hedgeModelId, hedgeAfterMs, msSince(t0));
+                Finished<T> only = pollUntilDeadline(cs, deadline, Long.MAX_VALUE);
+                if (only == null) throw deadlineExceeded(primaryModelId, t0);
+                latencies.record(primaryModelId, only.latencyMs());
+                return outcomeOrThrow(only, primaryTier, primaryModelId, skipped, hedgeAfterMs);
+            }
+
+            hedge = cs.submit(() -> run(Role.HEDGE, attempt, hedgeModelId));
+            log.info("gemini_hedge_sent foodLogId={} primaryModelId={} hedgeModelId={} hedgeAfterMs={}",
+                    foodLogId, primaryModelId, hedgeModelId, hedgeAfterMs);
+
+            return race(cs, deadline, usable, hedgePermit, primaryTier, primaryModelId, hedgeModelId, hedgeAfterMs, foodLogId, t0);
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) hedge.cancel(true);
+            if (hedgePermit != null) hedgePermit.close();
+        }
+    }
+
+    private <T> Outcome<T> race(
+            CompletionService<Finished<T>> cs,
+            ProviderCallDeadline deadline,
+            Predicate<T> usable,
+            ProviderHedgeGate.Permit hedgePermit,
+            ModelTier primaryTier,
+            String primaryModelId,
+            String hedgeModelId,
+            long hedgeAfterMs,
+            String foodLogId,
+            long t0
+    ) throws Exception {
+        Finished<T> primaryDone = null;
+        Finished<T> hedgeDone = null;
+
+        for (int pending = 2; pending > 0; pending--) {
+            Finished<T> f = pollUntilDeadline(cs, deadline, Long.MAX_VALUE);
+            if (f == null) {
+                if (primaryDone == null) latencies.record(primaryModelId, msSince(t0));
+                telemetry.hedge("GEMINI", foodLogId, "DEADLINE_EXCEEDED",
+                        primaryModelId, hedgeModelId, hedgeAfterMs, msSince(t0));
+                throw deadlineExceeded(primaryModelId, t0);
+            }
+
+            if (f.role() == Role.PRIMARY) {
+                primaryDone = f;
+                latencies.record(primaryModelId, f.latencyMs());
+            } else {
+                hedgeDone = f;
+                reportHedge(hedgePermit, f);
+            }
+
+            if (f.ok() && usable.test(f.value())) {
+                Decision d = (f.role() == Role.PRIMARY) ? Decision.HEDGED_PRIMARY_WON : Decision.HEDGED_HEDGE_WON;
+                if (f.role() == Role.HEDGE && primaryDone == null) {
+                    // 主請求被放棄：以目前已等的時間當下限記錄，避免尾端樣本整個消失讓 p95 越學越低
+                    latencies.record(primaryModelId, msSince(t0));
+                }
+                telemetry.hedge("GEMINI", foodLogId, d.name(),
+                        primaryModelId, hedgeModelId, hedgeAfterMs, msSince(t0));
+                return (f.role() == Role.PRIMARY)
+                        ? new Outcome<>(f.value(), primaryModelId, primaryTier, d, hedgeAfterMs)
+                        : new Outcome<>(f.value(), hedgeModelId, ModelTier.MODEL_TIER_LOW, d, hedgeAfterMs);
+            }
+        }
+
+        // 兩發都結束但沒有可用結果：主請求優先（成功但不可用 → 交給原本的 fallback；失敗 → 丟主請求的錯）
+        telemetry.hedge("GEMINI", foodLogId, "NO_USABLE_RESULT",
+                primaryModelId, hedgeModelId, hedgeAfterMs, msSince(t0));
+        if (primaryDone.ok()) {
+            return new Outcome<>(primaryDone.value(), primaryModelId, primaryTier, Decision.HEDGED_PRIMARY_WON, hedgeAfterMs);
+        }
+        if (hedgeDone.ok()) {
+            return new Outcome<>(hedgeDone.value(), hedgeModelId, ModelTier.MODEL_TIER_LOW, Decision.HEDGED_HEDGE_WON, hedgeAfterMs);
+        }
+        throw primaryDone.error();
+    }
+
+    /** 只回報真的跑完的 hedge；被取消的那一發由 permit.close() 還名額、不計入 health */
+    private static void reportHedge(ProviderHedgeGate.Permit permit, Finished<?> f) {
+        if (permit == null) return;
+        if (f.ok()) permit.onSuccess(f.latencyMs());
+        else permit.onFailure(f.error());
+    }
+
+    private <T> Outcome<T> outcomeOrThrow(
+            Finished<T> f,
+            ModelTier tier,
+            String modelId,
+            Decision decision,
+            long hedgeAfterMs
+    ) throws Exception {
+        if (!f.ok()) throw f.error();
+        return new Outcome<>(f.value(), modelId, tier, decision, hedgeAfterMs);
+    }
+
+    /**
+     * @return null = 等到 min(waitMs, 截止時間) 都沒有結果
+     */
+    private static <T> Finished<T> pollUntilDeadline(
+            CompletionService<Finished<T>> cs,
+            ProviderCallDeadline deadline,
+            long waitMs
+    ) throws Exception {
+        long waitNanos = (waitMs == Long.MAX_VALUE) ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(waitMs);
+        if (deadline != null) {
+            waitNanos = Math.min(waitNanos, deadline.remainingNanos());
+        }
+
+        Future<Finished<T>> f = (waitNanos == Long.MAX_VALUE)
+                ? cs.take()
+                : cs.poll(waitNanos, TimeUnit.NANOSECONDS);
+        return (f == null) ? null : f.get();
+    }
+
+    private static <T> Finished<T> run(Role role, Attempt<T> attempt, String modelId) {
+        long start = System.nanoTime();
+        try {
+            return new Finished<>(role, attempt.call(modelId), null, msSince(start));
+        } catch (Exception e) {
+            return new Finished<>(role, null, e, msSince(start));
+        }
+    }
+
+    private String hedgeModelIdOrNull(ModelTier primaryTier, ModelMode mode, String primaryModelId) {
+        if (!props.isEnabled() || primaryTier != ModelTier.MODEL_TIER_HIGH) return null;
+        try {
+            String low = modelRouter.resolveOrThrow(ModelTier.MODEL_TIER_LOW, mode).modelId();
+            return (low == null || low.equals(primaryModelId)) ? null : low;
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    long hedgeDelayMs(String primaryModelId) {
+        long min = props.getMinDelay().toMillis();
+        long max = Math.max(min, props.getMaxDelay().toMillis());
+        long learned = latencies
+                .percentile(primaryModelId, props.getPercentile(), props.getMinSamples())
+                .orElse(props.getInitialDelay().toMillis());
+        return Math.max(min, Math.min(max, learned));
+    }
+
+    void recordLatency(String modelId, long latencyMs) {
+        latencies.record(modelId, latencyMs);
+    }
+
+    private static TimeoutException deadlineExceeded(String modelId, long t0) {
+        return new TimeoutException("PROVIDER_DEADLINE_EXCEEDED modelId=" + modelId + " elapsedMs=" + msSince(t0));
+    }
+
+    private static long msSince(long t0) {
+        return (System.nanoTime() - t0) / 1_000_000;
+    }
+
+    /**
+     * 每發主請求累積 ratio 個 token，hedge 花 1 個，上限 burst。
+     */
+    static final class HedgeBudget {
+        private final double ratio;
+        private final double burst;
+        private double tokens;
+
+        HedgeBudget(double ratio, double burst) {
+            this.ratio = Math.max(0d, ratio);
+            this.burst = Math.max(1d, burst);
+            this.tokens = 1d;
+        }
+
+        synchronized void onPrimary() {
+            tokens = Math.min(burst, tokens + ratio);
+        }
+
+        synchronized boolean tryAcquire() {
+            if (tokens < 1d) return false;
+            tokens -= 1d;
+            return true;
+        }
+
+        /** 拿了 token 但沒有送出 hedge */
+        synchronized void refund() {
+            tokens = Math.min(burst, tokens + 1d);
+        }
+    }
+}
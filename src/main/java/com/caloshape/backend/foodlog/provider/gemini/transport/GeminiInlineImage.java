@@ -0,0 +1,84 @@
+package com.caloshape.backend.foodlog.provider.gemini.transport;
+
+import com.caloshape.backend.foodlog.image.ImageMimeResolver;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 送往 Gemini 的 inlineData 圖片來源（串流版）。
+ * - 只先讀前面幾個 bytes 做 MIME sniff / 空檔判斷
+ * - 序列化 request body 時才邊讀邊 base64 寫進 HTTP body
+ * 不論圖片多大，每個 in-flight call 只佔固定大小的 buffer，不會再有 raw / base64 / body 三份副本。
+ * 串流只能讀一次：一個 instance 對應一次 Gemini 呼叫。
+ */
+public final class GeminiInlineImage implements JsonSerializable, Closeable {
+
+    /** WebP 需要看到 offset 8..11 */
+    private static final int SNIFF_BYTES = 16;
+
+    private final InputStream in;
+    private final byte[] head;
+    private final String mimeType;
+
+    private boolean consumed;
+
+    private GeminiInlineImage(InputStream in, byte[] head, String mimeType) {
+        this.in = in;
+        this.head = head;
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * 包住 storage 開出來的串流（所有權轉給本物件，close 時一併關閉）。
+     *
+     * @param storedMime entity 上記錄的 content-type；缺失時從檔頭 sniff
+     */
+    public static GeminiInlineImage open(InputStream raw, String storedMime) throws IOException {
+        BufferedInputStream in = (raw instanceof BufferedInputStream b) ? b : new BufferedInputStream(raw);
+        try {
+            in.mark(SNIFF_BYTES);
+            byte[] head = in.readNBytes(SNIFF_BYTES);
+            in.reset();
+            return new GeminiInlineImage(in, head, ImageMimeResolver.resolveOrDefault(storedMime, head));
+        } catch (IOException | RuntimeException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    public boolean isEmpty() {
+        return head.length == 0;
+    }
+
+    public String mimeType() {
+        return mimeType;
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        if (consumed) {
+            throw new IllegalStateException("GEMINI_INLINE_IMAGE_ALREADY_CONSUMED");
+        }
+        consumed = true;
+        // dataLength = -1：長度未知，Jackson 以固定 buffer 邊讀邊編碼
+        gen.writeBinary(in, -1);
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+            throws IOException {
+        serialize(gen, serializers);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -4,32 +4,74 @@ import com.caloshape.backend.foodlog.provider.gemini.config.GeminiEnabledCompone
 import com.caloshape.backend.foodlog.provider.gemini.config.GeminiProperties;
 import com.caloshape.backend.foodlog.unit.NutritionBasis;
 import com.caloshape.backend.foodlog.unit.QuantityUnit;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
-import java.util.Base64;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
 
 @GeminiEnabledComponent
 public final class GeminiRequestBuilder {
 
+    static final String FN_EMIT_NUTRITION = "emitNutrition";
+
     private final ObjectMapper om;
     private final GeminiProperties props;
+    private final ObjectWriter requestWriter;
+    private final String photoRequestVersion;
+    private final String labelRequestVersion;
 
     public GeminiRequestBuilder(ObjectMapper om, GeminiProperties props) {
         this.om = om;
         this.props = props;
+        this.requestWriter = om.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.photoRequestVersion = fingerprint(buildTemplate(false, FN_EMIT_NUTRITION));
+        this.labelRequestVersion = fingerprint(buildTemplate(true, FN_EMIT_NUTRITION));
+    }
+
+    /**
+     * request 中 prompt / 圖片以外部分（system instruction、function schema、generation 設定）的指紋，
+     * 給跨使用者結果快取對齊：schema 或 tuning 改了，舊結果自動不共用。
+     */
+    public String requestVersion(boolean isLabel) {
+        return isLabel ? labelRequestVersion : photoRequestVersion;
     }
 
+    /**
+     * 圖片以 POJO node 掛在 inlineData.data：序列化時才從串流 base64 寫出，不先組成字串。
+     */
     ObjectNode buildRequest(
-            byte[] imageBytes,
-            String mimeType,
+            GeminiInlineImage image,
             String userPrompt,
             boolean isLabel,
             String functionName
     ) {
-        String b64 = Base64.getEncoder().encodeToString(imageBytes);
+        ObjectNode root = buildTemplate(isLabel, functionName);
+
+        ArrayNode contents = root.putArray("contents");
+        ObjectNode c0 = contents.addObject();
+        c0.put("role", "user");
+
+        ArrayNode parts = c0.putArray("parts");
+        parts.addObject().put("text", userPrompt);
+
+        ObjectNode imgPart = parts.addObject();
+        ObjectNode inline = imgPart.putObject("inlineData");
+        inline.put("mimeType", image.mimeType());
+        inline.putPOJO("data", image);
+
+        return root;
+    }
+
+    private ObjectNode buildTemplate(boolean isLabel, String functionName) {
         ObjectNode root = om.createObjectNode();
 
         ObjectNode sys = root.putObject("systemInstruction");
@@ -46,18 +88,6 @@ public final class GeminiRequestBuilder {
                     .put("text", "You MUST call function " + functionName + " with arguments only. Do NOT output any text.");
         }
 
-        ArrayNode contents = root.putArray("contents");
-        ObjectNode c0 = contents.addObject();
-        c0.put("role", "user");
-
-        ArrayNode parts = c0.putArray("parts");
-        parts.addObject().put("text", userPrompt);
-
-        ObjectNode imgPart = parts.addObject();
-        ObjectNode inline = imgPart.putObject("inlineData");
-        inline.put("mimeType", mimeType);
-        inline.put("data", b64);
-
         ObjectNode gen = root.putObject("generationConfig");
 
         // LABEL + JSON mode
@@ -106,6 +136,23 @@ public final class GeminiRequestBuilder {
         return root;
     }
 
+    /**
+     * 直接把 request 寫進 HTTP body 串流；不關閉 out（交給 HTTP client 收尾）。
+     */
+    void writeRequest(ObjectNode req, OutputStream out) throws IOException {
+        requestWriter.writeValue(out, req);
+    }
+
+    private static String fingerprint(ObjectNode template) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(template.toString().getBytes(StandardCharsets.UTF_8));
+            return "r-" + HexFormat.of().formatHex(digest).substring(0, 16);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 unavailable", ex);
+        }
+    }
+
     private ObjectNode nutritionFnSchemaPhotoMain() {
         ObjectNode root = om.createObjectNode();
         root.put("type", "OBJECT");
@@ -23,8 +23,6 @@ import org.springframework.web.client.RestClientResponseException;
 @GeminiEnabledComponent
 public final class GeminiTransportSupport {
 
-    private static final String FN_EMIT_NUTRITION = "emitNutrition";
-
     private final RestClient http;
     private final GeminiProperties props;
     private final GeminiRequestBuilder requestBuilder;
@@ -39,9 +37,11 @@ public final class GeminiTransportSupport {
         this.requestBuilder = requestBuilder;
     }
 
+    /**
+     * @param image 呼叫端負責 close（通常包在 try-with-resources 內）
+     */
     public CallResult callAndExtract(
-            byte[] imageBytes,
-            String mimeType,
+            GeminiInlineImage image,
             String userPrompt,
             String modelId,
             boolean isLabel,
@@ -49,7 +49,7 @@ public final class GeminiTransportSupport {
     ) {
         JsonNode resp;
         try {
-            resp = callGenerateContent(imageBytes, mimeType, userPrompt, modelId, isLabel);
+            resp = callGenerateContent(image, userPrompt, modelId, isLabel);
         } catch (RestClientResponseException re) {
             ProviderErrorMapper.Mapped mapped = ProviderErrorMapper.map(re);
             ProviderRefuseReason reason = ProviderRefuseReason.fromErrorCodeOrNull(mapped.code());
@@ -95,20 +95,19 @@ public final class GeminiTransportSupport {
     /**
      * ✅ 保留原本 image request 路徑
      * PHOTO / ALBUM / LABEL 主流程都靠這個方法送圖給 Gemini。
+     * body 以串流寫出（長度未知 -> chunked），圖片邊讀邊 base64，不在 heap 組整包 request。
      */
     private JsonNode callGenerateContent(
-            byte[] imageBytes,
-            String mimeType,
+            GeminiInlineImage image,
             String userPrompt,
             String modelId,
             boolean isLabel
     ) {
         ObjectNode req = requestBuilder.buildRequest(
-                imageBytes,
-                mimeType,
+                image,
                 userPrompt,
                 isLabel,
-                FN_EMIT_NUTRITION
+                GeminiRequestBuilder.FN_EMIT_NUTRITION
         );
 
         return http.post()
@@ -116,7 +115,7 @@ public final class GeminiTransportSupport {
                 .header("x-goog-api-key", requireApiKey())
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
-                .body(req)
+                .body(out -> requestBuilder.writeRequest(req, out))
                 .retrieve()
                 .body(JsonNode.class);
     }
@@ -5,6 +5,10 @@ import com.caloshape.backend.foodlog.unit.NutritionBasis;
 import com.caloshape.backend.foodlog.unit.QuantityUnit;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.stream.Collectors;
 
 @Component
@@ -586,7 +590,29 @@ public final class GeminiPromptFactory {
             - "warnings": Use strings from this set: [%s].
             """.formatted(ALLOWED_UNITS, ALLOWED_BASES, ALLOWED_WARNINGS);
 
+    /**
+     * 兩份 prompt 內容的指紋：prompt 一改，跨使用者的結果快取就自動換一組 key。
+     */
+    private static final String PROMPT_VERSION = fingerprint(USER_PROMPT_MAIN, USER_PROMPT_LABEL_MAIN);
+
     public String mainPrompt(boolean isLabel) {
         return isLabel ? USER_PROMPT_LABEL_MAIN : USER_PROMPT_MAIN;
     }
+
+    public String promptVersion() {
+        return PROMPT_VERSION;
+    }
+
+    private static String fingerprint(String... prompts) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (String p : prompts) {
+                md.update(p.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            return "p-" + HexFormat.of().formatHex(md.digest()).substring(0, 16);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 unavailable", ex);
+        }
+    }
 }
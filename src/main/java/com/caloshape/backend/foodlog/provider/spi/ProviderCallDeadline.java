@@ -0,0 +1,69 @@
+package com.caloshape.backend.foodlog.provider.spi;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 單一任務呼叫 provider 的截止時間（由 FoodLogTaskWorker 設定）。
+ *
+ * 用 thread-bound holder 帶進 ProviderClient / processor，不改 ProviderClient.process 簽章：
+ * - worker：try (var ignored = ProviderCallDeadline.open(budget)) { client.process(...) }
+ * - processor：ProviderCallDeadline.currentOrNull()；null = 沒有截止時間（舊行為，只靠 read timeout）
+ * 只在呼叫端 thread 可見；要丟到別的 thread 跑時，先在呼叫端取出再傳過去。
+ */
+public final class ProviderCallDeadline {
+
+    private static final ThreadLocal<ProviderCallDeadline> CURRENT = new ThreadLocal<>();
+    private static final Scope NOOP = () -> { };
+
+    private final long deadlineNanos;
+
+    private ProviderCallDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 從現在起算 budget；budget 為 null / 非正數時不設截止時間。
+     * 巢狀 open 取較早的那個，close 時還原外層。
+     */
+    public static Scope open(Duration budget) {
+        if (budget == null || budget.isZero() || budget.isNegative()) {
+            return NOOP;
+        }
+
+        ProviderCallDeadline outer = CURRENT.get();
+        ProviderCallDeadline inner = new ProviderCallDeadline(System.nanoTime() + budget.toNanos());
+        if (outer != null && outer.remainingNanos() < inner.remainingNanos()) {
+            inner = outer;
+        }
+
+        CURRENT.set(inner);
+        return () -> {
+            if (outer == null) CURRENT.remove();
+            else CURRENT.set(outer);
+        };
+    }
+
+    public static ProviderCallDeadline currentOrNull() {
+        return CURRENT.get();
+    }
+
+    /** 剩餘時間（奈秒）；已過期回 0 */
+    public long remainingNanos() {
+        return Math.max(0L, deadlineNanos - System.nanoTime());
+    }
+
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(remainingNanos());
+    }
+
+    public boolean expired() {
+        return remainingNanos() == 0L;
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
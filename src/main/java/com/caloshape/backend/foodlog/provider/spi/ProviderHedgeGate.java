@@ -0,0 +1,65 @@
+package com.caloshape.backend.foodlog.provider.spi;
+
+import com.caloshape.backend.foodlog.quota.model.ModelTier;
+
+/**
+ * hedge 補打那一發的 provider 名額（由 FoodLogTaskWorker 設定）。
+ *
+ * 主請求的名額（provider / tier lease + health admission）在 worker claim 時就拿好了；
+ * hedge 是同一個任務多打的一發，也要另外拿名額，否則尖峰時 hedge 會讓 provider 同時呼叫數超過設定上限。
+ * 同 ProviderCallDeadline 用 thread-bound holder 帶進 processor：
+ * - worker：try (var ignored = ProviderHedgeGate.open(acquirer)) { client.process(...) }
+ * - GeminiHedgedCaller：在呼叫端 thread 取 currentOrNull()；null = 沒有名額控管（不經 worker 的呼叫）
+ */
+public final class ProviderHedgeGate {
+
+    private static final ThreadLocal<ProviderHedgeGate> CURRENT = new ThreadLocal<>();
+
+    @FunctionalInterface
+    public interface Acquirer {
+        /**
+         * @return 拿到名額回傳 Permit（hedge 結束一定要 close）；provider / tier 已滿或 breaker 不放行回 null
+         */
+        Permit tryAcquire(ModelTier tier);
+    }
+
+    public interface Permit extends AutoCloseable {
+        /** hedge 有回應（含內容類錯誤） */
+        void onSuccess(long latencyMs);
+
+        void onFailure(Exception error);
+
+        /** 還名額；沒回報結果（例如被取消）時不影響 adaptive limit */
+        @Override
+        void close();
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final Acquirer acquirer;
+
+    private ProviderHedgeGate(Acquirer acquirer) {
+        this.acquirer = acquirer;
+    }
+
+    public static Scope open(Acquirer acquirer) {
+        ProviderHedgeGate outer = CURRENT.get();
+        CURRENT.set(new ProviderHedgeGate(acquirer));
+        return () -> {
+            if (outer == null) CURRENT.remove();
+            else CURRENT.set(outer);
+        };
+    }
+
+    public static ProviderHedgeGate currentOrNull() {
+        return CURRENT.get();
+    }
+
+    public Permit tryAcquire(ModelTier tier) {
+        return acquirer.tryAcquire(tier);
+    }
+}
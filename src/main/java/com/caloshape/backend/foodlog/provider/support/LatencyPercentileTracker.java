@@ -0,0 +1,63 @@
+package com.caloshape.backend.foodlog.provider.support;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每個 key（通常是 modelId）最近 N 筆 latency 的滑動視窗，用來算「學到的」百分位數。
+ *
+ * - 只保留本 pod 的樣本；視窗滿了覆蓋最舊的一筆
+ * - 樣本數不足 minSamples 時回 empty，由呼叫端用預設值
+ */
+public final class LatencyPercentileTracker {
+
+    private final int window;
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    public LatencyPercentileTracker(int window) {
+        this.window = Math.max(1, window);
+    }
+
+    public void record(String key, long latencyMs) {
+        if (key == null || latencyMs < 0) return;
+        rings.computeIfAbsent(key, k -> new Ring(window)).add(latencyMs);
+    }
+
+    /**
+     * @param p 0 ~ 1，例如 0.95
+     */
+    public OptionalLong percentile(String key, double p, int minSamples) {
+        Ring r = (key == null) ? null : rings.get(key);
+        if (r == null) return OptionalLong.empty();
+
+        long[] samples = r.snapshot();
+        if (samples.length == 0 || samples.length < minSamples) return OptionalLong.empty();
+
+        Arrays.sort(samples);
+        double q = Math.min(1d, Math.max(0d, p));
+        int idx = (int) Math.ceil(q * samples.length) - 1;
+        return OptionalLong.of(samples[Math.max(0, Math.min(samples.length - 1, idx))]);
+    }
+
+    private static final class Ring {
+        private final long[] values;
+        private int next;
+        private int size;
+
+        Ring(int capacity) {
+            this.values = new long[capacity];
+        }
+
+        synchronized void add(long v) {
+            values[next] = v;
+            next = (next + 1) % values.length;
+            if (size < values.length) size++;
+        }
+
+        synchronized long[] snapshot() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
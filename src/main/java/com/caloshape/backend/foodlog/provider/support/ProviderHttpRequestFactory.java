@@ -0,0 +1,308 @@
+package com.caloshape.backend.foodlog.provider.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Provider 呼叫用的 request factory（包在真正的 transport 外面）。
+ *
+ * - 每個 host 一組 permit：同時在途的 request 不超過上限，等不到 permit 就以 timeout 失敗
+ *   （ResourceAccessException，cause 為 TimeoutException → ProviderErrorMapper 歸 PROVIDER_TIMEOUT）
+ * - permit 在 response close 時歸還；RestClient 轉換完 body 一定會 close
+ * - 可選 gzip request body；串流 body 仍是邊寫邊壓，不在 heap 組整包
+ * - 本身實作 StreamingHttpOutputMessage：不能用 RestClient interceptor，interceptor 會把 body 整包緩衝
+ *
+ * Metrics（tag: client, host）：
+ * provider.http.inflight / provider.http.waiting / provider.http.max（gauge）、
+ * provider.http.acquire（timer）、provider.http.rejected（counter）
+ *
+ * JDK HttpClient 的連線池本身不對外暴露；keep-alive 只能用 JVM 參數
+ * jdk.httpclient.keepalive.timeout / jdk.httpclient.keepalive.timeout.h2（秒）調整。
+ */
+public final class ProviderHttpRequestFactory implements ClientHttpRequestFactory {
+
+    private final ClientHttpRequestFactory delegate;
+    private final String client;
+    private final int maxConcurrentPerHost;
+    private final long acquireTimeoutNanos;
+    private final boolean gzipRequests;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, HostPermits> hosts = new ConcurrentHashMap<>();
+
+    public ProviderHttpRequestFactory(
+            ClientHttpRequestFactory delegate,
+            String client,
+            int maxConcurrentPerHost,
+            Duration acquireTimeout,
+            boolean gzipRequests,
+            MeterRegistry meterRegistry
+    ) {
+        this.delegate = delegate;
+        this.client = client;
+        this.maxConcurrentPerHost = Math.max(1, maxConcurrentPerHost);
+        this.acquireTimeoutNanos = Math.max(0L, acquireTimeout == null ? 0L : acquireTimeout.toNanos());
+        this.gzipRequests = gzipRequests;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * JDK HttpClient transport：連線重用、可選 HTTP/2（TLS ALPN 協商，不支援時退回 HTTP/1.1）。
+     */
+    public static JdkClientHttpRequestFactory jdk(Duration connectTimeout, Duration readTimeout, boolean http2) {
+        HttpClient hc = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .build();
+
+        JdkClientHttpRequestFactory rf = new JdkClientHttpRequestFactory(hc);
+        rf.setReadTimeout(readTimeout);
+        return rf;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        HostPermits permits = hosts.computeIfAbsent(hostKey(uri), this::newHostPermits);
+        return new LimitedRequest(delegate.createRequest(uri, httpMethod), permits, gzipRequests);
+    }
+
+    /** 測試 / 診斷用：目前該 host 在途的 request 數 */
+    int inFlight(String host) {
+        HostPermits p = hosts.get(host);
+        return p == null ? 0 : p.inFlight();
+    }
+
+    private HostPermits newHostPermits(String host) {
+        HostPermits p = new HostPermits(maxConcurrentPerHost);
+
+        Gauge.builder("provider.http.inflight", p, HostPermits::inFlight)
+                .tag("client", client).tag("host", host)
+                .register(meterRegistry);
+        Gauge.builder("provider.http.waiting", p.waiting, AtomicInteger::get)
+                .tag("client", client).tag("host", host)
+                .register(meterRegistry);
+        Gauge.builder("provider.http.max", p, x -> x.max)
+                .tag("client", client).tag("host", host)
+                .register(meterRegistry);
+        p.acquire = Timer.builder("provider.http.acquire")
+                .tag("client", client).tag("host", host)
+                .register(meterRegistry);
+        p.rejected = Counter.builder("provider.http.rejected")
+                .tag("client", client).tag("host", host)
+                .register(meterRegistry);
+        return p;
+    }
+
+    private static String hostKey(URI uri) {
+        String h = uri.getHost();
+        if (h == null) return "unknown";
+        return uri.getPort() < 0
+                ? h.toLowerCase(Locale.ROOT)
+                : h.toLowerCase(Locale.ROOT) + ":" + uri.getPort();
+    }
+
+    private final class HostPermits {
+        final int max;
+        final Semaphore semaphore;
+        final AtomicInteger waiting = new AtomicInteger();
+        Timer acquire;
+        Counter rejected;
+
+        HostPermits(int max) {
+            this.max = max;
+            this.semaphore = new Semaphore(max, true);
+        }
+
+        int inFlight() {
+            return max - semaphore.availablePermits();
+        }
+
+        void acquireOrThrow(URI uri) throws IOException {
+            long start = System.nanoTime();
+            boolean ok;
+            waiting.incrementAndGet();
+            try {
+                ok = semaphore.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("PROVIDER_HTTP_ACQUIRE_INTERRUPTED", ie);
+            } finally {
+                waiting.decrementAndGet();
+                acquire.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+
+            if (!ok) {
+                rejected.increment();
+                throw new IOException(
+                        "PROVIDER_HTTP_POOL_EXHAUSTED",
+                        new TimeoutException("no permit for " + hostKey(uri) + " within "
+                                             + TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos) + "ms")
+                );
+            }
+        }
+    }
+
+    private static final class LimitedRequest implements ClientHttpRequest, StreamingHttpOutputMessage {
+
+        private final ClientHttpRequest delegate;
+        private final HostPermits permits;
+        private final boolean gzip;
+        private GZIPOutputStream gzipBody;
+
+        LimitedRequest(ClientHttpRequest delegate, HostPermits permits, boolean gzip) {
+            this.delegate = delegate;
+            this.permits = permits;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return delegate.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return delegate.getURI();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return delegate.getAttributes();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            if (!gzip) return delegate.getBody();
+            if (gzipBody == null) {
+                markGzip();
+                gzipBody = new FastGzipOutputStream(delegate.getBody());
+            }
+            return gzipBody;
+        }
+
+        @Override
+        public void setBody(Body body) {
+            Body effective = gzip ? gzipped(body) : body;
+            if (gzip) markGzip();
+
+            if (delegate instanceof StreamingHttpOutputMessage streaming) {
+                streaming.setBody(effective);
+                return;
+            }
+            try {
+                effective.writeTo(delegate.getBody());
+            } catch (IOException ex) {
+                throw new IllegalStateException("Failed to write request body", ex);
+            }
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            permits.acquireOrThrow(getURI());
+            try {
+                if (gzipBody != null) gzipBody.finish();
+                return new PermitReleasingResponse(delegate.execute(), permits.semaphore);
+            } catch (IOException | RuntimeException | Error ex) {
+                permits.semaphore.release();
+                throw ex;
+            }
+        }
+
+        private void markGzip() {
+            HttpHeaders h = delegate.getHeaders();
+            h.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            h.remove(HttpHeaders.CONTENT_LENGTH);
+        }
+
+        private static Body gzipped(Body body) {
+            return out -> {
+                GZIPOutputStream gz = new FastGzipOutputStream(StreamUtils.nonClosing(out));
+                body.writeTo(gz);
+                gz.finish();
+            };
+        }
+    }
+
+    /** request body 在請求路徑上壓：用最快的等級，省 CPU 為主 */
+    private static final class FastGzipOutputStream extends GZIPOutputStream {
+        FastGzipOutputStream(OutputStream out) throws IOException {
+            super(out, 8192);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+
+    private static final class PermitReleasingResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        PermitReleasingResponse(ClientHttpResponse delegate, Semaphore semaphore) {
+            this.delegate = delegate;
+            this.semaphore = semaphore;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    semaphore.release();
+                }
+            }
+        }
+    }
+}
@@ -1,40 +1,140 @@
 package com.caloshape.backend.foodlog.provider.support;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * provider 呼叫的 log + metrics。
+ *
+ * Metrics（/actuator/metrics）：
+ * - foodlog.provider.call{provider,model,method,outcome,error}：呼叫延遲（含 p50 / p95 / p99 與 histogram）
+ *   outcome = ok / refused（PROVIDER_REFUSED_*）/ error；拒答率 = refused / 全部
+ * - foodlog.provider.tokens{provider,model,method,type}：每次成功呼叫的 token 數（type = prompt / candidates / total）
+ * - foodlog.provider.hedge{provider,decision}：hedged request 的決策次數
+ */
 @Slf4j
 @Service
 public class ProviderTelemetry {
 
+    private static final Duration HISTOGRAM_MIN = Duration.ofMillis(100);
+    private static final Duration HISTOGRAM_MAX = Duration.ofSeconds(120);
+
+    private final MeterRegistry meterRegistry;
+
+    /** 每次 provider 呼叫都會記：meter 依 tag 組合快取，不在熱路徑上重新 build / register */
+    private final Map<CallKey, Timer> callTimers = new ConcurrentHashMap<>();
+    private final Map<CallKey, DistributionSummary> tokenSummaries = new ConcurrentHashMap<>();
+    private final Map<CallKey, Counter> hedgeCounters = new ConcurrentHashMap<>();
+
+    /** 已正規化的 tag 值；label = outcome / type / decision，沒用到的欄位為 null */
+    private record CallKey(String provider, String model, String method, String label, String error) {}
+
+    public ProviderTelemetry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    // ✅ 新增：含 method 的 OK log + metrics
+    public void ok(String provider, String modelId, String method, String foodLogId, long latencyMs,
+                   Integer promptTok, Integer candTok, Integer totalTok) {
+        log.info("provider_call status=OK provider={} modelId={} method={} foodLogId={} latencyMs={} tokensPrompt={} tokensCand={} tokensTotal={}",
+                safe(provider), safe(modelId), safe(method), safe(foodLogId), latencyMs,
+                n(promptTok), n(candTok), n(totalTok));
+
+        callTimer(provider, modelId, method, "ok", "none").record(Duration.ofMillis(Math.max(0L, latencyMs)));
+        recordTokens(provider, modelId, method, "prompt", promptTok);
+        recordTokens(provider, modelId, method, "candidates", candTok);
+        recordTokens(provider, modelId, method, "total", totalTok);
+    }
+
     // ✅ 新增：含 modelId 的 OK log
     public void ok(String provider, String modelId, String foodLogId, long latencyMs,
                    Integer promptTok, Integer candTok, Integer totalTok) {
-        log.info("provider_call status=OK provider={} modelId={} foodLogId={} latencyMs={} tokensPrompt={} tokensCand={} tokensTotal={}",
-                safe(provider), safe(modelId), safe(foodLogId), latencyMs,
-                n(promptTok), n(candTok), n(totalTok));
+        ok(provider, modelId, null, foodLogId, latencyMs, promptTok, candTok, totalTok);
     }
 
     // ✅ 保留：舊方法相容（不改呼叫點也能編譯）
     public void ok(String provider, String foodLogId, long latencyMs,
                    Integer promptTok, Integer candTok, Integer totalTok) {
-        ok(provider, null, foodLogId, latencyMs, promptTok, candTok, totalTok);
+        ok(provider, null, null, foodLogId, latencyMs, promptTok, candTok, totalTok);
+    }
+
+    // ✅ 新增：含 method 的 FAIL log + metrics
+    public void fail(String provider, String modelId, String method, String foodLogId, long latencyMs,
+                     String errorCode, Integer retryAfterSec) {
+        log.warn("provider_call status=FAIL provider={} modelId={} method={} foodLogId={} latencyMs={} errorCode={} retryAfterSec={}",
+                safe(provider), safe(modelId), safe(method), safe(foodLogId), latencyMs,
+                safe(errorCode), n(retryAfterSec));
+
+        String code = safe(errorCode);
+        String outcome = code.startsWith("PROVIDER_REFUSED_") ? "refused" : "error";
+        callTimer(provider, modelId, method, outcome, code).record(Duration.ofMillis(Math.max(0L, latencyMs)));
     }
 
     // ✅ 新增：含 modelId 的 FAIL log
     public void fail(String provider, String modelId, String foodLogId, long latencyMs,
                      String errorCode, Integer retryAfterSec) {
-        log.warn("provider_call status=FAIL provider={} modelId={} foodLogId={} latencyMs={} errorCode={} retryAfterSec={}",
-                safe(provider), safe(modelId), safe(foodLogId), latencyMs,
-                safe(errorCode), n(retryAfterSec));
+        fail(provider, modelId, null, foodLogId, latencyMs, errorCode, retryAfterSec);
     }
 
     // ✅ 保留：舊方法相容
     public void fail(String provider, String foodLogId, long latencyMs,
                      String errorCode, Integer retryAfterSec) {
-        fail(provider, null, foodLogId, latencyMs, errorCode, retryAfterSec);
+        fail(provider, null, null, foodLogId, latencyMs, errorCode, retryAfterSec);
+    }
+
+    // ✅ 新增：hedged request 的決策（是否補打、誰先回來）
+    public void hedge(String provider, String foodLogId, String decision,
+                      String primaryModelId, String hedgeModelId, long hedgeAfterMs, long latencyMs) {
+        log.info("provider_hedge provider={} foodLogId={} decision={} primaryModelId={} hedgeModelId={} hedgeAfterMs={} latencyMs={}",
+                safe(provider), safe(foodLogId), safe(decision),
+                safe(primaryModelId), safe(hedgeModelId), hedgeAfterMs, latencyMs);
+
+        CallKey key = new CallKey(tag(provider), null, null, safe(decision), null);
+        hedgeCounters.computeIfAbsent(key, k -> Counter.builder("foodlog.provider.hedge")
+                        .tag("provider", k.provider())
+                        .tag("decision", k.label())
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    private Timer callTimer(String provider, String modelId, String method, String outcome, String error) {
+        CallKey key = new CallKey(tag(provider), safe(modelId), tag(method), outcome, error);
+        return callTimers.computeIfAbsent(key, k -> Timer.builder("foodlog.provider.call")
+                .tag("provider", k.provider())
+                .tag("model", k.model())
+                .tag("method", k.method())
+                .tag("outcome", k.label())
+                .tag("error", k.error())
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(HISTOGRAM_MIN)
+                .maximumExpectedValue(HISTOGRAM_MAX)
+                .register(meterRegistry));
+    }
+
+    private void recordTokens(String provider, String modelId, String method, String type, Integer tokens) {
+        if (tokens == null || tokens < 0) return;
+        CallKey key = new CallKey(tag(provider), safe(modelId), tag(method), type, null);
+        tokenSummaries.computeIfAbsent(key, k -> DistributionSummary.builder("foodlog.provider.tokens")
+                        .baseUnit("tokens")
+                        .tag("provider", k.provider())
+                        .tag("model", k.model())
+                        .tag("method", k.method())
+                        .tag("type", k.label())
+                        .register(meterRegistry))
+                .record(tokens);
     }
 
     private static String safe(String s) { return (s == null || s.isBlank()) ? "UNKNOWN" : s; }
+    private static String tag(String s) { return safe(s).trim().toUpperCase(Locale.ROOT); }
     private static Object n(Integer v) { return v == null ? "NA" : v; }
-}
\ No newline at end of file
+}
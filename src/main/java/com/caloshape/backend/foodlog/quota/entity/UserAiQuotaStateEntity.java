@@ -40,6 +40,13 @@ public class UserAiQuotaStateEntity {
     @Column(name = "cooldown_reason", length = 16)
     private String cooldownReason;
 
+    /**
+     * Redis quota engine 寫回時的版本；只有較新的 snapshot 會覆蓋。
+     * Redis 不可用時 JPA 路徑把它推到下一個 epoch（QuotaStateSnapshot.nextEpoch），讓 Redis 上的舊狀態失效。
+     */
+    @Column(name = "state_version", nullable = false)
+    private long stateVersion;
+
     @Column(name = "updated_at_utc", nullable = false)
     private Instant updatedAtUtc;
 
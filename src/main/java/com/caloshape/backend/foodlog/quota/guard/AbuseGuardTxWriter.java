@@ -3,9 +3,12 @@ package com.caloshape.backend.foodlog.quota.guard;
 import com.caloshape.backend.foodlog.quota.config.AbuseGuardProperties;
 import com.caloshape.backend.foodlog.quota.entity.UserAiQuotaStateEntity;
 import com.caloshape.backend.foodlog.quota.model.CooldownReason;
+import com.caloshape.backend.foodlog.quota.model.QuotaStateSnapshot;
 import com.caloshape.backend.foodlog.quota.repo.UserAiQuotaStateRepository;
+import com.caloshape.backend.foodlog.quota.service.RedisQuotaEngine;
 import com.caloshape.backend.foodlog.web.error.CooldownActiveException;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
@@ -16,12 +19,23 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class AbuseGuardTxWriter {
 
     private final UserAiQuotaStateRepository stateRepo;
     private final AbuseGuardProperties props;
+    private final RedisQuotaEngine redisQuotaEngine;
+
+    public AbuseGuardTxWriter(
+            UserAiQuotaStateRepository stateRepo,
+            AbuseGuardProperties props,
+            RedisQuotaEngine redisQuotaEngine
+    ) {
+        this.stateRepo = stateRepo;
+        this.props = props;
+        this.redisQuotaEngine = redisQuotaEngine;
+    }
 
     private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final DateTimeFormatter MON = DateTimeFormatter.ofPattern("yyyy-MM");
@@ -62,6 +76,13 @@ public class AbuseGuardTxWriter {
         Integer strikes = s.getCooldownStrikes();
         int effectiveStrikes = (strikes == null || strikes <= 0) ? 3 : strikes;
 
+        // ✅ Redis quota engine：Redis 才是 consume 看的狀態，ABUSE 也要寫進去（以 Redis 結果為準）
+        RedisQuotaEngine.AbuseResult mirrored = mirrorToRedis(s, userId, nowUtc, userTz);
+        if (mirrored != null && mirrored.nextAllowedAtUtc() != null) {
+            effectiveNextAllowed = mirrored.nextAllowedAtUtc();
+            effectiveStrikes = mirrored.strikes();
+        }
+
         // ✅ 回傳給前端的 retry 秒數用實際剩餘秒數
         long retryAfterLong = effectiveNextAllowed.getEpochSecond() - nowUtc.getEpochSecond();
         if (retryAfterLong < 0) retryAfterLong = 0;
@@ -77,6 +98,21 @@ public class AbuseGuardTxWriter {
         );
     }
 
+    private RedisQuotaEngine.AbuseResult mirrorToRedis(
+            UserAiQuotaStateEntity s, Long userId, Instant nowUtc, ZoneId userTz) {
+        if (!redisQuotaEngine.isEnabled()) return null;
+
+        try {
+            return redisQuotaEngine.applyAbuse(userId, userTz, nowUtc, props.getCooldown(), props.getForceLow());
+        } catch (DataAccessException ex) {
+            // MySQL 已寫入 ABUSE：推到新 epoch，Redis 恢復後舊狀態（沒有 ABUSE）要從 MySQL 重新 seed
+            log.warn("abuse_guard_redis_mirror_failed userId={} errorType={}", userId, ex.getClass().getSimpleName());
+            s.setStateVersion(QuotaStateSnapshot.nextEpoch(s.getStateVersion()));
+            redisQuotaEngine.markStaleAfterCommit(userId, s.getStateVersion());
+            return null;
+        }
+    }
+
     private UserAiQuotaStateEntity newState(Long userId, Instant nowUtc, ZoneId userTz) {
         UserAiQuotaStateEntity n = new UserAiQuotaStateEntity();
         n.setUserId(userId);
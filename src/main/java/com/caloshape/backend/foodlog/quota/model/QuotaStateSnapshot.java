@@ -0,0 +1,41 @@
+package com.caloshape.backend.foodlog.quota.model;
+
+import java.time.Instant;
+
+/**
+ * Redis quota engine 某一個版本的 user_ai_quota_state（寫回 MySQL 用）。
+ * version 由 Redis 每次變更 +1；同一個 user 只保留 / 寫入較新的版本。
+ *
+ * version 的高 32 bit 是 epoch：Redis 不可用、改由 JPA 路徑寫 MySQL 時，MySQL 進到下一個 epoch（nextEpoch），
+ * Redis 上舊 epoch 的狀態之後不會再蓋過 MySQL，且必須從 MySQL 重新 seed。
+ */
+public record QuotaStateSnapshot(
+        Long userId,
+        String dailyKey,
+        int dailyCount,
+        String monthlyKey,
+        int monthlyCount,
+        int cooldownStrikes,
+        Instant nextAllowedAtUtc,
+        Instant forceLowUntilUtc,
+        String cooldownReason,
+        long version
+) {
+
+    public static final int EPOCH_SHIFT = 32;
+
+    public static long epochOf(long version) {
+        return version >>> EPOCH_SHIFT;
+    }
+
+    /** 下一個 epoch 的起始版本（低 32 bit 為 0） */
+    public static long nextEpoch(long version) {
+        return (epochOf(version) + 1) << EPOCH_SHIFT;
+    }
+
+    public static QuotaStateSnapshot newer(QuotaStateSnapshot a, QuotaStateSnapshot b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.version() >= b.version() ? a : b;
+    }
+}
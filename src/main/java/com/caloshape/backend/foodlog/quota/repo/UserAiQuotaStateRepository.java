@@ -3,8 +3,10 @@ package com.caloshape.backend.foodlog.quota.repo;
 import com.caloshape.backend.foodlog.quota.entity.UserAiQuotaStateEntity;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import jakarta.persistence.LockModeType;
+import java.time.Instant;
 import java.util.Optional;
 
 public interface UserAiQuotaStateRepository extends JpaRepository<UserAiQuotaStateEntity, Long> {
@@ -12,4 +14,37 @@ public interface UserAiQuotaStateRepository extends JpaRepository<UserAiQuotaSta
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select s from UserAiQuotaStateEntity s where s.userId = :userId")
     Optional<UserAiQuotaStateEntity> findForUpdate(@Param("userId") Long userId);
+
+    @Query("select s.stateVersion from UserAiQuotaStateEntity s where s.userId = :userId")
+    Optional<Long> findStateVersion(@Param("userId") Long userId);
+
+    /** Redis quota engine 寫回：只有 version 比 DB 新才覆蓋（跨 pod 寫回順序不保證），回傳更新筆數 */
+    @Transactional
+    @Modifying
+    @Query("""
+            update UserAiQuotaStateEntity s
+               set s.dailyKey = :dailyKey,
+                   s.dailyCount = :dailyCount,
+                   s.monthlyKey = :monthlyKey,
+                   s.monthlyCount = :monthlyCount,
+                   s.cooldownStrikes = :cooldownStrikes,
+                   s.nextAllowedAtUtc = :nextAllowedAtUtc,
+                   s.forceLowUntilUtc = :forceLowUntilUtc,
+                   s.cooldownReason = :cooldownReason,
+                   s.stateVersion = :stateVersion,
+                   s.updatedAtUtc = :now
+             where s.userId = :userId
+               and s.stateVersion < :stateVersion
+            """)
+    int applySnapshotIfNewer(@Param("userId") Long userId,
+                             @Param("dailyKey") String dailyKey,
+                             @Param("dailyCount") int dailyCount,
+                             @Param("monthlyKey") String monthlyKey,
+                             @Param("monthlyCount") int monthlyCount,
+                             @Param("cooldownStrikes") int cooldownStrikes,
+                             @Param("nextAllowedAtUtc") Instant nextAllowedAtUtc,
+                             @Param("forceLowUntilUtc") Instant forceLowUntilUtc,
+                             @Param("cooldownReason") String cooldownReason,
+                             @Param("stateVersion") long stateVersion,
+                             @Param("now") Instant now);
 }
@@ -4,10 +4,13 @@ import com.caloshape.backend.entitlement.service.EntitlementService;
 import com.caloshape.backend.foodlog.quota.entity.UserAiQuotaStateEntity;
 import com.caloshape.backend.foodlog.quota.model.CooldownReason;
 import com.caloshape.backend.foodlog.quota.model.ModelTier;
+import com.caloshape.backend.foodlog.quota.model.QuotaStateSnapshot;
 import com.caloshape.backend.foodlog.quota.repo.UserAiQuotaStateRepository;
 import com.caloshape.backend.foodlog.web.error.CooldownActiveException;
 import com.caloshape.backend.foodlog.web.error.SubscriptionRequiredException;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -18,11 +21,13 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 
+@Slf4j
 @Service
 public class QuotaService {
 
     private final UserAiQuotaStateRepository repo;
     private final EntitlementService entitlementService;
+    private final RedisQuotaEngine redisEngine;
 
     @Value("${app.ai.quota.cooldown.step-minutes:10}")
     private int cooldownStepMinutes;
@@ -47,9 +52,14 @@ public class QuotaService {
 
     public record Decision(ModelTier tierUsed) {}
 
-    public QuotaService(UserAiQuotaStateRepository repo, EntitlementService entitlementService) {
+    public QuotaService(
+            UserAiQuotaStateRepository repo,
+            EntitlementService entitlementService,
+            RedisQuotaEngine redisEngine
+    ) {
         this.repo = repo;
         this.entitlementService = entitlementService;
+        this.redisEngine = redisEngine;
     }
 
     /**
@@ -74,8 +84,37 @@ public class QuotaService {
         int premiumLimit = isTrial ? trialPremiumLimit : paidPremiumLimit;
         int totalLimit = isTrial ? trialTotalLimit : paidTotalLimit;
 
+        boolean redisFallback = false;
+        if (redisEngine.isEnabled()) {
+            try {
+                ModelTier tierUsed = redisEngine.consume(
+                        userId,
+                        new RedisQuotaEngine.Limits(
+                                isTrial,
+                                premiumLimit,
+                                totalLimit,
+                                cooldownStepMinutes,
+                                maxCooldownMinutes
+                        ),
+                        effectiveTz,
+                        nowUtc
+                );
+                return new Decision(tierUsed);
+            } catch (DataAccessException ex) {
+                // Redis 不可用：退回 row lock 路徑（MySQL 可能落後一個寫回間隔）
+                log.warn("ai_quota_redis_unavailable userId={} errorType={}", userId, ex.getClass().getSimpleName());
+                redisFallback = true;
+            }
+        }
+
         UserAiQuotaStateEntity s = getOrCreateStateForUpdate(userId, effectiveTz, nowUtc);
 
+        if (redisFallback) {
+            // 這次扣量只在 MySQL：推到新 epoch，Redis 恢復後舊狀態不能再寫回、要重新 seed（否則扣量會被蓋掉）
+            s.setStateVersion(QuotaStateSnapshot.nextEpoch(s.getStateVersion()));
+            redisEngine.markStaleAfterCommit(userId, s.getStateVersion());
+        }
+
         CooldownReason reason = parseReason(s.getCooldownReason());
         boolean cooldownJustExpired = false;
 
@@ -218,7 +257,7 @@ public class QuotaService {
         return n;
     }
 
-    private static CooldownReason parseReason(String s) {
+    static CooldownReason parseReason(String s) {
         try {
             return (s == null) ? null : CooldownReason.valueOf(s);
         } catch (Exception ignore) {
@@ -226,11 +265,11 @@ public class QuotaService {
         }
     }
 
-    private static String dayKey(Instant nowUtc, ZoneId tz) {
+    static String dayKey(Instant nowUtc, ZoneId tz) {
         return DAY_KEY_FMT.format(ZonedDateTime.ofInstant(nowUtc, tz)) + "@" + tz.getId();
     }
 
-    private static String monthKey(Instant nowUtc, ZoneId tz) {
+    static String monthKey(Instant nowUtc, ZoneId tz) {
         return MONTH_KEY_FMT.format(ZonedDateTime.ofInstant(nowUtc, tz)) + "@" + tz.getId();
     }
 
@@ -245,7 +284,7 @@ public class QuotaService {
         return v == null ? 0 : v;
     }
 
-    private static int clampStrikes(Integer v) {
+    static int clampStrikes(Integer v) {
         return Math.min(3, Math.max(1, nz(v)));
     }
 }
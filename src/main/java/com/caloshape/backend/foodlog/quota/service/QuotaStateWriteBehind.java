@@ -0,0 +1,156 @@
+package com.caloshape.backend.foodlog.quota.service;
+
+import com.caloshape.backend.foodlog.quota.entity.UserAiQuotaStateEntity;
+import com.caloshape.backend.foodlog.quota.model.QuotaStateSnapshot;
+import com.caloshape.backend.foodlog.quota.repo.UserAiQuotaStateRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Redis quota engine 的 MySQL 寫回（write-behind）。
+ *
+ * - 請求路徑只把最新 snapshot 放進記憶體（同一個 user 只留 version 最大的），不碰 DB
+ * - 排程定期寫回；寫入帶 version 條件，多個 pod 寫回順序不同也不會用舊狀態蓋掉新狀態
+ * - 寫失敗的 snapshot 放回去下一輪再試；pod 關閉前再 flush 一次
+ * - MySQL 只是耐久備份：Redis key 不見時 RedisQuotaEngine 從這裡重新 seed（最多落後一個寫回間隔）
+ * - 寫回被拒且 MySQL 的 epoch 比較新（Redis 不可用期間 JPA 路徑寫過）：記下這個 user 需要 reseed，
+ *   RedisQuotaEngine 下次碰到它會先丟掉 Redis 上的舊狀態（見 requireReseed）
+ */
+@Slf4j
+@Component
+public class QuotaStateWriteBehind {
+
+    private final Map<Long, QuotaStateSnapshot> pending = new ConcurrentHashMap<>();
+
+    /** userId -> Redis 狀態至少要有的版本；低於它的 Redis hash 是舊 epoch，要從 MySQL 重新 seed */
+    private final Map<Long, Long> reseedFloors = new ConcurrentHashMap<>();
+    private final UserAiQuotaStateRepository repo;
+    private final Clock clock;
+
+    public QuotaStateWriteBehind(UserAiQuotaStateRepository repo, MeterRegistry meterRegistry, Clock clock) {
+        this.repo = repo;
+        this.clock = clock;
+        Gauge.builder("ai.quota.write_back.pending", pending, Map::size)
+                .register(meterRegistry);
+    }
+
+    public void enqueue(QuotaStateSnapshot snapshot) {
+        if (snapshot == null || snapshot.userId() == null) return;
+        pending.merge(snapshot.userId(), snapshot, QuotaStateSnapshot::newer);
+    }
+
+    public void requireReseed(Long userId, long minVersion) {
+        if (userId == null) return;
+        reseedFloors.merge(userId, minVersion, Math::max);
+    }
+
+    /** 0 = 不需要 reseed（epoch 0 不會是 floor） */
+    public long reseedFloor(Long userId) {
+        return reseedFloors.getOrDefault(userId, 0L);
+    }
+
+    public void reseedDone(Long userId, long minVersion) {
+        reseedFloors.remove(userId, minVersion);
+    }
+
+    @Scheduled(fixedDelayString = "${app.ai.quota.redis.write-back-interval:PT1S}")
+    public void flush() {
+        if (pending.isEmpty()) return;
+
+        int written = 0;
+        int failed = 0;
+        for (Long userId : pending.keySet()) {
+            QuotaStateSnapshot s = pending.remove(userId);
+            if (s == null) continue;
+
+            try {
+                write(s);
+                written++;
+            } catch (RuntimeException ex) {
+                failed++;
+                pending.merge(userId, s, QuotaStateSnapshot::newer);
+                log.warn(
+                        "ai_quota_write_back_failed userId={} version={} errorType={}",
+                        userId,
+                        s.version(),
+                        ex.getClass().getSimpleName()
+                );
+            }
+        }
+
+        if (failed > 0) {
+            log.warn("ai_quota_write_back written={} failed={} pending={}", written, failed, pending.size());
+        }
+    }
+
+    @PreDestroy
+    void drainOnShutdown() {
+        flush();
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    private void write(QuotaStateSnapshot s) {
+        if (update(s) > 0) return;
+        // 0 筆：row 已經是同版或更新的版本，或 row 還不存在
+        Long current = repo.findStateVersion(s.userId()).orElse(null);
+        if (current != null) {
+            if (QuotaStateSnapshot.epochOf(current) > QuotaStateSnapshot.epochOf(s.version())) {
+                // Redis 不可用期間 JPA 路徑扣過量：這份 Redis 狀態沒有那些扣量，不能再用
+                requireReseed(s.userId(), QuotaStateSnapshot.epochOf(current) << QuotaStateSnapshot.EPOCH_SHIFT);
+                log.warn("ai_quota_redis_state_stale userId={} redisVersion={} mysqlVersion={}",
+                        s.userId(), s.version(), current);
+            }
+            return;
+        }
+
+        try {
+            repo.saveAndFlush(toEntity(s));
+        } catch (DataIntegrityViolationException ex) {
+            // 另一個 pod / JPA engine 剛好先 insert，改走條件更新
+            update(s);
+        }
+    }
+
+    private int update(QuotaStateSnapshot s) {
+        return repo.applySnapshotIfNewer(
+                s.userId(),
+                s.dailyKey(),
+                s.dailyCount(),
+                s.monthlyKey(),
+                s.monthlyCount(),
+                s.cooldownStrikes(),
+                s.nextAllowedAtUtc(),
+                s.forceLowUntilUtc(),
+                s.cooldownReason(),
+                s.version(),
+                clock.instant()
+        );
+    }
+
+    private static UserAiQuotaStateEntity toEntity(QuotaStateSnapshot s) {
+        UserAiQuotaStateEntity e = new UserAiQuotaStateEntity();
+        e.setUserId(s.userId());
+        e.setDailyKey(s.dailyKey());
+        e.setDailyCount(s.dailyCount());
+        e.setMonthlyKey(s.monthlyKey());
+        e.setMonthlyCount(s.monthlyCount());
+        e.setCooldownStrikes(s.cooldownStrikes());
+        e.setNextAllowedAtUtc(s.nextAllowedAtUtc());
+        e.setForceLowUntilUtc(s.forceLowUntilUtc());
+        e.setCooldownReason(s.cooldownReason());
+        e.setStateVersion(s.version());
+        return e;
+    }
+}
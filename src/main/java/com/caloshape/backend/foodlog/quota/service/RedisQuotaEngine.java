@@ -0,0 +1,467 @@
+package com.caloshape.backend.foodlog.quota.service;
+
+import com.caloshape.backend.foodlog.quota.entity.UserAiQuotaStateEntity;
+import com.caloshape.backend.foodlog.quota.model.CooldownReason;
+import com.caloshape.backend.foodlog.quota.model.ModelTier;
+import com.caloshape.backend.foodlog.quota.model.QuotaStateSnapshot;
+import com.caloshape.backend.foodlog.quota.repo.UserAiQuotaStateRepository;
+import com.caloshape.backend.foodlog.web.error.CooldownActiveException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * app.ai.quota.engine=redis 時的 quota engine：user_ai_quota_state 放在 Redis hash，一次 Lua script 完成判斷與扣量，
+ * 不需要 SELECT ... FOR UPDATE。
+ *
+ * 語意和 QuotaService 的 JPA 路徑逐行對齊（見 CONSUME 註解），包含交易語意：
+ * - 丟 CooldownActiveException 的路徑在 JPA 會整筆 rollback，所以 script 在這些路徑完全不寫入
+ * - 成功扣量後外層交易若 rollback，afterCompletion 會把這次扣量還回去（REFUND）
+ * - day / month key 由 Java 依使用者時區算好再傳進 script，格式與 JPA 相同
+ *
+ * Redis key 不存在時從 MySQL seed（最多落後 QuotaStateWriteBehind 一個寫回間隔）；
+ * 變更後的 snapshot 在 commit 後交給 QuotaStateWriteBehind 非同步寫回 MySQL。
+ * Redis 不可用時丟出 DataAccessException，由 QuotaService 退回 JPA 路徑；JPA 路徑把 MySQL 推到新 epoch，
+ * Redis 恢復後舊狀態先被丟掉再從 MySQL 重新 seed（RESEED），不會把斷線期間的扣量蓋掉。
+ */
+@Slf4j
+@Component
+public class RedisQuotaEngine {
+
+    /** 這次請求適用的額度（trial 看 daily，paid 看 monthly） */
+    public record Limits(
+            boolean trial,
+            int premiumLimit,
+            int totalLimit,
+            int cooldownStepMinutes,
+            int maxCooldownMinutes
+    ) {}
+
+    /** ABUSE 寫進 Redis 後實際生效的冷卻 */
+    public record AbuseResult(Instant nextAllowedAtUtc, int strikes) {}
+
+    /**
+     * KEYS[1] = state hash
+     * ARGV[1] = now ms, ARGV[2] = dayKey, ARGV[3] = monthKey, ARGV[4] = '1' trial / '0' paid,
+     * ARGV[5] = premiumLimit, ARGV[6] = totalLimit, ARGV[7] = key TTL ms,
+     * ARGV[8] = '1' 時 key 不存在就用 ARGV[9..17]（dk dc mk mc st na fl cr v）seed
+     *
+     * 回傳：
+     * {'MISS'}                              key 不存在且沒給 seed
+     * {'COOLDOWN', nextAllowedMs, strikes, reason}  冷卻中（不寫入）
+     * {'OVER', strikes}                     超過 totalLimit，要進入新一輪冷卻（不寫入，同 JPA rollback）
+     * {'OK', 'HIGH'|'LOW', 寫入後 9 欄, 寫入前 8 欄}
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> CONSUME = new DefaultRedisScript<>("""
+            local k = KEYS[1]
+            if redis.call('EXISTS', k) == 0 then
+              if ARGV[8] ~= '1' then return {'MISS'} end
+              redis.call('HSET', k, 'dk', ARGV[9], 'dc', ARGV[10], 'mk', ARGV[11], 'mc', ARGV[12],
+                'st', ARGV[13], 'na', ARGV[14], 'fl', ARGV[15], 'cr', ARGV[16], 'v', ARGV[17])
+            end
+            local p = redis.call('HMGET', k, 'dk', 'dc', 'mk', 'mc', 'st', 'na', 'fl', 'cr', 'v')
+            local now = tonumber(ARGV[1])
+            local trial = ARGV[4] == '1'
+            local dk, dc, mk, mc = p[1] or '', tonumber(p[2]) or 0, p[3] or '', tonumber(p[4]) or 0
+            local st, na, fl, cr = tonumber(p[5]) or 0, tonumber(p[6]), tonumber(p[7]), p[8] or ''
+
+            -- rollover：trial 換日 / paid 換月時清掉 OVER_QUOTA 冷卻
+            local reason = cr
+            if dk ~= ARGV[2] then
+              dk = ARGV[2]; dc = 0
+              if trial and reason == 'OVER_QUOTA' then st = 0; cr = ''; na = nil; fl = nil end
+            end
+            if mk ~= ARGV[3] then
+              mk = ARGV[3]; mc = 0
+              if (not trial) and reason == 'OVER_QUOTA' then st = 0; cr = ''; na = nil; fl = nil end
+            end
+            reason = cr
+
+            local justExpired = false
+            if na then
+              if now < na then return {'COOLDOWN', tostring(na), tostring(st), cr} end
+              justExpired = true; na = nil
+              if reason ~= 'OVER_QUOTA' then cr = ''; st = 0 end
+            end
+            if fl and now >= fl then fl = nil end
+
+            local used = (trial and dc or mc) + 1
+            local tier
+            if used > tonumber(ARGV[6]) then
+              if not (justExpired and reason == 'OVER_QUOTA') then
+                return {'OVER', tostring(math.min(3, st + 1))}
+              end
+              -- OVER_QUOTA 冷卻剛結束：這次放行但降為 LOW，並強制 LOW 60 秒
+              fl = now + 60000
+              tier = 'LOW'
+            else
+              tier = (used <= tonumber(ARGV[5])) and 'HIGH' or 'LOW'
+              if fl and now < fl then tier = 'LOW' end
+            end
+            if trial then dc = used else mc = used end
+
+            redis.call('HSET', k, 'dk', dk, 'dc', tostring(dc), 'mk', mk, 'mc', tostring(mc), 'st', tostring(st),
+              'na', na and tostring(na) or '', 'fl', fl and tostring(fl) or '', 'cr', cr)
+            redis.call('HINCRBY', k, 'v', 1)
+            redis.call('PEXPIRE', k, ARGV[7])
+
+            local r = redis.call('HMGET', k, 'dk', 'dc', 'mk', 'mc', 'st', 'na', 'fl', 'cr', 'v')
+            local out = {'OK', tier}
+            for i = 1, 9 do out[#out + 1] = r[i] or '' end
+            for i = 1, 8 do out[#out + 1] = p[i] or '' end
+            return out
+            """, List.class);
+
+    /**
+     * 外層交易 rollback 時把扣量還回去。
+     * KEYS[1] = state hash；ARGV[1] = 扣量後的 version，ARGV[2..9] = 扣量前 8 欄，
+     * ARGV[10] = 計數欄位（dc / mc），ARGV[11] = 對應的週期欄位（dk / mk），ARGV[12] = 扣量時的週期 key，ARGV[13] = TTL ms
+     *
+     * 中間沒有其他變更（version 沒動）就整個還原，回 {'RESTORED'}（內容與扣量前相同，不需要再寫回）；
+     * 否則只在同一週期內把計數 -1，回 {'OK', 9 欄}。
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> REFUND = new DefaultRedisScript<>("""
+            local k = KEYS[1]
+            if redis.call('EXISTS', k) == 0 then return {'MISS'} end
+            if redis.call('HGET', k, 'v') == ARGV[1] then
+              redis.call('HSET', k, 'dk', ARGV[2], 'dc', ARGV[3], 'mk', ARGV[4], 'mc', ARGV[5],
+                'st', ARGV[6], 'na', ARGV[7], 'fl', ARGV[8], 'cr', ARGV[9])
+              redis.call('HINCRBY', k, 'v', 1)
+              redis.call('PEXPIRE', k, ARGV[13])
+              return {'RESTORED'}
+            end
+            if redis.call('HGET', k, ARGV[11]) == ARGV[12] then
+              local c = tonumber(redis.call('HGET', k, ARGV[10])) or 0
+              if c > 0 then redis.call('HSET', k, ARGV[10], tostring(c - 1)) end
+            end
+            redis.call('HINCRBY', k, 'v', 1)
+            redis.call('PEXPIRE', k, ARGV[13])
+            local r = redis.call('HMGET', k, 'dk', 'dc', 'mk', 'mc', 'st', 'na', 'fl', 'cr', 'v')
+            local out = {'OK'}
+            for i = 1, 9 do out[#out + 1] = r[i] or '' end
+            return out
+            """, List.class);
+
+    /**
+     * AbuseGuardTxWriter.applyAbuseMutation 的 Redis 版本。key 不存在就不動（下次 consume 會從 MySQL seed 到 ABUSE）。
+     * KEYS[1] = state hash；ARGV[1] = now ms，ARGV[2] = dayKey，ARGV[3] = monthKey，
+     * ARGV[4] = cooldown ms，ARGV[5] = forceLow ms，ARGV[6] = TTL ms
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> ABUSE = new DefaultRedisScript<>("""
+            local k = KEYS[1]
+            if redis.call('EXISTS', k) == 0 then return {'MISS'} end
+            local p = redis.call('HMGET', k, 'dk', 'mk', 'st', 'na', 'fl')
+            local now = tonumber(ARGV[1])
+            if (p[1] or '') ~= ARGV[2] then redis.call('HSET', k, 'dk', ARGV[2], 'dc', 0) end
+            if (p[2] or '') ~= ARGV[3] then redis.call('HSET', k, 'mk', ARGV[3], 'mc', 0) end
+            local st, na, fl = tonumber(p[3]) or 0, tonumber(p[4]), tonumber(p[5])
+            local nextCandidate = now + tonumber(ARGV[4])
+            local forceLowCandidate = now + tonumber(ARGV[5])
+            if not na or nextCandidate > na then na = nextCandidate end
+            if not fl or forceLowCandidate > fl then fl = forceLowCandidate end
+            if st <= 0 then st = 3 else st = math.max(3, st + 1) end
+            redis.call('HSET', k, 'st', tostring(st), 'na', tostring(na), 'fl', tostring(fl), 'cr', 'ABUSE')
+            redis.call('HINCRBY', k, 'v', 1)
+            redis.call('PEXPIRE', k, ARGV[6])
+            local r = redis.call('HMGET', k, 'dk', 'dc', 'mk', 'mc', 'st', 'na', 'fl', 'cr', 'v')
+            local out = {'OK'}
+            for i = 1, 9 do out[#out + 1] = r[i] or '' end
+            return out
+            """, List.class);
+
+    /**
+     * Redis 上的狀態版本低於 ARGV[1]（MySQL 已進到較新的 epoch）就刪掉，下一次 consume 從 MySQL 重新 seed。
+     * 已經 reseed 過（版本 >= ARGV[1]）就不動，多個 pod 重複執行也安全。
+     */
+    private static final DefaultRedisScript<Long> RESEED = new DefaultRedisScript<>("""
+            local v = tonumber(redis.call('HGET', KEYS[1], 'v'))
+            if v and v < tonumber(ARGV[1]) then
+              redis.call('DEL', KEYS[1])
+              return 1
+            end
+            return 0
+            """, Long.class);
+
+    private static final String FIELD_DAY_COUNT = "dc";
+    private static final String FIELD_DAY_KEY = "dk";
+    private static final String FIELD_MONTH_COUNT = "mc";
+    private static final String FIELD_MONTH_KEY = "mk";
+
+    private final StringRedisTemplate redis;
+    private final UserAiQuotaStateRepository repo;
+    private final QuotaStateWriteBehind writeBehind;
+    private final String keyPrefix;
+
+    @Value("${app.ai.quota.engine:jpa}")
+    private String engine = "jpa";
+
+    /** 需涵蓋整個月（monthly count）再多一些；過期後從 MySQL 重新 seed */
+    @Value("${app.ai.quota.redis.state-ttl:P40D}")
+    private Duration stateTtl = Duration.ofDays(40);
+
+    public RedisQuotaEngine(
+            StringRedisTemplate redis,
+            UserAiQuotaStateRepository repo,
+            QuotaStateWriteBehind writeBehind,
+            @Value("${app.ai.quota.redis.prefix:caloshape}") String prefix
+    ) {
+        this.redis = redis;
+        this.repo = repo;
+        this.writeBehind = writeBehind;
+        this.keyPrefix = normalizePrefix(prefix) + ":ai:quota:";
+    }
+
+    public boolean isEnabled() {
+        return engine != null && "redis".equalsIgnoreCase(engine.trim());
+    }
+
+    /**
+     * 扣一次額度並回傳這次使用的 model tier；冷卻中 / 超量丟 CooldownActiveException。
+     * Redis 不可用時丟 DataAccessException（尚未扣量）。
+     */
+    public ModelTier consume(Long userId, Limits limits, ZoneId userTz, Instant nowUtc) {
+        String dk = QuotaService.dayKey(nowUtc, userTz);
+        String mk = QuotaService.monthKey(nowUtc, userTz);
+
+        reseedIfStale(userId);
+        List<String> reply = runConsume(userId, limits, dk, mk, nowUtc, null);
+        if ("MISS".equals(reply.get(0))) {
+            reply = runConsume(userId, limits, dk, mk, nowUtc, seedArgs(userId, dk, mk));
+        }
+
+        switch (reply.get(0)) {
+            case "COOLDOWN" -> {
+                Instant next = Instant.ofEpochMilli(Long.parseLong(reply.get(1)));
+                throw new CooldownActiveException(
+                        "COOLDOWN_ACTIVE",
+                        next,
+                        (int) Duration.between(nowUtc, next).getSeconds(),
+                        QuotaService.clampStrikes(parseInt(reply.get(2))),
+                        QuotaService.parseReason(blankToNull(reply.get(3)))
+                );
+            }
+            case "OVER" -> {
+                int strikes = parseInt(reply.get(1));
+                int minutes = Math.min(limits.maxCooldownMinutes(), strikes * limits.cooldownStepMinutes());
+                Instant next = nowUtc.plus(Duration.ofMinutes(minutes));
+                throw new CooldownActiveException(
+                        "COOLDOWN_ACTIVE",
+                        next,
+                        (int) Duration.between(nowUtc, next).getSeconds(),
+                        strikes,
+                        CooldownReason.OVER_QUOTA
+                );
+            }
+            case "OK" -> {
+                ModelTier tier = "HIGH".equals(reply.get(1)) ? ModelTier.MODEL_TIER_HIGH : ModelTier.MODEL_TIER_LOW;
+                QuotaStateSnapshot after = snapshot(userId, reply, 2);
+                List<String> before = reply.subList(11, 19);
+                afterCompletion(userId, limits.trial(), after, before);
+                return tier;
+            }
+            default -> throw new IllegalStateException("AI_QUOTA_SCRIPT_UNEXPECTED_REPLY");
+        }
+    }
+
+    /**
+     * 把 ABUSE 冷卻同步進 Redis（AbuseGuardTxWriter 寫完 MySQL 後呼叫）。
+     * Redis 沒有這個 user 的狀態時回 null：下次 consume 會從 MySQL seed，自然帶到 ABUSE。
+     */
+    public AbuseResult applyAbuse(Long userId, ZoneId userTz, Instant nowUtc, Duration cooldown, Duration forceLow) {
+        reseedIfStale(userId);
+        List<String> reply = toStrings(redis.execute(
+                ABUSE,
+                List.of(stateKey(userId)),
+                Long.toString(nowUtc.toEpochMilli()),
+                QuotaService.dayKey(nowUtc, userTz),
+                QuotaService.monthKey(nowUtc, userTz),
+                Long.toString(cooldown.toMillis()),
+                Long.toString(forceLow.toMillis()),
+                Long.toString(stateTtl.toMillis())
+        ));
+        if (!"OK".equals(reply.get(0))) {
+            return null;
+        }
+
+        QuotaStateSnapshot s = snapshot(userId, reply, 1);
+        writeBehind.enqueue(s);
+        return new AbuseResult(s.nextAllowedAtUtc(), s.cooldownStrikes());
+    }
+
+    /**
+     * Redis 不可用時 QuotaService / AbuseGuardTxWriter 改寫 MySQL（version 已推到新 epoch）：
+     * commit 後記下這個 user，Redis 恢復後第一次使用前先丟掉 Redis 上的舊狀態。
+     * 其他 pod 上的舊狀態由 QuotaStateWriteBehind 寫回被拒時偵測。
+     */
+    public void markStaleAfterCommit(Long userId, long mysqlVersion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            writeBehind.requireReseed(userId, mysqlVersion);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                writeBehind.requireReseed(userId, mysqlVersion);
+            }
+        });
+    }
+
+    private void reseedIfStale(Long userId) {
+        long floor = writeBehind.reseedFloor(userId);
+        if (floor <= 0) return;
+
+        redis.execute(RESEED, List.of(stateKey(userId)), Long.toString(floor));
+        writeBehind.reseedDone(userId, floor);
+    }
+
+    private List<String> runConsume(Long userId, Limits limits, String dk, String mk, Instant nowUtc, List<String> seed) {
+        List<String> args = new ArrayList<>(17);
+        args.add(Long.toString(nowUtc.toEpochMilli()));
+        args.add(dk);
+        args.add(mk);
+        args.add(limits.trial() ? "1" : "0");
+        args.add(Integer.toString(limits.premiumLimit()));
+        args.add(Integer.toString(limits.totalLimit()));
+        args.add(Long.toString(stateTtl.toMillis()));
+        if (seed == null) {
+            args.add("0");
+        } else {
+            args.add("1");
+            args.addAll(seed);
+        }
+        return toStrings(redis.execute(CONSUME, List.of(stateKey(userId)), args.toArray()));
+    }
+
+    /** MySQL 現有的 row（沒有就是全新狀態）轉成 script 的 seed 參數：dk dc mk mc st na fl cr v */
+    private List<String> seedArgs(Long userId, String dk, String mk) {
+        UserAiQuotaStateEntity s = repo.findById(userId).orElse(null);
+        if (s == null) {
+            return List.of(dk, "0", mk, "0", "0", "", "", "", "0");
+        }
+        return List.of(
+                nullToEmpty(s.getDailyKey()),
+                Integer.toString(s.getDailyCount()),
+                nullToEmpty(s.getMonthlyKey()),
+                Integer.toString(s.getMonthlyCount()),
+                Integer.toString(s.getCooldownStrikes()),
+                ceilMillis(s.getNextAllowedAtUtc()),
+                ceilMillis(s.getForceLowUntilUtc()),
+                nullToEmpty(s.getCooldownReason()),
+                Long.toString(s.getStateVersion())
+        );
+    }
+
+    /** commit 後才寫回 MySQL；rollback 就把這次扣量還給 Redis（對齊 JPA 的 rollback） */
+    private void afterCompletion(Long userId, boolean trial, QuotaStateSnapshot after, List<String> before) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            writeBehind.enqueue(after);
+            return;
+        }
+
+        List<String> prior = List.copyOf(before);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    writeBehind.enqueue(after);
+                } else {
+                    refund(userId, trial, after, prior);
+                }
+            }
+        });
+    }
+
+    private void refund(Long userId, boolean trial, QuotaStateSnapshot after, List<String> prior) {
+        try {
+            List<String> args = new ArrayList<>(13);
+            args.add(Long.toString(after.version()));
+            args.addAll(prior);
+            args.add(trial ? FIELD_DAY_COUNT : FIELD_MONTH_COUNT);
+            args.add(trial ? FIELD_DAY_KEY : FIELD_MONTH_KEY);
+            args.add(trial ? after.dailyKey() : after.monthlyKey());
+            args.add(Long.toString(stateTtl.toMillis()));
+
+            List<String> reply = toStrings(redis.execute(REFUND, List.of(stateKey(userId)), args.toArray()));
+            if ("OK".equals(reply.get(0))) {
+                writeBehind.enqueue(snapshot(userId, reply, 1));
+            }
+        } catch (RuntimeException ex) {
+            log.warn("ai_quota_refund_failed userId={} errorType={}", userId, ex.getClass().getSimpleName());
+        }
+    }
+
+    /** reply[offset..offset+8] = dk dc mk mc st na fl cr v */
+    private static QuotaStateSnapshot snapshot(Long userId, List<String> reply, int offset) {
+        return new QuotaStateSnapshot(
+                userId,
+                reply.get(offset),
+                parseInt(reply.get(offset + 1)),
+                reply.get(offset + 2),
+                parseInt(reply.get(offset + 3)),
+                parseInt(reply.get(offset + 4)),
+                parseInstant(reply.get(offset + 5)),
+                parseInstant(reply.get(offset + 6)),
+                blankToNull(reply.get(offset + 7)),
+                Long.parseLong(reply.get(offset + 8))
+        );
+    }
+
+    private static List<String> toStrings(List<?> raw) {
+        if (raw == null || raw.isEmpty()) {
+            throw new IllegalStateException("AI_QUOTA_SCRIPT_EMPTY_REPLY");
+        }
+        List<String> out = new ArrayList<>(raw.size());
+        for (Object o : raw) {
+            out.add(o == null ? "" : String.valueOf(o));
+        }
+        return out;
+    }
+
+    private String stateKey(Long userId) {
+        return keyPrefix + userId;
+    }
+
+    private static int parseInt(String s) {
+        return (s == null || s.isEmpty()) ? 0 : (int) Long.parseLong(s);
+    }
+
+    private static Instant parseInstant(String s) {
+        return (s == null || s.isEmpty()) ? null : Instant.ofEpochMilli(Long.parseLong(s));
+    }
+
+    /** 無條件進位到毫秒：seed 進 Redis 後冷卻只會多不會少 */
+    private static String ceilMillis(Instant t) {
+        if (t == null) return "";
+        long ms = t.toEpochMilli();
+        return Long.toString(t.getNano() % 1_000_000 == 0 ? ms : ms + 1);
+    }
+
+    private static String blankToNull(String s) {
+        return (s == null || s.isEmpty()) ? null : s;
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static String normalizePrefix(String raw) {
+        String s = (raw == null || raw.isBlank()) ? "caloshape" : raw.trim();
+        while (s.endsWith(":")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        return s;
+    }
+}
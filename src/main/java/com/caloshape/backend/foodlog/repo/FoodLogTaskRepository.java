@@ -8,36 +8,85 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.jpa.repository.Lock;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface FoodLogTaskRepository extends JpaRepository<FoodLogTaskEntity, String> {
 
     /**
-     * ✅ MySQL 8：用 FOR UPDATE SKIP LOCKED 領取任務，避免多 worker 重複撿同一筆
-     * 注意：
-     * - 需要在 @Transactional 內呼叫才會真的 lock
-     * - SKIP LOCKED 讓其他 worker 不會卡住，會跳過已被鎖住的 rows
+     * ✅ 領取 QUEUED：走 idx_food_log_tasks_queue (task_status, created_at_utc, next_retry_at_utc)
+     * 只 SELECT id，索引本身就含 PK 與 next_retry_at_utc，不需要回表，SUCCEEDED / CANCELLED 歷史資料再多也不會被掃到。
+     * next_retry_at_utc 還沒到的 QUEUED（circuit breaker open 延後的任務）先跳過。
      */
-    @Query(
-            value = """
-            SELECT *
+    String CLAIM_QUEUED_SQL = """
+            SELECT id
             FROM food_log_tasks
-            WHERE
-                 (task_status = 'QUEUED')
-              OR (task_status = 'FAILED'
-                  AND next_retry_at_utc IS NOT NULL
-                  AND next_retry_at_utc <= :now)
+            WHERE task_status = 'QUEUED'
+              AND (next_retry_at_utc IS NULL OR next_retry_at_utc <= :now)
             ORDER BY created_at_utc ASC
             LIMIT :limit
             FOR UPDATE SKIP LOCKED
-            """,
-            nativeQuery = true
-    )
-    List<FoodLogTaskEntity> claimRunnableForUpdate(@Param("now") Instant now, @Param("limit") int limit);
+            """;
+
+    /**
+     * ✅ 領取到期的 FAILED：走 idx_food_log_tasks_status (task_status, next_retry_at_utc)
+     * 依到期時間排序，讓 range scan 直接吐出順序，不需要 filesort。
+     */
+    String CLAIM_DUE_RETRY_SQL = """
+            SELECT id
+            FROM food_log_tasks
+            WHERE task_status = 'FAILED'
+              AND next_retry_at_utc <= :now
+            ORDER BY next_retry_at_utc ASC
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """;
+
+    @Query(value = CLAIM_QUEUED_SQL, nativeQuery = true)
+    List<String> claimQueuedIdsForUpdate(@Param("now") Instant now, @Param("limit") int limit);
+
+    @Query(value = CLAIM_DUE_RETRY_SQL, nativeQuery = true)
+    List<String> claimDueRetryIdsForUpdate(@Param("now") Instant now, @Param("limit") int limit);
+
+    /**
+     * ✅ MySQL 8：用 FOR UPDATE SKIP LOCKED 領取任務，避免多 worker 重複撿同一筆
+     * 注意：
+     * - 需要在 @Transactional 內呼叫才會真的 lock
+     * - SKIP LOCKED 讓其他 worker 不會卡住，會跳過已被鎖住的 rows
+     * - 拆成兩個各自吃得到索引的 claim（原本 OR + ORDER BY created_at_utc 在大表上會變成大範圍鎖定掃描）：
+     *   先撿 QUEUED，名額有剩再撿到期的 FAILED
+     */
+    default List<String> claimRunnableIdsForUpdate(Instant now, int limit) {
+        List<String> ids = new ArrayList<>(claimQueuedIdsForUpdate(now, limit));
+        if (ids.size() < limit) {
+            ids.addAll(claimDueRetryIdsForUpdate(now, limit - ids.size()));
+        }
+        return ids;
+    }
 
     Optional<FoodLogTaskEntity> findByFoodLogId(String foodLogId);
 
+    /**
+     * ✅ backlog metrics：只數未結束的 status（走 idx_food_log_tasks_status 的 task_status 前綴），
+     * 不去掃 SUCCEEDED / CANCELLED 歷史資料
+     */
+    @Query("""
+            select t.taskStatus, count(t)
+            from FoodLogTaskEntity t
+            where t.taskStatus in :statuses
+            group by t.taskStatus
+            """)
+    List<Object[]> countByStatusIn(@Param("statuses") Collection<FoodLogTaskEntity.TaskStatus> statuses);
+
+    /** ✅ 最舊的 QUEUED：idx_food_log_tasks_queue 的第一筆 */
+    @Query("select min(t.createdAtUtc) from FoodLogTaskEntity t where t.taskStatus = :status")
+    Optional<Instant> findOldestCreatedAt(@Param("status") FoodLogTaskEntity.TaskStatus status);
+
+    /** ✅ circuit breaker 延後、還沒到 next_retry_at_utc 的 QUEUED */
+    long countByTaskStatusAndNextRetryAtUtcAfter(FoodLogTaskEntity.TaskStatus status, Instant now);
+
     /** ✅ Step 3.8：手動 retry / worker 競態時需要 */
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select t from FoodLogTaskEntity t where t.foodLogId = :foodLogId")
@@ -79,4 +128,28 @@ public interface FoodLogTaskRepository extends JpaRepository<FoodLogTaskEntity,
     @Modifying
     @Query("delete from FoodLogTaskEntity t where t.foodLogId = :foodLogId")
     int deleteByFoodLogId(@Param("foodLogId") String foodLogId);
+
+    /**
+     * ✅ 清掉已結束（SUCCEEDED / CANCELLED）的舊 task，讓 food_log_tasks 維持小表
+     * 讀取端只看 QUEUED / RUNNING / FAILED，結束的 task 不再被使用。
+     * 呼叫端只應傳終態 status。
+     * 一次只刪一種 status：走 idx_food_log_tasks_queue (task_status, created_at_utc) 的單一 range，
+     * 每次最多刪 limit 筆避免長鎖。
+     */
+    @Modifying
+    @Query(
+            value = """
+            DELETE FROM food_log_tasks
+            WHERE task_status = :status
+              AND created_at_utc < :cutoff
+            ORDER BY created_at_utc ASC
+            LIMIT :limit
+            """,
+            nativeQuery = true
+    )
+    int purgeCreatedBefore(
+            @Param("status") String status,
+            @Param("cutoff") Instant cutoff,
+            @Param("limit") int limit
+    );
 }
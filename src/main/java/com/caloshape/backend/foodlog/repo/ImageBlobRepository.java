@@ -9,7 +9,10 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import org.springframework.data.domain.Pageable;
+
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 public interface ImageBlobRepository extends JpaRepository<ImageBlobEntity, Long> {
@@ -88,4 +91,31 @@ public interface ImageBlobRepository extends JpaRepository<ImageBlobEntity, Long
             @Param("userId") Long userId,
             @Param("sha256") String sha256
     );
-}
\ No newline at end of file
+
+    /** 第一次算出 phash 時補寫；已有值就不動 */
+    @Transactional
+    @Modifying
+    @Query(
+            value = """
+            UPDATE image_blobs
+            SET phash = :phash
+            WHERE user_id = :userId AND sha256 = :sha256 AND phash IS NULL
+            """,
+            nativeQuery = true
+    )
+    int updatePhashIfNull(@Param("userId") Long userId, @Param("sha256") String sha256, @Param("phash") long phash);
+
+    /** 近似重複候選：同使用者、近期用過、有 phash 的 blob（新到舊） */
+    @Query("""
+            select b from ImageBlobEntity b
+            where b.userId = :userId
+              and b.phash is not null
+              and b.updatedAtUtc >= :since
+            order by b.updatedAtUtc desc
+            """)
+    List<ImageBlobEntity> findRecentWithPhash(
+            @Param("userId") Long userId,
+            @Param("since") Instant since,
+            Pageable pageable
+    );
+}
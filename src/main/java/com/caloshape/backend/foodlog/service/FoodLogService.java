@@ -4,6 +4,7 @@ import com.caloshape.backend.entitlement.service.EntitlementService;
 import com.caloshape.backend.foodlog.dto.FoodLogEnvelope;
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
 import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.job.worker.FoodLogTaskWakeup;
 import com.caloshape.backend.foodlog.model.FoodLogErrorCode;
 import com.caloshape.backend.foodlog.model.FoodLogMethod;
 import com.caloshape.backend.foodlog.model.FoodLogStatus;
@@ -29,20 +30,20 @@ import com.caloshape.backend.foodlog.storage.support.StorageCleanup;
 import com.caloshape.backend.foodlog.time.CapturedTimeResolver;
 import com.caloshape.backend.foodlog.time.ExifTimeExtractor;
 import com.caloshape.backend.foodlog.web.error.FoodLogAppException;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.InputStream;
 import java.time.*;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
 
 @Slf4j
-@RequiredArgsConstructor
 @Service
 public class FoodLogService {
 
@@ -84,8 +85,59 @@ public class FoodLogService {
     private final FoodLogRetryService retryService;
     private final FoodLogBarcodeService barcodeService;
     private final FoodLogCreateSupport createSupport;
+    private final FoodLogTaskWakeup taskWakeup;
     private final UserDailyNutritionSummaryService dailySummaryService;
 
+    /** 只包 dedupe / quota / insert 這段短交易 */
+    private final TransactionTemplate txTemplate;
+
+    @Autowired
+    public FoodLogService(
+            ProviderClient providerClient,
+            FoodLogRepository repo,
+            FoodLogTaskRepository taskRepo,
+            StorageService storage,
+            QuotaService quota,
+            IdempotencyService idem,
+            UserInFlightLimiter inFlight,
+            UserRateLimiter rateLimiter,
+            Clock clock,
+            CapturedTimeResolver timeResolver,
+            AbuseGuardService abuseGuard,
+            EntitlementService entitlementService,
+            FoodLogEnvelopeAssembler envelopeAssembler,
+            FoodLogQueryService queryService,
+            FoodLogImageAccessService imageAccessService,
+            FoodLogRetryService retryService,
+            FoodLogBarcodeService barcodeService,
+            FoodLogCreateSupport createSupport,
+            FoodLogTaskWakeup taskWakeup,
+            UserDailyNutritionSummaryService dailySummaryService,
+            TransactionTemplate txTemplate
+    ) {
+        this.providerClient = providerClient;
+        this.repo = repo;
+        this.taskRepo = taskRepo;
+        this.storage = storage;
+        this.quota = quota;
+        this.idem = idem;
+        this.inFlight = inFlight;
+        this.rateLimiter = rateLimiter;
+        this.clock = clock;
+        this.timeResolver = timeResolver;
+        this.abuseGuard = abuseGuard;
+        this.entitlementService = entitlementService;
+        this.envelopeAssembler = envelopeAssembler;
+        this.queryService = queryService;
+        this.imageAccessService = imageAccessService;
+        this.retryService = retryService;
+        this.barcodeService = barcodeService;
+        this.createSupport = createSupport;
+        this.taskWakeup = taskWakeup;
+        this.dailySummaryService = dailySummaryService;
+        this.txTemplate = txTemplate;
+    }
+
     /**
      * createAlbum / createPhoto / createLabel 已經能一眼看懂：
      * 先 reserve
@@ -98,9 +150,13 @@ public class FoodLogService {
      * hit → draft
      * miss → pending
      * finalize result
+     *
+     * 交易邊界：整個方法不開交易。
+     * - reserve / release 由 IdempotencyService 自己的短交易處理
+     * - upload（寫檔 + sha256 + sniff + dHash）與 EXIF 不持有 DB 連線，慢速上傳不會佔住 Hikari pool
+     * - 只有 dedupe → quota → insert 這段包在 inCreateTx 的同一個交易內，任何例外一併 rollback
      */
 
-    @Transactional(rollbackFor = Exception.class)
     public FoodLogEnvelope createAlbum(
             Long userId,
             String clientTz,
@@ -137,42 +193,44 @@ public class FoodLogService {
             );
 
             tempKey = upload.tempKey();
-            StorageService.SaveResult saved = upload.saved();
 
             try {
-                // 2) 去重命中（不扣 quota）
-                var hit = findReusableHit(userId, DEDUPE_METHODS_PHOTO_ALBUM, saved.sha256());
-
-                boolean cacheHit = hit.isPresent()
-                                   && hit.get().getEffective() != null
-                                   && hit.get().getEffective().isObject();
-
-                // ✅ Anti-abuse：deviceId 統一 normalize，避免 null/blank key 汙染或 NPE
-                String did = FoodLogRequestNormalizer.normalizeDeviceId(userId, deviceId);
-                abuseGuard.onOperationAttempt(userId, did, cacheHit, serverNow, quotaTz);
-
-                // ✅ ALBUM：固定用「上傳時間」當作 capturedAtUtc
-                LocalDate todayLocal = ZonedDateTime.ofInstant(serverNow, captureTz).toLocalDate();
-
-                FoodLogEntity e = createSupport.newBaseEntity(
-                        userId,
-                        FoodLogMethod.ALBUM,
-                        serverNow,
-                        captureTz.getId(),
-                        todayLocal,
-                        serverNow,
-                        TimeSource.SERVER_RECEIVED,
-                        false
-                );
-
-                if (hit.isPresent() && hit.get().getEffective() != null && hit.get().getEffective().isObject()) {
-                    createSupport.applyCacheHitDraft(e, hit.get());
-                } else {
-                    QuotaService.Decision d = quota.consumeOperationOrThrow(userId, tier, quotaTz, serverNow);
-                    createSupport.applyPendingMiss(e, d.tierUsed(), defaultProvider());
-                }
-
-                return finalizeCreateResult(userId, requestId, serverNow, e, upload);
+                // ↓ 只有這段持有 DB 連線
+                return inCreateTx(() -> {
+                    // 2) 去重命中（不扣 quota）
+                    var hit = findReusableHit(userId, DEDUPE_METHODS_PHOTO_ALBUM, upload, serverNow);
+
+                    boolean cacheHit = hit.isPresent()
+                                       && hit.get().getEffective() != null
+                                       && hit.get().getEffective().isObject();
+
+                    // ✅ Anti-abuse：deviceId 統一 normalize，避免 null/blank key 汙染或 NPE
+                    String did = FoodLogRequestNormalizer.normalizeDeviceId(userId, deviceId);
+                    abuseGuard.onOperationAttempt(userId, did, cacheHit, serverNow, quotaTz);
+
+                    // ✅ ALBUM：固定用「上傳時間」當作 capturedAtUtc
+                    LocalDate todayLocal = ZonedDateTime.ofInstant(serverNow, captureTz).toLocalDate();
+
+                    FoodLogEntity e = createSupport.newBaseEntity(
+                            userId,
+                            FoodLogMethod.ALBUM,
+                            serverNow,
+                            captureTz.getId(),
+                            todayLocal,
+                            serverNow,
+                            TimeSource.SERVER_RECEIVED,
+                            false
+                    );
+
+                    if (hit.isPresent() && hit.get().getEffective() != null && hit.get().getEffective().isObject()) {
+                        createSupport.applyCacheHitDraft(e, hit.get());
+                    } else {
+                        QuotaService.Decision d = quota.consumeOperationOrThrow(userId, tier, quotaTz, serverNow);
+                        createSupport.applyPendingMiss(e, d.tierUsed(), defaultProvider());
+                    }
+
+                    return finalizeCreateResult(userId, requestId, serverNow, e, upload);
+                });
 
             } catch (Exception ex) {
                 cleanupUploadOrBlobAfterFailure(storage, userId, requestId, tempKey);
@@ -188,7 +246,6 @@ public class FoodLogService {
     // =========================
     // S4-08：PHOTO
     // =========================
-    @Transactional(rollbackFor = Exception.class)
     public FoodLogEnvelope createPhoto(
             Long userId,
             String clientTz,
@@ -226,7 +283,6 @@ public class FoodLogService {
             );
 
             tempKey = upload.tempKey();
-            StorageService.SaveResult saved = upload.saved();
 
             try {
                 // 2) EXIF（從 tempKey 再 open 一次讀）
@@ -238,40 +294,43 @@ public class FoodLogService {
                 // 4) resolve capturedAtUtc（EXIF → DEVICE → SERVER）
                 CapturedTimeResolver.Result r = timeResolver.resolve(exifUtc.orElse(null), deviceUtc, serverNow);
 
-                // 5) 去重命中（不扣 quota）
-                var hit = findReusableHit(userId, DEDUPE_METHODS_PHOTO_ALBUM, saved.sha256());
-
-                // ✅ NEW：判斷 cacheHit（必須 effective 是 object 才算真正命中）
-                boolean cacheHit = hit.isPresent()
-                                   && hit.get().getEffective() != null
-                                   && hit.get().getEffective().isObject();
-
-                // ✅ Anti-abuse：deviceId 統一 normalize
-                String did = FoodLogRequestNormalizer.normalizeDeviceId(userId, deviceId);
-                abuseGuard.onOperationAttempt(userId, did, cacheHit, serverNow, quotaTz);
-
-                // 6) 建 log（capturedLocalDate 用 resolved capturedAtUtc + client tz）
-                LocalDate localDate = ZonedDateTime.ofInstant(r.capturedAtUtc(), captureTz).toLocalDate();
-
-                FoodLogEntity e = createSupport.newBaseEntity(
-                        userId,
-                        FoodLogMethod.PHOTO,
-                        r.capturedAtUtc(),
-                        captureTz.getId(),
-                        localDate,
-                        serverNow,
-                        TimeSource.valueOf(r.source().name()),
-                        r.suspect()
-                );
-
-                if (hit.isPresent() && hit.get().getEffective() != null && hit.get().getEffective().isObject()) {
-                    createSupport.applyCacheHitDraft(e, hit.get());
-                } else {
-                    QuotaService.Decision d = quota.consumeOperationOrThrow(userId, tier, quotaTz, serverNow);
-                    createSupport.applyPendingMiss(e, d.tierUsed(), defaultProvider());
-                }
-
-                return finalizeCreateResult(userId, requestId, serverNow, e, upload);
+                // ↓ 只有這段持有 DB 連線
+                return inCreateTx(() -> {
+                    // 5) 去重命中（不扣 quota）
+                    var hit = findReusableHit(userId, DEDUPE_METHODS_PHOTO_ALBUM, upload, serverNow);
+
+                    // ✅ NEW：判斷 cacheHit（必須 effective 是 object 才算真正命中）
+                    boolean cacheHit = hit.isPresent()
+                                       && hit.get().getEffective() != null
+                                       && hit.get().getEffective().isObject();
+
+                    // ✅ Anti-abuse：deviceId 統一 normalize
+                    String did = FoodLogRequestNormalizer.normalizeDeviceId(userId, deviceId);
+                    abuseGuard.onOperationAttempt(userId, did, cacheHit, serverNow, quotaTz);
+
+                    // 6) 建 log（capturedLocalDate 用 resolved capturedAtUtc + client tz）
+                    LocalDate localDate = ZonedDateTime.ofInstant(r.capturedAtUtc(), captureTz).toLocalDate();
+
+                    FoodLogEntity e = createSupport.newBaseEntity(
+                            userId,
+                            FoodLogMethod.PHOTO,
+                            r.capturedAtUtc(),
+                            captureTz.getId(),
+                            localDate,
+                            serverNow,
+                            TimeSource.valueOf(r.source().name()),
+                            r.suspect()
+                    );
+
+                    if (hit.isPresent() && hit.get().getEffective() != null && hit.get().getEffective().isObject()) {
+                        createSupport.applyCacheHitDraft(e, hit.get());
+                    } else {
+                        QuotaService.Decision d = quota.consumeOperationOrThrow(userId, tier, quotaTz, serverNow);
+                        createSupport.applyPendingMiss(e, d.tierUsed(), defaultProvider());
+                    }
+
+                    return finalizeCreateResult(userId, requestId, serverNow, e, upload);
+                });
 
             } catch (Exception ex) {
                 // ✅ retain 後若後續失敗，只清 tempKey；blob orphan 留給背景 cleaner
@@ -288,7 +347,6 @@ public class FoodLogService {
     // =========================
     // LABEL：營養標示（Gemini 3 Flash）
     // =========================
-    @Transactional(rollbackFor = Exception.class)
     public FoodLogEnvelope createLabel(
             Long userId,
             String clientTz,
@@ -327,7 +385,6 @@ public class FoodLogService {
             );
 
             tempKey = upload.tempKey();
-            StorageService.SaveResult saved = upload.saved();
 
             try {
                 // 2) EXIF / device / server time resolve（沿用 photo 規則）
@@ -335,39 +392,42 @@ public class FoodLogService {
                 Instant deviceUtc = parseInstantOrNull(deviceCapturedAtUtc);
                 CapturedTimeResolver.Result r = timeResolver.resolve(exifUtc.orElse(null), deviceUtc, serverNow);
 
-                // 3) 去重命中（不扣 quota）
-                var hit = findReusableHit(userId, DEDUPE_METHODS_LABEL, saved.sha256());
-
-                // ✅ NEW：判斷 cacheHit（必須 effective 是 object 才算真正命中）
-                boolean cacheHit = hit.isPresent()
-                                   && hit.get().getEffective() != null
-                                   && hit.get().getEffective().isObject();
-
-                // ✅ Anti-abuse：deviceId 統一 normalize
-                String did = FoodLogRequestNormalizer.normalizeDeviceId(userId, deviceId);
-                abuseGuard.onOperationAttempt(userId, did, cacheHit, serverNow, quotaTz);
-
-                LocalDate localDate = ZonedDateTime.ofInstant(r.capturedAtUtc(), captureTz).toLocalDate();
-
-                FoodLogEntity e = createSupport.newBaseEntity(
-                        userId,
-                        FoodLogMethod.LABEL,
-                        r.capturedAtUtc(),
-                        captureTz.getId(),
-                        localDate,
-                        serverNow,
-                        TimeSource.valueOf(r.source().name()),
-                        r.suspect()
-                );
-
-                if (hit.isPresent() && hit.get().getEffective() != null && hit.get().getEffective().isObject()) {
-                    createSupport.applyCacheHitDraft(e, hit.get());
-                } else {
-                    QuotaService.Decision d = quota.consumeOperationOrThrow(userId, tier, quotaTz, serverNow);
-                    createSupport.applyPendingMiss(e, d.tierUsed(), defaultProvider());
-                }
-
-                return finalizeCreateResult(userId, requestId, serverNow, e, upload);
+                // ↓ 只有這段持有 DB 連線
+                return inCreateTx(() -> {
+                    // 3) 去重命中（不扣 quota）
+                    var hit = findReusableHit(userId, DEDUPE_METHODS_LABEL, upload, serverNow);
+
+                    // ✅ NEW：判斷 cacheHit（必須 effective 是 object 才算真正命中）
+                    boolean cacheHit = hit.isPresent()
+                                       && hit.get().getEffective() != null
+                                       && hit.get().getEffective().isObject();
+
+                    // ✅ Anti-abuse：deviceId 統一 normalize
+                    String did = FoodLogRequestNormalizer.normalizeDeviceId(userId, deviceId);
+                    abuseGuard.onOperationAttempt(userId, did, cacheHit, serverNow, quotaTz);
+
+                    LocalDate localDate = ZonedDateTime.ofInstant(r.capturedAtUtc(), captureTz).toLocalDate();
+
+                    FoodLogEntity e = createSupport.newBaseEntity(
+                            userId,
+                            FoodLogMethod.LABEL,
+                            r.capturedAtUtc(),
+                            captureTz.getId(),
+                            localDate,
+                            serverNow,
+                            TimeSource.valueOf(r.source().name()),
+                            r.suspect()
+                    );
+
+                    if (hit.isPresent() && hit.get().getEffective() != null && hit.get().getEffective().isObject()) {
+                        createSupport.applyCacheHitDraft(e, hit.get());
+                    } else {
+                        QuotaService.Decision d = quota.consumeOperationOrThrow(userId, tier, quotaTz, serverNow);
+                        createSupport.applyPendingMiss(e, d.tierUsed(), defaultProvider());
+                    }
+
+                    return finalizeCreateResult(userId, requestId, serverNow, e, upload);
+                });
 
             } catch (Exception ex) {
                 cleanupUploadOrBlobAfterFailure(storage, userId, requestId, tempKey);
@@ -408,8 +468,8 @@ public class FoodLogService {
         return imageAccessService.openImage(userId, foodLogId);
     }
 
-    public InputStream openImageStream(String objectKey) throws Exception {
-        return imageAccessService.openImageStream(objectKey);
+    public Resource openImageResource(String objectKey) throws Exception {
+        return imageAccessService.openImageResource(objectKey);
     }
 
     public FoodLogEnvelope retry(
@@ -424,6 +484,41 @@ public class FoodLogService {
     // =========================
     // helpers
     // =========================
+    @FunctionalInterface
+    private interface CreateTxStep {
+        FoodLogEnvelope run() throws Exception;
+    }
+
+    /** checked exception 包一層穿過 TransactionTemplate（runtime 例外才會 rollback），出來再拆回原例外 */
+    private static final class CreateTxFailure extends RuntimeException {
+        private CreateTxFailure(Exception cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * dedupe → anti-abuse → quota → insert 的短交易（等同原本方法上的 rollbackFor = Exception.class）。
+     */
+    private FoodLogEnvelope inCreateTx(CreateTxStep step) throws Exception {
+        try {
+            FoodLogEnvelope out = txTemplate.execute(status -> {
+                try {
+                    return step.run();
+                } catch (RuntimeException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new CreateTxFailure(ex);
+                }
+            });
+            if (out == null) {
+                throw new IllegalStateException("FOODLOG_CREATE_TX_EMPTY_RESULT");
+            }
+            return out;
+        } catch (CreateTxFailure wrapped) {
+            throw (Exception) wrapped.getCause();
+        }
+    }
+
     private void validateUploadBasicsOrRelease(Long userId, String requestId, MultipartFile file) {
         try {
             validateUploadBasics(file);
@@ -509,6 +604,24 @@ public class FoodLogService {
         }
     }
 
+    /**
+     * 先找 sha256 完全相同的；沒有再找近似重複（重拍 / 重新壓縮的副本）。
+     * 近似重複命中只沿用分析結果，這次上傳的圖仍照常存成自己的 blob。
+     */
+    private Optional<FoodLogEntity> findReusableHit(
+            Long userId,
+            List<String> methods,
+            FoodLogCreateSupport.UploadTempResult upload,
+            Instant serverNow
+    ) {
+        Optional<FoodLogEntity> exact = findReusableHit(userId, methods, upload.saved().sha256());
+        if (exact.isPresent()) {
+            return exact;
+        }
+        return createSupport.findNearDuplicateSha256(userId, upload, serverNow)
+                .flatMap(nearSha -> findReusableHit(userId, methods, nearSha));
+    }
+
     private Optional<FoodLogEntity> findReusableHit(
             Long userId,
             List<String> methods,
@@ -542,6 +655,7 @@ public class FoodLogService {
 
         FoodLogTaskEntity t = createSupport.createQueuedTask(e.getId());
         taskRepo.save(t);
+        taskWakeup.notifyQueuedAfterCommit();
 
         return envelopeAssembler.assemble(e, t, requestId);
     }
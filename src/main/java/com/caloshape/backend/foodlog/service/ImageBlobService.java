@@ -11,9 +11,13 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.io.ByteArrayInputStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.time.Clock;
 import java.time.Instant;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -30,6 +34,9 @@ public class ImageBlobService {
     private final StorageService storage;
     private final Clock clock;
 
+    /** 目前啟用中的衍生檔 variant（例如 prep-1536q85）；blob 真正刪除時一併清掉 */
+    private final Set<String> derivedVariants = ConcurrentHashMap.newKeySet();
+
     /**
      * @param newlyCreated true = 這次 insertFirst 成功，並由 temp 搬成新 blob
      *                     false = blob 已存在，這次只是 ref_count + 1（重用）
@@ -148,13 +155,62 @@ public class ImageBlobService {
 
             int deletedRows = repo.deleteIfZero(userId, sha256);
             if (deletedRows > 0) {
-                runAfterCommitOrNow(() -> deleteObjectQuietly(userId, sha256, objectKey));
+                runAfterCommitOrNow(() -> {
+                    deleteObjectQuietly(userId, sha256, objectKey);
+                    deleteDerivedQuietly(userId, sha256);
+                });
                 return ReleaseOutcome.DELETE_SCHEDULED;
             }
         }
         return ReleaseOutcome.REF_DECREMENTED;
     }
 
+    /**
+     * 衍生檔（縮圖 / 重新編碼）跟原 blob 放同一個 sha256 目錄、以原 sha256 開頭：
+     * - 重試 / 重新分析直接命中，不必重算
+     * - 舊 variant（設定改過）由 Sha256BlobOrphanCleaner 依檔名前綴對帳回收
+     */
+    public String derivedObjectKey(Long userId, String sha256, String variant) {
+        return blobKey(userId, sha256, "." + variant + ".jpg");
+    }
+
+    public void registerDerivedVariant(String variant) {
+        derivedVariants.add(variant);
+    }
+
+    /**
+     * 寫入衍生檔：先寫 temp 再搬到正式 key，讀的人不會看到寫一半的檔案。
+     * 併發時兩邊算出來的內容相同，誰覆蓋誰都可以。
+     */
+    public void storeDerived(String derivedKey, byte[] bytes, String contentType) throws Exception {
+        String tempKey = derivedKey + ".tmp-" + UUID.randomUUID();
+        storage.save(tempKey, new ByteArrayInputStream(bytes), contentType);
+        try {
+            storage.move(tempKey, derivedKey);
+        } catch (FileAlreadyExistsException e) {
+            storage.delete(tempKey);
+        } catch (Exception ex) {
+            try {
+                storage.delete(tempKey);
+            } catch (Exception ignored) {
+                // best-effort
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * 近似重複比對用的 dHash：同一個 blob 只寫第一次算出來的值。
+     * 寫失敗不影響上傳（只是這張之後比對不到）。
+     */
+    public void recordPerceptualHash(Long userId, String sha256, long phash) {
+        try {
+            repo.updatePhashIfNull(userId, sha256, phash);
+        } catch (Exception ex) {
+            log.warn("record phash failed. userId={}, sha256={}, err={}", userId, sha256, ex.toString());
+        }
+    }
+
     /**
      * 相容過渡版（保留舊簽名）
      * 內部忽略 ext，改走新邏輯，避免現有呼叫點一次改太多。
@@ -204,6 +260,12 @@ public class ImageBlobService {
         }
     }
 
+    private void deleteDerivedQuietly(Long userId, String sha256) {
+        for (String variant : derivedVariants) {
+            deleteObjectQuietly(userId, sha256, derivedObjectKey(userId, sha256, variant));
+        }
+    }
+
     /**
      * 重用既有 blob 時的 temp 清理（保守模式）
      * - 成功：刪 temp + best-effort 刪掉 requestId 空資料夾
@@ -0,0 +1,88 @@
+package com.caloshape.backend.foodlog.service;
+
+import com.caloshape.backend.foodlog.entity.ImageBlobEntity;
+import com.caloshape.backend.foodlog.image.ImageDownscaler;
+import com.caloshape.backend.foodlog.image.NearDuplicateProperties;
+import com.caloshape.backend.foodlog.image.PerceptualHash;
+import com.caloshape.backend.foodlog.repo.ImageBlobRepository;
+import com.caloshape.backend.foodlog.storage.StorageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 同一使用者的近似重複圖片查找（dHash + hamming distance）。
+ * 候選只取「window 內用過的最近 N 張 blob」，每位使用者量很小，
+ * 直接逐一 popcount 比對即可，不需要額外的 BK-tree / LSH 結構，也不必在多個 pod 之間同步索引。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NearDuplicateImageIndex {
+
+    private final ImageBlobRepository repo;
+    private final StorageService storage;
+    private final NearDuplicateProperties props;
+
+    public boolean isEnabled() {
+        return props.isEnabled();
+    }
+
+    /**
+     * 算 dHash；關閉、格式不支援或讀檔失敗都回 null（不影響上傳流程）。
+     */
+    public Long computeOrNull(String objectKey) {
+        if (!props.isEnabled() || objectKey == null) {
+            return null;
+        }
+        try {
+            int orientation;
+            try (InputStream in = storage.open(objectKey).inputStream()) {
+                orientation = ImageDownscaler.readExifOrientation(in);
+            }
+            try (InputStream in = storage.open(objectKey).inputStream()) {
+                return PerceptualHash.dHashOrNull(in, orientation);
+            }
+        } catch (Exception ex) {
+            log.warn("phash_failed objectKey={} errorType={}", objectKey, ex.getClass().getSimpleName());
+            return null;
+        }
+    }
+
+    /**
+     * 找 window 內最像的一張（距離 <= maxDistance），回傳它的 sha256。
+     *
+     * @param excludeSha256 本次上傳自己的 sha256（完全相同的已由 sha256 去重處理）
+     */
+    public Optional<String> findNearestSha256(Long userId, long phash, String excludeSha256, Instant now) {
+        if (!props.isEnabled() || userId == null) {
+            return Optional.empty();
+        }
+
+        List<ImageBlobEntity> candidates = repo.findRecentWithPhash(
+                userId,
+                now.minus(props.getWindow()),
+                PageRequest.of(0, Math.max(1, props.getMaxCandidates()))
+        );
+
+        String best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (ImageBlobEntity b : candidates) {
+            if (b.getPhash() == null || b.getSha256().equals(excludeSha256)) {
+                continue;
+            }
+            int d = PerceptualHash.distance(phash, b.getPhash());
+            if (d <= props.getMaxDistance() && d < bestDistance) {
+                best = b.getSha256();
+                bestDistance = d;
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+}
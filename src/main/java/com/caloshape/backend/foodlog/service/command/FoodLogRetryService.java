@@ -4,6 +4,7 @@ import com.caloshape.backend.entitlement.service.EntitlementService;
 import com.caloshape.backend.foodlog.dto.FoodLogEnvelope;
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
 import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.job.worker.FoodLogTaskWakeup;
 import com.caloshape.backend.foodlog.model.FoodLogErrorCode;
 import com.caloshape.backend.foodlog.model.FoodLogMethod;
 import com.caloshape.backend.foodlog.model.FoodLogStatus;
@@ -45,6 +46,7 @@ public class FoodLogRetryService {
     private final QuotaService quota;
     private final FoodLogEnvelopeAssembler envelopeAssembler;
     private final Clock clock;
+    private final FoodLogTaskWakeup taskWakeup;
 
     @Transactional
     public FoodLogEnvelope retry(
@@ -107,6 +109,7 @@ public class FoodLogRetryService {
 
         taskRepo.save(task);
         repo.save(log);
+        taskWakeup.notifyQueuedAfterCommit();
 
         return envelopeAssembler.assemble(log, task, requestId);
     }
@@ -7,17 +7,21 @@ import com.caloshape.backend.foodlog.repo.FoodLogRepository;
 import com.caloshape.backend.foodlog.storage.StorageService;
 import com.caloshape.backend.foodlog.web.error.FoodLogAppException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.io.InputStream;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 
 @Service
 @RequiredArgsConstructor
 public class FoodLogImageAccessService {
 
+    /** blob 內容定址、不會變；上限只是避免 client 永久留著 */
+    private static final Duration MAX_CACHE_AGE = Duration.ofDays(365);
+
     private final FoodLogRepository repo;
     private final StorageService storage;
     private final FoodLogRetentionProperties retentionProperties;
@@ -32,11 +36,11 @@ public class FoodLogImageAccessService {
             throw new FoodLogAppException(FoodLogErrorCode.FOOD_LOG_DELETED);
         }
 
-        Instant cutoff = Instant.now(clock).minus(
-                log.getStatus() == FoodLogStatus.SAVED
-                        ? retentionProperties.getKeepSavedOriginalImage()
-                        : retentionProperties.getKeepOriginalImage()
-        );
+        Duration keep = log.getStatus() == FoodLogStatus.SAVED
+                ? retentionProperties.getKeepSavedOriginalImage()
+                : retentionProperties.getKeepOriginalImage();
+        Instant now = Instant.now(clock);
+        Instant cutoff = now.minus(keep);
 
         if (log.getServerReceivedAtUtc() != null && !log.getServerReceivedAtUtc().isAfter(cutoff)) {
             throw new FoodLogAppException(FoodLogErrorCode.FOOD_LOG_NOT_FOUND);
@@ -48,14 +52,24 @@ public class FoodLogImageAccessService {
 
         long size = log.getImageSizeBytes() == null ? -1L : log.getImageSizeBytes();
 
+        long maxAgeSec = (log.getServerReceivedAtUtc() == null)
+                ? MAX_CACHE_AGE.toSeconds()
+                : Math.min(MAX_CACHE_AGE.toSeconds(),
+                        Duration.between(now, log.getServerReceivedAtUtc().plus(keep)).toSeconds());
+
         return new ImageOpenResult(
                 log.getImageObjectKey(),
                 log.getImageContentType(),
-                size
+                size,
+                log.getImageSha256(),
+                Math.max(0L, maxAgeSec)
         );
     }
 
-    public InputStream openImageStream(String objectKey) throws Exception {
-        return storage.open(objectKey).inputStream();
+    /**
+     * 交給 Spring MVC 直接寫出（支援 Range）；LocalDisk 為 FileSystemResource
+     */
+    public Resource openImageResource(String objectKey) throws Exception {
+        return storage.openResource(objectKey);
     }
 }
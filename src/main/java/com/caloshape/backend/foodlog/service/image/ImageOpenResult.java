@@ -1,8 +1,14 @@
 package com.caloshape.backend.foodlog.service.image;
 
+/**
+ * @param sha256         blob 的 SHA-256（內容定址，等於內容本身的版本）；舊資料可能為 null
+ * @param cacheMaxAgeSec client 可快取多久：到原圖 retention 到期為止（之後這張圖會回 404），最多一年
+ */
 public record ImageOpenResult(
         String objectKey,
         String contentType,
-        long sizeBytes
+        long sizeBytes,
+        String sha256,
+        long cacheMaxAgeSec
 ) {
 }
@@ -0,0 +1,81 @@
+package com.caloshape.backend.foodlog.service.limiter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * UserInFlightLimiter async 模式的背景迴圈（常駐 virtual thread）：
+ * - 有 release 進佇列就立刻批次送出（同一瞬間的多個 release 合成一個 pipeline）
+ * - 每 renewInterval 續約一次本 pod 仍持有的 lease
+ * 關機時把剩下的 release 送完再結束。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.guard.inflight", name = "async-release", havingValue = "true")
+public class UserInFlightLeaseLoop implements SmartLifecycle {
+
+    private static final Duration MAX_WAIT = Duration.ofSeconds(1);
+
+    private final UserInFlightLimiter limiter;
+
+    private volatile boolean running;
+    private volatile Thread thread;
+
+    public UserInFlightLeaseLoop(UserInFlightLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        thread = Thread.ofVirtual().name("inflight-lease-loop").start(this::loop);
+        log.info("inflight lease loop started renewInterval={}", limiter.renewInterval());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread t = thread;
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join(MAX_WAIT.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        limiter.flushPendingReleases();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void loop() {
+        long renewIntervalNanos = limiter.renewInterval().toNanos();
+        long nextRenewAt = System.nanoTime() + renewIntervalNanos;
+
+        while (running) {
+            try {
+                long untilRenew = nextRenewAt - System.nanoTime();
+                Duration wait = Duration.ofNanos(Math.max(0L, Math.min(untilRenew, MAX_WAIT.toNanos())));
+                limiter.flushPendingReleases(wait);
+
+                if (System.nanoTime() - nextRenewAt >= 0) {
+                    limiter.renewActiveLeases();
+                    nextRenewAt = System.nanoTime() + renewIntervalNanos;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("inflight lease loop round failed", e);
+            }
+        }
+    }
+}
@@ -1,16 +1,31 @@
 package com.caloshape.backend.foodlog.service.limiter;
 
 import com.caloshape.backend.foodlog.web.error.TooManyInFlightException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 import java.time.Clock;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ✅ Redis 多機全域 in-flight limiter
@@ -26,6 +41,17 @@ import java.util.UUID;
  * 1. 多機全域生效
  * 2. request crash 時，lease TTL 到期後可自動回收
  * 3. 避免單純 counter 因漏 release 而永久卡死
+ *
+ * async-release = true 時（搭配 UserInFlightLeaseLoop）：
+ * - release 只把 lease 丟進本機佇列，request thread 不等 Redis
+ * - 背景批次以 pipeline 送 ZREM（過期清理交給下一次 acquire，不必每次 release 都做）
+ * - 本 pod 還持有的 lease 每 leaseTtl/3 續約一次，TTL 只需涵蓋「pod 掛掉後多久回收」，不必涵蓋最長的請求
+ *
+ * Metrics（/actuator/metrics）：
+ * - foodlog.inflight.acquire{result}：acquire 延遲
+ * - foodlog.inflight.leases_per_user：acquire 當下該 user 的 lease 數（全叢集）
+ * - foodlog.inflight.leases.active / foodlog.inflight.release.pending：本 pod 持有中 / 待送出的 lease
+ * - foodlog.inflight.redis.failures{op}
  */
 @Slf4j
 @Service
@@ -109,29 +135,82 @@ public class UserInFlightLimiter {
                     String.class
             );
 
+    /** 單次 pipeline 最多送出的 lease 數 */
+    private static final int MAX_BATCH = 256;
+
+    /** 續約上限：超過仍未 release 的 lease 視為漏掉，停止續約讓 TTL 回收 */
+    private static final long MAX_RENEW_HOLD_MS = Duration.ofMinutes(30).toMillis();
+
     private final int maxInFlight;
     private final long leaseTtlMillis;
     private final String redisKeyPrefix;
     private final Clock clock;
     private final StringRedisTemplate redisTemplate;
+    private final boolean asyncRelease;
 
+    /** 本 pod 持有中的 lease -> acquire 時間（ms）；只在 async 模式使用 */
+    private final Map<Lease, Long> active = new ConcurrentHashMap<>();
+    private final BlockingQueue<Lease> pendingRelease = new LinkedBlockingQueue<>();
+
+    private final Timer acquireAcquired;
+    private final Timer acquireRejected;
+    private final Timer acquireError;
+    private final DistributionSummary leasesPerUser;
+    private final MeterRegistry meterRegistry;
+
+    /** op -> counter；Redis 掛掉時每個失敗都會走到，不在熱路徑上重新 register */
+    private final Map<String, Counter> redisFailures = new ConcurrentHashMap<>();
+
+    @Autowired
     public UserInFlightLimiter(
             @Value("${app.guard.inflight.max:2}") int maxInFlight,
             @Value("${app.guard.inflight.lease-ttl:PT5M}") Duration leaseTtl,
             @Value("${app.guard.inflight.redis-prefix:caloshape}") String redisPrefix,
+            @Value("${app.guard.inflight.async-release:false}") boolean asyncRelease,
             Clock clock,
-            StringRedisTemplate redisTemplate
+            StringRedisTemplate redisTemplate,
+            MeterRegistry meterRegistry
     ) {
         this.maxInFlight = Math.max(1, maxInFlight);
         this.leaseTtlMillis = Math.max(30_000L, leaseTtl.toMillis());
         this.redisKeyPrefix = normalizePrefix(redisPrefix) + ":guard:inflight";
+        this.asyncRelease = asyncRelease;
         this.clock = clock;
         this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+
+        this.acquireAcquired = acquireTimer(meterRegistry, "acquired");
+        this.acquireRejected = acquireTimer(meterRegistry, "rejected");
+        this.acquireError = acquireTimer(meterRegistry, "error");
+        this.leasesPerUser = DistributionSummary.builder("foodlog.inflight.leases_per_user")
+                .description("In-flight leases held by the user right after acquire (cluster-wide)")
+                .register(meterRegistry);
+        meterRegistry.gauge("foodlog.inflight.leases.active", active, Map::size);
+        meterRegistry.gauge("foodlog.inflight.release.pending", pendingRelease, BlockingQueue::size);
     }
 
     public Lease acquireOrThrow(Long userId) {
         if (userId == null) return null;
 
+        long startNanos = System.nanoTime();
+        Timer outcome = acquireError;
+        try {
+            Lease lease = doAcquireOrThrow(userId);
+            outcome = acquireAcquired;
+            if (asyncRelease) {
+                active.put(lease, clock.millis());
+            }
+            return lease;
+        } catch (TooManyInFlightException ex) {
+            outcome = acquireRejected;
+            throw ex;
+        } finally {
+            outcome.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Lease doAcquireOrThrow(Long userId) {
+
         long nowMs = clock.instant().toEpochMilli();
         long expiresAtMs = nowMs + leaseTtlMillis;
         String token = UUID.randomUUID().toString();
@@ -149,6 +228,7 @@ public class UserInFlightLimiter {
                     String.valueOf(leaseTtlMillis)
             );
         } catch (Exception ex) {
+            redisFailure("acquire");
             log.error("inflight_acquire_redis_error userId={} key={} errorType={}",
                     userId, key, ex.getClass().getSimpleName());
             throw new IllegalStateException("INFLIGHT_LIMITER_REDIS_FAILED", ex);
@@ -165,6 +245,8 @@ public class UserInFlightLimiter {
             throw new IllegalStateException("INFLIGHT_LIMITER_REDIS_FAILED");
         }
 
+        recordLeaseCount(parts[1]);
+
         if ("1".equals(parts[0])) {
             if (log.isDebugEnabled()) {
                 log.debug("inflight_acquired userId={} key={} expiresAtMs={}",
@@ -188,12 +270,19 @@ public class UserInFlightLimiter {
      * release 採 best effort：
      * - 不拋例外，避免 finally 區塊把主流程結果蓋掉
      * - 若 Redis 暫時故障，最差情況是 lease 等 TTL 到期自動清掉
+     * - async 模式只排進佇列，由 flushPendingReleases 批次送出
      */
     public void release(Lease lease) {
         if (lease == null || lease.userId() == null || lease.token() == null || lease.token().isBlank()) {
             return;
         }
 
+        if (asyncRelease) {
+            active.remove(lease);
+            pendingRelease.offer(lease);
+            return;
+        }
+
         long nowMs = clock.instant().toEpochMilli();
         String key = inFlightKey(lease.userId());
 
@@ -211,11 +300,140 @@ public class UserInFlightLimiter {
                         lease.userId(), key, raw);
             }
         } catch (Exception ex) {
+            redisFailure("release");
             log.warn("inflight_release_failed userId={} key={} errorType={}",
                     lease.userId(), key, ex.getClass().getSimpleName());
         }
     }
 
+    /** 續約間隔：TTL 的 1/3，漏一兩輪也不會過期 */
+    public Duration renewInterval() {
+        return Duration.ofMillis(leaseTtlMillis / 3);
+    }
+
+    /**
+     * 等待佇列出現待 release 的 lease（最多 maxWait），再把目前累積的一次送出。
+     *
+     * @return 本次送出的 lease 數
+     */
+    public int flushPendingReleases(Duration maxWait) throws InterruptedException {
+        Lease head = pendingRelease.poll(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        if (head == null) {
+            return 0;
+        }
+
+        List<Lease> batch = new ArrayList<>(MAX_BATCH);
+        batch.add(head);
+        pendingRelease.drainTo(batch, MAX_BATCH - 1);
+
+        int total = 0;
+        do {
+            total += sendReleaseBatch(batch);
+            batch.clear();
+        } while (pendingRelease.drainTo(batch, MAX_BATCH) > 0);
+        return total;
+    }
+
+    /**
+     * 不等待：把佇列中已累積的 release 送完（關機時用）。
+     */
+    public int flushPendingReleases() {
+        int total = 0;
+        List<Lease> batch = new ArrayList<>(MAX_BATCH);
+        while (pendingRelease.drainTo(batch, MAX_BATCH) > 0) {
+            total += sendReleaseBatch(batch);
+            batch.clear();
+        }
+        return total;
+    }
+
+    /**
+     * 一個 pipeline 送出整批 ZREM。
+     * 失敗只記錄；lease 會在 TTL 到期後由 acquire 清掉。
+     */
+    private int sendReleaseBatch(List<Lease> batch) {
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Lease lease : batch) {
+                    conn.zRem(inFlightKey(lease.userId()), lease.token());
+                }
+                return null;
+            });
+            return batch.size();
+        } catch (Exception ex) {
+            redisFailure("release");
+            log.warn("inflight_release_batch_failed size={} errorType={}",
+                    batch.size(), ex.getClass().getSimpleName());
+            return 0;
+        }
+    }
+
+    /**
+     * 本 pod 仍持有的 lease 以 pipeline 續約（ZADD XX 把到期時間往後推 + 延長 key TTL）。
+     *
+     * @return 本次續約的 lease 數
+     */
+    public int renewActiveLeases() {
+        if (active.isEmpty()) {
+            return 0;
+        }
+
+        long nowMs = clock.millis();
+        long expiresAtMs = nowMs + leaseTtlMillis;
+
+        List<Lease> renewable = new ArrayList<>(active.size());
+        active.forEach((lease, acquiredAtMs) -> {
+            if (nowMs - acquiredAtMs <= MAX_RENEW_HOLD_MS) {
+                renewable.add(lease);
+            } else {
+                active.remove(lease, acquiredAtMs);
+                log.warn("inflight_lease_renew_abandoned userId={} heldMs={}", lease.userId(), nowMs - acquiredAtMs);
+            }
+        });
+
+        for (int from = 0; from < renewable.size(); from += MAX_BATCH) {
+            List<Lease> batch = renewable.subList(from, Math.min(renewable.size(), from + MAX_BATCH));
+            try {
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (Lease lease : batch) {
+                        String key = inFlightKey(lease.userId());
+                        conn.zAdd(key, expiresAtMs, lease.token(), RedisZSetCommands.ZAddArgs.ifExists());
+                        conn.pExpire(key, leaseTtlMillis);
+                    }
+                    return null;
+                });
+            } catch (Exception ex) {
+                redisFailure("renew");
+                log.warn("inflight_renew_batch_failed size={} errorType={}",
+                        batch.size(), ex.getClass().getSimpleName());
+            }
+        }
+        return renewable.size();
+    }
+
+    private void recordLeaseCount(String raw) {
+        try {
+            leasesPerUser.record(Long.parseLong(raw));
+        } catch (NumberFormatException ignored) {
+            // 格式錯誤由呼叫端處理
+        }
+    }
+
+    private void redisFailure(String op) {
+        redisFailures.computeIfAbsent(op, o -> Counter.builder("foodlog.inflight.redis.failures")
+                        .tag("op", o)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    private static Timer acquireTimer(MeterRegistry registry, String result) {
+        return Timer.builder("foodlog.inflight.acquire")
+                .tag("result", result)
+                .register(registry);
+    }
+
     private String inFlightKey(Long userId) {
         return redisKeyPrefix + ":user:" + userId;
     }
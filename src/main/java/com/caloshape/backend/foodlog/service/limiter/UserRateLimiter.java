@@ -9,60 +9,129 @@ import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * ✅ Redis 多機全域速率限制（固定視窗 60 秒）
- * - 每個 userId + windowStart 一個 Redis key
+ * ✅ Redis 多機全域速率限制（滑動視窗 60 秒，sliding log）
+ * - 每個 userId 一個 Redis ZSET，score = 放行時間（ms）
+ * - 任意連續 60 秒內放行次數不超過上限（固定視窗在邊界可放行 2 倍，這裡不會）
  * - Free / Trial / None：freePerMinuteLimit（預設 6）
  * - Paid（MONTHLY / YEARLY）：paidPerMinuteLimit（預設 20）
  *
- * 特性：
- * 1. 多機共用同一份限流狀態
- * 2. key 會在當前 minute window 結束時自動過期
- * 3. retryAfter 直接取 Redis TTL
+ * 本機預檢（local-lease-max > 1 時啟用）：
+ * 1. 離上限還遠時，一次 Redis 呼叫預留多筆額度（lease），本 pod 之後的請求直接消耗，不再打 Redis
+ *    預留的 score 記在 now + leaseTtl，實際使用時間一定落在其中，滑動視窗上限不會被放寬
+ * 2. lease 過期未用完的額度，在下一次 Redis 呼叫時一併 ZREM 歸還
+ * 3. 被拒時在本機拒絕同一 user，但最多 local-lease-ttl 就回 Redis 重查：
+ *    其他 pod 歸還未用完的 lease（ZREM）會讓視窗提早空出來，Redis 回的 retryAfter 只是上限
+ * 接近上限時每次只預留 1 筆，等同逐次查 Redis。
  */
 @Slf4j
 @Service
 public class UserRateLimiter {
 
-    private static final long WINDOW_SIZE_SEC = 60L;
+    private static final long WINDOW_MS = 60_000L;
+
+    /** 本機狀態超過此數量時順手清掉已失效的 user */
+    private static final int LOCAL_SWEEP_THRESHOLD = 10_000;
 
     /**
-     * 回傳格式："{currentCount}:{ttlSec}"
+     * 回傳格式："{usedInWindow}:{retryAfterSec}:{granted}"
+     * 被拒時 usedInWindow = limit + 1、granted = 0。
      *
-     * ARGV[1] = expireSeconds
+     * ARGV[1] = limit
+     * ARGV[2] = windowMs
+     * ARGV[3] = nowMs
+     * ARGV[4] = 最多預留筆數（含本次）
+     * ARGV[5] = 預留筆數的 score（nowMs + leaseTtlMs）
+     * ARGV[6] = member 前綴（每次呼叫唯一）
+     * ARGV[7..] = 要歸還的 lease member
      */
     private static final RedisScript<String> RATE_CHECK_SCRIPT =
             new DefaultRedisScript<>(
                     """
-                    local current = redis.call('INCR', KEYS[1])
-                    if current == 1 then
-                      redis.call('EXPIRE', KEYS[1], tonumber(ARGV[1]))
+                    local limit = tonumber(ARGV[1])
+                    local window = tonumber(ARGV[2])
+                    local now = tonumber(ARGV[3])
+                    local maxGrant = tonumber(ARGV[4])
+                    local leaseScore = tonumber(ARGV[5])
+                    for i = 7, #ARGV do
+                      redis.call('ZREM', KEYS[1], ARGV[i])
+                    end
+                    redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - window)
+                    local used = redis.call('ZCARD', KEYS[1])
+                    if used >= limit then
+                      local oldest = redis.call('ZRANGE', KEYS[1], 0, 0, 'WITHSCORES')
+                      local retryMs = window
+                      if oldest[2] then
+                        retryMs = tonumber(oldest[2]) + window - now
+                      end
+                      return tostring(limit + 1) .. ':' .. tostring(math.ceil(retryMs / 1000)) .. ':0'
+                    end
+                    local grant = 1
+                    local spare = (limit - used) - math.ceil(limit / 2)
+                    if maxGrant > 1 and spare > 1 then
+                      grant = math.min(maxGrant, spare)
                     end
-                    local ttl = redis.call('TTL', KEYS[1])
-                    return tostring(current) .. ':' .. tostring(ttl)
+                    redis.call('ZADD', KEYS[1], now, ARGV[6] .. ':1')
+                    for i = 2, grant do
+                      redis.call('ZADD', KEYS[1], leaseScore, ARGV[6] .. ':' .. i)
+                    end
+                    redis.call('PEXPIRE', KEYS[1], window + (leaseScore - now))
+                    return tostring(used + grant) .. ':0:' .. tostring(grant)
                     """,
                     String.class
             );
 
-    private record RedisResult(long currentCount, long ttlSec) {}
+    private record RedisResult(long usedInWindow, long retryAfterSec, int granted) {}
+
+    /** 單一 user 在本 pod 的預檢狀態；以物件本身做同步 */
+    private static final class LocalState {
+        private final ArrayDeque<String> leased = new ArrayDeque<>();
+        private int limit;
+        private long leaseExpiresAtMs;
+        /** 在此之前本機直接拒絕；之後回 Redis 重查 */
+        private long deniedUntilMs;
+        /** Redis 回報的 retryAfter 到期時間，只用來回給 client */
+        private long retryAtMs;
+
+        private boolean isIdle(long nowMs) {
+            return (leased.isEmpty() || nowMs >= leaseExpiresAtMs) && nowMs >= deniedUntilMs;
+        }
+    }
 
     private final StringRedisTemplate redisTemplate;
     private final int freePerMinuteLimit;
     private final int paidPerMinuteLimit;
     private final String redisKeyPrefix;
+    private final int localLeaseMax;
+    private final long localLeaseTtlMs;
+
+    private final ConcurrentHashMap<Long, LocalState> local = new ConcurrentHashMap<>();
+    private final String memberPrefix = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLong memberSeq = new AtomicLong();
 
     public UserRateLimiter(
             @Value("${app.guard.rate.free-per-minute:6}") int freePerMinuteLimit,
             @Value("${app.guard.rate.paid-per-minute:20}") int paidPerMinuteLimit,
             @Value("${app.guard.rate.redis-prefix:caloshape}") String redisPrefix,
+            @Value("${app.guard.rate.local-lease-max:1}") int localLeaseMax,
+            @Value("${app.guard.rate.local-lease-ttl:PT5S}") Duration localLeaseTtl,
             StringRedisTemplate redisTemplate
     ) {
         this.freePerMinuteLimit = Math.max(1, freePerMinuteLimit);
         this.paidPerMinuteLimit = Math.max(1, paidPerMinuteLimit);
         this.redisKeyPrefix = normalizePrefix(redisPrefix) + ":guard:rate";
+        this.localLeaseMax = Math.max(1, localLeaseMax);
+        this.localLeaseTtlMs = (localLeaseTtl == null || localLeaseTtl.isNegative()) ? 0L : localLeaseTtl.toMillis();
         this.redisTemplate = redisTemplate;
     }
 
@@ -70,19 +139,83 @@ public class UserRateLimiter {
         if (userId == null) return;
 
         int perMinuteLimit = isPaidTier(tier) ? paidPerMinuteLimit : freePerMinuteLimit;
+        long nowMs = nowUtc.toEpochMilli();
 
-        long nowSec = nowUtc.getEpochSecond();
-        long windowStart = (nowSec / WINDOW_SIZE_SEC) * WINDOW_SIZE_SEC;
-        long expireSeconds = Math.max(1L, (windowStart + WINDOW_SIZE_SEC) - nowSec);
+        if (!isLocalPrecheckEnabled()) {
+            checkRemote(userId, tier, perMinuteLimit, nowMs, List.of());
+            return;
+        }
+
+        LocalState state = local.computeIfAbsent(userId, ignored -> new LocalState());
+        synchronized (state) {
+            if (state.limit != perMinuteLimit) {
+                // tier 變了：舊 lease 依舊上限預留，直接歸還重算
+                state.limit = perMinuteLimit;
+                state.deniedUntilMs = 0L;
+                state.retryAtMs = 0L;
+                state.leaseExpiresAtMs = 0L;
+            }
+
+            if (nowMs < state.deniedUntilMs) {
+                int retryAfter = (int) Math.max(1L, ceilDiv(state.retryAtMs - nowMs, 1000L));
+                log.debug("rate_limited_local userId={} tier={} limit={} retryAfterSec={}",
+                        userId, tier, perMinuteLimit, retryAfter);
+                throw new RateLimitedException("RATE_LIMITED", retryAfter, "RETRY_LATER");
+            }
+
+            if (nowMs < state.leaseExpiresAtMs && !state.leased.isEmpty()) {
+                state.leased.poll();
+                return;
+            }
 
-        String key = rateKey(userId, windowStart);
+            List<String> release = new ArrayList<>(state.leased);
+            state.leased.clear();
+
+            try {
+                List<String> granted = checkRemote(userId, tier, perMinuteLimit, nowMs, release);
+                state.leased.addAll(granted);
+                state.leaseExpiresAtMs = nowMs + localLeaseTtlMs;
+            } catch (RateLimitedException ex) {
+                long retryAfterMs = ex.retryAfterSec() * 1000L;
+                state.retryAtMs = nowMs + retryAfterMs;
+                state.deniedUntilMs = nowMs + Math.min(retryAfterMs, localLeaseTtlMs);
+                throw ex;
+            }
+        }
+
+        if (local.size() > LOCAL_SWEEP_THRESHOLD) {
+            sweepIdle(nowMs);
+        }
+    }
+
+    /**
+     * @return 額外預留、尚未使用的 lease member（本次請求已消耗一筆）
+     */
+    private List<String> checkRemote(
+            Long userId,
+            EntitlementService.Tier tier,
+            int perMinuteLimit,
+            long nowMs,
+            List<String> release
+    ) {
+        String key = rateKey(userId);
+        String member = memberPrefix + ":" + memberSeq.incrementAndGet();
+
+        List<String> args = new ArrayList<>(6 + release.size());
+        args.add(String.valueOf(perMinuteLimit));
+        args.add(String.valueOf(WINDOW_MS));
+        args.add(String.valueOf(nowMs));
+        args.add(String.valueOf(localLeaseMax));
+        args.add(String.valueOf(nowMs + localLeaseTtlMs));
+        args.add(member);
+        args.addAll(release);
 
         String raw;
         try {
             raw = redisTemplate.execute(
                     RATE_CHECK_SCRIPT,
                     Collections.singletonList(key),
-                    String.valueOf(expireSeconds)
+                    args.toArray()
             );
         } catch (Exception ex) {
             log.error("rate_limiter_redis_error userId={} tier={} key={} message={}",
@@ -99,44 +232,72 @@ public class UserRateLimiter {
             throw ex;
         }
 
-        if (result.currentCount > perMinuteLimit) {
-            int retryAfter = (int) Math.max(1L, result.ttlSec > 0 ? result.ttlSec : expireSeconds);
+        if (result.usedInWindow > perMinuteLimit) {
+            int retryAfter = (int) Math.max(1L, result.retryAfterSec);
 
-            log.warn("rate_limited userId={} tier={} currentCount={} limit={} retryAfterSec={} windowStart={}",
-                    userId, tier, result.currentCount, perMinuteLimit, retryAfter, windowStart);
+            log.warn("rate_limited userId={} tier={} usedInWindow={} limit={} retryAfterSec={}",
+                    userId, tier, result.usedInWindow, perMinuteLimit, retryAfter);
 
             throw new RateLimitedException("RATE_LIMITED", retryAfter, "RETRY_LATER");
         }
 
         if (log.isDebugEnabled()) {
-            log.debug("rate_check_pass userId={} tier={} currentCount={} limit={} ttlSec={} windowStart={}",
-                    userId, tier, result.currentCount, perMinuteLimit, result.ttlSec, windowStart);
+            log.debug("rate_check_pass userId={} tier={} usedInWindow={} limit={} granted={}",
+                    userId, tier, result.usedInWindow, perMinuteLimit, result.granted);
+        }
+
+        List<String> leased = new ArrayList<>(Math.max(0, result.granted - 1));
+        for (int i = 2; i <= result.granted; i++) {
+            leased.add(member + ":" + i);
         }
+        return leased;
     }
 
-    private String rateKey(Long userId, long windowStart) {
-        return redisKeyPrefix + ":user:" + userId + ":window:" + windowStart;
+    private boolean isLocalPrecheckEnabled() {
+        return localLeaseMax > 1 && localLeaseTtlMs > 0L;
     }
 
+    private void sweepIdle(long nowMs) {
+        local.forEach((userId, state) -> {
+            synchronized (state) {
+                if (state.isIdle(nowMs)) {
+                    local.remove(userId, state);
+                }
+            }
+        });
+    }
+
+    private String rateKey(Long userId) {
+        return redisKeyPrefix + ":user:" + userId + ":log";
+    }
+
+    /**
+     * 也接受舊格式 "{count}:{ttlSec}"（granted 視為 1）。
+     */
     private static RedisResult parseRedisResult(String raw, String errorCode) {
         if (raw == null || raw.isBlank()) {
             throw new IllegalStateException(errorCode);
         }
 
-        String[] parts = raw.split(":", 2);
-        if (parts.length != 2) {
+        String[] parts = raw.split(":", 3);
+        if (parts.length < 2) {
             throw new IllegalStateException(errorCode);
         }
 
         try {
-            long currentCount = Long.parseLong(parts[0]);
-            long ttlSec = Long.parseLong(parts[1]);
-            return new RedisResult(currentCount, ttlSec);
+            long usedInWindow = Long.parseLong(parts[0]);
+            long retryAfterSec = Long.parseLong(parts[1]);
+            int granted = (parts.length == 3) ? Integer.parseInt(parts[2]) : 1;
+            return new RedisResult(usedInWindow, retryAfterSec, granted);
         } catch (NumberFormatException ex) {
             throw new IllegalStateException(errorCode, ex);
         }
     }
 
+    private static long ceilDiv(long a, long b) {
+        return -Math.floorDiv(-a, b);
+    }
+
     private static String normalizePrefix(String raw) {
         String s = (raw == null || raw.isBlank()) ? "caloshape" : raw.trim();
         while (s.endsWith(":")) {
@@ -0,0 +1,127 @@
+package com.caloshape.backend.foodlog.service.query;
+
+import com.caloshape.backend.foodlog.dto.FoodLogEnvelope;
+import com.caloshape.backend.foodlog.job.worker.FoodLogResultNotifier;
+import com.caloshape.backend.foodlog.model.FoodLogStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * GET /api/v1/food-logs/{id}/result 的 long-poll：
+ * - 已不是 PENDING：立刻回 envelope（同 getOne）
+ * - 仍是 PENDING：request 交給 async servlet（DeferredResult）掛著，不佔 Tomcat thread
+ *   worker 回寫結果 commit 後由 FoodLogResultNotifier 喚醒（跨 pod 經 Redis pub/sub），再查一次 DB 回應
+ * - 等到 waitSec 仍未完成：回當下的 envelope（仍是 PENDING），client 直接再發一次即可
+ */
+@Slf4j
+@Service
+public class FoodLogResultWaitService {
+
+    private final FoodLogQueryService queryService;
+    private final FoodLogResultNotifier notifier;
+    private final Duration maxWait;
+    private final int maxWaiters;
+
+    /** 被喚醒後重查 DB 用（foodLogResultWaitExecutor，關機時由 Spring 收掉）；喚醒來自 Redis listener thread，不能在那裡做 I/O */
+    private final Executor completionExecutor;
+
+    public FoodLogResultWaitService(
+            FoodLogQueryService queryService,
+            FoodLogResultNotifier notifier,
+            @Value("${app.foodlog.result-wait.max-wait:PT25S}") Duration maxWait,
+            @Value("${app.foodlog.result-wait.max-waiters:10000}") int maxWaiters,
+            @Qualifier("foodLogResultWaitExecutor") Executor completionExecutor
+    ) {
+        this.queryService = queryService;
+        this.notifier = notifier;
+        this.maxWait = (maxWait == null || maxWait.isNegative()) ? Duration.ZERO : maxWait;
+        this.maxWaiters = Math.max(0, maxWaiters);
+        this.completionExecutor = completionExecutor;
+    }
+
+    /**
+     * @param waitSec client 要求的最長等待秒數；null = 用上限，超過上限以上限為準，0 = 不等待
+     */
+    public DeferredResult<FoodLogEnvelope> await(Long userId, String id, Integer waitSec, String requestId) {
+        Duration wait = resolveWait(waitSec);
+
+        if (wait.isZero()) {
+            return completed(queryService.getOne(userId, id, requestId));
+        }
+
+        DeferredResult<FoodLogEnvelope> result = new DeferredResult<>(wait.toMillis());
+
+        // 先登記再查：查詢與登記之間完成的通知也不會漏掉
+        FoodLogResultNotifier.Registration reg = notifier.register(
+                id,
+                () -> completionExecutor.execute(() -> completeWithLatest(result, userId, id, requestId)),
+                maxWaiters
+        );
+
+        FoodLogEnvelope current;
+        try {
+            current = queryService.getOne(userId, id, requestId);
+        } catch (RuntimeException ex) {
+            if (reg != null) {
+                reg.cancel();
+            }
+            throw ex;
+        }
+
+        if (reg == null || !isPending(current)) {
+            if (reg != null) {
+                reg.cancel();
+            }
+            result.setResult(current);
+            return result;
+        }
+
+        result.onTimeout(() -> completeWithLatest(result, userId, id, requestId));
+        result.onCompletion(reg::cancel);
+        return result;
+    }
+
+    Duration resolveWait(Integer waitSec) {
+        if (waitSec == null) {
+            return maxWait;
+        }
+        if (waitSec <= 0) {
+            return Duration.ZERO;
+        }
+        Duration requested = Duration.ofSeconds(waitSec);
+        return requested.compareTo(maxWait) > 0 ? maxWait : requested;
+    }
+
+    private void completeWithLatest(
+            DeferredResult<FoodLogEnvelope> result,
+            Long userId,
+            String id,
+            String requestId
+    ) {
+        if (result.isSetOrExpired()) {
+            return;
+        }
+        try {
+            result.setResult(queryService.getOne(userId, id, requestId));
+        } catch (RuntimeException ex) {
+            // 例如 provider refused -> 422，交給 async dispatch 後的 exception advice 處理
+            result.setErrorResult(ex);
+        }
+    }
+
+    private static DeferredResult<FoodLogEnvelope> completed(FoodLogEnvelope envelope) {
+        DeferredResult<FoodLogEnvelope> result = new DeferredResult<>();
+        result.setResult(envelope);
+        return result;
+    }
+
+    private static boolean isPending(FoodLogEnvelope envelope) {
+        return envelope != null && FoodLogStatus.PENDING.name().equals(envelope.status());
+    }
+}
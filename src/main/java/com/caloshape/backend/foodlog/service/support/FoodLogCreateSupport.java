@@ -10,13 +10,14 @@ import com.caloshape.backend.foodlog.model.TimeSource;
 import com.caloshape.backend.foodlog.processing.effective.FoodLogEffectivePostProcessor;
 import com.caloshape.backend.foodlog.quota.model.ModelTier;
 import com.caloshape.backend.foodlog.service.ImageBlobService;
+import com.caloshape.backend.foodlog.service.NearDuplicateImageIndex;
 import com.caloshape.backend.foodlog.service.request.IdempotencyService;
 import com.caloshape.backend.foodlog.storage.StorageService;
 import com.caloshape.backend.foodlog.storage.support.StorageCleanup;
 import com.caloshape.backend.foodlog.web.error.FoodLogAppException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -24,6 +25,7 @@ import java.io.InputStream;
 import java.io.PushbackInputStream;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.Optional;
 
 /**
  * createAlbum / createPhoto / createLabel 的共用骨架支援。
@@ -34,9 +36,9 @@ import java.time.LocalDate;
  * 4. newBaseEntity
  * 5. applyCacheHitDraft
  * 6. applyPendingMiss
+ * 7. findNearDuplicateSha256
  */
 @Component
-@RequiredArgsConstructor
 public class FoodLogCreateSupport {
 
     private final StorageService storage;
@@ -44,11 +46,37 @@ public class FoodLogCreateSupport {
     private final ImageBlobService blobService;
     private final FoodLogEffectivePostProcessor postProcessor;
 
+    /** 近似重複比對；null = 只做 sha256 去重 */
+    private final NearDuplicateImageIndex nearDuplicateIndex;
+
+    @Autowired
+    public FoodLogCreateSupport(
+            StorageService storage,
+            IdempotencyService idem,
+            ImageBlobService blobService,
+            FoodLogEffectivePostProcessor postProcessor,
+            NearDuplicateImageIndex nearDuplicateIndex
+    ) {
+        this.storage = storage;
+        this.idem = idem;
+        this.blobService = blobService;
+        this.postProcessor = postProcessor;
+        this.nearDuplicateIndex = nearDuplicateIndex;
+    }
+
+    /**
+     * @param perceptualHash 64-bit dHash；near-dup 關閉或格式不支援時為 null
+     */
     public record UploadTempResult(
             String tempKey,
             ImageSniffer.Detection detection,
-            StorageService.SaveResult saved
-    ) {}
+            StorageService.SaveResult saved,
+            Long perceptualHash
+    ) {
+        public UploadTempResult(String tempKey, ImageSniffer.Detection detection, StorageService.SaveResult saved) {
+            this(tempKey, detection, saved, null);
+        }
+    }
 
     /**
      * 上傳臨時圖片：
@@ -77,8 +105,9 @@ public class FoodLogCreateSupport {
 
             tempKey = "user-" + userId + "/blobs/tmp/" + requestId + "/upload" + det.ext();
             StorageService.SaveResult saved = storage.save(tempKey, in, det.contentType());
+            Long phash = (nearDuplicateIndex == null) ? null : nearDuplicateIndex.computeOrNull(tempKey);
 
-            return new UploadTempResult(tempKey, det, saved);
+            return new UploadTempResult(tempKey, det, saved, phash);
 
         } catch (Exception ex) {
             StorageCleanup.safeDeleteQuietly(storage, tempKey);
@@ -113,10 +142,31 @@ public class FoodLogCreateSupport {
         e.setImageSha256(retained.sha256());
         e.setImageContentType(upload.saved().contentType());
         e.setImageSizeBytes(upload.saved().sizeBytes());
+
+        if (upload.perceptualHash() != null) {
+            blobService.recordPerceptualHash(userId, retained.sha256(), upload.perceptualHash());
+        }
+    }
+
+    /**
+     * 近似重複：同一使用者 window 內有 dHash 夠接近的 blob，回傳它的 sha256，
+     * 呼叫端再用這個 sha256 找可重用的分析結果。
+     */
+    public Optional<String> findNearDuplicateSha256(Long userId, UploadTempResult upload, Instant now) {
+        if (nearDuplicateIndex == null || upload == null || upload.perceptualHash() == null) {
+            return Optional.empty();
+        }
+        return nearDuplicateIndex.findNearestSha256(
+                userId,
+                upload.perceptualHash(),
+                upload.saved().sha256(),
+                now
+        );
     }
 
     /**
-     * 建立標準 queued task。
+     * 建立標準 queued task（純建構，不寫 DB、不通知）。
+     * 呼叫端在同一交易內 save，再呼叫 FoodLogTaskWakeup.notifyQueuedAfterCommit 喚醒 worker。
      */
     public FoodLogTaskEntity createQueuedTask(String foodLogId) {
         FoodLogTaskEntity t = new FoodLogTaskEntity();
@@ -432,6 +432,12 @@ public class FoodLogEnvelopeAssembler {
         if (status == FoodLogStatus.PENDING) {
 
             if (ts == FoodLogTaskEntity.TaskStatus.QUEUED) {
+                // provider circuit open 延後的任務：next_retry_at_utc 之前不會被處理
+                Integer deferredSec = computeRetryAfterSecOrNull(t, now);
+                if (deferredSec != null && deferredSec > 0) {
+                    return clamp(deferredSec, 2, 60);
+                }
+
                 Instant created = t.getCreatedAtUtc();
                 if (created == null) {
                     return clamp(base, 2, 10);
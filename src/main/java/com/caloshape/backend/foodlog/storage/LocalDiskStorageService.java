@@ -2,6 +2,8 @@ package com.caloshape.backend.foodlog.storage;
 
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
@@ -65,6 +67,16 @@ public class LocalDiskStorageService implements StorageService {
         return new OpenResult(in, size, ct);
     }
 
+    /**
+     * 不 probeContentType、不開檔：Content-Type 由 food_logs 提供，長度與 Range 由 FileSystemResource 處理
+     */
+    @Override
+    public Resource openResource(String objectKey) throws Exception {
+        Path path = resolve(objectKey);
+        if (!Files.isRegularFile(path)) throw new FileNotFoundException("OBJECT_NOT_FOUND: " + objectKey);
+        return new FileSystemResource(path);
+    }
+
     @Override
     public void delete(String objectKey) throws Exception {
         Path path = resolve(objectKey);
@@ -1,5 +1,8 @@
 package com.caloshape.backend.foodlog.storage;
 
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+
 import java.io.InputStream;
 
 public interface StorageService {
@@ -8,6 +11,14 @@ public interface StorageService {
 
     OpenResult open(String objectKey) throws Exception;
 
+    /**
+     * 讀圖回應用：可定位的 Resource（檔案）讓 Spring MVC 處理 Range、直接從檔案寫出。
+     * 預設包成 InputStreamResource（不支援 Range，整檔串流）。
+     */
+    default Resource openResource(String objectKey) throws Exception {
+        return new InputStreamResource(open(objectKey).inputStream());
+    }
+
     void delete(String objectKey) throws Exception;
 
     /** ✅ Step 3.11：內容定址需要 */
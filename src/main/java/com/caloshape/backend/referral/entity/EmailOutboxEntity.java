@@ -10,7 +10,11 @@ import java.time.Instant;
 @Setter
 @Entity
 @Table(name = "email_outbox",
-        indexes = @Index(name = "idx_email_outbox_status_created", columnList = "status,created_at_utc"),
+        indexes = {
+                @Index(name = "idx_email_outbox_status_created", columnList = "status,created_at_utc"),
+                @Index(name = "idx_email_outbox_status_next_attempt", columnList = "status,next_attempt_at_utc"),
+                @Index(name = "idx_email_outbox_status_lease", columnList = "status,lease_until_utc")
+        },
         uniqueConstraints = @UniqueConstraint(name = "ux_email_outbox_dedupe", columnNames = "dedupe_key"))
 public class EmailOutboxEntity {
     @Id
@@ -35,9 +39,22 @@ public class EmailOutboxEntity {
     @Column(name = "retry_count", nullable = false)
     private Integer retryCount = 0;
 
+    /** PENDING → SENDING（已被某個 worker 領取，lease 內）→ SENT / PENDING（退避後重試）/ FAILED */
     @Column(name = "status", nullable = false, length = 16)
     private String status = "PENDING";
 
+    /** 最早可再送的時間（失敗後指數退避） */
+    @Column(name = "next_attempt_at_utc", nullable = false)
+    private Instant nextAttemptAtUtc;
+
+    /** SENDING 的 lease 到期時間；過期代表領取的 pod 掛了，可被重新領取 */
+    @Column(name = "lease_until_utc")
+    private Instant leaseUntilUtc;
+
+    /** 領取批次的 token；回寫結果時比對，lease 過期被別人領走後舊 worker 的回寫不生效 */
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+
     @Column(name = "created_at_utc", nullable = false)
     private Instant createdAtUtc;
 
@@ -47,5 +64,6 @@ public class EmailOutboxEntity {
     @PrePersist
     void prePersist() {
         if (createdAtUtc == null) createdAtUtc = Instant.now();
+        if (nextAttemptAtUtc == null) nextAttemptAtUtc = createdAtUtc;
     }
 }
@@ -1,27 +1,144 @@
 package com.caloshape.backend.referral.repo;
 
 import com.caloshape.backend.referral.entity.EmailOutboxEntity;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public interface EmailOutboxRepository extends JpaRepository<EmailOutboxEntity, Long> {
 
     boolean existsByDedupeKey(String dedupeKey);
 
+    /**
+     * ✅ 領取到期的 PENDING：走 idx_email_outbox_status_next_attempt (status, next_attempt_at_utc)
+     * SKIP LOCKED：多個 pod 同時領取時跳過別人鎖住的 rows，不會重複寄同一封
+     */
+    String CLAIM_DUE_SQL = """
+            SELECT id
+            FROM email_outbox
+            WHERE status = 'PENDING'
+              AND next_attempt_at_utc <= :now
+              AND retry_count < :maxRetries
+            ORDER BY next_attempt_at_utc ASC
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """;
+
+    /**
+     * ✅ 領取 lease 已過期的 SENDING（領取的 pod 在寄信途中掛掉）：走 idx_email_outbox_status_lease
+     * 過期的 lease 算一次失敗（markSending 會 +1），加上去還有剩次數的才重寄；用完的由 failExpiredLeasesOutOfRetries 收尾
+     */
+    String CLAIM_EXPIRED_LEASE_SQL = """
+            SELECT id
+            FROM email_outbox
+            WHERE status = 'SENDING'
+              AND lease_until_utc <= :now
+              AND retry_count + 1 < :maxRetries
+            ORDER BY lease_until_utc ASC
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """;
+
+    @Query(value = CLAIM_DUE_SQL, nativeQuery = true)
+    List<Long> claimDueIdsForUpdate(@Param("now") Instant now,
+                                    @Param("maxRetries") int maxRetries,
+                                    @Param("limit") int limit);
+
+    @Query(value = CLAIM_EXPIRED_LEASE_SQL, nativeQuery = true)
+    List<Long> claimExpiredLeaseIdsForUpdate(@Param("now") Instant now,
+                                             @Param("maxRetries") int maxRetries,
+                                             @Param("limit") int limit);
+
+    /**
+     * 需要在交易內呼叫才會真的 lock；先撿到期的 PENDING，名額有剩再撿 lease 過期的 SENDING
+     */
+    default List<Long> claimSendableIdsForUpdate(Instant now, int maxRetries, int limit) {
+        List<Long> ids = new ArrayList<>(claimDueIdsForUpdate(now, maxRetries, limit));
+        if (ids.size() < limit) {
+            ids.addAll(claimExpiredLeaseIdsForUpdate(now, maxRetries, limit - ids.size()));
+        }
+        return ids;
+    }
+
+    /**
+     * 標成 SENDING 並發 lease。WHERE 再檢查一次狀態：就算沒在同一個交易裡持有 row lock，也只有真的轉換成功的 row 會拿到這個 token。
+     * lease 過期被重新領取的 row 視為一次失敗嘗試（retry_count + 1；SET 由左到右求值，所以放在 status 之前）。
+     */
+    @Modifying
+    @Transactional
     @Query("""
-        select e from EmailOutboxEntity e
-        where e.status = 'PENDING'
-          and e.retryCount < :maxRetries
-        order by e.createdAtUtc asc
+        update EmailOutboxEntity e
+        set e.retryCount = case when e.status = 'SENDING' then e.retryCount + 1 else e.retryCount end,
+            e.status = 'SENDING',
+            e.claimToken = :token,
+            e.leaseUntilUtc = :leaseUntil
+        where e.id in :ids
+          and (e.status = 'PENDING' or (e.status = 'SENDING' and e.leaseUntilUtc <= :now))
     """)
-    List<EmailOutboxEntity> findPendingToSend(
-            @Param("maxRetries") int maxRetries,
-            Pageable pageable
-    );
+    int markSending(@Param("ids") Collection<Long> ids,
+                    @Param("token") String token,
+                    @Param("leaseUntil") Instant leaseUntil,
+                    @Param("now") Instant now);
+
+    /**
+     * lease 過期、算上這次就沒有重試次數的 SENDING 直接標 FAILED（跟 recordFailure 的判斷一致），
+     * 否則兩個領取查詢都撿不到，會永遠卡在 SENDING。
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+        update EmailOutboxEntity e
+        set e.retryCount = e.retryCount + 1,
+            e.status = 'FAILED',
+            e.claimToken = null,
+            e.leaseUntilUtc = null
+        where e.status = 'SENDING'
+          and e.leaseUntilUtc <= :now
+          and e.retryCount + 1 >= :maxRetries
+    """)
+    int failExpiredLeasesOutOfRetries(@Param("now") Instant now,
+                                      @Param("maxRetries") int maxRetries);
+
+    @Modifying
+    @Transactional
+    @Query("""
+        update EmailOutboxEntity e
+        set e.status = 'SENT',
+            e.sentAtUtc = :sentAt,
+            e.claimToken = null,
+            e.leaseUntilUtc = null
+        where e.id in :ids
+          and e.claimToken = :token
+    """)
+    int markSent(@Param("ids") Collection<Long> ids,
+                 @Param("token") String token,
+                 @Param("sentAt") Instant sentAt);
+
+    /** 寄送失敗：status 為 PENDING（等 nextAttemptAt 再試）或 FAILED（次數用完） */
+    @Modifying
+    @Transactional
+    @Query("""
+        update EmailOutboxEntity e
+        set e.status = :status,
+            e.retryCount = :retryCount,
+            e.nextAttemptAtUtc = :nextAttemptAt,
+            e.claimToken = null,
+            e.leaseUntilUtc = null
+        where e.id = :id
+          and e.claimToken = :token
+    """)
+    int markAttemptFailed(@Param("id") Long id,
+                          @Param("token") String token,
+                          @Param("status") String status,
+                          @Param("retryCount") int retryCount,
+                          @Param("nextAttemptAt") Instant nextAttemptAt);
 
     List<EmailOutboxEntity> findTop20ByUserIdOrderByCreatedAtUtcDesc(Long userId);
 
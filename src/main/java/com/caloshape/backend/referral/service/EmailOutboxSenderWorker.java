@@ -4,26 +4,52 @@ import com.caloshape.backend.referral.entity.EmailOutboxEntity;
 import com.caloshape.backend.referral.repo.EmailOutboxRepository;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
-
-@RequiredArgsConstructor
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * email_outbox 寄送（多 pod 安全）：
+ * 1. 短交易 FOR UPDATE SKIP LOCKED 領取到期的 PENDING（與 lease 過期的 SENDING），標成 SENDING + lease + claim token
+ * 2. 交易外寄送：拆成最多 concurrency 份並行，每份用一次 send(SimpleMailMessage...)，整份共用一條 SMTP 連線
+ * 3. 回寫結果時比對 claim token；失敗以指數退避設定 next_attempt_at_utc，次數用完標 FAILED
+ * 一次排程會連續領取直到沒有到期的信（最多 MAX_ROUNDS_PER_TICK 批），積壓時不必等下一分鐘。
+ */
 @Slf4j
 @Component
 public class EmailOutboxSenderWorker {
 
+    private static final int MAX_ROUNDS_PER_TICK = 10;
+
     private final EmailOutboxRepository emailOutboxRepository;
     private final JavaMailSender mailSender;
     private final ObjectMapper objectMapper;
 
+    private final TransactionTemplate txTemplate;
+    private final Clock clock;
+    private final Executor executor;
+
     @Value("${app.email.enabled:true}")
     private boolean emailEnabled;
 
@@ -36,57 +62,188 @@ public class EmailOutboxSenderWorker {
     @Value("${referral.email-outbox.max-retries:5}")
     private int maxRetries;
 
-    @Scheduled(fixedDelayString = "${referral.email-outbox.fixed-delay:PT1M}")
+    /** 同時寄送的份數（每份一條 SMTP 連線） */
+    @Value("${referral.email-outbox.concurrency:4}")
+    private int concurrency = 4;
+
+    /** SENDING 的 lease；要大於一份寄完的最長時間 */
+    @Value("${referral.email-outbox.lease:PT5M}")
+    private Duration lease = Duration.ofMinutes(5);
+
+    /** 第 n 次失敗後等 backoffBase * 2^(n-1)（上限 backoffMax），再加 0~20% jitter */
+    @Value("${referral.email-outbox.backoff-base:PT1M}")
+    private Duration backoffBase = Duration.ofMinutes(1);
+
+    @Value("${referral.email-outbox.backoff-max:PT6H}")
+    private Duration backoffMax = Duration.ofHours(6);
+
+    @Autowired
+    public EmailOutboxSenderWorker(
+            EmailOutboxRepository emailOutboxRepository,
+            JavaMailSender mailSender,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager txManager,
+            Clock clock,
+            @Qualifier("emailOutboxExecutor") Executor executor
+    ) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.mailSender = mailSender;
+        this.objectMapper = objectMapper;
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.clock = clock;
+        this.executor = executor;
+    }
+
+    @Scheduled(fixedDelayString = "${referral.email-outbox.fixed-delay:PT15S}")
     public void sendPendingEmails() {
         if (!emailEnabled) {
             return;
         }
 
-        var items = emailOutboxRepository.findPendingToSend(
-                maxRetries,
-                PageRequest.of(0, batchSize)
-        );
-
-        for (EmailOutboxEntity item : items) {
-            sendOne(item);
+        for (int round = 0; round < MAX_ROUNDS_PER_TICK; round++) {
+            Claim claim = claim();
+            if (claim.items().isEmpty()) {
+                return;
+            }
+            sendClaimed(claim);
+            if (claim.items().size() < batchSize) {
+                return;
+            }
         }
     }
 
-    private void sendOne(EmailOutboxEntity item) {
-        try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(sender);
-            message.setTo(item.getToEmail());
-            message.setSubject(resolveSubject(item));
-            message.setText(resolveBody(item));
+    private record Claim(String token, List<EmailOutboxEntity> items) {}
+
+    private record Outgoing(EmailOutboxEntity item, SimpleMailMessage message) {}
 
-            mailSender.send(message);
+    private Claim claim() {
+        Instant now = clock.instant();
+        String token = UUID.randomUUID().toString();
+        Instant leaseUntil = now.plus(lease);
 
-            item.setStatus("SENT");
-            item.setSentAtUtc(Instant.now());
-            emailOutboxRepository.save(item);
+        List<EmailOutboxEntity> items = inTx(() -> {
+            int exhausted = emailOutboxRepository.failExpiredLeasesOutOfRetries(now, maxRetries);
+            if (exhausted > 0) {
+                log.warn("referral_email_outbox_lease_expired_out_of_retries count={}", exhausted);
+            }
+            List<Long> ids = emailOutboxRepository.claimSendableIdsForUpdate(now, maxRetries, batchSize);
+            if (ids.isEmpty()) {
+                return List.of();
+            }
+            emailOutboxRepository.markSending(ids, token, leaseUntil, now);
+            // 用主鍵載入（claim_token 沒有索引）；只留真的被這次 markSending 轉成 SENDING 的 row
+            return emailOutboxRepository.findAllById(ids).stream()
+                    .filter(e -> token.equals(e.getClaimToken()))
+                    .toList();
+        });
+        return new Claim(token, items == null ? List.of() : items);
+    }
+
+    private void sendClaimed(Claim claim) {
+        List<Outgoing> outgoing = new ArrayList<>(claim.items().size());
+        for (EmailOutboxEntity item : claim.items()) {
+            try {
+                outgoing.add(new Outgoing(item, buildMessage(item)));
+            } catch (Exception ex) {
+                // 組信失敗（payload 壞掉）：照一般失敗處理，不影響同批其他信
+                recordFailure(item, claim.token(), ex);
+            }
+        }
+        if (outgoing.isEmpty()) {
+            return;
+        }
+
+        int parts = Math.max(1, Math.min(concurrency, outgoing.size()));
+        List<List<Outgoing>> chunks = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++) {
+            chunks.add(new ArrayList<>());
+        }
+        for (int i = 0; i < outgoing.size(); i++) {
+            chunks.get(i % parts).add(outgoing.get(i));
+        }
 
-            log.info("referral_email_outbox_sent id={}", item.getId());
+        List<CompletableFuture<Void>> futures = new ArrayList<>(parts);
+        for (List<Outgoing> chunk : chunks) {
+            futures.add(CompletableFuture.runAsync(() -> sendChunk(chunk, claim.token()), executor));
+        }
+        for (CompletableFuture<Void> f : futures) {
+            try {
+                f.join();
+            } catch (Exception ex) {
+                // sendChunk 自己處理寄送錯誤；這裡只剩回寫 DB 失敗，lease 到期後會被重新領取
+                log.warn("referral_email_outbox_chunk_failed error={}", ex.toString());
+            }
+        }
+    }
+
+    private void sendChunk(List<Outgoing> chunk, String token) {
+        SimpleMailMessage[] messages = chunk.stream().map(Outgoing::message).toArray(SimpleMailMessage[]::new);
+        Map<Object, Exception> failed = new IdentityHashMap<>();
+        try {
+            mailSender.send(messages);
+        } catch (MailSendException ex) {
+            // 批次寄送：failedMessages 之外的信已送出；沒有明細（例如連線失敗）就整份算失敗
+            if (ex.getFailedMessages().isEmpty()) {
+                for (SimpleMailMessage m : messages) failed.put(m, ex);
+            } else {
+                failed.putAll(ex.getFailedMessages());
+            }
         } catch (Exception ex) {
-            int nextRetry = item.getRetryCount() == null ? 1 : item.getRetryCount() + 1;
-            item.setRetryCount(nextRetry);
+            for (SimpleMailMessage m : messages) failed.put(m, ex);
+        }
 
-            if (nextRetry >= maxRetries) {
-                item.setStatus("FAILED");
+        List<Long> sentIds = new ArrayList<>(chunk.size());
+        for (Outgoing o : chunk) {
+            Exception error = failed.get(o.message());
+            if (error == null) {
+                sentIds.add(o.item().getId());
             } else {
-                item.setStatus("PENDING");
+                recordFailure(o.item(), token, error);
             }
+        }
+        if (!sentIds.isEmpty()) {
+            emailOutboxRepository.markSent(sentIds, token, clock.instant());
+            sentIds.forEach(id -> log.info("referral_email_outbox_sent id={}", id));
+        }
+    }
 
-            emailOutboxRepository.save(item);
+    private void recordFailure(EmailOutboxEntity item, String token, Exception ex) {
+        int nextRetry = item.getRetryCount() == null ? 1 : item.getRetryCount() + 1;
+        String status = nextRetry >= maxRetries ? "FAILED" : "PENDING";
+        Instant nextAttemptAt = clock.instant().plus(backoff(nextRetry));
 
-            log.warn(
-                    "referral_email_outbox_send_failed id={} retryCount={} status={} error={}",
-                    item.getId(),
-                    item.getRetryCount(),
-                    item.getStatus(),
-                    ex.toString()
-            );
-        }
+        emailOutboxRepository.markAttemptFailed(item.getId(), token, status, nextRetry, nextAttemptAt);
+
+        log.warn(
+                "referral_email_outbox_send_failed id={} retryCount={} status={} nextAttemptAt={} error={}",
+                item.getId(),
+                nextRetry,
+                status,
+                nextAttemptAt,
+                ex.toString()
+        );
+    }
+
+    /** 第 retryCount 次失敗後的等待時間 */
+    Duration backoff(int retryCount) {
+        int shift = Math.min(Math.max(retryCount - 1, 0), 20);
+        long baseMillis = backoffBase.toMillis();
+        long capped = Math.min(backoffMax.toMillis(), baseMillis << shift);
+        long jitter = capped <= 0 ? 0 : ThreadLocalRandom.current().nextLong(capped / 5 + 1);
+        return Duration.ofMillis(capped + jitter);
+    }
+
+    private SimpleMailMessage buildMessage(EmailOutboxEntity item) throws Exception {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom(sender);
+        message.setTo(item.getToEmail());
+        message.setSubject(resolveSubject(item));
+        message.setText(resolveBody(item));
+        return message;
+    }
+
+    private <T> T inTx(Supplier<T> body) {
+        return txTemplate.execute(status -> body.get());
     }
 
     private String resolveSubject(EmailOutboxEntity item) throws Exception {
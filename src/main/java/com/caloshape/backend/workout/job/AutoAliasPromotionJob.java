@@ -2,24 +2,22 @@
 package com.caloshape.backend.workout.job;
 
 import com.caloshape.backend.workout.entity.WorkoutAlias;
-import com.caloshape.backend.workout.entity.WorkoutAliasEvent;
-import com.caloshape.backend.workout.entity.WorkoutDictionary;
 import com.caloshape.backend.workout.repo.WorkoutAliasEventRepo;
+import com.caloshape.backend.workout.repo.WorkoutAliasEventRepo.PhraseStatsView;
 import com.caloshape.backend.workout.repo.WorkoutAliasRepo;
 import com.caloshape.backend.workout.repo.WorkoutDictionaryRepo;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
 
 //執行頻率：@Scheduled(fixedDelayString="PT72H") → 每次跑完後等 72 小時再啟動下一次（首次啟動延遲 initialDelay=5m）。沒有時區概念，以 JVM 系統時間為準。
 //它不刪資料：這個 Job 不做刪除，只會「查近 30 天事件 → 判斷門檻 → upsert 到 workout_alias」。
@@ -31,6 +29,9 @@ import java.util.stream.Collectors;
 //近 30 天 score 中位數 ≥ minMedian(預設 0.88)。
 //指向哪個字典：取該片語近 30 天中 matched_dict_id 出現次數最多者。
 //競態保護：先查是否已存在（任何狀態），有則就地升級，Insert 若撞到 UNIQUE 例外，改成更新（確保單一 (lang, phrase)）。
+//記憶體：統計全部在 SQL 做（group by + having 先濾掉 count / users 不足的片語），依 (lang, phrase) keyset 分頁，
+//        中位數用 order by score + offset 取第 n/2 名，不載入事件 entity；用量只和 pageSize 有關，與事件量無關。
+//交易：不包整個 run；每筆 alias 的 save 各自一個交易，UNIQUE 衝突時的 fallback 才不會讓整批 rollback。
 
 @Component
 @RequiredArgsConstructor
@@ -45,6 +46,7 @@ public class AutoAliasPromotionJob {
     @Value("${alias.promotion.minCount:7}")  private int minCount;
     @Value("${alias.promotion.minMedian:0.88}") private double minMedian;
     @Value("${alias.promotion.windowDays:30}")  private int windowDays;
+    @Value("${alias.promotion.pageSize:500}")  private int pageSize;
 
 
      // 精準 72 小時輪詢；避免 cron 的「每月 1 號為基準 */3 天」語意。
@@ -53,100 +55,117 @@ public class AutoAliasPromotionJob {
     @Scheduled(fixedDelayString = "${alias.promotion.fixedDelay:PT72H}",
             initialDelayString = "${alias.promotion.initialDelay:PT5M}")
     @Async("aliasPromotionExecutor")
-    @Transactional
     public void run() {
         final Instant since = Instant.now().minus(Duration.ofDays(windowDays));
-        final var events = eventRepo.findSince(since);
-        if (events.isEmpty()) {
-            log.info("AutoAliasPromotion: no events since {}", since);
-            return;
-        }
 
-        Map<Key, List<WorkoutAliasEvent>> byKey = events.stream()
-                .collect(Collectors.groupingBy(e -> new Key(e.getLangTag(), e.getPhraseLower())));
-
-        int promoted = 0, updated = 0;
-
-        for (var entry : byKey.entrySet()) {
-            Key key = entry.getKey();
-            List<WorkoutAliasEvent> list = entry.getValue();
-
-            List<Double> scores = list.stream()
-                    .filter(e -> !e.isUsedGeneric() && e.getScore() != null)
-                    .map(WorkoutAliasEvent::getScore).sorted().toList();
-            if (scores.isEmpty()) continue;
-
-            var users = list.stream().map(WorkoutAliasEvent::getUserId).collect(Collectors.toSet());
-            int total = list.size();
-            double median = median(scores);
-            Instant lastSeen = list.stream().map(WorkoutAliasEvent::getCreatedAt)
-                    .max(Instant::compareTo).orElse(Instant.now());
-
-            if (users.size() < minUsers || total < minCount || median < minMedian) continue;
-
-            Long dictId = list.stream()
-                    .filter(e -> e.getMatchedDict() != null)
-                    .collect(Collectors.groupingBy(e -> e.getMatchedDict().getId(), Collectors.counting()))
-                    .entrySet().stream().max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse(null);
-            if (dictId == null) continue;
-
-            var dict = dictRepo.findById(dictId).orElse(null);
-            if (dict == null) continue;
-
-            var any = aliasRepo.findAnyByLangAndPhrase(key.lang, key.phrase);
-            if (any.isPresent()) {
-                var a = any.get();
-                a.setStatus("APPROVED");
-                a.setDictionary(dict);
-                a.setTotalCount(maxSafe(a.getTotalCount(), total));
-                a.setDistinctUsers(maxSafe(a.getDistinctUsers(), users.size()));
-                a.setConfidenceMedian(median);
-                a.setLastSeen(lastSeen);
-                aliasRepo.save(a);
-                updated++;
-            } else {
-                var a = new WorkoutAlias();
-                a.setLangTag(key.lang);
-                a.setPhraseLower(key.phrase);
-                a.setDictionary(dict);
-                a.setStatus("APPROVED");
-                a.setTotalCount(total);
-                a.setDistinctUsers(users.size());
-                a.setConfidenceMedian(median);
-                a.setLastSeen(lastSeen);
-                try {
-                    aliasRepo.save(a);
-                    promoted++;
-                } catch (DataIntegrityViolationException ex) {
-                    aliasRepo.findAnyByLangAndPhrase(key.lang, key.phrase).ifPresent(b -> {
-                        b.setStatus("APPROVED");
-                        b.setDictionary(dict);
-                        b.setTotalCount(maxSafe(b.getTotalCount(), total));
-                        b.setDistinctUsers(maxSafe(b.getDistinctUsers(), users.size()));
-                        b.setConfidenceMedian(median);
-                        b.setLastSeen(lastSeen);
-                        aliasRepo.save(b);
-                    });
-                    updated++;
+        int promoted = 0, updated = 0, scanned = 0;
+        String afterLang = "", afterPhrase = "";
+
+        while (true) {
+            List<PhraseStatsView> page = eventRepo.findPromotionCandidates(
+                    since, afterLang, afterPhrase, minCount, minUsers, PageRequest.of(0, pageSize));
+            for (PhraseStatsView stats : page) {
+                scanned++;
+                switch (promote(stats, since)) {
+                    case PROMOTED -> promoted++;
+                    case UPDATED -> updated++;
+                    case SKIPPED -> { }
                 }
             }
+            if (page.size() < pageSize) break;
+            PhraseStatsView last = page.getLast();
+            afterLang = last.getLangTag();
+            afterPhrase = last.getPhraseLower();
         }
 
-        log.info("AutoAliasPromotion: promoted={}, updated={}, windowDays={}, thresholds(u={},c={},m={})",
-                promoted, updated, windowDays, minUsers, minCount, minMedian);
+        if (scanned == 0) {
+            log.info("AutoAliasPromotion: no candidate phrases since {}", since);
+            return;
+        }
+        log.info("AutoAliasPromotion: candidates={}, promoted={}, updated={}, windowDays={}, thresholds(u={},c={},m={})",
+                scanned, promoted, updated, windowDays, minUsers, minCount, minMedian);
     }
 
-    static double median(List<Double> sorted) {
-        int n = sorted.size();
-        if (n == 1) return sorted.getFirst();
-        if ((n & 1) == 1) return sorted.get(n / 2);
-        double a = sorted.get(n / 2 - 1), b = sorted.get(n / 2);
-        return (a + b) / 2.0;
+    private Outcome promote(PhraseStatsView stats, Instant since) {
+        final Key key = new Key(stats.getLangTag(), stats.getPhraseLower());
+        final long scored = nz(stats.getScored());
+        if (scored == 0) return Outcome.SKIPPED;
+
+        final int total = (int) nz(stats.getTotal());
+        final int distinctUsers = (int) nz(stats.getDistinctUsers());
+        final double median = median(key, since, scored);
+        final Instant lastSeen = stats.getLastSeen() != null ? stats.getLastSeen() : Instant.now();
+
+        if (distinctUsers < minUsers || total < minCount || median < minMedian) return Outcome.SKIPPED;
+
+        Long dictId = eventRepo.findTopMatchedDictIds(key.lang, key.phrase, since, PageRequest.of(0, 1))
+                .stream().findFirst().orElse(null);
+        if (dictId == null) return Outcome.SKIPPED;
+
+        var dict = dictRepo.findById(dictId).orElse(null);
+        if (dict == null) return Outcome.SKIPPED;
+
+        var any = aliasRepo.findAnyByLangAndPhrase(key.lang, key.phrase);
+        if (any.isPresent()) {
+            var a = any.get();
+            a.setStatus("APPROVED");
+            a.setDictionary(dict);
+            a.setTotalCount(maxSafe(a.getTotalCount(), total));
+            a.setDistinctUsers(maxSafe(a.getDistinctUsers(), distinctUsers));
+            a.setConfidenceMedian(median);
+            a.setLastSeen(lastSeen);
+            aliasRepo.save(a);
+            return Outcome.UPDATED;
+        }
+
+        var a = new WorkoutAlias();
+        a.setLangTag(key.lang);
+        a.setPhraseLower(key.phrase);
+        a.setDictionary(dict);
+        a.setStatus("APPROVED");
+        a.setTotalCount(total);
+        a.setDistinctUsers(distinctUsers);
+        a.setConfidenceMedian(median);
+        a.setLastSeen(lastSeen);
+        try {
+            aliasRepo.save(a);
+            return Outcome.PROMOTED;
+        } catch (DataIntegrityViolationException ex) {
+            aliasRepo.findAnyByLangAndPhrase(key.lang, key.phrase).ifPresent(b -> {
+                b.setStatus("APPROVED");
+                b.setDictionary(dict);
+                b.setTotalCount(maxSafe(b.getTotalCount(), total));
+                b.setDistinctUsers(maxSafe(b.getDistinctUsers(), distinctUsers));
+                b.setConfidenceMedian(median);
+                b.setLastSeen(lastSeen);
+                aliasRepo.save(b);
+            });
+            return Outcome.UPDATED;
+        }
     }
+
+    /** 中位數：n 為奇數取第 n/2 名，偶數取第 n/2-1 與 n/2 名的平均（分數升冪、0-based） */
+    private double median(Key key, Instant since, long n) {
+        if ((n & 1) == 1) return scoreAt(key, since, n / 2);
+        return (scoreAt(key, since, n / 2 - 1) + scoreAt(key, since, n / 2)) / 2.0;
+    }
+
+    private double scoreAt(Key key, Instant since, long offset) {
+        // PageRequest.of(offset, 1) → OFFSET offset LIMIT 1
+        return eventRepo.findScoresAscending(key.lang, key.phrase, since, PageRequest.of((int) offset, 1))
+                .stream().findFirst().orElse(0.0);
+    }
+
+    private static long nz(Long v) {
+        return v == null ? 0L : v;
+    }
+
     static Integer maxSafe(Integer a, Integer b) {
         if (a == null) return b;
         if (b == null) return a;
         return Math.max(a, b);
     }
     private record Key(String lang, String phrase) {}
+
+    private enum Outcome { PROMOTED, UPDATED, SKIPPED }
 }
@@ -1,88 +1,629 @@
 package com.caloshape.backend.workout.match;
 
 import com.caloshape.backend.workout.entity.WorkoutDictionary;
+import com.caloshape.backend.workout.nlp.JaroWinkler;
 import com.caloshape.backend.workout.nlp.Similarity;
 import com.caloshape.backend.workout.nlp.TextNorm;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
+/**
+ * 字典比對（不可變，可跨 request / thread 共用）：
+ * - 建構時就把 displayNameEn / 同義詞正規化好，並算出 ASCII 白名單 token
+ * - best() 每次只正規化使用者片語，不再對整本字典重跑 TextNorm 的 regex
+ * - bigram 倒排索引：與片語共用 bigram 最多的幾個 entry 先精算，當作起始 best
+ * - 其餘目標依長度分桶，只走長度上限還可能勝出的桶，再用共同字元數算 Jaro-Winkler 分數上限
+ *   （q-gram 數對 Jaro 的換位不是下限，不能拿來剪枝），依上限由高到低精算，上限已不可能勝出就停；
+ *   結果與逐筆掃描完全相同
+ * - 每次呼叫用到的暫存陣列放在 thread-local，不隨字典大小重新配置
+ * 一般情況由 WorkoutMatcherIndex 持有單例，字典變動時整個換掉。
+ */
 public final class AliasMatcher {
 
     private static final double TRUSTED_TOKEN_SCORE = 0.89;
+    private static final Pattern NON_LETTER_OR_DIGIT = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
 
     public static record Candidate(WorkoutDictionary dict, double score, String kind) {}
 
-    private final Map<String, List<String>> synonymsByCanonical;
-    private final List<WorkoutDictionary> dictionaries;
+    /** Jaro-Winkler 上限的浮點誤差保險：上限只能偏大，不能偏小 */
+    private static final double BOUND_EPSILON = 1e-9;
+
+    /** 先精算的 bigram 候選 entry 數 */
+    private static final int SEED_ENTRIES = 4;
+
+    /** bigram 的首尾邊界，讓單字元目標與首尾字元也有 gram */
+    private static final char GRAM_PAD = '\0';
+
+    /** 預先正規化的比對目標（字典名稱或同義詞）；sortedChars 給共同字元數的 merge 用 */
+    private record Target(int entry, String norm, char[] sortedChars, boolean blank, boolean phraseLike,
+                          boolean nonAsciiLetter) {
+        static Target of(int entry, String raw) {
+            String t = stableNormalize(raw);
+            char[] sorted = t.toCharArray();
+            Arrays.sort(sorted);
+            return new Target(
+                    entry,
+                    t,
+                    sorted,
+                    t.isBlank(),
+                    t.contains(" ") || !isAsciiLetters(t),
+                    containsNonAsciiLetter(t)
+            );
+        }
+    }
+
+    private record Entry(WorkoutDictionary dict, String canonicalKey, Target name, List<Target> synonyms) {}
+
+    private final List<Entry> entries;
+    private final List<Target> targets;
+
+    /** bigram 倒排索引（CSR）：gramKeys 已排序，gramStart[k]..gramStart[k+1] 是含該 bigram 的目標與次數 */
+    private final int[] gramKeys;
+    private final int[] gramStart;
+    private final int[] gramTargets;
+    private final int[] gramCounts;
+
+    /** 目標依正規化後長度分桶：長度 L 的目標是 targetsByLength[lengthStart[L] .. lengthStart[L + 1]) */
+    private final int[] targetsByLength;
+    private final int[] lengthStart;
+
+    private final ThreadLocal<Scratch> scratch;
+    private final Map<String, WorkoutDictionary> byCanonicalKey;
+    private final Set<String> trustedAsciiTokens;
+    private final int maxAsciiTokenLength;
+
+    /** 類別詞 key -> canonicalKey 含該 key 的 entry index（用到才算，之後共用） */
+    private final Map<String, int[]> entriesByBoostKey = new ConcurrentHashMap<>();
 
     public AliasMatcher(List<WorkoutDictionary> dictionaries,
                         Map<String, List<String>> synonymsByCanonical) {
-        this.dictionaries = dictionaries;
-        this.synonymsByCanonical = synonymsByCanonical != null ? synonymsByCanonical : Map.of();
+        Map<String, List<String>> syns = synonymsByCanonical != null ? synonymsByCanonical : Map.of();
+
+        List<Entry> list = new ArrayList<>(dictionaries.size());
+        List<Target> allTargets = new ArrayList<>(dictionaries.size() * 2);
+        Map<String, WorkoutDictionary> byKey = new HashMap<>(dictionaries.size() * 2);
+        Set<String> asciiTokens = new HashSet<>();
+
+        for (WorkoutDictionary d : dictionaries) {
+            int entryIndex = list.size();
+            Target name = Target.of(entryIndex, d.getDisplayNameEn());
+            addAsciiToken(asciiTokens, name);
+            allTargets.add(name);
+
+            List<Target> synTargets = new ArrayList<>();
+            for (String syn : syns.getOrDefault(d.getCanonicalKey(), List.of())) {
+                Target t = Target.of(entryIndex, syn);
+                synTargets.add(t);
+                addAsciiToken(asciiTokens, t);
+                allTargets.add(t);
+            }
+
+            list.add(new Entry(d, d.getCanonicalKey(), name, List.copyOf(synTargets)));
+            if (d.getCanonicalKey() != null) {
+                byKey.putIfAbsent(d.getCanonicalKey(), d);
+            }
+        }
+
+        this.entries = List.copyOf(list);
+        this.targets = List.copyOf(allTargets);
+
+        GramIndex grams = GramIndex.build(this.targets);
+        this.gramKeys = grams.keys();
+        this.gramStart = grams.start();
+        this.gramTargets = grams.targets();
+        this.gramCounts = grams.counts();
+        int maxLength = this.targets.stream().mapToInt(t -> t.norm().length()).max().orElse(0);
+        this.lengthStart = new int[maxLength + 2];
+        for (Target t : this.targets) {
+            lengthStart[t.norm().length() + 1]++;
+        }
+        for (int len = 1; len < lengthStart.length; len++) {
+            lengthStart[len] += lengthStart[len - 1];
+        }
+        this.targetsByLength = new int[this.targets.size()];
+        int[] fill = Arrays.copyOf(lengthStart, lengthStart.length);
+        for (int t = 0; t < this.targets.size(); t++) {
+            targetsByLength[fill[this.targets.get(t).norm().length()]++] = t;
+        }
+
+        int targetCount = this.targets.size();
+        int entryCount = this.entries.size();
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(targetCount, entryCount));
+
+        this.byCanonicalKey = Map.copyOf(byKey);
+        this.trustedAsciiTokens = Set.copyOf(asciiTokens);
+        this.maxAsciiTokenLength = asciiTokens.stream().mapToInt(String::length).max().orElse(0);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** canonicalKey 對應的字典列；沒有回 null */
+    public WorkoutDictionary dictionary(String canonicalKey) {
+        return canonicalKey == null ? null : byCanonicalKey.get(canonicalKey);
     }
 
     /** 比對 displayNameEn + 同義詞，加上語言別加權 */
     public Candidate best(String phrase, String localeTag) {
-        String p = TextNorm.normalize(phrase);
-        if (hasSuspiciousAsciiGlue(p, dictionaries, synonymsByCanonical)) {
+        Probe probe = probe(phrase, localeTag);
+        if (probe == null) {
             return null;
         }
+        if (probe.p().isEmpty()) {
+            // 空片語與空目標的 Jaro-Winkler 是 1.0，沒有共同字元也可能得分，不走索引
+            return bestByScan(probe);
+        }
+        if (entries.isEmpty()) {
+            return null;
+        }
+
+        String p = probe.p();
+        Scratch s = scratch.get();
+        s.begin(p);
+        Set<Integer> boosted = boostedEntries(probe.boostKeys());
+        for (int e : boosted) {
+            s.boostMark[e] = s.stamp;
+            s.boost[e] = Similarity.boostFor(probe.boostKeys(), entries.get(e).canonicalKey());
+        }
 
         Candidate best = null;
+        int bestIndex = -1;
+        double bestScore = 0.0;
 
-        for (WorkoutDictionary d : dictionaries) {
-            String base = TextNorm.normalize(d.getDisplayNameEn());
+        // 1. 共用 bigram 最多的幾個 entry 先精算，拉高 best，後面的上限才剪得掉
+        int seedCount = seedEntries(p, s);
+        for (int k = 0; k < seedCount; k++) {
+            int i = s.seeds[k];
+            s.seen[i] = s.stamp;
+            Candidate c = score(entries.get(i), probe, s.isBoosted(i));
+            if (best == null || c.score() > bestScore || (c.score() == bestScore && i < bestIndex)) {
+                best = c;
+                bestIndex = i;
+                bestScore = c.score();
+            }
+        }
 
-            double sName = hasAsciiJunkAdjacentToEmbeddedToken(p, base)
-                    ? 0.0
-                    : Similarity.jaroWinkler(p, base);
-            double sToken = containsTrustedToken(p, base) ? TRUSTED_TOKEN_SCORE : 0.0;
-            double sMax = Math.max(sName, sToken);
-            String why = sToken > sName ? "token" : "name";
-
-            List<String> syns = synonymsByCanonical.getOrDefault(d.getCanonicalKey(), List.of());
-            for (String syn : syns) {
-                double sv = hasAsciiJunkAdjacentToEmbeddedToken(p, syn)
-                        ? 0.0
-                        : Similarity.jaroWinkler(p, syn);
-                if (sv > sMax) { sMax = sv; why = "syn"; }
-                if (containsTrustedToken(p, syn) && TRUSTED_TOKEN_SCORE > sMax) {
-                    sMax = TRUSTED_TOKEN_SCORE;
-                    why = "token";
+        // 2a. 有語言加權的 entry：上限加上 boost，所有目標都要算
+        int n = 0;
+        for (int i : boosted) {
+            if (s.seen[i] == s.stamp) continue;
+            double bound = Math.min(1.0, charBound(p, s.chars, entries.get(i)) + s.boost[i]);
+            if (canBeat(bound, i, bestScore, bestIndex)) {
+                s.cand[n] = i;
+                s.candBound[n] = bound;
+                n++;
+            }
+        }
+
+        // 2b. 其他 entry：只走長度上限還可能勝出的長度桶，桶內再算共同字元上限（entry 取其目標的最大值）
+        int touchedEntries = 0;
+        for (int len = 1; len < lengthStart.length - 1; len++) {
+            if (!mayBeat(lengthBound(p.length(), len), bestScore)) continue;
+            for (int k = lengthStart[len]; k < lengthStart[len + 1]; k++) {
+                Target t = targets.get(targetsByLength[k]);
+                int i = t.entry();
+                if (s.seen[i] == s.stamp || s.isBoosted(i)) continue;
+
+                double bound = targetBound(p, t.norm(), commonChars(s.chars, p.length(), t.sortedChars()));
+                if (s.boundMark[i] != s.stamp) {
+                    s.boundMark[i] = s.stamp;
+                    s.entryBound[i] = bound;
+                    s.boundEntries[touchedEntries++] = i;
+                } else if (bound > s.entryBound[i]) {
+                    s.entryBound[i] = bound;
                 }
             }
+        }
+        for (int k = 0; k < touchedEntries; k++) {
+            int i = s.boundEntries[k];
+            if (canBeat(s.entryBound[i], i, bestScore, bestIndex)) {
+                s.cand[n] = i;
+                s.candBound[n] = s.entryBound[i];
+                n++;
+            }
+        }
 
-            // 額外同義詞 token 加權（按語言）
-            double boost = Similarity.boostBySynonyms(localeTag == null ? "*" : localeTag, p, d.getCanonicalKey());
-            double finalScore = Math.min(1.0, sMax + boost); // 封頂 1.0
+        // 3. 依上限由高到低精算（同分取 index 小，與逐筆掃描的先到先贏一致）；一般只剩個位數
+        while (n > 0) {
+            int k = highestBound(s, n);
+            int i = s.cand[k];
+            if (!canBeat(s.candBound[k], i, bestScore, bestIndex)) {
+                break;
+            }
+            n--;
+            s.cand[k] = s.cand[n];
+            s.candBound[k] = s.candBound[n];
 
-            if (best == null || finalScore > best.score) {
-                best = new Candidate(d, finalScore, why);
+            Candidate c = score(entries.get(i), probe, s.isBoosted(i));
+            if (best == null || c.score() > bestScore || (c.score() == bestScore && i < bestIndex)) {
+                best = c;
+                bestIndex = i;
+                bestScore = c.score();
             }
         }
+
+        // 沒有任何目標與片語共用字元（也沒有加權）：全部 0 分，逐筆掃描時第一筆勝出
+        if (best == null || bestScore <= 0.0) {
+            return new Candidate(entries.get(0).dict(), 0.0, "name");
+        }
         return best;
     }
 
-    private static boolean containsTrustedToken(String phrase, String token) {
-        String p = TextNorm.normalize(phrase);
-        String t = TextNorm.normalize(token);
-        if (p.isBlank() || t.isBlank()) return false;
-        if (t.contains(" ") || !isAsciiLetters(t)) {
-            return containsTrustedPhrase(p, t);
+    /** 候選中上限最高者的位置（同分取 entry index 小） */
+    private static int highestBound(Scratch s, int n) {
+        int top = 0;
+        for (int k = 1; k < n; k++) {
+            double b = s.candBound[k];
+            if (b > s.candBound[top] || (b == s.candBound[top] && s.cand[k] < s.cand[top])) top = k;
         }
+        return top;
+    }
 
-        String tokenized = p.replaceAll("[^\\p{L}\\p{N}]+", " ");
-        for (String word : tokenized.split("\\s+")) {
-            if (word.equals(t)) return true;
+    /** 上限 bound 的 entry i 是否還可能取代目前的 best（同分時 index 小的勝） */
+    private static boolean canBeat(double bound, int i, double bestScore, int bestIndex) {
+        return bound > bestScore || (bound == bestScore && i < bestIndex);
+    }
+
+    /** 逐筆掃描（不用索引）；索引結果必須與這裡完全相同 */
+    Candidate bestExhaustive(String phrase, String localeTag) {
+        Probe probe = probe(phrase, localeTag);
+        return probe == null ? null : bestByScan(probe);
+    }
+
+    private Candidate bestByScan(Probe probe) {
+        Set<Integer> boosted = boostedEntries(probe.boostKeys());
+        Candidate best = null;
+        for (int i = 0; i < entries.size(); i++) {
+            Candidate c = score(entries.get(i), probe, boosted.contains(i));
+            if (best == null || c.score() > best.score()) {
+                best = c;
+            }
         }
-        return false;
+        return best;
     }
 
-    private static boolean containsTrustedPhrase(String phrase, String token) {
-        String p = TextNorm.normalize(phrase);
-        String t = TextNorm.normalize(token);
+    /** 一次 best() 只算一次的片語資訊；ASCII 黏字可疑時回 null */
+    private Probe probe(String phrase, String localeTag) {
+        String p = stableNormalize(phrase);
+        boolean pAsciiGlue = hasAsciiAdjacentToNonAsciiLetter(p);
+        Set<String> words = words(p);
+
+        if (hasSuspiciousAsciiGlue(pAsciiGlue, words)) {
+            return null;
+        }
+
+        Set<String> boostKeys = Similarity.matchedBoostKeys(localeTag == null ? "*" : localeTag, p);
+        return new Probe(p, p.isBlank(), pAsciiGlue, words, boostKeys);
+    }
+
+    private record Probe(String p, boolean pBlank, boolean pAsciiGlue, Set<String> words, Set<String> boostKeys) {}
+
+    private Candidate score(Entry e, Probe probe, boolean boosted) {
+        String p = probe.p();
+        Target base = e.name();
+
+        double sName = hasAsciiJunkAdjacentToEmbeddedToken(p, probe.pBlank(), probe.pAsciiGlue(), base)
+                ? 0.0
+                : JaroWinkler.similarity(p, base.norm());
+        double sToken = containsTrustedToken(p, probe.pBlank(), probe.words(), base) ? TRUSTED_TOKEN_SCORE : 0.0;
+        double sMax = Math.max(sName, sToken);
+        String why = sToken > sName ? "token" : "name";
+
+        for (Target syn : e.synonyms()) {
+            double sv = hasAsciiJunkAdjacentToEmbeddedToken(p, probe.pBlank(), probe.pAsciiGlue(), syn)
+                    ? 0.0
+                    : JaroWinkler.similarity(p, syn.norm());
+            if (sv > sMax) { sMax = sv; why = "syn"; }
+            if (containsTrustedToken(p, probe.pBlank(), probe.words(), syn) && TRUSTED_TOKEN_SCORE > sMax) {
+                sMax = TRUSTED_TOKEN_SCORE;
+                why = "token";
+            }
+        }
+
+        // 額外同義詞 token 加權（按語言）
+        double boost = boosted ? Similarity.boostFor(probe.boostKeys(), e.canonicalKey()) : 0.0;
+        double finalScore = Math.min(1.0, sMax + boost); // 封頂 1.0
+        return new Candidate(e.dict(), finalScore, why);
+    }
+
+    /**
+     * 與片語共用 bigram 最多的 entry（最多 SEED_ENTRIES 個）寫進 s.seeds，回傳個數。
+     * 只用來決定先精算誰，不影響結果。
+     */
+    private int seedEntries(String p, Scratch s) {
+        int gramCount = probeGrams(p, s);
+        int touched = 0;
+        for (int g = 0; g < gramCount; ) {
+            int key = s.grams[g];
+            int pc = 0;
+            while (g < gramCount && s.grams[g] == key) {
+                pc++;
+                g++;
+            }
+            int k = Arrays.binarySearch(gramKeys, key);
+            if (k < 0) continue;
+            for (int j = gramStart[k]; j < gramStart[k + 1]; j++) {
+                int t = gramTargets[j];
+                if (s.shared[t] == 0) s.touched[touched++] = t;
+                s.shared[t] += Math.min(pc, gramCounts[j]);
+            }
+        }
+
+        int seedCount = 0;
+        for (int k = 0; k < touched; k++) {
+            int t = s.touched[k];
+            int shared = s.shared[t];
+            s.shared[t] = 0;
+            int e = targets.get(t).entry();
+
+            int at = -1;
+            for (int j = 0; j < seedCount; j++) {
+                if (s.seeds[j] == e) { at = j; break; }
+            }
+            if (at >= 0) {
+                s.seedShared[at] = Math.max(s.seedShared[at], shared);
+            } else if (seedCount < SEED_ENTRIES) {
+                s.seeds[seedCount] = e;
+                s.seedShared[seedCount++] = shared;
+            } else {
+                int min = 0;
+                for (int j = 1; j < seedCount; j++) {
+                    if (s.seedShared[j] < s.seedShared[min]) min = j;
+                }
+                if (shared > s.seedShared[min]) {
+                    s.seeds[min] = e;
+                    s.seedShared[min] = shared;
+                }
+            }
+        }
+        return seedCount;
+    }
+
+    /** 片語的 bigram（含首尾邊界）排序後寫進 s.grams，回傳個數 */
+    private static int probeGrams(String p, Scratch s) {
+        int n = p.length() + 1;
+        int[] grams = s.grams(n);
+        char prev = GRAM_PAD;
+        for (int i = 0; i < p.length(); i++) {
+            char c = p.charAt(i);
+            grams[i] = gram(prev, c);
+            prev = c;
+        }
+        grams[n - 1] = gram(prev, GRAM_PAD);
+        Arrays.sort(grams, 0, n);
+        return n;
+    }
+
+    private static int gram(char a, char b) {
+        return (a << 16) | b;
+    }
+
+    /**
+     * 長度為 tLen 的任何目標的上限：共同字元數不超過 min(|p|, |t|)，Winkler 前綴不超過 min(4, |p|, |t|)，
+     * 只有 |t| <= |p| 才可能整段出現在片語中（trusted token）。
+     */
+    private static double lengthBound(int pLen, int tLen) {
+        int common = Math.min(pLen, tLen);
+        if (common == 0) {
+            return 0.0;
+        }
+        double jaro = Math.min(1.0, ((double) common / pLen + (double) common / tLen + 1.0) / 3.0);
+        double jw = jaro + 0.1 * Math.min(4, common) * (1 - jaro);
+        double token = tLen <= pLen ? TRUSTED_TOKEN_SCORE : 0.0;
+        return Math.min(1.0, Math.max(jw, token) + BOUND_EPSILON);
+    }
+
+    /** 同分時要看 entry index，長度桶只能保守地用 >= 篩 */
+    private static boolean mayBeat(double bound, double bestScore) {
+        return bound > 0.0 && bound >= bestScore;
+    }
+
+    /**
+     * 每個 entry 的分數上限（0 = 與片語沒有共同字元，分數必為 0）。
+     * Jaro 的 matches 不會超過兩字串共同字元數 c，transpositions 至少 0：
+     * jaro <= (c/|p| + c/|t| + 1) / 3；Winkler 前綴可直接算出，公式對 jaro 單調遞增。
+     * 目標整段出現在片語中（c == |t|）才可能命中 trusted token（0.89）。
+     *
+     * @param pChars 片語字元排序後的前 |p| 個
+     */
+    private static double charBound(String p, char[] pChars, Entry e) {
+        double bound = targetBound(p, e.name().norm(), commonChars(pChars, p.length(), e.name().sortedChars()));
+        for (Target syn : e.synonyms()) {
+            bound = Math.max(bound, targetBound(p, syn.norm(), commonChars(pChars, p.length(), syn.sortedChars())));
+        }
+        return bound;
+    }
+
+    /** 兩個已排序字元序列的 multiset 交集大小 */
+    private static int commonChars(char[] a, int aLen, char[] b) {
+        int i = 0;
+        int j = 0;
+        int common = 0;
+        while (i < aLen && j < b.length) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return common;
+    }
+
+    private static double targetBound(String p, String t, int common) {
+        if (common == 0 || t.isEmpty()) {
+            return 0.0;
+        }
+        double jaro = Math.min(1.0, ((double) common / p.length() + (double) common / t.length() + 1.0) / 3.0);
+        int prefix = 0;
+        for (int i = 0; i < Math.min(4, Math.min(p.length(), t.length())); i++) {
+            if (p.charAt(i) == t.charAt(i)) prefix++;
+            else break;
+        }
+        double jw = jaro + 0.1 * prefix * (1 - jaro);
+        double token = common == t.length() ? TRUSTED_TOKEN_SCORE : 0.0;
+        return Math.min(1.0, Math.max(jw, token) + BOUND_EPSILON);
+    }
+
+    private Set<Integer> boostedEntries(Set<String> boostKeys) {
+        if (boostKeys.isEmpty()) {
+            return Set.of();
+        }
+        Set<Integer> out = new HashSet<>();
+        for (String key : boostKeys) {
+            for (int e : entriesByBoostKey.computeIfAbsent(key, this::entriesContainingKey)) {
+                out.add(e);
+            }
+        }
+        return out;
+    }
+
+    private int[] entriesContainingKey(String key) {
+        List<Integer> out = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            if (Similarity.boostFor(Set.of(key), entries.get(i).canonicalKey()) > 0.0) {
+                out.add(i);
+            }
+        }
+        return out.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private record GramIndex(int[] keys, int[] start, int[] targets, int[] counts) {
+
+        static GramIndex build(List<Target> targets) {
+            Map<Integer, List<int[]>> raw = new HashMap<>();
+            for (int t = 0; t < targets.size(); t++) {
+                String s = targets.get(t).norm();
+                Map<Integer, Integer> counts = new HashMap<>();
+                char prev = GRAM_PAD;
+                for (int i = 0; i < s.length(); i++) {
+                    counts.merge(gram(prev, s.charAt(i)), 1, Integer::sum);
+                    prev = s.charAt(i);
+                }
+                counts.merge(gram(prev, GRAM_PAD), 1, Integer::sum);
+
+                for (Map.Entry<Integer, Integer> g : counts.entrySet()) {
+                    raw.computeIfAbsent(g.getKey(), k -> new ArrayList<>()).add(new int[]{t, g.getValue()});
+                }
+            }
+
+            int[] keys = raw.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            int[] start = new int[keys.length + 1];
+            int total = 0;
+            for (int k = 0; k < keys.length; k++) {
+                start[k] = total;
+                total += raw.get(keys[k]).size();
+            }
+            start[keys.length] = total;
+
+            int[] ids = new int[total];
+            int[] cnt = new int[total];
+            for (int k = 0; k < keys.length; k++) {
+                List<int[]> list = raw.get(keys[k]);
+                for (int j = 0; j < list.size(); j++) {
+                    ids[start[k] + j] = list.get(j)[0];
+                    cnt[start[k] + j] = list.get(j)[1];
+                }
+            }
+            return new GramIndex(keys, start, ids, cnt);
+        }
+    }
+
+    /**
+     * 單次 best() 的暫存（每個 thread 一份，跨呼叫重用）。
+     * seen / boostMark / boundMark 以 stamp 判斷是否屬於這一次呼叫，不用每次清空；shared 用完即歸零。
+     */
+    private static final class Scratch {
+        final int[] shared;
+        final int[] touched;
+        final int[] seen;
+        final int[] boostMark;
+        final double[] boost;
+        final int[] boundMark;
+        final double[] entryBound;
+        final int[] boundEntries;
+        final int[] cand;
+        final double[] candBound;
+        final int[] seeds = new int[SEED_ENTRIES];
+        final int[] seedShared = new int[SEED_ENTRIES];
+        int[] grams = new int[32];
+        char[] chars = new char[32];
+        int stamp;
+
+        Scratch(int targetCount, int entryCount) {
+            shared = new int[targetCount];
+            touched = new int[targetCount];
+            seen = new int[entryCount];
+            boostMark = new int[entryCount];
+            boost = new double[entryCount];
+            boundMark = new int[entryCount];
+            entryBound = new double[entryCount];
+            boundEntries = new int[entryCount];
+            cand = new int[entryCount];
+            candBound = new double[entryCount];
+        }
+
+        /** 換新的 stamp，並把片語字元排序放進 chars */
+        void begin(String p) {
+            if (++stamp == 0) {
+                Arrays.fill(seen, 0);
+                Arrays.fill(boostMark, 0);
+                Arrays.fill(boundMark, 0);
+                stamp = 1;
+            }
+            if (chars.length < p.length()) {
+                chars = new char[Math.max(p.length(), chars.length * 2)];
+            }
+            p.getChars(0, p.length(), chars, 0);
+            Arrays.sort(chars, 0, p.length());
+        }
+
+        int[] grams(int n) {
+            if (grams.length < n) {
+                grams = new int[Math.max(n, grams.length * 2)];
+            }
+            return grams;
+        }
+
+        boolean isBoosted(int entry) {
+            return boostMark[entry] == stamp;
+        }
+    }
+
+    /**
+     * TextNorm 對少數字元（例如土耳其文 İ 小寫後帶結合符號）不是 idempotent；
+     * 舊流程每一步都會再正規化一次，這裡直接做到穩定形式，比對結果不變。
+     */
+    private static String stableNormalize(String raw) {
+        return TextNorm.normalize(TextNorm.normalize(raw));
+    }
+
+    private static Set<String> words(String p) {
+        Set<String> out = new HashSet<>();
+        for (String word : WHITESPACE.split(NON_LETTER_OR_DIGIT.matcher(p).replaceAll(" "))) {
+            out.add(word);
+        }
+        return out;
+    }
+
+    private static boolean containsTrustedToken(String p, boolean pBlank, Set<String> words, Target t) {
+        if (pBlank || t.blank()) return false;
+        if (t.phraseLike()) {
+            return containsTrustedPhrase(p, t.norm());
+        }
+        return words.contains(t.norm());
+    }
+
+    private static boolean containsTrustedPhrase(String p, String t) {
         int start = 0;
-        while (!p.isBlank() && !t.isBlank()) {
+        while (true) {
             int idx = p.indexOf(t, start);
             if (idx < 0) return false;
             int before = idx - 1;
@@ -92,14 +633,17 @@ public final class AliasMatcher {
             }
             start = idx + Math.max(1, t.length());
         }
-        return false;
     }
 
-    private static boolean hasAsciiJunkAdjacentToEmbeddedToken(String phrase, String token) {
-        String p = TextNorm.normalize(phrase);
-        String t = TextNorm.normalize(token);
-        if (p.isBlank() || t.isBlank() || p.equals(t)) return false;
-        if (containsNonAsciiLetter(t) && p.contains(t) && hasAsciiAdjacentToNonAsciiLetter(p)) {
+    private static boolean hasAsciiJunkAdjacentToEmbeddedToken(
+            String p,
+            boolean pBlank,
+            boolean pAsciiGlue,
+            Target target
+    ) {
+        String t = target.norm();
+        if (pBlank || target.blank() || p.equals(t)) return false;
+        if (target.nonAsciiLetter() && pAsciiGlue && p.contains(t)) {
             return true;
         }
 
@@ -122,30 +666,32 @@ public final class AliasMatcher {
         return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
     }
 
-    private static boolean hasSuspiciousAsciiGlue(
-            String phrase,
-            List<WorkoutDictionary> dictionaries,
-            Map<String, List<String>> synonymsByCanonical
-    ) {
-        if (hasAsciiAdjacentToNonAsciiLetter(phrase)) {
+    private boolean hasSuspiciousAsciiGlue(boolean pAsciiGlue, Set<String> words) {
+        if (pAsciiGlue) {
             return true;
         }
-
-        Set<String> trustedAsciiTokens = new HashSet<>();
-        for (WorkoutDictionary d : dictionaries) {
-            addAsciiToken(trustedAsciiTokens, d.getDisplayNameEn());
-            for (String syn : synonymsByCanonical.getOrDefault(d.getCanonicalKey(), List.of())) {
-                addAsciiToken(trustedAsciiTokens, syn);
-            }
-        }
         if (trustedAsciiTokens.isEmpty()) return false;
 
-        for (String word : phrase.replaceAll("[^\\p{L}\\p{N}]+", " ").split("\\s+")) {
+        for (String word : words) {
             if (word.isBlank() || !isAsciiLetters(word) || trustedAsciiTokens.contains(word)) {
                 continue;
             }
-            for (String token : trustedAsciiTokens) {
-                if (word.contains(token)) {
+            if (containsTrustedSubstring(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** word 的任一子字串是白名單 token（只列舉到最長 token 的長度，不隨 token 數量成長） */
+    private boolean containsTrustedSubstring(String word) {
+        if (trustedAsciiTokens.contains("")) {
+            return true;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            int maxEnd = Math.min(word.length(), i + maxAsciiTokenLength);
+            for (int j = i + 1; j <= maxEnd; j++) {
+                if (trustedAsciiTokens.contains(word.substring(i, j))) {
                     return true;
                 }
             }
@@ -153,10 +699,9 @@ public final class AliasMatcher {
         return false;
     }
 
-    private static void addAsciiToken(Set<String> tokens, String raw) {
-        String token = TextNorm.normalize(raw);
-        if (isAsciiLetters(token)) {
-            tokens.add(token);
+    private static void addAsciiToken(Set<String> tokens, Target t) {
+        if (isAsciiLetters(t.norm())) {
+            tokens.add(t.norm());
         }
     }
 
@@ -0,0 +1,125 @@
+package com.caloshape.backend.workout.match;
+
+import com.caloshape.backend.workout.entity.WorkoutDictionary;
+import com.caloshape.backend.workout.repo.WorkoutDictionaryRepo;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * /estimate 用的字典比對索引（單例）：
+ * - 啟動時（SportsWhitelistBootstrap 之後）載入 workout_dictionary，建好預先正規化的 AliasMatcher
+ * - 定期重新讀字典算 fingerprint，內容有變才重建，整個 matcher 以 volatile 參照原子替換
+ * - 讀取端不加鎖，拿到的 matcher 不可變
+ * 字典只由 seed / migration 維護，資料量小（數百筆），定期重讀的成本遠低於每個 request 一次 findAll。
+ * workout_alias 的 APPROVED 直中在比對前就由 DB 查詢處理，不進這個索引。
+ */
+@Slf4j
+@Component
+@DependsOn("sportsWhitelistBootstrap")
+public class WorkoutMatcherIndex {
+
+    /** 內建同義詞（canonicalKey -> 片語） */
+    static final Map<String, List<String>> BUILTIN_SYNONYMS = builtinSynonyms();
+
+    private final WorkoutDictionaryRepo dictRepo;
+
+    private volatile Snapshot current;
+
+    public WorkoutMatcherIndex(WorkoutDictionaryRepo dictRepo) {
+        this.dictRepo = dictRepo;
+    }
+
+    @PostConstruct
+    public void load() {
+        try {
+            Snapshot s = rebuild();
+            log.info("[WorkoutMatcherIndex] built matcher with {} dictionary entries", s.matcher().size());
+        } catch (Exception e) {
+            // 不讓啟動失敗；第一次 matcher() 會再試
+            log.warn("[WorkoutMatcherIndex] failed to build matcher at startup: {}", e.toString());
+        }
+    }
+
+    /** 目前的 matcher；尚未建立（啟動時 DB 不可用）就當場建立 */
+    public AliasMatcher matcher() {
+        Snapshot s = current;
+        if (s == null) {
+            s = rebuild();
+        }
+        return s.matcher();
+    }
+
+    /**
+     * 重新讀字典；內容與目前版本相同就沿用，不重建。
+     */
+    @Scheduled(
+            fixedDelayString = "${workout.matcher.refresh-interval:PT5M}",
+            initialDelayString = "${workout.matcher.refresh-interval:PT5M}"
+    )
+    public void refreshIfChanged() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.warn("[WorkoutMatcherIndex] refresh failed, keeping current matcher: {}", e.toString());
+        }
+    }
+
+    /** 強制從 DB 重建（字典內容沒變時回傳原本的 snapshot） */
+    public synchronized Snapshot rebuild() {
+        List<WorkoutDictionary> all = dictRepo.findAll();
+        long fingerprint = fingerprint(all);
+
+        Snapshot s = current;
+        if (s != null && s.fingerprint() == fingerprint && s.matcher().size() == all.size()) {
+            return s;
+        }
+
+        Snapshot next = new Snapshot(new AliasMatcher(List.copyOf(all), BUILTIN_SYNONYMS), fingerprint);
+        if (s != null) {
+            log.info("[WorkoutMatcherIndex] dictionary changed, swapped matcher ({} -> {} entries)",
+                    s.matcher().size(), next.matcher().size());
+        }
+        current = next;
+        return next;
+    }
+
+    private static long fingerprint(List<WorkoutDictionary> all) {
+        long h = 1125899906842597L;
+        for (WorkoutDictionary d : all) {
+            h = 31 * h + Objects.hash(
+                    d.getId(),
+                    d.getCanonicalKey(),
+                    d.getDisplayNameEn(),
+                    d.getMetValue(),
+                    d.getIconKey()
+            );
+        }
+        return h;
+    }
+
+    private static Map<String, List<String>> builtinSynonyms() {
+        Map<String, List<String>> synonyms = new HashMap<>(Map.of(
+                "running",  List.of("run","running","jog","慢跑","跑步","ラン","ジョグ","달리기","correr","corrida","кросс"),
+                "walking",  List.of("walk","散步","走路","步行","歩く","걷기","paseo","caminata"),
+                "cycling",  List.of("cycle","bike","biking","騎車","單車","骑车","自転車","자전거","ciclismo","vélo"),
+                "swimming", List.of("swim","游泳","수영","natación","natação")
+        ));
+        synonyms.put("hiit_bodyweight_moderate", List.of("hiit"));
+        synonyms.put("golf_walking", List.of("golf"));
+        synonyms.put("standup_paddleboard", List.of("paddle boarding"));
+        synonyms.put("core_weighted_circuit", List.of("core training"));
+        synonyms.put("calisthenics_light", List.of("plank", "push-ups", "lunges"));
+        synonyms.put("calisthenics_vigorous", List.of("pull-ups"));
+        return Map.copyOf(synonyms);
+    }
+
+    public record Snapshot(AliasMatcher matcher, long fingerprint) {}
+}
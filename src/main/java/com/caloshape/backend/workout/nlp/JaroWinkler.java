@@ -1,11 +1,52 @@
 package com.caloshape.backend.workout.nlp;
 
+/**
+ * Jaro-Winkler（prefix 權重 0.1，最多 4 字）。
+ * 兩邊都不超過 64 字（字典名稱、同義詞、使用者片語幾乎都是）時，配對狀態放在兩個 long bitmask，
+ * 每次比較不配置任何物件；更長的字串才退回 boolean[]。
+ */
 public final class JaroWinkler {
     private JaroWinkler() {}
 
+    private static final int MASK_BITS = Long.SIZE;
+
     public static double similarity(String s1, String s2) {
         if (s1 == null || s2 == null) return 0d;
         if (s1.equals(s2)) return 1d;
+        int len1 = s1.length(), len2 = s2.length();
+        if (len1 > MASK_BITS || len2 > MASK_BITS) return similarityLong(s1, s2);
+
+        int maxDist = Math.max(0, Math.max(len1, len2)/2 - 1);
+
+        long m1 = 0L, m2 = 0L;
+        int matches = 0;
+        for (int i=0; i<len1; i++) {
+            int start = Math.max(0, i - maxDist);
+            int end = Math.min(i + maxDist + 1, len2);
+            char c = s1.charAt(i);
+            for (int j=start; j<end; j++) {
+                if ((m2 & (1L << j)) == 0 && c == s2.charAt(j)) {
+                    m1 |= 1L << i; m2 |= 1L << j; matches++; break;
+                }
+            }
+        }
+        if (matches == 0) return 0d;
+
+        // 依序取兩邊的配對位置（最低位的 1），不同字元即 transposition
+        int t = 0;
+        long a = m1, b = m2;
+        while (a != 0) {
+            int i = Long.numberOfTrailingZeros(a);
+            int k = Long.numberOfTrailingZeros(b);
+            if (s1.charAt(i) != s2.charAt(k)) t++;
+            a &= a - 1;
+            b &= b - 1;
+        }
+        return winkler(s1, s2, matches, t);
+    }
+
+    /** 超過 64 字的字串（少見）：原本的 boolean[] 版本 */
+    private static double similarityLong(String s1, String s2) {
         int len1 = s1.length(), len2 = s2.length();
         int maxDist = Math.max(0, Math.max(len1, len2)/2 - 1);
 
@@ -30,6 +71,11 @@ public final class JaroWinkler {
             if (s1.charAt(i) != s2.charAt(k)) t++;
             k++;
         }
+        return winkler(s1, s2, matches, t);
+    }
+
+    private static double winkler(String s1, String s2, int matches, int t) {
+        int len1 = s1.length(), len2 = s2.length();
         double jaro = ( (matches/(double)len1) + (matches/(double)len2) + ((matches - t/2.0)/matches) ) / 3.0;
 
         // prefix
@@ -1,7 +1,9 @@
 package com.caloshape.backend.workout.nlp;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 統一的字串相似度入口。
@@ -26,15 +28,33 @@ public final class Similarity {
      * - dictCanonical：字典 canonical key（例：running / cycling）
      */
     public static double boostBySynonyms(String lang, String phrase, String dictCanonical) {
-        String norm = TextNorm.normalize(phrase);
+        return boostFor(matchedBoostKeys(lang, TextNorm.normalize(phrase)), dictCanonical);
+    }
+
+    /**
+     * 片語命中的類別詞 key（例：running -> {"run"}）。
+     * 同一片語要對整本字典算 boost 時先算一次，再逐筆呼叫 boostFor。
+     * - normalizedPhrase：已正規化的片語（這裡不再正規化）
+     */
+    public static Set<String> matchedBoostKeys(String lang, String normalizedPhrase) {
         Map<String, List<String>> lex = LEX.getOrDefault(lang, LEX.get("*"));
+        Set<String> keys = new HashSet<>(4);
         for (Map.Entry<String, List<String>> e : lex.entrySet()) {
-            String key = e.getKey();
-            if (!dictCanonical.contains(key)) continue;
             for (String token : e.getValue()) {
-                if (norm.contains(token)) return 0.05;
+                if (normalizedPhrase.contains(token)) {
+                    keys.add(e.getKey());
+                    break;
+                }
             }
         }
+        return keys;
+    }
+
+    /** dictCanonical 含任一命中的類別詞 -> +0.05 */
+    public static double boostFor(Set<String> matchedKeys, String dictCanonical) {
+        for (String key : matchedKeys) {
+            if (dictCanonical.contains(key)) return 0.05;
+        }
         return 0.0;
     }
 
@@ -11,11 +11,57 @@ import java.util.Locale;
  * 3) 去常見標點（保留語內空格與全部字母/數字）
  * 4) 映射阿拉伯/天城文數字到 ASCII
  * 5) toLowerCase + 壓縮空白
+ *
+ * normalize() 把 2)~5) 合成單趟、不用 regex；純 ASCII 輸入不跑 NFKC，已經是正規形式就直接回傳原字串。
+ * 結果與 normalizeReference()（原本的逐步版本）逐字相同；
+ * 含 U+0130（İ）/ U+03A3（Σ）這兩個 toLowerCase 依上下文而定的字元時，直接走 reference。
  */
 public final class TextNorm {
     private TextNorm() {}
 
     public static String normalize(String s) {
+        if (s == null || s.isEmpty()) return "";
+        if (isAscii(s)) {
+            return isNormalizedAscii(s) ? s : normalizeAscii(s);
+        }
+
+        // 1) NFKC（已是 NFKC 就不重建字串）
+        String nfkc = Normalizer.isNormalized(s, Form.NFKC) ? s : Normalizer.normalize(s, Form.NFKC);
+        if (nfkc.indexOf('İ') >= 0 || nfkc.indexOf('Σ') >= 0) {
+            return normalizeReference(s);
+        }
+
+        // 2)~5) 單趟：去拉丁重音、標點 → 空白、東方數字、小寫、空白壓縮
+        StringBuilder sb = new StringBuilder(nfkc.length());
+        boolean prevBaseIsLatin = false;
+        boolean pendingSpace = false;
+        for (int i = 0; i < nfkc.length(); ) {
+            int cp = nfkc.codePointAt(i);
+            i += Character.charCount(cp);
+
+            if (isMark(Character.getType(cp))) {
+                if (prevBaseIsLatin) continue; // 拉丁變音 → 無重音
+            } else {
+                prevBaseIsLatin = isLatin(cp);
+                cp = isPunct(cp) ? ' ' : mapEasternDigit(cp);
+            }
+
+            if (isRegexSpace(cp)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.appendCodePoint(Character.toLowerCase(cp));
+        }
+        if (pendingSpace) sb.append(' ');
+        return sb.toString().trim();
+    }
+
+    /** 原本的逐步實作（NFKC → 去重音 → regex 去標點 → 數字 → 小寫 + regex 壓縮空白），作為對照與特殊字元 fallback */
+    static String normalizeReference(String s) {
         if (s == null || s.isEmpty()) return "";
         // 1) NFKC
         String nfkc = Normalizer.normalize(s, Form.NFKC);
@@ -26,9 +72,7 @@ public final class TextNorm {
         for (int i = 0; i < nfkc.length(); ) {
             final int cp = nfkc.codePointAt(i);
             final int type = Character.getType(cp);
-            if (type == Character.NON_SPACING_MARK
-                    || type == Character.COMBINING_SPACING_MARK
-                    || type == Character.ENCLOSING_MARK) {
+            if (isMark(type)) {
                 // 只在上一個基底字元為「拉丁」時才丟棄（越南文等拉丁變音 → 無重音）
                 if (!prevBaseIsLatin) {
                     sb.appendCodePoint(cp); // 非拉丁腳本：保留（例如 थाई/देवनागरी）
@@ -51,30 +95,91 @@ public final class TextNorm {
         return t.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").trim();
     }
 
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    /** 純 ASCII 且已經是輸出形式：沒有大寫/標點/非空格空白/連續空格，頭尾沒有會被 trim 的字元 */
+    private static boolean isNormalizedAscii(String s) {
+        int last = s.length() - 1;
+        if (s.charAt(0) <= ' ' || s.charAt(last) <= ' ') return false;
+        for (int i = 1; i < last; i++) {
+            char c = s.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || isPunct(c)) return false;
+            if (c == ' ' ? s.charAt(i - 1) == ' ' : isRegexSpace(c)) return false;
+        }
+        char first = s.charAt(0), end = s.charAt(last);
+        return !((first >= 'A' && first <= 'Z') || isPunct(first) || (end >= 'A' && end <= 'Z') || isPunct(end));
+    }
+
+    /** 純 ASCII：NFKC 不變、沒有結合符號與東方數字，只剩標點、小寫與空白 */
+    private static String normalizeAscii(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (isPunct(c) || isRegexSpace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+        if (pendingSpace) sb.append(' ');
+        return sb.toString().trim();
+    }
+
+    private static boolean isMark(int type) {
+        return type == Character.NON_SPACING_MARK
+                || type == Character.COMBINING_SPACING_MARK
+                || type == Character.ENCLOSING_MARK;
+    }
+
+    /** 與 regex [\p{Punct}，。！？・·、؛،﹑] 相同（\p{Punct} 為 POSIX ASCII 標點） */
+    private static boolean isPunct(int cp) {
+        if (cp < 0x80) {
+            return (cp >= 0x21 && cp <= 0x2F)
+                    || (cp >= 0x3A && cp <= 0x40)
+                    || (cp >= 0x5B && cp <= 0x60)
+                    || (cp >= 0x7B && cp <= 0x7E);
+        }
+        return switch (cp) {
+            case '，', '。', '！', '？', '・', '·', '、', '؛', '،', '﹑' -> true;
+            default -> false;
+        };
+    }
+
+    /** 與 regex \s 相同：[ \t\n\x0B\f\r] */
+    private static boolean isRegexSpace(int cp) {
+        return cp == ' ' || (cp >= 0x09 && cp <= 0x0D);
+    }
+
+    /** 與 Character.UnicodeBlock 的各拉丁區塊相同，但不查表 */
     private static boolean isLatin(int codePoint) {
-        Character.UnicodeBlock b = Character.UnicodeBlock.of(codePoint);
-        return b == Character.UnicodeBlock.BASIC_LATIN
-                || b == Character.UnicodeBlock.LATIN_1_SUPPLEMENT
-                || b == Character.UnicodeBlock.LATIN_EXTENDED_A
-                || b == Character.UnicodeBlock.LATIN_EXTENDED_B
-                || b == Character.UnicodeBlock.LATIN_EXTENDED_ADDITIONAL
-                || b == Character.UnicodeBlock.LATIN_EXTENDED_C
-                || b == Character.UnicodeBlock.LATIN_EXTENDED_D
-                || b == Character.UnicodeBlock.LATIN_EXTENDED_E;
+        return codePoint <= 0x024F                                  // BASIC_LATIN .. LATIN_EXTENDED_B
+                || (codePoint >= 0x1E00 && codePoint <= 0x1EFF)     // LATIN_EXTENDED_ADDITIONAL
+                || (codePoint >= 0x2C60 && codePoint <= 0x2C7F)     // LATIN_EXTENDED_C
+                || (codePoint >= 0xA720 && codePoint <= 0xA7FF)     // LATIN_EXTENDED_D
+                || (codePoint >= 0xAB30 && codePoint <= 0xAB6F);    // LATIN_EXTENDED_E
+    }
+
+    private static int mapEasternDigit(int cp) {
+        if (cp >= 0x0660 && cp <= 0x0669) return '0' + (cp - 0x0660); // Arabic-Indic
+        if (cp >= 0x0966 && cp <= 0x096F) return '0' + (cp - 0x0966); // Devanagari
+        return cp;
     }
 
     /** 映射阿拉伯-印度(0660..0669)與天城文(0966..096F)數字到 ASCII '0'..'9' */
     private static String mapEasternDigitsToLatin(String s) {
         StringBuilder out = new StringBuilder(s.length());
         for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (c >= 0x0660 && c <= 0x0669) { // Arabic-Indic
-                out.append((char) ('0' + (c - 0x0660)));
-            } else if (c >= 0x0966 && c <= 0x096F) { // Devanagari
-                out.append((char) ('0' + (c - 0x0966)));
-            } else {
-                out.append(c);
-            }
+            out.append((char) mapEasternDigit(s.charAt(i)));
         }
         return out.toString();
     }
@@ -1,6 +1,7 @@
 package com.caloshape.backend.workout.repo;
 
 import com.caloshape.backend.workout.entity.WorkoutAliasEvent;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -11,11 +12,68 @@ import java.util.List;
 
 public interface WorkoutAliasEventRepo extends JpaRepository<WorkoutAliasEvent, Long> {
 
+    /** 時間窗內每個 (lang, phrase) 的統計；只回傳通過 count / distinct users 門檻的片語 */
+    interface PhraseStatsView {
+        String getLangTag();
+        String getPhraseLower();
+        Long getTotal();
+        Long getDistinctUsers();
+        /** 非 generic 且有分數的事件數（中位數的母體） */
+        Long getScored();
+        Instant getLastSeen();
+    }
+
+    // 以 (lang, phrase) keyset 分頁：每頁只帶 pageable 大小的彙總列，不載入事件 entity
     @Query("""
-        select e from WorkoutAliasEvent e
+        select e.langTag as langTag,
+               e.phraseLower as phraseLower,
+               count(e) as total,
+               count(distinct e.userId) as distinctUsers,
+               sum(case when e.usedGeneric = false and e.score is not null then 1 else 0 end) as scored,
+               max(e.createdAt) as lastSeen
+        from WorkoutAliasEvent e
         where e.createdAt >= :since
+          and (e.langTag > :afterLang or (e.langTag = :afterLang and e.phraseLower > :afterPhrase))
+        group by e.langTag, e.phraseLower
+        having count(e) >= :minCount and count(distinct e.userId) >= :minUsers
+        order by e.langTag, e.phraseLower
+    """)
+    List<PhraseStatsView> findPromotionCandidates(@Param("since") Instant since,
+                                                  @Param("afterLang") String afterLang,
+                                                  @Param("afterPhrase") String afterPhrase,
+                                                  @Param("minCount") long minCount,
+                                                  @Param("minUsers") long minUsers,
+                                                  Pageable pageable);
+
+    // 單一片語的分數（升冪）；搭配 PageRequest.of(offset, 1) 直接取第 offset 名，用來算中位數
+    @Query("""
+        select e.score from WorkoutAliasEvent e
+        where e.langTag = :lang
+          and e.phraseLower = :phrase
+          and e.createdAt >= :since
+          and e.usedGeneric = false
+          and e.score is not null
+        order by e.score asc
+    """)
+    List<Double> findScoresAscending(@Param("lang") String lang,
+                                     @Param("phrase") String phrase,
+                                     @Param("since") Instant since,
+                                     Pageable pageable);
+
+    // 單一片語最常對到的字典（同票取 id 小者）
+    @Query("""
+        select e.matchedDict.id from WorkoutAliasEvent e
+        where e.langTag = :lang
+          and e.phraseLower = :phrase
+          and e.createdAt >= :since
+          and e.matchedDict is not null
+        group by e.matchedDict.id
+        order by count(e) desc, e.matchedDict.id asc
     """)
-    List<WorkoutAliasEvent> findSince(@Param("since") Instant since);
+    List<Long> findTopMatchedDictIds(@Param("lang") String lang,
+                                     @Param("phrase") String phrase,
+                                     @Param("since") Instant since,
+                                     Pageable pageable);
 
     // ★ 新增：統計某用戶在時間窗內輸入的「不同片語」數（distinct phraseLower）
     @Query("""
@@ -11,6 +11,7 @@ import com.caloshape.backend.workout.entity.WorkoutAliasEvent;
 import com.caloshape.backend.workout.entity.WorkoutDictionary;
 import com.caloshape.backend.workout.entity.WorkoutSession;
 import com.caloshape.backend.workout.match.AliasMatcher;
+import com.caloshape.backend.workout.match.WorkoutMatcherIndex;
 import com.caloshape.backend.workout.nlp.Blacklist;
 import com.caloshape.backend.workout.nlp.DurationParser;
 import com.caloshape.backend.workout.nlp.TextNorm;
@@ -25,10 +26,8 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.*;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.Optional;
 import java.util.regex.Pattern;
 
 @Service
@@ -48,6 +47,7 @@ public class WorkoutService {
     private final UserDailyWorkoutSummaryService dailyWorkoutSummaryService;
     private final FoodLogRetentionProperties retentionProperties;
     private final Clock clock;
+    private final WorkoutMatcherIndex matcherIndex;
 
     @Value("${workout.estimate.blacklistPolicy:block}")
     private String blacklistPolicy; // generic（現狀）、block（阻擋）、audit（只記錄與回傳 not_found）
@@ -68,7 +68,8 @@ public class WorkoutService {
             RateLimiterService rateLimiter,
             UserDailyWorkoutSummaryService dailyWorkoutSummaryService,
             FoodLogRetentionProperties retentionProperties,
-            Clock clock
+            Clock clock,
+            WorkoutMatcherIndex matcherIndex
     ) {
         this.dictRepo = dictRepo;
         this.aliasRepo = aliasRepo;
@@ -80,6 +81,7 @@ public class WorkoutService {
         this.dailyWorkoutSummaryService = dailyWorkoutSummaryService;
         this.retentionProperties = retentionProperties;
         this.clock = clock;
+        this.matcherIndex = matcherIndex;
     }
 
     // ======== 時間標籤（24h） ========
@@ -263,10 +265,8 @@ public class WorkoutService {
             return new EstimateResponse("ok", dict.getId(), phraseLower, minutes, kcal);
         }
 
-        // 5) 相似度 + 同義詞
-        var allDicts = dictRepo.findAll();
-        var matcher = new AliasMatcher(allDicts, builtinSynonyms());
-        var cand = matcher.best(norm, localeTag);
+        // 5) 相似度 + 同義詞（共用預先正規化好的字典索引）
+        var cand = matcherIndex.matcher().best(norm, localeTag);
 
         double autoApprove = AliasMatcher.autoApproveThreshold(localeTag); // ★ 使用方法
         double medium      = AliasMatcher.mediumThreshold();               // ★ 使用方法
@@ -350,22 +350,6 @@ public class WorkoutService {
     }
 
 
-    private Map<String, List<String>> builtinSynonyms() {
-        Map<String, List<String>> synonyms = new HashMap<>(Map.of(
-                "running",  List.of("run","running","jog","慢跑","跑步","ラン","ジョグ","달리기","correr","corrida","кросс"),
-                "walking",  List.of("walk","散步","走路","步行","歩く","걷기","paseo","caminata"),
-                "cycling",  List.of("cycle","bike","biking","騎車","單車","骑车","自転車","자전거","ciclismo","vélo"),
-                "swimming", List.of("swim","游泳","수영","natación","natação")
-        ));
-        synonyms.put("hiit_bodyweight_moderate", List.of("hiit"));
-        synonyms.put("golf_walking", List.of("golf"));
-        synonyms.put("standup_paddleboard", List.of("paddle boarding"));
-        synonyms.put("core_weighted_circuit", List.of("core training"));
-        synonyms.put("calisthenics_light", List.of("plank", "push-ups", "lunges"));
-        synonyms.put("calisthenics_vigorous", List.of("pull-ups"));
-        return Map.copyOf(synonyms);
-    }
-
     private void upsertApprovedAlias(String lang, String phraseLower, WorkoutDictionary dict) {
         var existing = aliasRepo.findAnyByLangAndPhrase(lang, phraseLower);
         if (existing.isPresent()) {
@@ -396,9 +380,7 @@ public class WorkoutService {
     }
 
     private WorkoutDictionary ensureGeneric() {
-        return dictRepo.findAll().stream()
-                .filter(d -> "other_exercise".equals(d.getCanonicalKey()))
-                .findFirst().orElseThrow();
+        return Optional.ofNullable(matcherIndex.matcher().dictionary("other_exercise")).orElseThrow();
     }
 
     private void saveEvent(Long uid, String lang, String phraseLower,
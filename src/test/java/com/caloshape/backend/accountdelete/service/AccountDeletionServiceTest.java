@@ -4,6 +4,7 @@ import com.caloshape.backend.accountdelete.entity.AccountDeletionRequestEntity;
 import com.caloshape.backend.accountdelete.repo.AccountDeletionRequestRepository;
 import com.caloshape.backend.auth.entity.AuthProvider;
 import com.caloshape.backend.auth.repo.AuthTokenRepo;
+import com.caloshape.backend.auth.security.AccessTokenRevocationBus;
 import com.caloshape.backend.entitlement.entity.UserEntitlementEntity;
 import com.caloshape.backend.entitlement.repo.UserEntitlementRepository;
 import com.caloshape.backend.users.user.entity.User;
@@ -35,13 +36,15 @@ class AccountDeletionServiceTest {
     private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
     private final AccountDeletionPseudonymizer pseudonymizer =
             new AccountDeletionPseudonymizer("test-account-deletion-pseudonym-key-32-chars");
+    private final AccessTokenRevocationBus tokenRevocationBus = mock(AccessTokenRevocationBus.class);
     private final AccountDeletionService service = new AccountDeletionService(
             requestRepository,
             userRepository,
             authTokenRepository,
             entitlementRepository,
             jdbc,
-            pseudonymizer
+            pseudonymizer,
+            tokenRevocationBus
     );
 
     @Test
@@ -81,6 +84,7 @@ class AccountDeletionServiceTest {
         assertThat(user.getDeletedEmailHash()).isEqualTo(pseudonymizer.emailHash("person@example.com"));
         verify(jdbc).update("DELETE FROM email_login_codes WHERE email = ?", "person@example.com");
         verify(authTokenRepository).revokeAllByUserId(eq(8L), any(Instant.class));
+        verify(tokenRevocationBus).userRevokedAfterCommit(8L);
         verify(userRepository).save(user);
     }
 
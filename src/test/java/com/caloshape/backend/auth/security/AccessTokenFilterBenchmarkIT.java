@@ -0,0 +1,159 @@
+package com.caloshape.backend.auth.security;
+
+import com.caloshape.backend.auth.config.AccessTokenCacheProperties;
+import com.caloshape.backend.auth.entity.AuthToken;
+import com.caloshape.backend.auth.repo.AuthTokenRepo;
+import com.caloshape.backend.auth.service.AuthTokenHash;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * AccessTokenFilter 每個請求的延遲：每次查 MySQL vs in-process token 快取。
+ * findByToken 以真實 JDBC 查詢 auth_tokens 同結構的表模擬 DB round-trip（不起 Spring context）。
+ * 請求數：-Dauth.filter-bench.requests=20000
+ */
+@Testcontainers
+class AccessTokenFilterBenchmarkIT {
+
+    private static final String RAW_TOKEN = "access-token-for-filter-benchmark";
+
+    @Container
+    static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0")
+            .withDatabaseName("caloshape_auth_bench")
+            .withUsername("root")
+            .withPassword("root");
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void cachedFilterAvoidsTheDatabaseRoundTrip() throws Exception {
+        int requests = Integer.getInteger("auth.filter-bench.requests", 2_000);
+
+        try (Connection connection = DriverManager.getConnection(
+                MYSQL.getJdbcUrl(), MYSQL.getUsername(), MYSQL.getPassword())) {
+            seed(connection);
+            AuthTokenRepo repo = jdbcBackedRepo(connection);
+
+            AccessTokenFilter uncached = new AccessTokenFilter(
+                    repo, new AccessTokenCache(new AccessTokenCacheProperties(), Clock.systemUTC(), new SimpleMeterRegistry()));
+            AccessTokenCache cache = new AccessTokenCache(cacheProps(), Clock.systemUTC(), new SimpleMeterRegistry());
+            AccessTokenFilter cached = new AccessTokenFilter(repo, cache);
+
+            // JIT / connection 暖機
+            measure(uncached, 200);
+            measure(cached, 200);
+
+            long[] before = measure(uncached, requests);
+            long[] after = measure(cached, requests);
+
+            System.out.printf("AccessTokenFilter db-per-request p50=%dus p99=%dus%n", p(before, 50), p(before, 99));
+            System.out.printf("AccessTokenFilter token-cache    p50=%dus p99=%dus hitRatio=%.4f%n",
+                    p(after, 50), p(after, 99), cache.hitRatio());
+
+            assertThat(cache.hitRatio()).isGreaterThan(0.99);
+            assertThat(p(after, 50)).isLessThan(p(before, 50));
+        }
+    }
+
+    private static long[] measure(AccessTokenFilter filter, int requests) throws Exception {
+        long[] samples = new long[requests];
+        for (int i = 0; i < requests; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/membership/me");
+            request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + RAW_TOKEN);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            long start = System.nanoTime();
+            filter.doFilter(request, response, new MockFilterChain());
+            samples[i] = (System.nanoTime() - start) / 1_000L;
+
+            assertThat(response.getStatus()).isEqualTo(200);
+            SecurityContextHolder.clearContext();
+        }
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    private static long p(long[] sorted, int percentile) {
+        int idx = Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * percentile / 100.0) - 1);
+        return sorted[Math.max(0, idx)];
+    }
+
+    private static void seed(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE auth_tokens
+                    (
+                        id         BIGINT PRIMARY KEY AUTO_INCREMENT,
+                        token      CHAR(64)                  NOT NULL UNIQUE,
+                        user_id    BIGINT                    NOT NULL,
+                        type       ENUM ('ACCESS','REFRESH') NOT NULL,
+                        expires_at TIMESTAMP                 NOT NULL,
+                        revoked    TINYINT(1)                NOT NULL DEFAULT 0
+                    ) ENGINE = InnoDB
+                    """);
+        }
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO auth_tokens (token, user_id, type, expires_at) VALUES (?, 42, 'ACCESS', ?)")) {
+            ps.setString(1, AuthTokenHash.sha256(RAW_TOKEN));
+            ps.setTimestamp(2, Timestamp.from(Instant.now().plusSeconds(3600)));
+            ps.executeUpdate();
+        }
+    }
+
+    private static AuthTokenRepo jdbcBackedRepo(Connection connection) throws SQLException {
+        PreparedStatement select = connection.prepareStatement(
+                "SELECT user_id, type, expires_at, revoked FROM auth_tokens WHERE token = ?");
+
+        AuthTokenRepo repo = mock(AuthTokenRepo.class);
+        when(repo.findByToken(anyString())).thenAnswer(inv -> {
+            select.setString(1, inv.getArgument(0));
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    return Optional.empty();
+                }
+                AuthToken t = new AuthToken();
+                t.setUserId(rs.getLong("user_id"));
+                t.setType(AuthToken.TokenType.valueOf(rs.getString("type")));
+                t.setExpiresAt(rs.getTimestamp("expires_at").toInstant());
+                t.setRevoked(rs.getBoolean("revoked"));
+                return Optional.of(t);
+            }
+        });
+        return repo;
+    }
+
+    private static AccessTokenCacheProperties cacheProps() {
+        AccessTokenCacheProperties props = new AccessTokenCacheProperties();
+        props.setEnabled(true);
+        return props;
+    }
+}
@@ -1,24 +1,31 @@
 package com.caloshape.backend.auth.security;
 
+import com.caloshape.backend.auth.config.AccessTokenCacheProperties;
 import com.caloshape.backend.auth.entity.AuthToken;
 import com.caloshape.backend.auth.repo.AuthTokenRepo;
 import com.caloshape.backend.auth.service.AuthTokenHash;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.http.HttpHeaders;
 import org.springframework.mock.web.MockFilterChain;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.core.context.SecurityContextHolder;
 
+import java.time.Clock;
 import java.time.Instant;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -44,7 +51,7 @@ class AccessTokenFilterTest {
         request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + rawToken);
         MockHttpServletResponse response = new MockHttpServletResponse();
 
-        new AccessTokenFilter(tokenRepository).doFilter(
+        new AccessTokenFilter(tokenRepository, disabledCache()).doFilter(
                 request,
                 response,
                 new MockFilterChain()
@@ -71,7 +78,7 @@ class AccessTokenFilterTest {
         request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + rawRefreshToken);
         MockHttpServletResponse response = new MockHttpServletResponse();
 
-        new AccessTokenFilter(tokenRepository).doFilter(
+        new AccessTokenFilter(tokenRepository, disabledCache()).doFilter(
                 request,
                 response,
                 new MockFilterChain()
@@ -81,6 +88,68 @@ class AccessTokenFilterTest {
         assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
     }
 
+    @Test
+    void cachedTokenSkipsTheDatabaseUntilItIsRevoked() throws Exception {
+        String rawToken = "access-token-for-cache-test";
+        String hash = AuthTokenHash.sha256(rawToken);
+        AuthToken stored = activeToken(AuthToken.TokenType.ACCESS);
+        when(tokenRepository.findByToken(hash)).thenReturn(Optional.of(stored));
+
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        AccessTokenCache cache = new AccessTokenCache(cacheProps(), Clock.systemUTC(), meters);
+        AccessTokenRevocationBus bus = new AccessTokenRevocationBus(mock(StringRedisTemplate.class), cache, cacheProps());
+        AccessTokenFilter filter = new AccessTokenFilter(tokenRepository, cache);
+
+        assertThat(call(filter, rawToken).getStatus()).isEqualTo(200);
+        assertThat(call(filter, rawToken).getStatus()).isEqualTo(200);
+        assertThat(call(filter, rawToken).getStatus()).isEqualTo(200);
+        verify(tokenRepository, times(1)).findByToken(hash);
+        assertThat(cache.hitRatio()).isCloseTo(2d / 3d, within(1e-9));
+        assertThat(meters.get("auth.access_token.cache").tag("result", "hit").counter().count()).isEqualTo(2d);
+
+        // 另一個 pod 撤銷 -> pub/sub 訊息進來 -> 下一次回 DB 看到 revoked
+        stored.setRevoked(true);
+        bus.onMessage("t:" + hash);
+
+        assertThat(call(filter, rawToken).getStatus()).isEqualTo(401);
+        verify(tokenRepository, times(2)).findByToken(hash);
+    }
+
+    @Test
+    void userRevocationDropsEveryCachedTokenOfThatUser() {
+        AccessTokenCache cache = new AccessTokenCache(cacheProps(), Clock.systemUTC(), new SimpleMeterRegistry());
+        AccessTokenRevocationBus bus = new AccessTokenRevocationBus(mock(StringRedisTemplate.class), cache, cacheProps());
+        Instant exp = Instant.now().plusSeconds(600);
+        cache.put("h1", 42L, exp);
+        cache.put("h2", 42L, exp);
+        cache.put("h3", 7L, exp);
+
+        bus.userRevokedAfterCommit(42L);
+
+        assertThat(cache.getActive("h1")).isNull();
+        assertThat(cache.getActive("h2")).isNull();
+        assertThat(cache.getActive("h3")).isNotNull();
+    }
+
+    private static MockHttpServletResponse call(AccessTokenFilter filter, String rawToken) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/membership/me");
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + rawToken);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static AccessTokenCache disabledCache() {
+        return new AccessTokenCache(new AccessTokenCacheProperties(), Clock.systemUTC(), new SimpleMeterRegistry());
+    }
+
+    private static AccessTokenCacheProperties cacheProps() {
+        AccessTokenCacheProperties props = new AccessTokenCacheProperties();
+        props.setEnabled(true);
+        return props;
+    }
+
     private static AuthToken activeToken(AuthToken.TokenType type) {
         AuthToken token = new AuthToken();
         token.setType(type);
@@ -2,6 +2,7 @@ package com.caloshape.backend.auth.service;
 
 import com.caloshape.backend.auth.entity.AuthToken;
 import com.caloshape.backend.auth.repo.AuthTokenRepo;
+import com.caloshape.backend.auth.security.AccessTokenRevocationBus;
 import com.caloshape.backend.users.user.entity.User;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -22,9 +23,12 @@ class TokenServiceTest {
     @Mock
     private AuthTokenRepo repository;
 
+    @Mock
+    private AccessTokenRevocationBus revocationBus;
+
     @Test
     void issue_returnsRawTokensButPersistsOnlyHashes() {
-        TokenService service = new TokenService(repository, 900, 2_592_000);
+        TokenService service = new TokenService(repository, 900, 2_592_000, revocationBus);
         User user = new User();
 
         TokenService.AuthPair pair = service.issue(user, "device", "127.0.0.1", "agent");
@@ -42,7 +46,7 @@ class TokenServiceTest {
 
     @Test
     void rotateRefresh_looksUpWithHashUnderPessimisticLockAndRevokesOldToken() {
-        TokenService service = new TokenService(repository, 900, 2_592_000);
+        TokenService service = new TokenService(repository, 900, 2_592_000, revocationBus);
         User user = new User();
         String rawRefresh = "old-refresh-token";
         AuthToken stored = new AuthToken();
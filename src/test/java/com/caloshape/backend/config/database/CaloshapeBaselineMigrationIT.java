@@ -41,13 +41,23 @@ class CaloshapeBaselineMigrationIT {
         MigrateResult firstRun = flyway.migrate();
         MigrateResult secondRun = flyway.migrate();
 
-        assertThat(firstRun.migrationsExecuted).isEqualTo(2);
+        assertThat(firstRun.migrationsExecuted).isEqualTo(9);
         assertThat(secondRun.migrationsExecuted).isZero();
         assertThat(tableNames(FRESH_DATABASE))
                 .containsAll(expectedApplicationTables())
                 .contains("flyway_schema_history");
         assertThat(rowCount(FRESH_DATABASE, "workout_dictionary")).isPositive();
         assertThat(rowCount(FRESH_DATABASE, "workout_alias")).isPositive();
+        assertThat(indexNames(FRESH_DATABASE, "food_log_tasks"))
+                .contains("idx_food_log_tasks_status", "idx_food_log_tasks_queue");
+        assertThat(indexNames(FRESH_DATABASE, "food_analysis_result_cache"))
+                .contains("idx_farc_expires_at", "idx_farc_last_used_at");
+        assertThat(indexNames(FRESH_DATABASE, "image_blobs"))
+                .contains("idx_image_blobs_user", "idx_image_blobs_user_updated");
+        assertThat(indexNames(FRESH_DATABASE, "email_outbox"))
+                .contains("idx_email_outbox_status_next_attempt", "idx_email_outbox_status_lease");
+        assertThat(indexNames(FRESH_DATABASE, "user_entitlements"))
+                .contains("idx_entitlements_reverify_expiry");
     }
 
     @Test
@@ -79,7 +89,7 @@ class CaloshapeBaselineMigrationIT {
         MigrateResult firstV2Run = flyway.migrate();
         MigrateResult secondV2Run = flyway.migrate();
 
-        assertThat(firstV2Run.migrationsExecuted).isEqualTo(1);
+        assertThat(firstV2Run.migrationsExecuted).isEqualTo(8);
         assertThat(secondV2Run.migrationsExecuted).isZero();
         assertThat(authTokenValue(RAW_TOKEN_DATABASE, "token"))
                 .isEqualTo(sha256(rawAccessToken))
@@ -106,7 +116,7 @@ class CaloshapeBaselineMigrationIT {
         assertThat(userExists(REHEARSAL_DATABASE, "before-backup@example.com")).isTrue();
         assertThat(userExists(REHEARSAL_DATABASE, "after-backup@example.com")).isFalse();
         assertThat(tableNames(REHEARSAL_DATABASE)).contains("flyway_schema_history");
-        assertThat(rowCount(REHEARSAL_DATABASE, "flyway_schema_history")).isEqualTo(2);
+        assertThat(rowCount(REHEARSAL_DATABASE, "flyway_schema_history")).isEqualTo(9);
     }
 
     private static Flyway flywayWithCurrentMigrations(String databaseName) {
@@ -117,7 +127,14 @@ class CaloshapeBaselineMigrationIT {
                 .cleanDisabled(true)
                 .javaMigrations(
                         new V1__CaloshapeSchemaBaseline(),
-                        new V2__HashStoredAuthTokens()
+                        new V2__HashStoredAuthTokens(),
+                        new V3__FoodLogTaskClaimIndexes(),
+                        new V4__FoodAnalysisResultCache(),
+                        new V5__ImageBlobPerceptualHash(),
+                        new V6__FoodLogTaskQueueIndexRetryAt(),
+                        new V7__EmailOutboxLease(),
+                        new V8__EntitlementReverifyExpiryIndex(),
+                        new V9__UserAiQuotaStateVersion()
                 )
                 .load();
     }
@@ -236,6 +253,18 @@ class CaloshapeBaselineMigrationIT {
         }
     }
 
+    private static Set<String> indexNames(String databaseName, String tableName) throws SQLException {
+        try (Connection connection = connection(databaseName);
+             ResultSet indexes = connection.getMetaData()
+                     .getIndexInfo(databaseName, null, tableName, false, false)) {
+            Set<String> names = new HashSet<>();
+            while (indexes.next()) {
+                names.add(indexes.getString("INDEX_NAME"));
+            }
+            return names;
+        }
+    }
+
     private static long rowCount(String databaseName, String tableName) throws SQLException {
         try (Connection connection = connection(databaseName);
              Statement statement = connection.createStatement();
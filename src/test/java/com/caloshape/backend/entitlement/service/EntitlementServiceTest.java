@@ -2,6 +2,7 @@ package com.caloshape.backend.entitlement.service;
 
 import com.caloshape.backend.entitlement.entity.UserEntitlementEntity;
 import com.caloshape.backend.entitlement.repo.UserEntitlementRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.data.domain.Pageable;
@@ -19,7 +20,7 @@ class EntitlementServiceTest {
     @Test
     void hasActiveEntitlement_shouldReturnFalseWhenRepositoryFindsNoUsableActiveRow() {
         UserEntitlementRepository repo = Mockito.mock(UserEntitlementRepository.class);
-        EntitlementService service = new EntitlementService(repo);
+        EntitlementService service = new EntitlementService(repo, disabledCache());
 
         when(repo.findActiveBestFirst(eq(1L), any(Instant.class), any(Pageable.class)))
                 .thenReturn(List.of());
@@ -32,7 +33,7 @@ class EntitlementServiceTest {
     @Test
     void hasActiveEntitlement_shouldReturnTrueWhenRepositoryFindsUsableActiveRow() {
         UserEntitlementRepository repo = Mockito.mock(UserEntitlementRepository.class);
-        EntitlementService service = new EntitlementService(repo);
+        EntitlementService service = new EntitlementService(repo, disabledCache());
         UserEntitlementEntity active = Mockito.mock(UserEntitlementEntity.class);
 
         when(repo.findActiveBestFirst(eq(1L), any(Instant.class), any(Pageable.class)))
@@ -46,7 +47,7 @@ class EntitlementServiceTest {
     @Test
     void resolveTier_should_return_none_when_no_active_entitlement() {
         UserEntitlementRepository repo = Mockito.mock(UserEntitlementRepository.class);
-        EntitlementService service = new EntitlementService(repo);
+        EntitlementService service = new EntitlementService(repo, disabledCache());
 
         when(repo.findActive(eq(1L), any(Instant.class), any(Pageable.class)))
                 .thenReturn(List.of());
@@ -60,7 +61,7 @@ class EntitlementServiceTest {
     @Test
     void resolveTier_should_pick_highest_rank() {
         UserEntitlementRepository repo = Mockito.mock(UserEntitlementRepository.class);
-        EntitlementService service = new EntitlementService(repo);
+        EntitlementService service = new EntitlementService(repo, disabledCache());
 
         UserEntitlementEntity trial = Mockito.mock(UserEntitlementEntity.class);
         when(trial.getId()).thenReturn(String.valueOf(10L));
@@ -82,7 +83,7 @@ class EntitlementServiceTest {
     @Test
     void resolveTier_should_ignore_unknown_type_but_keep_known_type() {
         UserEntitlementRepository repo = Mockito.mock(UserEntitlementRepository.class);
-        EntitlementService service = new EntitlementService(repo);
+        EntitlementService service = new EntitlementService(repo, disabledCache());
 
         UserEntitlementEntity unknown = Mockito.mock(UserEntitlementEntity.class);
         when(unknown.getId()).thenReturn(String.valueOf(30L));
@@ -104,7 +105,7 @@ class EntitlementServiceTest {
     @Test
     void resolveTier_shouldTreatReferralRewardAsPaidTier() {
         UserEntitlementRepository repo = Mockito.mock(UserEntitlementRepository.class);
-        EntitlementService service = new EntitlementService(repo);
+        EntitlementService service = new EntitlementService(repo, disabledCache());
 
         UserEntitlementEntity reward = Mockito.mock(UserEntitlementEntity.class);
         when(reward.getId()).thenReturn(String.valueOf(50L));
@@ -118,4 +119,9 @@ class EntitlementServiceTest {
 
         assertThat(result).isEqualTo(EntitlementService.Tier.MONTHLY);
     }
+
+    /** tier 快取關閉（app.entitlement.tier-cache.enabled 預設 false）：每次都查 DB */
+    private static EntitlementTierCache disabledCache() {
+        return new EntitlementTierCache(null, new EntitlementTierCacheProperties(), new SimpleMeterRegistry());
+    }
 }
@@ -27,6 +27,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -56,7 +57,11 @@ class EntitlementSyncServiceReferralScenarioTest {
     @Mock
     private EntitlementTransferAuditRepository entitlementTransferAuditRepository;
 
+    @Mock
+    private EntitlementTierInvalidationBus tierInvalidationBus;
+
     private BillingProductProperties productProps;
+
     private EntitlementSyncService service;
 
     @BeforeEach
@@ -73,7 +78,8 @@ class EntitlementSyncServiceReferralScenarioTest {
                 purchaseAcknowledger,
                 purchaseTokenCrypto,
                 userRepo,
-                entitlementTransferAuditRepository
+                entitlementTransferAuditRepository,
+                tierInvalidationBus
         );
 
         lenient().when(entitlementRepo.findActiveBestFirst(any(), any(Instant.class), any(PageRequest.class)))
@@ -99,10 +105,15 @@ class EntitlementSyncServiceReferralScenarioTest {
                 true
         ));
 
+        // 同一個 token 還掛在舊帳號底下的 ACTIVE row 也會被關掉
+        when(entitlementRepo.findActiveUserIdsByPurchaseTokenHash(tokenHash)).thenReturn(List.of(200L, 150L));
+
         service.sync(200L, new EntitlementSyncRequest(List.of(
                 new EntitlementSyncRequest.PurchaseTokenPayload("monthly.product", token)
         )));
 
+        verify(tierInvalidationBus).userChangedAfterCommit(150L);
+        verify(tierInvalidationBus, atLeastOnce()).userChangedAfterCommit(200L);
         verify(referralBillingBridgeService).onFirstPaidSubscriptionVerified(
                 eq(200L),
                 eq(tokenHash),
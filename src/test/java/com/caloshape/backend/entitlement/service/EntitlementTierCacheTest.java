@@ -0,0 +1,170 @@
+package com.caloshape.backend.entitlement.service;
+
+import com.caloshape.backend.entitlement.entity.UserEntitlementEntity;
+import com.caloshape.backend.entitlement.repo.UserEntitlementRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EntitlementTierCacheTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-03T00:00:00Z");
+
+    private UserEntitlementRepository repo;
+    private StringRedisTemplate redis;
+    private ValueOperations<String, String> ops;
+    private EntitlementTierCacheProperties props;
+    private EntitlementTierCache cache;
+    private EntitlementService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        repo = Mockito.mock(UserEntitlementRepository.class);
+        redis = Mockito.mock(StringRedisTemplate.class);
+        ops = Mockito.mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(ops);
+        when(ops.multiGet(anyList())).thenReturn(Arrays.asList(null, null));
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(1L);
+
+        props = new EntitlementTierCacheProperties();
+        props.setEnabled(true);
+        props.setLocalTtl(Duration.ofMinutes(1));
+        props.setRedisTtl(Duration.ofHours(6));
+
+        cache = new EntitlementTierCache(redis, props, new SimpleMeterRegistry());
+        service = new EntitlementService(repo, cache);
+    }
+
+    @Test
+    void resolveTier_shouldServeRepeatedCallsFromLocalCache() {
+        activeRows(row("YEARLY", NOW.plus(Duration.ofDays(30))));
+
+        assertThat(service.resolveTier(1L, NOW)).isEqualTo(EntitlementService.Tier.YEARLY);
+        assertThat(service.resolveTier(1L, NOW.plusSeconds(10))).isEqualTo(EntitlementService.Tier.YEARLY);
+
+        verify(repo, times(1)).findActive(eq(1L), any(Instant.class), any(Pageable.class));
+    }
+
+    @Test
+    void resolveTier_shouldNotServeCachedTierPastEarliestValidTo() {
+        Instant trialEnds = NOW.plusSeconds(30);
+        activeRows(row("TRIAL", trialEnds), row("MONTHLY", NOW.plus(Duration.ofDays(20))));
+
+        service.resolveTier(1L, NOW);
+        service.resolveTier(1L, trialEnds.minusMillis(1));
+        verify(repo, times(1)).findActive(eq(1L), any(Instant.class), any(Pageable.class));
+
+        service.resolveTier(1L, trialEnds);
+        verify(repo, times(2)).findActive(eq(1L), any(Instant.class), any(Pageable.class));
+    }
+
+    @Test
+    void resolveTier_shouldReloadAfterInvalidation() {
+        activeRows();
+        assertThat(service.resolveTier(1L, NOW)).isEqualTo(EntitlementService.Tier.NONE);
+
+        activeRows(row("MONTHLY", NOW.plus(Duration.ofDays(30))));
+        cache.invalidateLocal(1L);
+
+        assertThat(service.resolveTier(1L, NOW)).isEqualTo(EntitlementService.Tier.MONTHLY);
+    }
+
+    @Test
+    void put_shouldBeDroppedWhenInvalidatedBetweenLookupAndPut() {
+        EntitlementTierCache.Lookup seen = cache.lookup(1L, NOW);
+        cache.invalidateLocal(1L);
+
+        cache.put(1L, EntitlementService.Tier.YEARLY, NOW.plus(Duration.ofDays(1)), NOW, seen);
+
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void put_shouldNotCacheLocallyWhenRedisGenerationMoved() {
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(0L);
+
+        EntitlementTierCache.Lookup seen = cache.lookup(1L, NOW);
+        cache.put(1L, EntitlementService.Tier.YEARLY, NOW.plus(Duration.ofDays(1)), NOW, seen);
+
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void resolveTier_shouldUseRedisEntryWithoutQueryingDb() {
+        long until = NOW.plus(Duration.ofDays(3)).toEpochMilli();
+        when(ops.multiGet(anyList())).thenReturn(Arrays.asList("YEARLY|" + until, "4"));
+
+        assertThat(service.resolveTier(1L, NOW)).isEqualTo(EntitlementService.Tier.YEARLY);
+
+        verify(repo, never()).findActive(any(), any(), any());
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void resolveTier_shouldIgnoreExpiredRedisEntry() {
+        when(ops.multiGet(anyList())).thenReturn(Arrays.asList("YEARLY|" + NOW.toEpochMilli(), null));
+        activeRows();
+
+        assertThat(service.resolveTier(1L, NOW)).isEqualTo(EntitlementService.Tier.NONE);
+    }
+
+    @Test
+    void resolveTier_shouldFallBackToLocalCacheWhenRedisIsDown() {
+        when(redis.opsForValue()).thenThrow(new RedisConnectionFailureException("down"));
+        activeRows(row("MONTHLY", NOW.plus(Duration.ofDays(30))));
+
+        assertThat(service.resolveTier(1L, NOW)).isEqualTo(EntitlementService.Tier.MONTHLY);
+        assertThat(service.resolveTier(1L, NOW.plusSeconds(30))).isEqualTo(EntitlementService.Tier.MONTHLY);
+        // localTtl = 1m
+        service.resolveTier(1L, NOW.plusSeconds(61));
+
+        verify(repo, times(2)).findActive(eq(1L), any(Instant.class), any(Pageable.class));
+    }
+
+    @Test
+    void resolveTier_shouldQueryDbEveryTimeWhenCacheDisabled() {
+        props.setEnabled(false);
+        activeRows(row("YEARLY", NOW.plus(Duration.ofDays(30))));
+
+        service.resolveTier(1L, NOW);
+        service.resolveTier(1L, NOW);
+
+        verify(repo, times(2)).findActive(eq(1L), any(Instant.class), any(Pageable.class));
+    }
+
+    private void activeRows(UserEntitlementEntity... rows) {
+        when(repo.findActive(eq(1L), any(Instant.class), any(Pageable.class))).thenReturn(List.of(rows));
+    }
+
+    private static UserEntitlementEntity row(String type, Instant validTo) {
+        UserEntitlementEntity e = new UserEntitlementEntity();
+        e.setUserId(1L);
+        e.setEntitlementType(type);
+        e.setStatus("ACTIVE");
+        e.setValidFromUtc(NOW.minus(Duration.ofDays(1)));
+        e.setValidToUtc(validTo);
+        return e;
+    }
+}
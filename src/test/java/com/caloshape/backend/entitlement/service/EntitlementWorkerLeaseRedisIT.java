@@ -55,7 +55,7 @@ class EntitlementWorkerLeaseRedisIT {
         CountDownLatch firstWorkerStarted = new CountDownLatch(1);
         CountDownLatch releaseFirstWorker = new CountDownLatch(1);
 
-        when(firstRepository.findActiveGooglePlayDueForReverify(any(), any(PageRequest.class)))
+        when(firstRepository.findActiveGooglePlayDueForReverify(any(), any(), any(PageRequest.class)))
                 .thenAnswer(ignored -> {
                     firstWorkerStarted.countDown();
                     assertThat(releaseFirstWorker.await(5, TimeUnit.SECONDS)).isTrue();
@@ -70,7 +70,7 @@ class EntitlementWorkerLeaseRedisIT {
             assertThat(firstWorkerStarted.await(5, TimeUnit.SECONDS)).isTrue();
 
             secondWorker.reverifyActiveGooglePlayEntitlements();
-            verify(secondRepository, never()).findActiveGooglePlayDueForReverify(any(), any(PageRequest.class));
+            verify(secondRepository, never()).findActiveGooglePlayDueForReverify(any(), any(), any(PageRequest.class));
 
             releaseFirstWorker.countDown();
             firstRun.get(5, TimeUnit.SECONDS);
@@ -166,11 +166,14 @@ class EntitlementWorkerLeaseRedisIT {
                 repository,
                 syncService,
                 tokenCrypto,
-                lease
+                lease,
+                null,
+                Runnable::run
         );
         ReflectionTestUtils.setField(worker, "leaseTtl", Duration.ofSeconds(5));
         ReflectionTestUtils.setField(worker, "staleAfter", Duration.ofHours(1));
         ReflectionTestUtils.setField(worker, "batchSize", 10);
+        ReflectionTestUtils.setField(worker, "shardCount", 1);
         return worker;
     }
 }
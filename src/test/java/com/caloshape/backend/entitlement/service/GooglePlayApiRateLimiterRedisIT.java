@@ -0,0 +1,126 @@
+package com.caloshape.backend.entitlement.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.when;
+
+@Testcontainers
+class GooglePlayApiRateLimiterRedisIT {
+
+    @Container
+    static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private final List<LettuceConnectionFactory> connectionFactories = new ArrayList<>();
+
+    @AfterEach
+    void closeRedisClients() {
+        connectionFactories.forEach(LettuceConnectionFactory::destroy);
+        connectionFactories.clear();
+    }
+
+    @Test
+    void burstIsSharedAcrossBackendInstances() {
+        String sharedPrefix = prefix();
+        GooglePlayApiRateLimiter first = newLimiter(sharedPrefix, 0.5, 3, Duration.ZERO);
+        GooglePlayApiRateLimiter second = newLimiter(sharedPrefix, 0.5, 3, Duration.ZERO);
+
+        assertThat(first.acquire("publisher-api")).isTrue();
+        assertThat(second.acquire("publisher-api")).isTrue();
+        assertThat(first.acquire("publisher-api")).isTrue();
+
+        assertThat(second.acquire("publisher-api")).isFalse();
+        assertThat(first.acquire("publisher-api")).isFalse();
+    }
+
+    @Test
+    void callerWaitsForRefillWithinMaxWait() {
+        GooglePlayApiRateLimiter limiter = newLimiter(prefix(), 10.0, 1, Duration.ofSeconds(2));
+
+        assertThat(limiter.acquire("publisher-api")).isTrue();
+
+        long t0 = System.nanoTime();
+        assertThat(limiter.acquire("publisher-api")).isTrue();
+        long waitedMs = (System.nanoTime() - t0) / 1_000_000L;
+
+        // 每秒 10 個 → 約 100ms 補一個
+        assertThat(waitedMs).isBetween(50L, 1_000L);
+    }
+
+    @Test
+    void sustainedRateDoesNotExceedConfiguredPermits() {
+        GooglePlayApiRateLimiter limiter = newLimiter(prefix(), 20.0, 1, Duration.ofSeconds(5));
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < 21; i++) {
+            assertThat(limiter.acquire("publisher-api")).isTrue();
+        }
+        long elapsedMs = (System.nanoTime() - t0) / 1_000_000L;
+
+        // 第 1 個來自 burst，其餘 20 個需要約 1 秒補充
+        assertThat(elapsedMs).isGreaterThanOrEqualTo(900L);
+    }
+
+    @Test
+    void redisInterruptionFailsClosed() {
+        StringRedisTemplate unavailableRedis = Mockito.mock(StringRedisTemplate.class);
+        when(unavailableRedis.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenThrow(new RedisConnectionFailureException("redis unavailable"));
+
+        GooglePlayApiRateLimiter limiter = new GooglePlayApiRateLimiter(unavailableRedis, prefix());
+
+        assertThat(limiter.acquire("publisher-api")).isFalse();
+    }
+
+    private GooglePlayApiRateLimiter newLimiter(String prefix, double permitsPerSecond, int burst, Duration maxWait) {
+        GooglePlayApiRateLimiter limiter = new GooglePlayApiRateLimiter(connectedRedisTemplate(), prefix);
+        ReflectionTestUtils.setField(limiter, "permitsPerSecond", permitsPerSecond);
+        ReflectionTestUtils.setField(limiter, "burst", burst);
+        ReflectionTestUtils.setField(limiter, "maxWait", maxWait);
+        return limiter;
+    }
+
+    private static String prefix() {
+        return "caloshape-rate-it-" + UUID.randomUUID();
+    }
+
+    private StringRedisTemplate connectedRedisTemplate() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                REDIS.getHost(),
+                REDIS.getMappedPort(6379)
+        );
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
+                .commandTimeout(Duration.ofSeconds(2))
+                .build();
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(configuration, clientConfiguration);
+        factory.afterPropertiesSet();
+        factory.start();
+        connectionFactories.add(factory);
+
+        StringRedisTemplate template = new StringRedisTemplate();
+        template.setConnectionFactory(factory);
+        template.afterPropertiesSet();
+        return template;
+    }
+}
@@ -0,0 +1,206 @@
+package com.caloshape.backend.entitlement.service;
+
+import com.caloshape.backend.entitlement.entity.UserEntitlementEntity;
+import com.caloshape.backend.entitlement.repo.UserEntitlementRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class GooglePlayEntitlementReverifyWorkerTest {
+
+    @Mock
+    private UserEntitlementRepository entitlementRepository;
+
+    @Mock
+    private EntitlementSyncService entitlementSyncService;
+
+    @Mock
+    private PurchaseTokenCrypto purchaseTokenCrypto;
+
+    @Mock
+    private EntitlementWorkerLease workerLease;
+
+    @Mock
+    private GooglePlayApiRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        when(purchaseTokenCrypto.enabled()).thenReturn(true);
+        when(purchaseTokenCrypto.decryptOrNull(anyString())).thenAnswer(inv -> "token-" + inv.getArgument(0));
+        when(workerLease.tryAcquire(anyString(), any()))
+                .thenAnswer(inv -> new EntitlementWorkerLease.Lease(inv.getArgument(0), "owner"));
+        when(rateLimiter.acquire(anyString())).thenReturn(true);
+    }
+
+    @Test
+    void shardIdPrefixes_shouldPartitionEveryHexDigitExactlyOnce() {
+        for (int shards : new int[]{1, 3, 8, 16}) {
+            Set<String> seen = new HashSet<>();
+            for (int shard = 0; shard < shards; shard++) {
+                for (String p : GooglePlayEntitlementReverifyWorker.shardIdPrefixes(shard, shards)) {
+                    assertThat(seen.add(p)).as("shards=%d prefix=%s", shards, p).isTrue();
+                }
+            }
+            assertThat(seen).hasSize(16 + 6);
+        }
+    }
+
+    @Test
+    void reverify_shouldVisitEveryShardWithItsOwnLease() {
+        GooglePlayEntitlementReverifyWorker worker = worker(4, 2, 10);
+        when(entitlementRepository.findActiveGooglePlayDueForReverify(any(), anyCollection(), any(Pageable.class)))
+                .thenReturn(List.of());
+
+        worker.reverifyActiveGooglePlayEntitlements();
+
+        ArgumentCaptor<String> names = ArgumentCaptor.forClass(String.class);
+        verify(workerLease, times(4)).tryAcquire(names.capture(), any());
+        assertThat(names.getAllValues()).containsExactlyInAnyOrder(
+                "google-play-reverify:4:0",
+                "google-play-reverify:4:1",
+                "google-play-reverify:4:2",
+                "google-play-reverify:4:3"
+        );
+        verify(workerLease, times(4)).release(any());
+    }
+
+    @Test
+    void reverify_shouldSkipShardsLeasedByAnotherInstance() {
+        GooglePlayEntitlementReverifyWorker worker = worker(2, 2, 10);
+        when(workerLease.tryAcquire(eq("google-play-reverify:2:0"), any())).thenReturn(null);
+        when(entitlementRepository.findActiveGooglePlayDueForReverify(any(), anyCollection(), any(Pageable.class)))
+                .thenReturn(List.of());
+
+        worker.reverifyActiveGooglePlayEntitlements();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<String>> prefixes = ArgumentCaptor.forClass(Collection.class);
+        verify(entitlementRepository).findActiveGooglePlayDueForReverify(any(), prefixes.capture(), any(Pageable.class));
+        assertThat(prefixes.getValue()).containsExactlyInAnyOrderElementsOf(
+                GooglePlayEntitlementReverifyWorker.shardIdPrefixes(1, 2));
+    }
+
+    @Test
+    void reverify_shouldPageUntilShortPageAndNotRetryFailedRowsInSameRun() throws Exception {
+        GooglePlayEntitlementReverifyWorker worker = worker(1, 4, 2);
+        UserEntitlementEntity a = entitlement("a1"), b = entitlement("b1"), c = entitlement("c1");
+        // a 驗證失敗會一直留在清單最前面；第三頁只剩已試過的 a，就停
+        when(entitlementRepository.findActiveGooglePlayDueForReverify(any(), anyCollection(), any(Pageable.class)))
+                .thenReturn(List.of(a, b), List.of(a, c), List.of(a));
+        when(entitlementSyncService.syncKnownPurchaseTokenFromRtdn(eq(1L), eq("token-cipher-a1"), any()))
+                .thenThrow(new IllegalStateException("play api 500"));
+
+        worker.reverifyActiveGooglePlayEntitlements();
+
+        verify(entitlementSyncService).syncKnownPurchaseTokenFromRtdn(eq(1L), eq("token-cipher-a1"), any());
+        verify(entitlementSyncService).syncKnownPurchaseTokenFromRtdn(eq(1L), eq("token-cipher-b1"), any());
+        verify(entitlementSyncService).syncKnownPurchaseTokenFromRtdn(eq(1L), eq("token-cipher-c1"), any());
+        verify(entitlementRepository, times(3))
+                .findActiveGooglePlayDueForReverify(any(), anyCollection(), any(Pageable.class));
+    }
+
+    @Test
+    void reverify_shouldStopAllShardsWhenRateLimiterDenies() throws Exception {
+        GooglePlayEntitlementReverifyWorker worker = worker(4, 1, 10);
+        when(entitlementRepository.findActiveGooglePlayDueForReverify(any(), anyCollection(), any(Pageable.class)))
+                .thenReturn(List.of(entitlement("a1"), entitlement("a2"), entitlement("a3")));
+        when(rateLimiter.acquire(GooglePlayEntitlementReverifyWorker.RATE_LIMIT_BUCKET)).thenReturn(true, false);
+
+        worker.reverifyActiveGooglePlayEntitlements();
+
+        verify(entitlementSyncService, times(1)).syncKnownPurchaseTokenFromRtdn(any(), anyString(), any());
+        verify(workerLease, times(1)).tryAcquire(anyString(), any());
+        verify(workerLease, times(1)).release(any());
+    }
+
+    @Test
+    void reverify_shouldRunApiCallsConcurrentlyUpToLimit() throws Exception {
+        int concurrency = 3;
+        List<UserEntitlementEntity> batch = new ArrayList<>();
+        for (int i = 0; i < 12; i++) batch.add(entitlement("e" + i));
+        when(entitlementRepository.findActiveGooglePlayDueForReverify(any(), anyCollection(), any(Pageable.class)))
+                .thenReturn(batch);
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        when(entitlementSyncService.syncKnownPurchaseTokenFromRtdn(any(), anyString(), any())).thenAnswer(inv -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(30);
+            inFlight.decrementAndGet();
+            return null;
+        });
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            GooglePlayEntitlementReverifyWorker worker = new GooglePlayEntitlementReverifyWorker(
+                    entitlementRepository, entitlementSyncService, purchaseTokenCrypto, workerLease,
+                    rateLimiter, executor);
+            configure(worker, 1, concurrency, 50);
+
+            worker.reverifyActiveGooglePlayEntitlements();
+        }
+
+        verify(entitlementSyncService, times(12)).syncKnownPurchaseTokenFromRtdn(any(), anyString(), any());
+        assertThat(peak.get()).isEqualTo(concurrency);
+    }
+
+    @Test
+    void reverify_shouldSkipWhenTokenCryptoDisabled() {
+        when(purchaseTokenCrypto.enabled()).thenReturn(false);
+        GooglePlayEntitlementReverifyWorker worker = worker(4, 2, 10);
+
+        worker.reverifyActiveGooglePlayEntitlements();
+
+        verify(workerLease, never()).tryAcquire(anyString(), any());
+    }
+
+    private GooglePlayEntitlementReverifyWorker worker(int shards, int concurrency, int batchSize) {
+        GooglePlayEntitlementReverifyWorker worker = new GooglePlayEntitlementReverifyWorker(
+                entitlementRepository, entitlementSyncService, purchaseTokenCrypto, workerLease,
+                rateLimiter, Runnable::run);
+        configure(worker, shards, concurrency, batchSize);
+        return worker;
+    }
+
+    private static void configure(GooglePlayEntitlementReverifyWorker worker, int shards, int concurrency, int batchSize) {
+        ReflectionTestUtils.setField(worker, "shardCount", shards);
+        ReflectionTestUtils.setField(worker, "concurrency", concurrency);
+        ReflectionTestUtils.setField(worker, "batchSize", batchSize);
+        ReflectionTestUtils.setField(worker, "staleAfter", Duration.ofHours(6));
+    }
+
+    private static UserEntitlementEntity entitlement(String id) {
+        UserEntitlementEntity e = new UserEntitlementEntity();
+        e.setId(id);
+        e.setUserId(1L);
+        e.setPurchaseTokenCiphertext("cipher-" + id);
+        return e;
+    }
+}
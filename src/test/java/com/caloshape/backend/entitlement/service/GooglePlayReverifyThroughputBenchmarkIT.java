@@ -0,0 +1,255 @@
+package com.caloshape.backend.entitlement.service;
+
+import com.caloshape.backend.entitlement.entity.UserEntitlementEntity;
+import com.caloshape.backend.entitlement.repo.UserEntitlementRepository;
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.androidpublisher.AndroidPublisher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Google Play reverify 吞吐量：WireMock 扮演 Android Publisher API（subscriptionsv2.get，固定延遲），
+ * 走真的 AndroidPublisher client + GooglePlaySubscriptionVerifier。
+ * DB / Redis 用記憶體替身（due 清單依 shard 前綴與 valid_to 排序；lease 用 ConcurrentHashMap）。
+ *
+ * 情境：
+ * - serial：改版前行為（單一 lease、依序呼叫）
+ * - sharded：1 個 pod，8 shard，concurrency 16
+ * - two_pods：2 個 pod 同時跑，各自搶 shard
+ * - rate_limited：同 sharded，但限流每秒 rate 次（本機替身，語意同 Redis token bucket）
+ *
+ * 參數：-Dplay-reverify-bench.count=240 -Dplay-reverify-bench.latency-ms=40 -Dplay-reverify-bench.rate=100
+ */
+class GooglePlayReverifyThroughputBenchmarkIT {
+
+    private static final String PACKAGE = "com.caloshape.app";
+
+    @RegisterExtension
+    static WireMockExtension wm = WireMockExtension.newInstance()
+            .options(wireMockConfig().dynamicPort().containerThreads(100))
+            .build();
+
+    @Test
+    void shardedConcurrentReverifyOutrunsSerialAndRespectsRateLimit() throws Exception {
+        int count = Integer.getInteger("play-reverify-bench.count", 240);
+        int latencyMs = Integer.getInteger("play-reverify-bench.latency-ms", 40);
+        int rate = Integer.getInteger("play-reverify-bench.rate", 100);
+
+        wm.stubFor(get(urlPathMatching("/androidpublisher/v3/applications/" + PACKAGE
+                + "/purchases/subscriptionsv2/tokens/.*"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(latencyMs)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("""
+                                {
+                                  "subscriptionState": "SUBSCRIPTION_STATE_ACTIVE",
+                                  "acknowledgementState": "ACKNOWLEDGEMENT_STATE_ACKNOWLEDGED",
+                                  "lineItems": [
+                                    {"productId": "caloshape_monthly", "expiryTime": "2099-01-01T00:00:00Z",
+                                     "autoRenewingPlan": {"autoRenewEnabled": true}}
+                                  ]
+                                }
+                                """)));
+
+        Result serial = run("serial", count, 1, 1, 1, 0);
+        Result sharded = run("sharded", count, 1, 8, 16, 0);
+        Result twoPods = run("two_pods", count, 2, 8, 16, 0);
+        Result limited = run("rate_limited", count, 1, 8, 16, rate);
+
+        System.out.printf(
+                "play_reverify_bench count=%d latency_ms=%d%n"
+                        + "  serial        per_s=%.1f elapsed_ms=%d%n"
+                        + "  sharded       per_s=%.1f elapsed_ms=%d%n"
+                        + "  two_pods      per_s=%.1f elapsed_ms=%d%n"
+                        + "  rate_limited  per_s=%.1f elapsed_ms=%d limit_per_s=%d%n",
+                count, latencyMs,
+                serial.perSecond(), serial.elapsedMs(),
+                sharded.perSecond(), sharded.elapsedMs(),
+                twoPods.perSecond(), twoPods.elapsedMs(),
+                limited.perSecond(), limited.elapsedMs(), rate
+        );
+
+        assertThat(sharded.perSecond()).isGreaterThan(serial.perSecond() * 4);
+        assertThat(limited.perSecond()).isLessThanOrEqualTo(rate * 1.1);
+    }
+
+    private record Result(double perSecond, long elapsedMs) {}
+
+    private Result run(String name, int count, int pods, int shards, int concurrency, int rate) throws Exception {
+        wm.resetRequests();
+        FakeDb db = new FakeDb(count);
+        ConcurrentHashMap<String, String> leases = new ConcurrentHashMap<>();
+        LocalRateLimiter limiter = rate > 0 ? new LocalRateLimiter(rate) : null;
+
+        AndroidPublisher publisher = new AndroidPublisher.Builder(
+                new NetHttpTransport(),
+                GsonFactory.getDefaultInstance(),
+                null
+        ).setRootUrl(wm.getRuntimeInfo().getHttpBaseUrl() + "/").setApplicationName("bench").build();
+        GooglePlayVerifierProperties props = new GooglePlayVerifierProperties();
+        props.setPackageName(PACKAGE);
+        GooglePlaySubscriptionVerifier verifier = new GooglePlaySubscriptionVerifier(publisher, props);
+
+        try (ExecutorService apiExecutor = Executors.newVirtualThreadPerTaskExecutor();
+             ExecutorService pods0 = Executors.newFixedThreadPool(pods)) {
+
+            List<GooglePlayEntitlementReverifyWorker> workers = new ArrayList<>();
+            for (int p = 0; p < pods; p++) {
+                workers.add(worker(db, verifier, leases, limiter, apiExecutor, shards, concurrency));
+            }
+
+            long t0 = System.nanoTime();
+            // 每個 pod 一直跑到沒有到期的 row（模擬連續多個 tick）
+            List<Future<?>> futures = new ArrayList<>();
+            for (GooglePlayEntitlementReverifyWorker w : workers) {
+                futures.add(pods0.submit(() -> {
+                    while (db.remaining() > 0) w.reverifyActiveGooglePlayEntitlements();
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+            long nanos = System.nanoTime() - t0;
+
+            assertThat(db.remaining()).as(name).isZero();
+            assertThat(db.verifications).as("%s: each entitlement verified exactly once", name).hasSize(count);
+            assertThat(wm.getAllServeEvents()).as(name).hasSize(count);
+            return new Result(count * 1e9 / nanos, nanos / 1_000_000L);
+        }
+    }
+
+    private static GooglePlayEntitlementReverifyWorker worker(
+            FakeDb db,
+            GooglePlaySubscriptionVerifier verifier,
+            ConcurrentHashMap<String, String> leases,
+            LocalRateLimiter limiter,
+            ExecutorService apiExecutor,
+            int shards,
+            int concurrency
+    ) throws Exception {
+        UserEntitlementRepository repo = Mockito.mock(UserEntitlementRepository.class);
+        when(repo.findActiveGooglePlayDueForReverify(any(), anyCollection(), any(Pageable.class)))
+                .thenAnswer(inv -> db.due(inv.getArgument(1), inv.<Pageable>getArgument(2).getPageSize()));
+
+        EntitlementSyncService sync = Mockito.mock(EntitlementSyncService.class);
+        when(sync.syncKnownPurchaseTokenFromRtdn(any(), anyString(), any())).thenAnswer(inv -> {
+            String token = inv.getArgument(1);
+            assertThat(verifier.verify(token).active()).isTrue();
+            db.markVerified(token);
+            return null;
+        });
+
+        PurchaseTokenCrypto crypto = Mockito.mock(PurchaseTokenCrypto.class);
+        when(crypto.enabled()).thenReturn(true);
+        when(crypto.decryptOrNull(anyString())).thenAnswer(inv -> inv.getArgument(0));
+
+        EntitlementWorkerLease lease = Mockito.mock(EntitlementWorkerLease.class);
+        String owner = UUID.randomUUID().toString();
+        when(lease.tryAcquire(anyString(), any())).thenAnswer(inv -> {
+            String key = inv.getArgument(0);
+            return leases.putIfAbsent(key, owner) == null ? new EntitlementWorkerLease.Lease(key, owner) : null;
+        });
+        Mockito.doAnswer(inv -> {
+            EntitlementWorkerLease.Lease held = inv.getArgument(0);
+            leases.remove(held.key(), held.ownerToken());
+            return null;
+        }).when(lease).release(any());
+
+        GooglePlayApiRateLimiter rateLimiter = null;
+        if (limiter != null) {
+            rateLimiter = Mockito.mock(GooglePlayApiRateLimiter.class);
+            when(rateLimiter.acquire(anyString())).thenAnswer(inv -> limiter.acquire());
+        }
+
+        GooglePlayEntitlementReverifyWorker worker = new GooglePlayEntitlementReverifyWorker(
+                repo, sync, crypto, lease, rateLimiter, apiExecutor);
+        ReflectionTestUtils.setField(worker, "shardCount", shards);
+        ReflectionTestUtils.setField(worker, "concurrency", concurrency);
+        ReflectionTestUtils.setField(worker, "batchSize", 50);
+        ReflectionTestUtils.setField(worker, "maxPagesPerShard", 10);
+        ReflectionTestUtils.setField(worker, "staleAfter", Duration.ofHours(6));
+        return worker;
+    }
+
+    /** user_entitlements 的記憶體替身：purchase token 直接用 id，驗證後更新 lastGoogleVerifiedAtUtc */
+    private static final class FakeDb {
+        final ConcurrentHashMap<String, UserEntitlementEntity> rows = new ConcurrentHashMap<>();
+        final List<String> verifications = new CopyOnWriteArrayList<>();
+
+        FakeDb(int count) {
+            Instant now = Instant.now();
+            for (int i = 0; i < count; i++) {
+                UserEntitlementEntity e = new UserEntitlementEntity();
+                e.setId(UUID.randomUUID().toString());
+                e.setUserId((long) i);
+                e.setPurchaseTokenCiphertext(e.getId());
+                e.setValidToUtc(now.plus(Duration.ofHours(1 + i)));
+                rows.put(e.getId(), e);
+            }
+        }
+
+        synchronized List<UserEntitlementEntity> due(Collection<String> prefixes, int limit) {
+            return rows.values().stream()
+                    .filter(e -> e.getLastGoogleVerifiedAtUtc() == null)
+                    .filter(e -> prefixes.contains(e.getId().substring(0, 1)))
+                    .sorted(Comparator.comparing(UserEntitlementEntity::getValidToUtc))
+                    .limit(limit)
+                    .toList();
+        }
+
+        synchronized void markVerified(String id) {
+            rows.get(id).setLastGoogleVerifiedAtUtc(Instant.now());
+            verifications.add(id);
+        }
+
+        synchronized long remaining() {
+            return rows.values().stream().filter(e -> e.getLastGoogleVerifiedAtUtc() == null).count();
+        }
+    }
+
+    /** 固定間隔發放（burst = 1），語意同 GooglePlayApiRateLimiter 的 token bucket */
+    private static final class LocalRateLimiter {
+        private final long intervalNanos;
+        private long next = System.nanoTime();
+
+        LocalRateLimiter(int perSecond) {
+            this.intervalNanos = 1_000_000_000L / perSecond;
+        }
+
+        boolean acquire() throws InterruptedException {
+            long at;
+            synchronized (this) {
+                at = Math.max(next, System.nanoTime());
+                next = at + intervalNanos;
+            }
+            long sleep = at - System.nanoTime();
+            if (sleep > 0) Thread.sleep(Duration.ofNanos(sleep));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.caloshape.backend.foodlog.controller;
+
+import com.caloshape.backend.auth.security.AccessTokenFilter;
+import com.caloshape.backend.auth.security.AuthContext;
+import com.caloshape.backend.common.web.RequestIdFilter;
+import com.caloshape.backend.foodlog.service.FoodLogService;
+import com.caloshape.backend.foodlog.service.image.ImageOpenResult;
+import com.caloshape.backend.foodlog.web.advice.FoodLogExceptionAdvice;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.SecurityFilterAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ActiveProfiles("test")
+@WebMvcTest(
+        controllers = FoodLogImageController.class,
+        excludeAutoConfiguration = {
+                SecurityAutoConfiguration.class,
+                SecurityFilterAutoConfiguration.class
+        },
+        excludeFilters = {
+                @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = AccessTokenFilter.class)
+        }
+)
+@Import({FoodLogExceptionAdvice.class, RequestIdFilter.class})
+class FoodLogImageControllerWebMvcTest {
+
+    private static final String SHA = "ab".repeat(32);
+    private static final String ETAG = "\"" + SHA + "\"";
+    private static final byte[] BYTES = "0123456789".getBytes();
+
+    @Autowired MockMvc mvc;
+
+    @MockitoBean AuthContext auth;
+    @MockitoBean FoodLogService service;
+
+    @TempDir Path dir;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = Files.write(dir.resolve("blob.jpg"), BYTES);
+
+        when(auth.requireUserId()).thenReturn(1L);
+        when(service.openImage(eq(1L), eq("id-1")))
+                .thenReturn(new ImageOpenResult("obj-1", "image/jpeg", BYTES.length, SHA, 86_400L));
+        when(service.openImageResource(eq("obj-1"))).thenReturn(new FileSystemResource(file));
+    }
+
+    @Test
+    void full_get_should_send_strong_etag_and_immutable_private_cache() throws Exception {
+        mvc.perform(get("/api/v1/food-logs/id-1/image"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", ETAG))
+                .andExpect(header().string("Cache-Control", "max-age=86400, private, immutable"))
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(header().string("Content-Type", "image/jpeg"))
+                .andExpect(content().bytes(BYTES));
+    }
+
+    @Test
+    void matching_if_none_match_should_304_without_opening_storage() throws Exception {
+        mvc.perform(get("/api/v1/food-logs/id-1/image")
+                        .header("If-None-Match", "\"other\", W/" + ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", ETAG))
+                .andExpect(header().string("Cache-Control", "max-age=86400, private, immutable"))
+                .andExpect(content().bytes(new byte[0]));
+
+        verify(service, never()).openImageResource(anyString());
+    }
+
+    @Test
+    void range_request_should_return_partial_content() throws Exception {
+        mvc.perform(get("/api/v1/food-logs/id-1/image").header("Range", "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 2-5/10"))
+                .andExpect(header().string("ETag", ETAG))
+                .andExpect(content().bytes("2345".getBytes()));
+    }
+
+    @Test
+    void sendfile_capable_connector_should_get_file_attributes_and_empty_body() throws Exception {
+        MvcResult result = mvc.perform(get("/api/v1/food-logs/id-1/image")
+                        .requestAttr(FoodLogImageController.SENDFILE_SUPPORT_ATTR, Boolean.TRUE))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Length", "10"))
+                .andExpect(content().bytes(new byte[0]))
+                .andReturn();
+
+        var req = result.getRequest();
+        assertThat(req.getAttribute(FoodLogImageController.SENDFILE_FILENAME_ATTR))
+                .isEqualTo(file.toFile().getAbsolutePath());
+        assertThat(req.getAttribute(FoodLogImageController.SENDFILE_START_ATTR)).isEqualTo(0L);
+        assertThat(req.getAttribute(FoodLogImageController.SENDFILE_END_ATTR)).isEqualTo(10L);
+    }
+
+    @Test
+    void legacy_log_without_sha256_should_keep_short_cache_and_no_etag() throws Exception {
+        when(service.openImage(eq(1L), eq("id-1")))
+                .thenReturn(new ImageOpenResult("obj-1", "image/jpeg", BYTES.length, null, 0L));
+
+        mvc.perform(get("/api/v1/food-logs/id-1/image").header("If-None-Match", "*"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("ETag"))
+                .andExpect(header().string("Cache-Control", "max-age=60, private"))
+                .andExpect(content().bytes(BYTES));
+    }
+}
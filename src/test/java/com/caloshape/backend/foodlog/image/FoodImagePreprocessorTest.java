@@ -0,0 +1,157 @@
+package com.caloshape.backend.foodlog.image;
+
+import com.caloshape.backend.foodlog.entity.FoodLogEntity;
+import com.caloshape.backend.foodlog.repo.ImageBlobRepository;
+import com.caloshape.backend.foodlog.service.ImageBlobService;
+import com.caloshape.backend.foodlog.storage.LocalDiskStorageService;
+import com.caloshape.backend.foodlog.storage.StorageService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FoodImagePreprocessorTest {
+
+    private static final String SHA = "a".repeat(64);
+    private static final String ORIGINAL_KEY = "user-1/blobs/sha256/" + SHA + ".png";
+
+    @TempDir
+    Path baseDir;
+
+    @Test
+    void large_image_should_be_downscaled_reencoded_and_cached() throws Exception {
+        LocalDiskStorageService storage = new LocalDiskStorageService(baseDir.toString());
+        storage.save(ORIGINAL_KEY, new ByteArrayInputStream(png(4000, 3000)), "image/png");
+
+        ImageBlobService blobService = blobService(storage);
+        FoodImagePreprocessor prep = new FoodImagePreprocessor(blobService, props(true));
+        FoodLogEntity entity = entity();
+
+        StorageService.OpenResult first = prep.open(entity, storage, false);
+        assertEquals("image/jpeg", first.contentType());
+        BufferedImage out = read(first.inputStream());
+        assertEquals(1536, out.getWidth());
+        assertEquals(1152, out.getHeight());
+
+        String derivedKey = blobService.derivedObjectKey(1L, SHA, "prep-1536q85");
+        assertTrue(storage.exists(derivedKey));
+
+        // 第二次直接命中衍生檔：原圖不見了也照樣拿得到
+        storage.delete(ORIGINAL_KEY);
+        StorageService.OpenResult second = prep.open(entity, storage, false);
+        assertEquals("image/jpeg", second.contentType());
+        assertEquals(1536, read(second.inputStream()).getWidth());
+
+        // LABEL 用較大的上限，是另一個 variant
+        storage.save(ORIGINAL_KEY, new ByteArrayInputStream(png(4000, 3000)), "image/png");
+        assertEquals(2048, read(prep.open(entity, storage, true).inputStream()).getWidth());
+    }
+
+    @Test
+    void small_image_and_disabled_should_pass_through_original() throws Exception {
+        LocalDiskStorageService storage = new LocalDiskStorageService(baseDir.toString());
+        byte[] small = png(640, 480);
+        storage.save(ORIGINAL_KEY, new ByteArrayInputStream(small), "image/png");
+
+        FoodImagePreprocessor enabled = new FoodImagePreprocessor(blobService(storage), props(true));
+        StorageService.OpenResult r1 = enabled.open(entity(), storage, false);
+        assertEquals("image/png", r1.contentType());
+        assertArrayEquals(small, r1.inputStream().readAllBytes());
+
+        FoodImagePreprocessor disabled = new FoodImagePreprocessor(blobService(storage), props(false));
+        StorageService.OpenResult r2 = disabled.open(entity(), storage, false);
+        assertEquals("image/png", r2.contentType());
+        assertArrayEquals(small, r2.inputStream().readAllBytes());
+    }
+
+    @Test
+    void unsupported_format_should_fall_back_to_original() throws Exception {
+        LocalDiskStorageService storage = new LocalDiskStorageService(baseDir.toString());
+        byte[] notAnImage = new byte[2 * 1024 * 1024];
+        storage.save(ORIGINAL_KEY, new ByteArrayInputStream(notAnImage), "image/heic");
+
+        FoodImagePreprocessor prep = new FoodImagePreprocessor(blobService(storage), props(true));
+        FoodLogEntity entity = entity();
+        entity.setImageContentType("image/heic");
+
+        StorageService.OpenResult r = prep.open(entity, storage, false);
+        assertEquals("image/heic", r.contentType());
+        assertEquals(notAnImage.length, r.inputStream().readAllBytes().length);
+    }
+
+    @Test
+    void exif_orientation_should_be_applied_before_metadata_is_dropped() {
+        BufferedImage src = new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB);
+        src.setRGB(0, 0, Color.RED.getRGB());
+
+        // 6 = 順時針轉 90 度：左上角跑到右上角
+        BufferedImage rotated = ImageDownscaler.applyOrientation(src, 6);
+        assertEquals(2, rotated.getWidth());
+        assertEquals(4, rotated.getHeight());
+        assertEquals(Color.RED.getRGB(), rotated.getRGB(1, 0));
+
+        // 8 = 逆時針轉 90 度：左上角跑到左下角
+        BufferedImage ccw = ImageDownscaler.applyOrientation(src, 8);
+        assertEquals(Color.RED.getRGB(), ccw.getRGB(0, 3));
+
+        // 7 = transverse：左上角跑到右下角
+        BufferedImage transverse = ImageDownscaler.applyOrientation(src, 7);
+        assertEquals(Color.RED.getRGB(), transverse.getRGB(1, 3));
+    }
+
+    private static ImageBlobService blobService(StorageService storage) {
+        return new ImageBlobService(
+                mock(ImageBlobRepository.class),
+                storage,
+                Clock.fixed(Instant.parse("2026-03-03T00:00:00Z"), ZoneOffset.UTC)
+        );
+    }
+
+    private static ImagePrepProperties props(boolean enabled) {
+        ImagePrepProperties props = new ImagePrepProperties();
+        props.setEnabled(enabled);
+        return props;
+    }
+
+    private static FoodLogEntity entity() {
+        FoodLogEntity e = new FoodLogEntity();
+        e.setId("foodlog-1");
+        e.setUserId(1L);
+        e.setImageSha256(SHA);
+        e.setImageObjectKey(ORIGINAL_KEY);
+        e.setImageContentType("image/png");
+        return e;
+    }
+
+    private static byte[] png(int w, int h) throws Exception {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.ORANGE);
+        g.fillRect(0, 0, w, h);
+        g.setColor(Color.BLUE);
+        g.fillOval(w / 4, h / 4, w / 2, h / 2);
+        g.dispose();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", bos);
+        return bos.toByteArray();
+    }
+
+    private static BufferedImage read(InputStream in) throws Exception {
+        try (in) {
+            return ImageIO.read(in);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.caloshape.backend.foodlog.job.metrics;
+
+import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.repo.FoodLogTaskRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FoodLogTaskQueueMetricsTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-03T00:10:00Z");
+
+    private final FoodLogTaskRepository taskRepo = mock(FoodLogTaskRepository.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FoodLogTaskQueueMetrics metrics =
+            new FoodLogTaskQueueMetrics(taskRepo, Clock.fixed(NOW, ZoneOffset.UTC), registry);
+
+    @Test
+    void sample_should_publish_backlog_deferred_and_oldest_queued_age() {
+        when(taskRepo.countByStatusIn(anyCollection())).thenReturn(List.of(
+                new Object[]{FoodLogTaskEntity.TaskStatus.QUEUED, 7L},
+                new Object[]{FoodLogTaskEntity.TaskStatus.RUNNING, 3L}
+        ));
+        when(taskRepo.countByTaskStatusAndNextRetryAtUtcAfter(FoodLogTaskEntity.TaskStatus.QUEUED, NOW)).thenReturn(2L);
+        when(taskRepo.findOldestCreatedAt(FoodLogTaskEntity.TaskStatus.QUEUED))
+                .thenReturn(Optional.of(NOW.minusSeconds(90)));
+
+        metrics.sample();
+
+        assertThat(registry.get("foodlog.tasks.backlog").tag("status", "QUEUED").gauge().value()).isEqualTo(7d);
+        assertThat(registry.get("foodlog.tasks.backlog").tag("status", "RUNNING").gauge().value()).isEqualTo(3d);
+        assertThat(registry.get("foodlog.tasks.backlog").tag("status", "FAILED").gauge().value()).isZero();
+        assertThat(registry.get("foodlog.tasks.deferred").gauge().value()).isEqualTo(2d);
+        assertThat(registry.get("foodlog.tasks.oldest_queued_age").gauge().value()).isEqualTo(90d);
+        assertThat(metrics.snapshot().sampledAt()).isEqualTo(NOW);
+    }
+
+    @Test
+    void failed_sample_should_keep_previous_values() {
+        when(taskRepo.countByStatusIn(anyCollection())).thenReturn(List.<Object[]>of(
+                new Object[]{FoodLogTaskEntity.TaskStatus.QUEUED, 4L}
+        ));
+        when(taskRepo.findOldestCreatedAt(FoodLogTaskEntity.TaskStatus.QUEUED)).thenReturn(Optional.empty());
+        metrics.sample();
+
+        when(taskRepo.countByStatusIn(anyCollection())).thenThrow(new IllegalStateException("db down"));
+        when(taskRepo.countByTaskStatusAndNextRetryAtUtcAfter(any(), any())).thenReturn(9L);
+        metrics.sample();
+
+        assertThat(registry.get("foodlog.tasks.backlog").tag("status", "QUEUED").gauge().value()).isEqualTo(4d);
+        assertThat(registry.get("foodlog.tasks.oldest_queued_age").gauge().value()).isZero();
+        assertThat(metrics.snapshot().oldestQueuedAgeSec(NOW)).isNull();
+    }
+}
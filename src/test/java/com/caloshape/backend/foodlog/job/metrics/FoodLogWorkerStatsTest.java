@@ -0,0 +1,69 @@
+package com.caloshape.backend.foodlog.job.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FoodLogWorkerStatsTest {
+
+    private static final Instant T0 = Instant.parse("2026-03-03T00:00:10Z");
+
+    private final MutableClock clock = new MutableClock(T0);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FoodLogWorkerStats stats = new FoodLogWorkerStats(registry, clock);
+
+    @Test
+    void started_and_finished_should_track_running_gauge_and_outcome_counters() {
+        stats.started(Duration.ofSeconds(3));
+        assertThat(registry.get("foodlog.worker.running").gauge().value()).isEqualTo(1d);
+
+        stats.finished(FoodLogWorkerStats.Outcome.SUCCEEDED, Duration.ofSeconds(8));
+        stats.skipped(FoodLogWorkerStats.Outcome.CACHE_HIT);
+
+        assertThat(stats.running()).isZero();
+        assertThat(stats.total(FoodLogWorkerStats.Outcome.SUCCEEDED)).isEqualTo(1);
+        assertThat(stats.total(FoodLogWorkerStats.Outcome.CACHE_HIT)).isEqualTo(1);
+        assertThat(registry.get("foodlog.worker.queue.wait").timer().count()).isEqualTo(1);
+        assertThat(registry.get("foodlog.worker.task.duration").tag("outcome", "succeeded").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void lastMinutes_should_only_include_buckets_inside_window() {
+        stats.skipped(FoodLogWorkerStats.Outcome.FAILED);
+
+        clock.advance(Duration.ofMinutes(3));
+        stats.skipped(FoodLogWorkerStats.Outcome.DEFERRED);
+        stats.skipped(FoodLogWorkerStats.Outcome.DEFERRED);
+
+        assertThat(stats.lastMinutes(1).get(FoodLogWorkerStats.Outcome.DEFERRED)).isEqualTo(2);
+        assertThat(stats.lastMinutes(1).get(FoodLogWorkerStats.Outcome.FAILED)).isZero();
+        assertThat(stats.lastMinutes(5).get(FoodLogWorkerStats.Outcome.FAILED)).isEqualTo(1);
+
+        // ring buffer 轉一圈後舊的那格要被覆寫，不能累加到新的分鐘
+        clock.advance(Duration.ofMinutes(FoodLogWorkerStats.WINDOW_MINUTES));
+        stats.skipped(FoodLogWorkerStats.Outcome.SUCCEEDED);
+
+        assertThat(stats.lastMinutes(15).get(FoodLogWorkerStats.Outcome.DEFERRED)).isZero();
+        assertThat(stats.lastMinutes(15).get(FoodLogWorkerStats.Outcome.SUCCEEDED)).isEqualTo(1);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) { this.now = now; }
+
+        void advance(Duration d) { now = now.plus(d); }
+
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+        @Override public Clock withZone(ZoneId zone) { return this; }
+        @Override public Instant instant() { return now; }
+    }
+}
@@ -0,0 +1,81 @@
+package com.caloshape.backend.foodlog.job.worker;
+
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FoodLogResultNotifierTest {
+
+    @AfterEach
+    void clearTx() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    void inside_transaction_should_wake_waiters_and_publish_only_after_commit() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        FoodLogResultNotifier notifier = new FoodLogResultNotifier(redis, props(true));
+
+        AtomicInteger woke = new AtomicInteger();
+        notifier.register("log1", woke::incrementAndGet, 10);
+        notifier.register("log1", woke::incrementAndGet, 10);
+        notifier.register("log2", woke::incrementAndGet, 10);
+
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        notifier.notifyDoneAfterCommit("log1");
+        assertEquals(0, woke.get());
+        verifyNoInteractions(redis);
+
+        List<TransactionSynchronization> syncs = TransactionSynchronizationManager.getSynchronizations();
+        assertEquals(1, syncs.size());
+        syncs.get(0).afterCommit();
+
+        assertEquals(2, woke.get());
+        assertEquals(1, notifier.waiterCount());
+        verify(redis).convertAndSend("caloshape-test:foodlog:results:done", "log1");
+
+        // 其他 pod 廣播過來的通知：只叫本地等待者，不再 publish
+        notifier.signalLocal("log2");
+        assertEquals(3, woke.get());
+        assertEquals(0, notifier.waiterCount());
+        verifyNoMoreInteractions(redis);
+    }
+
+    @Test
+    void cancelled_and_overflow_waiters_should_not_be_called() {
+        FoodLogResultNotifier notifier = new FoodLogResultNotifier(mock(StringRedisTemplate.class), props(false));
+
+        AtomicInteger woke = new AtomicInteger();
+        FoodLogResultNotifier.Registration reg = notifier.register("log1", woke::incrementAndGet, 1);
+        assertNotNull(reg);
+        assertNull(notifier.register("log1", woke::incrementAndGet, 1));
+
+        reg.cancel();
+        reg.cancel();
+        assertEquals(0, notifier.waiterCount());
+
+        notifier.notifyDoneAfterCommit("log1");
+        assertEquals(0, woke.get());
+    }
+
+    private static FoodLogTaskWorkerProperties props(boolean pushEnabled) {
+        FoodLogTaskWorkerProperties props = new FoodLogTaskWorkerProperties();
+        props.setPushEnabled(pushEnabled);
+        props.setRedisPrefix("caloshape-test:");
+        return props;
+    }
+}
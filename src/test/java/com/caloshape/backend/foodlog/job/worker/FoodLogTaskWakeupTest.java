@@ -0,0 +1,90 @@
+package com.caloshape.backend.foodlog.job.worker;
+
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class FoodLogTaskWakeupTest {
+
+    @AfterEach
+    void clearTx() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    void without_transaction_should_signal_and_publish_immediately() throws Exception {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        FoodLogTaskWakeup wakeup = new FoodLogTaskWakeup(redis, props(true, "caloshape-test:"));
+
+        wakeup.notifyQueuedAfterCommit();
+
+        assertTrue(wakeup.await(Duration.ofMillis(50)));
+        verify(redis).convertAndSend("caloshape-test:foodlog:tasks:wakeup", "1");
+    }
+
+    @Test
+    void inside_transaction_should_wait_for_commit() throws Exception {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        FoodLogTaskWakeup wakeup = new FoodLogTaskWakeup(redis, props(true, "caloshape"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        wakeup.notifyQueuedAfterCommit();
+
+        assertFalse(wakeup.await(Duration.ofMillis(20)));
+        verifyNoInteractions(redis);
+
+        List<TransactionSynchronization> syncs = TransactionSynchronizationManager.getSynchronizations();
+        assertEquals(1, syncs.size());
+        syncs.get(0).afterCommit();
+
+        assertTrue(wakeup.await(Duration.ofMillis(50)));
+        verify(redis).convertAndSend("caloshape:foodlog:tasks:wakeup", "1");
+    }
+
+    @Test
+    void push_disabled_should_only_signal_locally() throws Exception {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        FoodLogTaskWakeup wakeup = new FoodLogTaskWakeup(redis, props(false, "caloshape"));
+
+        wakeup.notifyQueuedAfterCommit();
+
+        assertTrue(wakeup.await(Duration.ofMillis(50)));
+        verifyNoInteractions(redis);
+    }
+
+    @Test
+    void redis_failure_should_not_propagate_and_signals_should_coalesce() throws Exception {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        doThrow(new IllegalStateException("redis down")).when(redis).convertAndSend(anyString(), anyString());
+        FoodLogTaskWakeup wakeup = new FoodLogTaskWakeup(redis, props(true, "caloshape"));
+
+        assertDoesNotThrow(wakeup::notifyQueuedAfterCommit);
+        wakeup.signalLocal();
+        wakeup.signalLocal();
+
+        assertTrue(wakeup.await(Duration.ofMillis(50)));
+        assertFalse(wakeup.await(Duration.ofMillis(20)));
+    }
+
+    private static FoodLogTaskWorkerProperties props(boolean pushEnabled, String prefix) {
+        FoodLogTaskWorkerProperties props = new FoodLogTaskWorkerProperties();
+        props.setPushEnabled(pushEnabled);
+        props.setRedisPrefix(prefix);
+        return props;
+    }
+}
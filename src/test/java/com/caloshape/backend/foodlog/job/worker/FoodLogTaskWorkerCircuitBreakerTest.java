@@ -0,0 +1,184 @@
+package com.caloshape.backend.foodlog.job.worker;
+
+import com.caloshape.backend.foodlog.entity.FoodLogEntity;
+import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import com.caloshape.backend.foodlog.job.metrics.FoodLogWorkerStats;
+import com.caloshape.backend.foodlog.model.FoodLogStatus;
+import com.caloshape.backend.foodlog.processing.effective.FoodLogEffectivePostProcessor;
+import com.caloshape.backend.foodlog.provider.cache.FoodAnalysisResultCache;
+import com.caloshape.backend.foodlog.provider.routing.ProviderRouter;
+import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
+import com.caloshape.backend.foodlog.repo.FoodLogRepository;
+import com.caloshape.backend.foodlog.repo.FoodLogTaskRepository;
+import com.caloshape.backend.foodlog.service.UserDailyNutritionSummaryService;
+import com.caloshape.backend.foodlog.storage.StorageService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * breaker open 時任務留在 QUEUED（帶 next_retry_at_utc），不消耗 attempts、不把 food log 標成 FAILED。
+ */
+class FoodLogTaskWorkerCircuitBreakerTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-03T00:00:00Z");
+
+    private final Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+
+    private FoodLogTaskRepository taskRepo;
+    private FoodLogRepository logRepo;
+    private ProviderRouter router;
+    private ProviderClient provider;
+    private StorageService storage;
+    private PlatformTransactionManager txManager;
+    private StringRedisTemplate redis;
+    private FoodLogTaskWorkerProperties props;
+
+    private FoodLogTaskEntity task;
+    private FoodLogEntity log;
+
+    @BeforeEach
+    void setUp() {
+        taskRepo = mock(FoodLogTaskRepository.class);
+        logRepo = mock(FoodLogRepository.class);
+        router = mock(ProviderRouter.class);
+        provider = mock(ProviderClient.class);
+        storage = mock(StorageService.class);
+        redis = mock(StringRedisTemplate.class);
+
+        txManager = mock(PlatformTransactionManager.class);
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(router.pickStrict(any())).thenReturn(provider);
+
+        props = new FoodLogTaskWorkerProperties();
+        props.getHealth().setEnabled(true);
+        props.getHealth().setMaxQueueDelay(Duration.ofMinutes(10));
+
+        task = new FoodLogTaskEntity();
+        task.setId("task-1");
+        task.setFoodLogId("log-1");
+        task.setTaskStatus(FoodLogTaskEntity.TaskStatus.QUEUED);
+        task.setAttempts(0);
+        task.setCreatedAtUtc(NOW);
+        task.setUpdatedAtUtc(NOW);
+
+        log = new FoodLogEntity();
+        log.setId("log-1");
+        log.setUserId(1L);
+        log.setCapturedLocalDate(LocalDate.of(2026, 3, 3));
+        log.setStatus(FoodLogStatus.PENDING);
+        log.setMethod("PHOTO");
+        log.setProvider("GEMINI");
+        log.setDegradeLevel("DG-0");
+        log.setImageObjectKey("user-1/blobs/sha256/xxx.jpg");
+
+        when(taskRepo.claimRunnableIdsForUpdate(any(Instant.class), anyInt())).thenReturn(List.of("task-1"));
+        when(taskRepo.findByIdForUpdate("task-1")).thenReturn(Optional.of(task));
+        when(logRepo.findByIdForUpdate("log-1")).thenReturn(Optional.of(log));
+    }
+
+    @Test
+    void open_breaker_should_keep_task_queued_until_open_until_without_calling_provider() throws Exception {
+        Instant openUntil = NOW.plusSeconds(30);
+        stubScript(List.of("OPEN", Long.toString(openUntil.toEpochMilli())));
+
+        newWorker().runOnce();
+
+        assertThat(task.getTaskStatus()).isEqualTo(FoodLogTaskEntity.TaskStatus.QUEUED);
+        assertThat(task.getAttempts()).isZero();
+        assertThat(task.getNextRetryAtUtc()).isEqualTo(openUntil);
+        assertThat(log.getStatus()).isEqualTo(FoodLogStatus.PENDING);
+        verify(provider, never()).process(any(), any());
+    }
+
+    @Test
+    void upstream_failure_that_opens_breaker_should_requeue_and_refund_attempt() throws Exception {
+        Instant openUntil = NOW.plusSeconds(30);
+        stubScript(List.of("PASS"), List.of("OPENED", Long.toString(openUntil.toEpochMilli())));
+        when(provider.process(any(FoodLogEntity.class), any(StorageService.class)))
+                .thenThrow(HttpServerErrorException.create(
+                        HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable", HttpHeaders.EMPTY, new byte[0], null));
+
+        newWorker().runOnce();
+
+        assertThat(task.getTaskStatus()).isEqualTo(FoodLogTaskEntity.TaskStatus.QUEUED);
+        assertThat(task.getAttempts()).isZero();
+        assertThat(task.getNextRetryAtUtc()).isEqualTo(openUntil);
+        assertThat(task.getLastErrorCode()).isEqualTo("PROVIDER_UPSTREAM_5XX");
+        assertThat(log.getStatus()).isEqualTo(FoodLogStatus.PENDING);
+    }
+
+    @Test
+    void failure_while_breaker_closed_should_fail_task_as_before() throws Exception {
+        stubScript(List.of("PASS"), List.of("COUNTED"));
+        when(provider.process(any(FoodLogEntity.class), any(StorageService.class)))
+                .thenThrow(HttpServerErrorException.create(
+                        HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable", HttpHeaders.EMPTY, new byte[0], null));
+
+        newWorker().runOnce();
+
+        assertThat(task.getTaskStatus()).isEqualTo(FoodLogTaskEntity.TaskStatus.CANCELLED);
+        assertThat(task.getAttempts()).isEqualTo(1);
+        assertThat(log.getStatus()).isEqualTo(FoodLogStatus.FAILED);
+        assertThat(log.getLastErrorCode()).isEqualTo("PROVIDER_UPSTREAM_5XX");
+    }
+
+    @Test
+    void task_waiting_past_max_queue_delay_should_fail_instead_of_deferring_again() throws Exception {
+        task.setCreatedAtUtc(NOW.minus(Duration.ofMinutes(15)));
+        stubScript(List.of("OPEN", Long.toString(NOW.plusSeconds(30).toEpochMilli())));
+
+        newWorker().runOnce();
+
+        assertThat(task.getTaskStatus()).isEqualTo(FoodLogTaskEntity.TaskStatus.CANCELLED);
+        assertThat(task.getLastErrorCode()).isEqualTo("PROVIDER_CIRCUIT_OPEN");
+        assertThat(log.getStatus()).isEqualTo(FoodLogStatus.FAILED);
+        verify(provider, never()).process(any(), any());
+    }
+
+    private FoodLogTaskWorker newWorker() {
+        ProviderHealthGuard guard = new ProviderHealthGuard(redis, props, null, clock, new SimpleMeterRegistry());
+        return new FoodLogTaskWorker(
+                taskRepo,
+                logRepo,
+                router,
+                storage,
+                mock(FoodLogEffectivePostProcessor.class),
+                mock(UserDailyNutritionSummaryService.class),
+                txManager,
+                clock,
+                props,
+                Runnable::run,
+                mock(FoodAnalysisResultCache.class),
+                mock(FoodLogResultNotifier.class),
+                guard,
+                mock(FoodLogWorkerStats.class)
+        );
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubScript(List<String> first, List<String>... rest) {
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(first, (Object[]) rest);
+    }
+}
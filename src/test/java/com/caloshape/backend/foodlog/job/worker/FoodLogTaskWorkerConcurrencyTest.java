@@ -0,0 +1,272 @@
+package com.caloshape.backend.foodlog.job.worker;
+
+import com.caloshape.backend.foodlog.entity.FoodLogEntity;
+import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import com.caloshape.backend.foodlog.job.metrics.FoodLogWorkerStats;
+import com.caloshape.backend.foodlog.model.FoodLogStatus;
+import com.caloshape.backend.foodlog.processing.effective.FoodLogEffectivePostProcessor;
+import com.caloshape.backend.foodlog.provider.cache.FoodAnalysisResultCache;
+import com.caloshape.backend.foodlog.provider.routing.ProviderRouter;
+import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
+import com.caloshape.backend.foodlog.provider.spi.ProviderHedgeGate;
+import com.caloshape.backend.foodlog.quota.model.ModelTier;
+import com.caloshape.backend.foodlog.repo.FoodLogRepository;
+import com.caloshape.backend.foodlog.repo.FoodLogTaskRepository;
+import com.caloshape.backend.foodlog.service.UserDailyNutritionSummaryService;
+import com.caloshape.backend.foodlog.storage.StorageService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+
+class FoodLogTaskWorkerConcurrencyTest {
+
+    private final Clock clock = Clock.fixed(
+            Instant.parse("2026-03-03T00:00:00Z"),
+            ZoneOffset.UTC
+    );
+
+    private FoodLogTaskRepository taskRepo;
+    private FoodLogRepository logRepo;
+    private ProviderRouter router;
+    private ProviderClient provider;
+    private StorageService storage;
+    private FoodLogEffectivePostProcessor postProcessor;
+    private UserDailyNutritionSummaryService dailySummaryService;
+    private PlatformTransactionManager txManager;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        taskRepo = Mockito.mock(FoodLogTaskRepository.class);
+        logRepo = Mockito.mock(FoodLogRepository.class);
+        router = Mockito.mock(ProviderRouter.class);
+        provider = Mockito.mock(ProviderClient.class);
+        storage = Mockito.mock(StorageService.class);
+        postProcessor = Mockito.mock(FoodLogEffectivePostProcessor.class);
+        dailySummaryService = Mockito.mock(UserDailyNutritionSummaryService.class);
+
+        txManager = Mockito.mock(PlatformTransactionManager.class);
+        Mockito.when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        Mockito.doNothing().when(txManager).commit(any(TransactionStatus.class));
+        Mockito.doNothing().when(txManager).rollback(any(TransactionStatus.class));
+
+        Mockito.when(router.pickStrict(any())).thenReturn(provider);
+        Mockito.when(postProcessor.apply(any(ObjectNode.class), eq("GEMINI"), eq("PHOTO")))
+                .thenAnswer(inv -> inv.getArgument(0));
+
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrent_mode_should_run_claimed_tasks_in_parallel() throws Exception {
+        FoodLogTaskEntity t1 = queuedTask("t1", "log1");
+        FoodLogTaskEntity t2 = queuedTask("t2", "log2");
+        FoodLogEntity l1 = pendingPhoto("log1");
+        FoodLogEntity l2 = pendingPhoto("log2");
+        stubRepos(List.of(t1, t2), List.of(l1, l2));
+
+        // 兩個 provider 呼叫都進來後才放行：逐筆執行的話會卡死在第一筆
+        CountDownLatch bothEntered = new CountDownLatch(2);
+        Mockito.when(provider.process(any(), eq(storage))).thenAnswer(inv -> {
+            bothEntered.countDown();
+            assertTrue(bothEntered.await(5, TimeUnit.SECONDS), "provider calls were not concurrent");
+            return new ProviderClient.ProviderResult(effective(), "GEMINI");
+        });
+
+        FoodLogTaskWorkerProperties props = new FoodLogTaskWorkerProperties();
+        props.setConcurrent(true);
+
+        newWorker(props).runOnce();
+        awaitExecutor();
+
+        assertEquals(FoodLogTaskEntity.TaskStatus.SUCCEEDED, t1.getTaskStatus());
+        assertEquals(FoodLogTaskEntity.TaskStatus.SUCCEEDED, t2.getTaskStatus());
+        assertEquals(FoodLogStatus.DRAFT, l1.getStatus());
+        assertEquals(FoodLogStatus.DRAFT, l2.getStatus());
+    }
+
+    @Test
+    void provider_budget_exhausted_should_leave_task_queued_without_attempt() throws Exception {
+        FoodLogTaskEntity t1 = queuedTask("t1", "log1");
+        FoodLogTaskEntity t2 = queuedTask("t2", "log2");
+        FoodLogEntity l1 = pendingPhoto("log1");
+        FoodLogEntity l2 = pendingPhoto("log2");
+        stubRepos(List.of(t1, t2), List.of(l1, l2));
+
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(provider.process(any(), eq(storage))).thenAnswer(inv -> {
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return new ProviderClient.ProviderResult(effective(), "GEMINI");
+        });
+
+        FoodLogTaskWorkerProperties props = new FoodLogTaskWorkerProperties();
+        props.setConcurrent(true);
+        props.setProviderMaxInFlight(Map.of("GEMINI", 1));
+
+        newWorker(props).runOnce();
+
+        // 等到其中一筆拿到名額、另一筆被擋回 QUEUED
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (countStatus(List.of(t1, t2), FoodLogTaskEntity.TaskStatus.RUNNING) < 1
+               || Mockito.mockingDetails(taskRepo).getInvocations().stream()
+                          .filter(i -> i.getMethod().getName().equals("findByIdForUpdate")).count() < 2) {
+            assertTrue(System.nanoTime() < deadline, "tasks were not dispatched");
+            Thread.sleep(10);
+        }
+        release.countDown();
+        awaitExecutor();
+
+        assertEquals(1, countStatus(List.of(t1, t2), FoodLogTaskEntity.TaskStatus.SUCCEEDED));
+        assertEquals(1, countStatus(List.of(t1, t2), FoodLogTaskEntity.TaskStatus.QUEUED));
+
+        FoodLogTaskEntity skipped = t1.getTaskStatus() == FoodLogTaskEntity.TaskStatus.QUEUED ? t1 : t2;
+        assertEquals(0, skipped.getAttempts());
+        // 短暫延後，讓 claim 先撿其他 tier 的任務
+        assertEquals(clock.instant().plus(props.getBusyBackoff()), skipped.getNextRetryAtUtc());
+        Mockito.verify(provider, Mockito.times(1)).process(any(), eq(storage));
+        // 名額不足標記 saturated：任務結束後立刻再 claim
+        Mockito.verify(taskRepo, Mockito.atLeast(2)).claimRunnableIdsForUpdate(any(Instant.class), anyInt());
+    }
+
+    @Test
+    void hedge_should_take_its_own_provider_and_tier_lease() throws Exception {
+        FoodLogTaskEntity t1 = queuedTask("t1", "log1");
+        FoodLogEntity l1 = pendingPhoto("log1");
+        stubRepos(List.of(t1), List.of(l1));
+
+        List<Boolean> granted = new CopyOnWriteArrayList<>();
+        Mockito.when(provider.process(any(), eq(storage))).thenAnswer(inv -> {
+            ProviderHedgeGate gate = ProviderHedgeGate.currentOrNull();
+            assertNotNull(gate);
+
+            ProviderHedgeGate.Permit first = gate.tryAcquire(ModelTier.MODEL_TIER_LOW);
+            granted.add(first != null);
+            // LOW tier 上限 1：同時第二發 hedge 拿不到
+            granted.add(gate.tryAcquire(ModelTier.MODEL_TIER_LOW) != null);
+            first.close();
+            try (ProviderHedgeGate.Permit again = gate.tryAcquire(ModelTier.MODEL_TIER_LOW)) {
+                granted.add(again != null);
+            }
+            return new ProviderClient.ProviderResult(effective(), "GEMINI");
+        });
+
+        FoodLogTaskWorkerProperties props = new FoodLogTaskWorkerProperties();
+        props.setConcurrent(true);
+        props.setTierMaxInFlight(Map.of("MODEL_TIER_LOW", 1));
+
+        newWorker(props).runOnce();
+        awaitExecutor();
+
+        assertEquals(List.of(true, false, true), granted);
+        assertEquals(FoodLogTaskEntity.TaskStatus.SUCCEEDED, t1.getTaskStatus());
+    }
+
+    private FoodLogTaskWorker newWorker(FoodLogTaskWorkerProperties props) {
+        return new FoodLogTaskWorker(
+                taskRepo,
+                logRepo,
+                router,
+                storage,
+                postProcessor,
+                dailySummaryService,
+                txManager,
+                clock,
+                props,
+                executor,
+                Mockito.mock(FoodAnalysisResultCache.class),
+                Mockito.mock(FoodLogResultNotifier.class),
+                disabledHealthGuard(),
+                Mockito.mock(FoodLogWorkerStats.class)
+        );
+    }
+
+    private void stubRepos(List<FoodLogTaskEntity> tasks, List<FoodLogEntity> logs) {
+        Mockito.when(taskRepo.claimRunnableIdsForUpdate(any(Instant.class), anyInt()))
+                .thenReturn(tasks.stream().map(FoodLogTaskEntity::getId).toList())
+                .thenReturn(List.of());
+        for (FoodLogTaskEntity t : tasks) {
+            Mockito.when(taskRepo.findByIdForUpdate(t.getId())).thenReturn(Optional.of(t));
+        }
+        for (FoodLogEntity l : logs) {
+            Mockito.when(logRepo.findByIdForUpdate(l.getId())).thenReturn(Optional.of(l));
+        }
+    }
+
+    private void awaitExecutor() throws InterruptedException {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static long countStatus(List<FoodLogTaskEntity> tasks, FoodLogTaskEntity.TaskStatus status) {
+        return tasks.stream().filter(t -> t.getTaskStatus() == status).count();
+    }
+
+    private FoodLogTaskEntity queuedTask(String id, String foodLogId) {
+        FoodLogTaskEntity task = new FoodLogTaskEntity();
+        task.setId(id);
+        task.setFoodLogId(foodLogId);
+        task.setTaskStatus(FoodLogTaskEntity.TaskStatus.QUEUED);
+        task.setAttempts(0);
+        task.setCreatedAtUtc(clock.instant());
+        task.setUpdatedAtUtc(clock.instant());
+        return task;
+    }
+
+    private static FoodLogEntity pendingPhoto(String id) {
+        FoodLogEntity log = new FoodLogEntity();
+        log.setId(id);
+        log.setUserId(100L);
+        log.setCapturedLocalDate(LocalDate.of(2026, 3, 3));
+        log.setStatus(FoodLogStatus.PENDING);
+        log.setMethod("PHOTO");
+        log.setProvider("GEMINI");
+        log.setDegradeLevel("DG-0");
+        log.setImageObjectKey("user-1/food-log/" + id + "/original.jpg");
+        return log;
+    }
+
+    private static ObjectNode effective() throws Exception {
+        return (ObjectNode) new ObjectMapper().readTree("""
+        {
+          "foodName":"White Bread",
+          "quantity":{"value":1,"unit":"SERVING"},
+          "nutrients":{"kcal":75,"protein":2.5,"fat":1,"carbs":14,"fiber":0.8,"sugar":1.5,"sodium":140},
+          "confidence":0.9
+        }
+        """);
+    }
+
+    /** health 關閉：admit 一律放行，只受靜態上限限制 */
+    private static ProviderHealthGuard disabledHealthGuard() {
+        return new ProviderHealthGuard(null, new FoodLogTaskWorkerProperties(), null, Clock.systemUTC(), new SimpleMeterRegistry());
+    }
+}
@@ -2,14 +2,18 @@ package com.caloshape.backend.foodlog.job.worker;
 
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
 import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import com.caloshape.backend.foodlog.job.metrics.FoodLogWorkerStats;
 import com.caloshape.backend.foodlog.model.FoodLogStatus;
 import com.caloshape.backend.foodlog.processing.effective.FoodLogEffectivePostProcessor;
+import com.caloshape.backend.foodlog.provider.cache.FoodAnalysisResultCache;
 import com.caloshape.backend.foodlog.provider.routing.ProviderRouter;
 import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
 import com.caloshape.backend.foodlog.repo.FoodLogRepository;
 import com.caloshape.backend.foodlog.repo.FoodLogTaskRepository;
 import com.caloshape.backend.foodlog.service.UserDailyNutritionSummaryService;
 import com.caloshape.backend.foodlog.storage.StorageService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -29,6 +33,7 @@ import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -63,8 +68,8 @@ class FoodLogTaskWorkerRateLimitedTest {
         task.setUpdatedAtUtc(now);
         task.setAttempts(0);
 
-        when(taskRepo.claimRunnableForUpdate(any(Instant.class), anyInt()))
-                .thenReturn(List.of(task));
+        when(taskRepo.claimRunnableIdsForUpdate(any(Instant.class), anyInt()))
+                .thenReturn(List.of(task.getId()));
         when(taskRepo.findByIdForUpdate("task-1"))
                 .thenReturn(Optional.of(task));
 
@@ -113,7 +118,13 @@ class FoodLogTaskWorkerRateLimitedTest {
                 postProcessor,
                 dailySummaryService,
                 txManager,
-                clock
+                clock,
+                new FoodLogTaskWorkerProperties(),
+                Runnable::run,
+                mock(FoodAnalysisResultCache.class),
+                mock(FoodLogResultNotifier.class),
+                disabledHealthGuard(),
+                mock(FoodLogWorkerStats.class)
         );
 
         // Act
@@ -132,4 +143,9 @@ class FoodLogTaskWorkerRateLimitedTest {
         verify(postProcessor, never()).apply(any(), anyString(), anyString());
         verify(dailySummaryService, never()).recomputeDay(any(), any());
     }
+
+    /** health 關閉：admit 一律放行，只受靜態上限限制 */
+    private static ProviderHealthGuard disabledHealthGuard() {
+        return new ProviderHealthGuard(null, new FoodLogTaskWorkerProperties(), null, Clock.systemUTC(), new SimpleMeterRegistry());
+    }
 }
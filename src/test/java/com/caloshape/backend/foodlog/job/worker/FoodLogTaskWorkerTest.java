@@ -2,8 +2,11 @@ package com.caloshape.backend.foodlog.job.worker;
 
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
 import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import com.caloshape.backend.foodlog.job.metrics.FoodLogWorkerStats;
 import com.caloshape.backend.foodlog.model.FoodLogStatus;
 import com.caloshape.backend.foodlog.processing.effective.FoodLogEffectivePostProcessor;
+import com.caloshape.backend.foodlog.provider.cache.FoodAnalysisResultCache;
 import com.caloshape.backend.foodlog.provider.routing.ProviderRouter;
 import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
 import com.caloshape.backend.foodlog.repo.FoodLogRepository;
@@ -12,6 +15,7 @@ import com.caloshape.backend.foodlog.service.UserDailyNutritionSummaryService;
 import com.caloshape.backend.foodlog.storage.StorageService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -69,8 +73,8 @@ class FoodLogTaskWorkerTest {
         log.setId("log1");
         log.setStatus(FoodLogStatus.DELETED);
 
-        Mockito.when(taskRepo.claimRunnableForUpdate(any(Instant.class), anyInt()))
-                .thenReturn(List.of(task));
+        Mockito.when(taskRepo.claimRunnableIdsForUpdate(any(Instant.class), anyInt()))
+                .thenReturn(List.of(task.getId()));
         Mockito.when(taskRepo.findByIdForUpdate("t1"))
                 .thenReturn(Optional.of(task));
         Mockito.when(logRepo.findByIdForUpdate("log1"))
@@ -84,7 +88,13 @@ class FoodLogTaskWorkerTest {
                 postProcessor,
                 dailySummaryService,
                 txManager,
-                clock
+                clock,
+                new FoodLogTaskWorkerProperties(),
+                Runnable::run,
+                mock(FoodAnalysisResultCache.class),
+                mock(FoodLogResultNotifier.class),
+                disabledHealthGuard(),
+                mock(FoodLogWorkerStats.class)
         );
         worker.runOnce();
 
@@ -120,8 +130,8 @@ class FoodLogTaskWorkerTest {
         log.setMethod("PHOTO");
         log.setImageObjectKey("user-1/food-log/log2/original.jpg");
 
-        Mockito.when(taskRepo.claimRunnableForUpdate(any(Instant.class), anyInt()))
-                .thenReturn(List.of(task));
+        Mockito.when(taskRepo.claimRunnableIdsForUpdate(any(Instant.class), anyInt()))
+                .thenReturn(List.of(task.getId()));
         Mockito.when(taskRepo.findByIdForUpdate("t2"))
                 .thenReturn(Optional.of(task));
         Mockito.when(logRepo.findByIdForUpdate("log2"))
@@ -140,7 +150,13 @@ class FoodLogTaskWorkerTest {
                 postProcessor,
                 dailySummaryService,
                 txManager,
-                clock
+                clock,
+                new FoodLogTaskWorkerProperties(),
+                Runnable::run,
+                mock(FoodAnalysisResultCache.class),
+                mock(FoodLogResultNotifier.class),
+                disabledHealthGuard(),
+                mock(FoodLogWorkerStats.class)
         );
         worker.runOnce();
 
@@ -180,8 +196,8 @@ class FoodLogTaskWorkerTest {
         log.setMethod("PHOTO");
         log.setImageObjectKey("user-1/food-log/log3/original.jpg");
 
-        Mockito.when(taskRepo.claimRunnableForUpdate(any(Instant.class), anyInt()))
-                .thenReturn(List.of(task));
+        Mockito.when(taskRepo.claimRunnableIdsForUpdate(any(Instant.class), anyInt()))
+                .thenReturn(List.of(task.getId()));
         Mockito.when(taskRepo.findByIdForUpdate("t3"))
                 .thenReturn(Optional.of(task));
         Mockito.when(logRepo.findByIdForUpdate("log3"))
@@ -195,7 +211,13 @@ class FoodLogTaskWorkerTest {
                 postProcessor,
                 dailySummaryService,
                 txManager,
-                clock
+                clock,
+                new FoodLogTaskWorkerProperties(),
+                Runnable::run,
+                mock(FoodAnalysisResultCache.class),
+                mock(FoodLogResultNotifier.class),
+                disabledHealthGuard(),
+                mock(FoodLogWorkerStats.class)
         );
         worker.runOnce();
 
@@ -238,8 +260,8 @@ class FoodLogTaskWorkerTest {
         log.setMethod("PHOTO");
         log.setImageObjectKey("user-1/food-log/log4/original.jpg");
 
-        Mockito.when(taskRepo.claimRunnableForUpdate(any(Instant.class), anyInt()))
-                .thenReturn(List.of(task));
+        Mockito.when(taskRepo.claimRunnableIdsForUpdate(any(Instant.class), anyInt()))
+                .thenReturn(List.of(task.getId()));
         Mockito.when(taskRepo.findByIdForUpdate("t4"))
                 .thenReturn(Optional.of(task));
         Mockito.when(logRepo.findByIdForUpdate("log4"))
@@ -271,7 +293,13 @@ class FoodLogTaskWorkerTest {
                 postProcessor,
                 dailySummaryService,
                 txManager,
-                clock
+                clock,
+                new FoodLogTaskWorkerProperties(),
+                Runnable::run,
+                mock(FoodAnalysisResultCache.class),
+                mock(FoodLogResultNotifier.class),
+                disabledHealthGuard(),
+                mock(FoodLogWorkerStats.class)
         );
         worker.runOnce();
 
@@ -284,4 +312,169 @@ class FoodLogTaskWorkerTest {
                 .apply(any(ObjectNode.class), eq("GEMINI"), eq("PHOTO"));
         Mockito.verify(dailySummaryService).recomputeDay(100L, LocalDate.of(2026, 3, 3));
     }
+
+    @Test
+    void reaped_failed_task_should_clear_next_retry_without_running() {
+        FoodLogTaskRepository taskRepo = Mockito.mock(FoodLogTaskRepository.class);
+        FoodLogRepository logRepo = Mockito.mock(FoodLogRepository.class);
+        ProviderRouter router = Mockito.mock(ProviderRouter.class);
+        StorageService storage = Mockito.mock(StorageService.class);
+        FoodLogEffectivePostProcessor postProcessor = Mockito.mock(FoodLogEffectivePostProcessor.class);
+        UserDailyNutritionSummaryService dailySummaryService = Mockito.mock(UserDailyNutritionSummaryService.class);
+        PlatformTransactionManager txManager = newTxManager();
+
+        FoodLogTaskEntity task = new FoodLogTaskEntity();
+        task.setId("t1");
+        task.setFoodLogId("log1");
+        task.setTaskStatus(FoodLogTaskEntity.TaskStatus.FAILED);
+        task.setAttempts(1);
+        task.setNextRetryAtUtc(clock.instant());
+        task.setCreatedAtUtc(clock.instant());
+        task.setUpdatedAtUtc(clock.instant());
+
+        Mockito.when(taskRepo.claimRunnableIdsForUpdate(any(Instant.class), anyInt()))
+                .thenReturn(List.of(task.getId()));
+        Mockito.when(taskRepo.findByIdForUpdate("t1"))
+                .thenReturn(Optional.of(task));
+
+        FoodLogTaskWorker worker = new FoodLogTaskWorker(
+                taskRepo,
+                logRepo,
+                router,
+                storage,
+                postProcessor,
+                dailySummaryService,
+                txManager,
+                clock,
+                new FoodLogTaskWorkerProperties(),
+                Runnable::run,
+                mock(FoodAnalysisResultCache.class),
+                mock(FoodLogResultNotifier.class),
+                disabledHealthGuard(),
+                mock(FoodLogWorkerStats.class)
+        );
+        worker.runOnce();
+
+        // 清掉 next_retry_at_utc 後下一輪的 due-retry claim 就不會再撿到它
+        assertEquals(FoodLogTaskEntity.TaskStatus.FAILED, task.getTaskStatus());
+        assertNull(task.getNextRetryAtUtc());
+        assertEquals(1, task.getAttempts());
+
+        Mockito.verify(taskRepo).save(task);
+        Mockito.verifyNoInteractions(logRepo);
+        Mockito.verify(router, never()).pickStrict(any());
+    }
+
+    @Test
+    void result_cache_hit_should_complete_task_without_calling_provider() {
+        FoodLogTaskRepository taskRepo = Mockito.mock(FoodLogTaskRepository.class);
+        FoodLogRepository logRepo = Mockito.mock(FoodLogRepository.class);
+        ProviderRouter router = Mockito.mock(ProviderRouter.class);
+        StorageService storage = Mockito.mock(StorageService.class);
+        FoodLogEffectivePostProcessor postProcessor = Mockito.mock(FoodLogEffectivePostProcessor.class);
+        UserDailyNutritionSummaryService dailySummaryService = Mockito.mock(UserDailyNutritionSummaryService.class);
+        FoodAnalysisResultCache resultCache = Mockito.mock(FoodAnalysisResultCache.class);
+        FoodLogResultNotifier resultNotifier = Mockito.mock(FoodLogResultNotifier.class);
+        PlatformTransactionManager txManager = newTxManager();
+
+        FoodLogTaskEntity task = queuedTask();
+        FoodLogEntity log = pendingLog();
+
+        ObjectNode cached = new ObjectMapper().createObjectNode();
+        cached.put("foodName", "Cola");
+        cached.putObject("aiMeta").put("resultFromCache", true);
+
+        Mockito.when(taskRepo.claimRunnableIdsForUpdate(any(Instant.class), anyInt()))
+                .thenReturn(List.of(task.getId()));
+        Mockito.when(taskRepo.findByIdForUpdate("t1")).thenReturn(Optional.of(task));
+        Mockito.when(logRepo.findByIdForUpdate("log1")).thenReturn(Optional.of(log));
+        Mockito.when(resultCache.isEnabled()).thenReturn(true);
+        Mockito.when(resultCache.lookup(log))
+                .thenReturn(Optional.of(new FoodAnalysisResultCache.Hit("GEMINI", cached)));
+
+        FoodLogTaskWorker worker = new FoodLogTaskWorker(
+                taskRepo, logRepo, router, storage, postProcessor, dailySummaryService, txManager, clock,
+                new FoodLogTaskWorkerProperties(), Runnable::run, resultCache, resultNotifier, disabledHealthGuard(), mock(FoodLogWorkerStats.class)
+        );
+        worker.runOnce();
+
+        assertEquals(FoodLogTaskEntity.TaskStatus.SUCCEEDED, task.getTaskStatus());
+        assertEquals(0, task.getAttempts());
+        assertEquals(FoodLogStatus.DRAFT, log.getStatus());
+        assertEquals("Cola", log.getEffective().path("foodName").asText());
+
+        Mockito.verify(router, never()).pickStrict(any());
+        Mockito.verify(resultCache, never()).store(any(), any(), any());
+        Mockito.verify(dailySummaryService).recomputeDay(eq(1L), any());
+        Mockito.verify(resultNotifier).notifyDoneAfterCommit("log1");
+    }
+
+    @Test
+    void result_cache_miss_should_store_post_processed_effective_after_success() throws Exception {
+        FoodLogTaskRepository taskRepo = Mockito.mock(FoodLogTaskRepository.class);
+        FoodLogRepository logRepo = Mockito.mock(FoodLogRepository.class);
+        ProviderRouter router = Mockito.mock(ProviderRouter.class);
+        ProviderClient provider = Mockito.mock(ProviderClient.class);
+        StorageService storage = Mockito.mock(StorageService.class);
+        FoodLogEffectivePostProcessor postProcessor = Mockito.mock(FoodLogEffectivePostProcessor.class);
+        UserDailyNutritionSummaryService dailySummaryService = Mockito.mock(UserDailyNutritionSummaryService.class);
+        FoodAnalysisResultCache resultCache = Mockito.mock(FoodAnalysisResultCache.class);
+        PlatformTransactionManager txManager = newTxManager();
+
+        FoodLogTaskEntity task = queuedTask();
+        FoodLogEntity log = pendingLog();
+
+        ObjectNode raw = new ObjectMapper().createObjectNode();
+        raw.put("foodName", "Ramen");
+        ObjectNode processed = raw.deepCopy();
+        processed.put("processed", true);
+
+        Mockito.when(taskRepo.claimRunnableIdsForUpdate(any(Instant.class), anyInt()))
+                .thenReturn(List.of(task.getId()));
+        Mockito.when(taskRepo.findByIdForUpdate("t1")).thenReturn(Optional.of(task));
+        Mockito.when(logRepo.findByIdForUpdate("log1")).thenReturn(Optional.of(log));
+        Mockito.when(resultCache.isEnabled()).thenReturn(true);
+        Mockito.when(resultCache.lookup(log)).thenReturn(Optional.empty());
+        Mockito.when(router.pickStrict(log)).thenReturn(provider);
+        Mockito.when(provider.process(log, storage)).thenReturn(new ProviderClient.ProviderResult(raw, "GEMINI"));
+        Mockito.when(postProcessor.apply(any(), eq("GEMINI"), eq("PHOTO"))).thenReturn(processed);
+
+        FoodLogTaskWorker worker = new FoodLogTaskWorker(
+                taskRepo, logRepo, router, storage, postProcessor, dailySummaryService, txManager, clock,
+                new FoodLogTaskWorkerProperties(), Runnable::run, resultCache, mock(FoodLogResultNotifier.class), disabledHealthGuard(), mock(FoodLogWorkerStats.class)
+        );
+        worker.runOnce();
+
+        assertEquals(FoodLogTaskEntity.TaskStatus.SUCCEEDED, task.getTaskStatus());
+        Mockito.verify(resultCache).store(log, "GEMINI", processed);
+    }
+
+    private FoodLogTaskEntity queuedTask() {
+        FoodLogTaskEntity task = new FoodLogTaskEntity();
+        task.setId("t1");
+        task.setFoodLogId("log1");
+        task.setTaskStatus(FoodLogTaskEntity.TaskStatus.QUEUED);
+        task.setCreatedAtUtc(clock.instant());
+        task.setUpdatedAtUtc(clock.instant());
+        return task;
+    }
+
+    private static FoodLogEntity pendingLog() {
+        FoodLogEntity log = new FoodLogEntity();
+        log.setId("log1");
+        log.setUserId(1L);
+        log.setMethod("PHOTO");
+        log.setProvider("GEMINI");
+        log.setDegradeLevel("DG-0");
+        log.setImageObjectKey("user-1/blobs/sha256/x.jpg");
+        log.setImageSha256("a".repeat(64));
+        log.setCapturedLocalDate(LocalDate.of(2026, 3, 3));
+        log.setStatus(FoodLogStatus.PENDING);
+        return log;
+    }
+
+    /** health 關閉：admit 一律放行，只受靜態上限限制 */
+    private static ProviderHealthGuard disabledHealthGuard() {
+        return new ProviderHealthGuard(null, new FoodLogTaskWorkerProperties(), null, Clock.systemUTC(), new SimpleMeterRegistry());
+    }
 }
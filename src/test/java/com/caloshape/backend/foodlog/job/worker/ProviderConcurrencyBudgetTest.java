@@ -0,0 +1,66 @@
+package com.caloshape.backend.foodlog.job.worker;
+
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import com.caloshape.backend.foodlog.quota.model.ModelTier;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProviderConcurrencyBudgetTest {
+
+    @Test
+    void provider_limit_should_cap_leases_and_release_on_close() {
+        FoodLogTaskWorkerProperties props = new FoodLogTaskWorkerProperties();
+        props.setProviderMaxInFlight(Map.of("gemini", 2));
+
+        ProviderConcurrencyBudget budget = new ProviderConcurrencyBudget(props);
+
+        ProviderConcurrencyBudget.Lease a = budget.tryAcquire("GEMINI", ModelTier.MODEL_TIER_HIGH);
+        ProviderConcurrencyBudget.Lease b = budget.tryAcquire("GEMINI", ModelTier.MODEL_TIER_LOW);
+        assertNotNull(a);
+        assertNotNull(b);
+        assertNull(budget.tryAcquire("GEMINI", ModelTier.MODEL_TIER_LOW));
+
+        a.close();
+        a.close(); // 重複 close 不可多還名額
+
+        ProviderConcurrencyBudget.Lease c = budget.tryAcquire("GEMINI", ModelTier.MODEL_TIER_HIGH);
+        assertNotNull(c);
+        assertNull(budget.tryAcquire("GEMINI", ModelTier.MODEL_TIER_HIGH));
+    }
+
+    @Test
+    void tier_limit_should_not_consume_provider_slot_when_rejected() {
+        FoodLogTaskWorkerProperties props = new FoodLogTaskWorkerProperties();
+        props.setProviderMaxInFlight(Map.of("GEMINI", 3));
+        props.setTierMaxInFlight(Map.of("MODEL_TIER_HIGH", 1));
+
+        ProviderConcurrencyBudget budget = new ProviderConcurrencyBudget(props);
+
+        assertNotNull(budget.tryAcquire("GEMINI", ModelTier.MODEL_TIER_HIGH));
+        assertNull(budget.tryAcquire("GEMINI", ModelTier.MODEL_TIER_HIGH));
+
+        // HIGH 被擋下時不能吃掉 provider 名額：LOW 仍可拿到剩下 2 個
+        assertNotNull(budget.tryAcquire("GEMINI", ModelTier.MODEL_TIER_LOW));
+        assertNotNull(budget.tryAcquire("GEMINI", ModelTier.MODEL_TIER_LOW));
+        assertNull(budget.tryAcquire("GEMINI", ModelTier.MODEL_TIER_LOW));
+    }
+
+    @Test
+    void slots_should_follow_max_in_flight() {
+        FoodLogTaskWorkerProperties props = new FoodLogTaskWorkerProperties();
+        props.setMaxInFlight(2);
+
+        ProviderConcurrencyBudget budget = new ProviderConcurrencyBudget(props);
+
+        assertTrue(budget.tryAcquireSlot());
+        assertTrue(budget.tryAcquireSlot());
+        assertFalse(budget.tryAcquireSlot());
+        assertEquals(0, budget.availableSlots());
+
+        budget.releaseSlot();
+        assertEquals(1, budget.availableSlots());
+    }
+}
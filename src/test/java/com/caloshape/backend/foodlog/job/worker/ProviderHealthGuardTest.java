@@ -0,0 +1,195 @@
+package com.caloshape.backend.foodlog.job.worker;
+
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import com.caloshape.backend.foodlog.provider.config.AiModelTiersProperties;
+import com.caloshape.backend.foodlog.provider.routing.AiModelTierRouter;
+import com.caloshape.backend.foodlog.quota.model.ModelTier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class ProviderHealthGuardTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-03T00:00:00Z");
+    private static final String KEY = "caloshape-test:foodlog:breaker:GEMINI:gemini-high";
+
+    private StringRedisTemplate redis;
+    private FoodLogTaskWorkerProperties props;
+    private SimpleMeterRegistry registry;
+    private ProviderHealthGuard guard;
+
+    @BeforeEach
+    void setUp() {
+        redis = mock(StringRedisTemplate.class);
+        registry = new SimpleMeterRegistry();
+        props = new FoodLogTaskWorkerProperties();
+        props.setRedisPrefix("caloshape-test:");
+        props.getHealth().setEnabled(true);
+        props.getHealth().setLatencyTarget(Duration.ofSeconds(10));
+        guard = new ProviderHealthGuard(redis, props, router(), Clock.fixed(NOW, ZoneOffset.UTC), registry);
+    }
+
+    @Test
+    void disabled_guard_should_always_admit_without_touching_redis() {
+        props.getHealth().setEnabled(false);
+        guard = new ProviderHealthGuard(redis, props, router(), Clock.fixed(NOW, ZoneOffset.UTC), registry);
+
+        ProviderHealthGuard.Admission a = guard.admit("GEMINI", ModelTier.MODEL_TIER_HIGH, 1);
+        ProviderHealthGuard.Admission b = guard.admit("GEMINI", ModelTier.MODEL_TIER_HIGH, 1);
+
+        assertThat(a.allowed()).isTrue();
+        assertThat(b.allowed()).isTrue();
+        assertThat(guard.onFailure(a, "PROVIDER_RATE_LIMITED")).isNull();
+        verifyNoInteractions(redis);
+    }
+
+    @Test
+    void closed_breaker_should_admit_and_record_success_under_model_key() {
+        stubScript(List.of("PASS"), List.of("COUNTED"));
+
+        ProviderHealthGuard.Admission a = guard.admit("gemini", ModelTier.MODEL_TIER_HIGH, 4);
+        assertThat(a.allowed()).isTrue();
+        assertThat(a.probe()).isFalse();
+
+        guard.onSuccess(a, 1_200L);
+        a.close(); // 已回報過，close 不可再還一次名額
+
+        List<Object[]> args = scriptArgs(2);
+        assertThat(args.get(1)[1]).isEqualTo("1"); // healthy
+        assertThat(args.get(1)[2]).isEqualTo("0"); // not probe
+        assertThat(guard.currentLimit("GEMINI", ModelTier.MODEL_TIER_HIGH)).isEqualTo(4.0);
+        assertThat(registry.get("foodlog.provider.adaptive.inflight").gauge().value()).isZero();
+
+        ArgumentCaptor<List<String>> keys = ArgumentCaptor.forClass(List.class);
+        verify(redis, times(2)).execute(any(RedisScript.class), keys.capture(), any(Object[].class));
+        assertThat(keys.getValue()).containsExactly(KEY);
+    }
+
+    @Test
+    void open_breaker_should_reject_with_retry_at_and_return_adaptive_permit() {
+        Instant openUntil = NOW.plusSeconds(30);
+        stubScript(List.of("OPEN", Long.toString(openUntil.toEpochMilli())));
+
+        ProviderHealthGuard.Admission a = guard.admit("GEMINI", ModelTier.MODEL_TIER_HIGH, 1);
+
+        assertThat(a.allowed()).isFalse();
+        assertThat(a.retryAtOrNull()).isEqualTo(openUntil);
+        assertThat(registry.get("foodlog.provider.adaptive.inflight").gauge().value()).isZero();
+        assertThat(registry.get("foodlog.provider.breaker.admit").tag("result", "open").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void unhealthy_failure_that_opens_breaker_should_return_open_until_and_halve_limit() {
+        Instant openUntil = NOW.plusSeconds(30);
+        stubScript(List.of("PASS"), List.of("OPENED", Long.toString(openUntil.toEpochMilli())));
+
+        ProviderHealthGuard.Admission a = guard.admit("GEMINI", ModelTier.MODEL_TIER_HIGH, 8);
+        Instant deferUntil = guard.onFailure(a, "PROVIDER_UPSTREAM_5XX");
+
+        assertThat(deferUntil).isEqualTo(openUntil);
+        assertThat(guard.currentLimit("GEMINI", ModelTier.MODEL_TIER_HIGH)).isEqualTo(4.0);
+        assertThat(scriptArgs(2).get(1)[1]).isEqualTo("0");
+        assertThat(registry.get("foodlog.provider.breaker.transition").tag("state", "open").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void content_errors_should_count_as_healthy_and_not_defer() {
+        stubScript(List.of("PASS"), List.of("COUNTED"));
+
+        ProviderHealthGuard.Admission a = guard.admit("GEMINI", ModelTier.MODEL_TIER_HIGH, 8);
+
+        assertThat(guard.onFailure(a, "PROVIDER_BAD_RESPONSE")).isNull();
+        assertThat(scriptArgs(2).get(1)[1]).isEqualTo("1");
+        assertThat(guard.currentLimit("GEMINI", ModelTier.MODEL_TIER_HIGH)).isEqualTo(8.0);
+    }
+
+    @Test
+    void adaptive_limit_should_cap_in_flight_and_recover_additively() {
+        stubScript(List.of("PASS"));
+
+        ProviderHealthGuard.Admission first = guard.admit("GEMINI", ModelTier.MODEL_TIER_HIGH, 2);
+        ProviderHealthGuard.Admission second = guard.admit("GEMINI", ModelTier.MODEL_TIER_HIGH, 2);
+        ProviderHealthGuard.Admission third = guard.admit("GEMINI", ModelTier.MODEL_TIER_HIGH, 2);
+
+        assertThat(first.allowed()).isTrue();
+        assertThat(second.allowed()).isTrue();
+        assertThat(third.allowed()).isFalse();
+        assertThat(third.retryAtOrNull()).isNull(); // 只是 limit 滿，不是 breaker
+
+        guard.onFailure(first, "PROVIDER_RATE_LIMITED");
+        assertThat(guard.currentLimit("GEMINI", ModelTier.MODEL_TIER_HIGH)).isEqualTo(1.0);
+        assertThat(guard.admit("GEMINI", ModelTier.MODEL_TIER_HIGH, 2).allowed()).isFalse(); // second 還在跑
+
+        guard.onSuccess(second, 500L);
+        assertThat(guard.currentLimit("GEMINI", ModelTier.MODEL_TIER_HIGH)).isEqualTo(2.0);
+
+        ProviderHealthGuard.Admission slow = guard.admit("GEMINI", ModelTier.MODEL_TIER_HIGH, 2);
+        guard.onSuccess(slow, 30_000L); // 超過 latencyTarget：不加大
+        assertThat(guard.currentLimit("GEMINI", ModelTier.MODEL_TIER_HIGH)).isEqualTo(2.0);
+    }
+
+    @Test
+    void redis_failure_should_fail_open() {
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        ProviderHealthGuard.Admission a = guard.admit("GEMINI", ModelTier.MODEL_TIER_HIGH, 2);
+
+        assertThat(a.allowed()).isTrue();
+        assertThat(guard.onFailure(a, "PROVIDER_TIMEOUT")).isNull();
+        assertThat(guard.currentLimit("GEMINI", ModelTier.MODEL_TIER_HIGH)).isEqualTo(1.0);
+    }
+
+    @Test
+    void max_queue_delay_should_be_measured_from_task_creation() {
+        props.getHealth().setMaxQueueDelay(Duration.ofMinutes(10));
+
+        assertThat(guard.exceedsMaxQueueDelay(NOW, NOW.plusSeconds(599))).isFalse();
+        assertThat(guard.exceedsMaxQueueDelay(NOW, NOW.plusSeconds(601))).isTrue();
+        assertThat(guard.exceedsMaxQueueDelay(null, NOW.plusSeconds(601))).isFalse();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubScript(List<String> first, List<String>... rest) {
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(first, (Object[]) rest);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> scriptArgs(int expectedCalls) {
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(redis, times(expectedCalls)).execute(any(RedisScript.class), anyList(), args.capture());
+        return args.getAllValues();
+    }
+
+    private static AiModelTierRouter router() {
+        AiModelTiersProperties props = new AiModelTiersProperties();
+        props.setModelTiers(Map.of(
+                "MODEL_TIER_HIGH", Map.of("VISION", spec("gemini-high")),
+                "MODEL_TIER_LOW", Map.of("VISION", spec("gemini-low"))
+        ));
+        return new AiModelTierRouter(props);
+    }
+
+    private static AiModelTiersProperties.TierSpec spec(String modelId) {
+        AiModelTiersProperties.TierSpec s = new AiModelTiersProperties.TierSpec();
+        s.setProvider("GEMINI");
+        s.setModelId(modelId);
+        return s;
+    }
+}
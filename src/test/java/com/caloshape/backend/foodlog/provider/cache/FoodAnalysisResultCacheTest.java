@@ -0,0 +1,225 @@
+package com.caloshape.backend.foodlog.provider.cache;
+
+import com.caloshape.backend.foodlog.entity.FoodLogEntity;
+import com.caloshape.backend.foodlog.image.FoodImagePreprocessor;
+import com.caloshape.backend.foodlog.provider.config.AiModelTiersProperties;
+import com.caloshape.backend.foodlog.provider.gemini.config.GeminiProperties;
+import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiRequestBuilder;
+import com.caloshape.backend.foodlog.provider.prompt.GeminiPromptFactory;
+import com.caloshape.backend.foodlog.provider.routing.AiModelTierRouter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class FoodAnalysisResultCacheTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-03T00:00:00Z");
+    private static final String SHA = "b".repeat(64);
+
+    private final ObjectMapper om = new ObjectMapper();
+    private final Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+    private final FoodAnalysisResultCacheRepository repo = mock(FoodAnalysisResultCacheRepository.class);
+    private final GeminiPromptFactory promptFactory = new GeminiPromptFactory();
+    private final FoodImagePreprocessor imagePrep = mock(FoodImagePreprocessor.class);
+
+    @Test
+    void store_then_lookup_should_share_result_across_users() throws Exception {
+        FoodAnalysisResultCache cache = newCache(props(true), "gemini-high");
+
+        ObjectNode eff = om.createObjectNode();
+        eff.put("foodName", "Coca-Cola 330ml");
+        eff.putArray("warnings");
+        eff.putObject("aiMeta").put("resultFromCache", true);
+
+        when(repo.findById(anyString())).thenReturn(Optional.empty());
+        cache.store(log(1L, "PHOTO", "DG-0"), "GEMINI", eff);
+
+        ArgumentCaptor<FoodAnalysisResultCacheEntity> saved = ArgumentCaptor.forClass(FoodAnalysisResultCacheEntity.class);
+        verify(repo).save(saved.capture());
+        FoodAnalysisResultCacheEntity row = saved.getValue();
+        assertEquals(SHA, row.getImageSha256());
+        assertEquals("MODEL_TIER_HIGH", row.getModelTier());
+        assertTrue(row.getPromptVersion().startsWith(promptFactory.promptVersion() + "-"));
+        assertEquals(NOW.plus(Duration.ofDays(30)), row.getExpiresAtUtc());
+        // 上一筆自己是否來自快取，不能被存成共用結果
+        assertFalse(om.readTree(row.getEffectiveText()).path("aiMeta").has("resultFromCache"));
+
+        // 另一個使用者、同一張圖 / method / tier -> 同一個 key
+        when(repo.findById(row.getCacheKey())).thenReturn(Optional.of(row));
+        Optional<FoodAnalysisResultCache.Hit> hit = cache.lookup(log(2L, "PHOTO", "DG-0"));
+
+        assertTrue(hit.isPresent());
+        assertEquals("GEMINI", hit.get().provider());
+        assertEquals("Coca-Cola 330ml", hit.get().effective().path("foodName").asText());
+        assertTrue(hit.get().effective().path("aiMeta").path("resultFromCache").asBoolean());
+        verify(repo).touch(row.getCacheKey(), NOW);
+    }
+
+    @Test
+    void key_should_change_with_model_id_and_image_prep_variant() {
+        when(imagePrep.variantFor(false)).thenReturn("prep-1536q85");
+        String base = newCache(props(true), "gemini-high").keyOf(log(1L, "PHOTO", "DG-0")).cacheKey();
+
+        // 同 tier 換了 modelId：舊結果不共用
+        assertNotEquals(base, newCache(props(true), "gemini-high-v2").keyOf(log(1L, "PHOTO", "DG-0")).cacheKey());
+
+        // 圖片前處理改了長邊 / 品質
+        when(imagePrep.variantFor(false)).thenReturn("prep-1024q85");
+        assertNotEquals(base, newCache(props(true), "gemini-high").keyOf(log(1L, "PHOTO", "DG-0")).cacheKey());
+    }
+
+    @Test
+    void lookup_inside_transaction_should_touch_only_after_commit() throws Exception {
+        FoodAnalysisResultCache cache = newCache(props(true), "gemini-high");
+        FoodAnalysisResultCache.Key key = cache.keyOf(log(1L, "PHOTO", "DG-0"));
+
+        FoodAnalysisResultCacheEntity row = new FoodAnalysisResultCacheEntity();
+        row.setProvider("GEMINI");
+        row.setEffectiveText("{\"foodName\":\"x\"}");
+        row.setExpiresAtUtc(NOW.plusSeconds(60));
+        when(repo.findById(key.cacheKey())).thenReturn(Optional.of(row));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertTrue(cache.lookup(log(2L, "PHOTO", "DG-0")).isPresent());
+            verify(repo, never()).touch(anyString(), any());
+
+            doThrow(new IllegalStateException("db down")).when(repo).touch(anyString(), any());
+            for (TransactionSynchronization sync : TransactionSynchronizationManager.getSynchronizations()) {
+                sync.afterCommit(); // 失敗只記 log，不影響已經完成的任務
+            }
+            verify(repo).touch(key.cacheKey(), NOW);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void key_should_differ_by_method_tier_and_skip_non_gemini_or_disabled() {
+        FoodAnalysisResultCache cache = newCache(props(true), "gemini-high");
+
+        String photoHigh = cache.keyOf(log(1L, "PHOTO", "DG-0")).cacheKey();
+        assertNotEquals(photoHigh, cache.keyOf(log(1L, "LABEL", "DG-0")).cacheKey());
+        assertNotEquals(photoHigh, cache.keyOf(log(1L, "PHOTO", "DG-2")).cacheKey());
+
+        FoodLogEntity stub = log(1L, "PHOTO", "DG-0");
+        stub.setProvider("STUB");
+        assertNull(cache.keyOf(stub));
+
+        FoodAnalysisResultCache disabled = newCache(props(false), "gemini-high");
+        assertNull(disabled.keyOf(log(1L, "PHOTO", "DG-0")));
+        assertTrue(disabled.lookup(log(1L, "PHOTO", "DG-0")).isEmpty());
+        verifyNoInteractions(repo);
+    }
+
+    @Test
+    void degraded_results_and_expired_rows_should_not_be_shared() {
+        FoodAnalysisResultCache cache = newCache(props(true), "gemini-high");
+
+        ObjectNode noFood = om.createObjectNode();
+        noFood.putArray("warnings").add("NO_FOOD_DETECTED");
+        cache.store(log(1L, "PHOTO", "DG-0"), "GEMINI", noFood);
+
+        ObjectNode lowConf = om.createObjectNode();
+        lowConf.putArray("warnings").add("LOW_CONFIDENCE");
+        cache.store(log(1L, "PHOTO", "DG-0"), "GEMINI", lowConf);
+
+        ObjectNode degradedMeta = om.createObjectNode();
+        degradedMeta.putObject("healthScoreMeta").put("degraded", true);
+        cache.store(log(1L, "PHOTO", "DG-0"), "GEMINI", degradedMeta);
+
+        verify(repo, never()).save(any());
+
+        FoodAnalysisResultCacheEntity expired = new FoodAnalysisResultCacheEntity();
+        expired.setProvider("GEMINI");
+        expired.setEffectiveText("{\"foodName\":\"x\"}");
+        expired.setExpiresAtUtc(NOW);
+        when(repo.findById(anyString())).thenReturn(Optional.of(expired));
+
+        assertTrue(cache.lookup(log(1L, "PHOTO", "DG-0")).isEmpty());
+        verify(repo, never()).touch(anyString(), any());
+    }
+
+    @Test
+    void purger_should_drop_expired_then_evict_least_recently_used_over_capacity() {
+        FoodAnalysisResultCachePurgerTx tx = mock(FoodAnalysisResultCachePurgerTx.class);
+        when(tx.deleteBatch(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+
+        List<FoodAnalysisResultCacheEntity> expired = List.of(new FoodAnalysisResultCacheEntity());
+        when(repo.findTop1000ByExpiresAtUtcBeforeOrderByExpiresAtUtcAsc(NOW))
+                .thenReturn(expired)
+                .thenReturn(List.of());
+
+        List<FoodAnalysisResultCacheEntity> lru = List.of(
+                new FoodAnalysisResultCacheEntity(),
+                new FoodAnalysisResultCacheEntity(),
+                new FoodAnalysisResultCacheEntity()
+        );
+        when(repo.count()).thenReturn(12L);
+        when(repo.findTop1000ByOrderByLastUsedAtUtcAsc()).thenReturn(lru);
+
+        FoodAnalysisResultCacheProperties props = props(true);
+        props.setMaxEntries(10);
+
+        new FoodAnalysisResultCachePurger(repo, tx, props, clock).purge();
+
+        verify(tx).deleteBatch(expired);
+        // 超出 2 筆：只刪最舊的 2 筆
+        verify(tx).deleteBatch(lru.subList(0, 2));
+    }
+
+    @SuppressWarnings("unchecked")
+    private FoodAnalysisResultCache newCache(FoodAnalysisResultCacheProperties props, String highModelId) {
+        AiModelTiersProperties tiers = new AiModelTiersProperties();
+        Map<String, Map<String, AiModelTiersProperties.TierSpec>> raw = new HashMap<>();
+        raw.put("MODEL_TIER_HIGH", Map.of("VISION", spec(highModelId)));
+        raw.put("MODEL_TIER_LOW", Map.of("VISION", spec("gemini-low")));
+        tiers.setModelTiers(raw);
+
+        ObjectProvider<GeminiRequestBuilder> builder = mock(ObjectProvider.class);
+        when(builder.getIfAvailable()).thenReturn(new GeminiRequestBuilder(om, new GeminiProperties()));
+
+        return new FoodAnalysisResultCache(
+                repo, props, promptFactory, new AiModelTierRouter(tiers), imagePrep, builder, clock);
+    }
+
+    private static AiModelTiersProperties.TierSpec spec(String modelId) {
+        AiModelTiersProperties.TierSpec s = new AiModelTiersProperties.TierSpec();
+        s.setProvider("GEMINI");
+        s.setModelId(modelId);
+        return s;
+    }
+
+    private static FoodAnalysisResultCacheProperties props(boolean enabled) {
+        FoodAnalysisResultCacheProperties props = new FoodAnalysisResultCacheProperties();
+        props.setEnabled(enabled);
+        return props;
+    }
+
+    private static FoodLogEntity log(Long userId, String method, String degradeLevel) {
+        FoodLogEntity e = new FoodLogEntity();
+        e.setUserId(userId);
+        e.setMethod(method);
+        e.setProvider("GEMINI");
+        e.setDegradeLevel(degradeLevel);
+        e.setImageSha256(SHA);
+        return e;
+    }
+}
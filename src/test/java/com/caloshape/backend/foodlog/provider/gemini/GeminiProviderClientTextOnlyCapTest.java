@@ -2,12 +2,15 @@ package com.caloshape.backend.foodlog.provider.gemini;
 
 import com.caloshape.backend.foodlog.provider.routing.AiModelTierRouter;
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
+import com.caloshape.backend.foodlog.image.FoodImagePreprocessor;
+import com.caloshape.backend.foodlog.image.ImagePrepProperties;
 import com.caloshape.backend.foodlog.model.ModelMode;
 import com.caloshape.backend.foodlog.provider.gemini.support.GeminiJsonParsingSupport;
 import com.caloshape.backend.foodlog.provider.gemini.GeminiProviderClient;
 import com.caloshape.backend.foodlog.provider.gemini.config.GeminiProperties;
 import com.caloshape.backend.foodlog.provider.gemini.image.GeminiPhotoAlbumProcessor;
 import com.caloshape.backend.foodlog.provider.prompt.GeminiPromptFactory;
+import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiHedgedCaller;
 import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiRequestBuilder;
 import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiTransportSupport;
 import com.caloshape.backend.foodlog.quota.model.ModelTier;
@@ -127,7 +130,9 @@ class GeminiProviderClientTextOnlyCapTest {
                 promptFactory,
                 om,
                 telemetry,
-                router
+                router,
+                new FoodImagePreprocessor(null, new ImagePrepProperties()),
+                new GeminiHedgedCaller(new GeminiProperties(), router, telemetry)
         );
 
         GeminiProviderClient client = new GeminiProviderClient(List.of(processor));
@@ -160,8 +165,8 @@ class GeminiProviderClientTextOnlyCapTest {
         // ✅ 只打一個 Gemini API call
         wm.verify(1, postRequestedFor(urlPathMatching(pathRegex)));
 
-        // ✅ 只走 vision model，不走 text model
-        verify(router, times(1)).resolveOrThrow(eq(ModelTier.MODEL_TIER_HIGH), eq(ModelMode.VISION));
+        // ✅ 只走 vision model，不走 text model（processor 記 telemetry 與 GeminiHedgedCaller 各解析一次）
+        verify(router, times(2)).resolveOrThrow(eq(ModelTier.MODEL_TIER_HIGH), eq(ModelMode.VISION));
         verify(router, never()).resolveOrThrow(eq(ModelTier.MODEL_TIER_HIGH), eq(ModelMode.TEXT));
         verify(router, never()).resolveOrThrow(eq(ModelTier.MODEL_TIER_LOW), eq(ModelMode.TEXT));
 
@@ -169,6 +174,7 @@ class GeminiProviderClientTextOnlyCapTest {
         verify(providerTelemetry, times(1)).ok(
                 eq("GEMINI"),
                 eq("gemini-vision"),
+                eq("PHOTO"),
                 eq("foodlog-1"),
                 anyLong(),
                 eq(100),
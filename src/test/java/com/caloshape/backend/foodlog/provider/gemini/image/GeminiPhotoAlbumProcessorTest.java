@@ -1,11 +1,17 @@
 package com.caloshape.backend.foodlog.provider.gemini.image;
 
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
+import com.caloshape.backend.foodlog.image.FoodImagePreprocessor;
+import com.caloshape.backend.foodlog.image.ImagePrepProperties;
 import com.caloshape.backend.foodlog.model.ModelMode;
 import com.caloshape.backend.foodlog.provider.gemini.support.GeminiJsonParsingSupport;
+import com.caloshape.backend.foodlog.provider.gemini.config.GeminiProperties;
+import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiHedgedCaller;
+import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiInlineImage;
 import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiTransportSupport;
 import com.caloshape.backend.foodlog.provider.prompt.GeminiPromptFactory;
 import com.caloshape.backend.foodlog.provider.routing.AiModelTierRouter;
+import com.caloshape.backend.foodlog.provider.spi.ProviderCallDeadline;
 import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
 import com.caloshape.backend.foodlog.provider.support.ProviderTelemetry;
 import com.caloshape.backend.foodlog.quota.model.ModelTier;
@@ -20,6 +26,7 @@ import org.junit.jupiter.api.Test;
 import java.io.ByteArrayInputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.time.Duration;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
@@ -53,7 +60,9 @@ class GeminiPhotoAlbumProcessorTest {
                 promptFactory,
                 om,
                 telemetry,
-                modelRouter
+                modelRouter,
+                new FoodImagePreprocessor(null, new ImagePrepProperties()),
+                new GeminiHedgedCaller(new GeminiProperties(), modelRouter, telemetry)
         );
     }
 
@@ -110,8 +119,7 @@ class GeminiPhotoAlbumProcessorTest {
         when(callResult.tok()).thenReturn(tok);
 
         when(transportSupport.callAndExtract(
-                any(byte[].class),
-                anyString(),
+                any(GeminiInlineImage.class),
                 eq("PROMPT"),
                 eq("gemini-vision-test"),
                 eq(false),
@@ -130,13 +138,14 @@ class GeminiPhotoAlbumProcessorTest {
         verify(telemetry).ok(
                 eq("GEMINI"),
                 eq("gemini-vision-test"),
+                eq("PHOTO"),
                 eq("foodlog-1"),
                 anyLong(),
                 eq(100),
                 eq(50),
                 eq(150)
         );
-        verify(telemetry, never()).fail(anyString(), anyString(), anyString(), anyLong(), anyString(), any());
+        verify(telemetry, never()).fail(anyString(), anyString(), anyString(), anyString(), anyLong(), anyString(), any());
     }
 
     @Test
@@ -164,8 +173,7 @@ class GeminiPhotoAlbumProcessorTest {
         when(callResult.tok()).thenReturn(tok);
 
         when(transportSupport.callAndExtract(
-                any(byte[].class),
-                anyString(),
+                any(GeminiInlineImage.class),
                 eq("PROMPT"),
                 eq("gemini-vision-lite"),
                 eq(false),
@@ -201,6 +209,7 @@ class GeminiPhotoAlbumProcessorTest {
         verify(telemetry).ok(
                 eq("GEMINI"),
                 eq("gemini-vision-lite"),
+                eq("ALBUM"),
                 eq("foodlog-2"),
                 anyLong(),
                 eq(10),
@@ -233,7 +242,7 @@ class GeminiPhotoAlbumProcessorTest {
         when(callResult.text()).thenReturn("NOT_JSON");
         when(callResult.tok()).thenReturn(tok);
 
-        when(transportSupport.callAndExtract(any(byte[].class), anyString(), anyString(), anyString(), eq(false), eq("foodlog-3")))
+        when(transportSupport.callAndExtract(any(GeminiInlineImage.class), anyString(), anyString(), eq(false), eq("foodlog-3")))
                 .thenReturn(callResult);
         when(jsonParsingSupport.tryParseJson("NOT_JSON")).thenReturn(null);
 
@@ -278,7 +287,7 @@ class GeminiPhotoAlbumProcessorTest {
         when(callResult.text()).thenReturn(null);
         when(callResult.tok()).thenReturn(tok);
 
-        when(transportSupport.callAndExtract(any(byte[].class), anyString(), anyString(), anyString(), eq(false), eq("foodlog-4")))
+        when(transportSupport.callAndExtract(any(GeminiInlineImage.class), anyString(), anyString(), eq(false), eq("foodlog-4")))
                 .thenReturn(callResult);
 
         ProviderClient.ProviderResult result = processor.process(entity, storage);
@@ -329,7 +338,7 @@ class GeminiPhotoAlbumProcessorTest {
         when(callResult.text()).thenReturn(null);
         when(callResult.tok()).thenReturn(tok);
 
-        when(transportSupport.callAndExtract(any(byte[].class), anyString(), anyString(), anyString(), eq(false), eq("foodlog-5")))
+        when(transportSupport.callAndExtract(any(GeminiInlineImage.class), anyString(), anyString(), eq(false), eq("foodlog-5")))
                 .thenReturn(callResult);
 
         ProviderClient.ProviderResult result = processor.process(entity, storage);
@@ -385,7 +394,7 @@ class GeminiPhotoAlbumProcessorTest {
         when(callResult.text()).thenReturn(null);
         when(callResult.tok()).thenReturn(tok);
 
-        when(transportSupport.callAndExtract(any(byte[].class), anyString(), anyString(), anyString(), eq(false), eq("foodlog-6")))
+        when(transportSupport.callAndExtract(any(GeminiInlineImage.class), anyString(), anyString(), eq(false), eq("foodlog-6")))
                 .thenReturn(callResult);
 
         ProviderClient.ProviderResult result = processor.process(entity, storage);
@@ -398,6 +407,58 @@ class GeminiPhotoAlbumProcessorTest {
         assertThat(effective.get("foodName").isNull()).isTrue();
     }
 
+    @Test
+    @DisplayName("process: HIGH tier 過慢時 hedge 到 LOW tier，telemetry 與 aiMeta 記錄實際回應的 model")
+    void process_should_use_low_tier_hedge_result_when_high_tier_is_slow() throws Exception {
+        FoodLogEntity entity = newEntity("foodlog-h", "PHOTO", "DG-0", "obj/photo-h.jpg", "image/jpeg");
+
+        when(modelRouter.resolveOrThrow(eq(ModelTier.MODEL_TIER_HIGH), eq(ModelMode.VISION)))
+                .thenReturn(new AiModelTierRouter.Resolved("GEMINI", "gemini-high"));
+        when(modelRouter.resolveOrThrow(eq(ModelTier.MODEL_TIER_LOW), eq(ModelMode.VISION)))
+                .thenReturn(new AiModelTierRouter.Resolved("GEMINI", "gemini-low"));
+        when(storage.open("obj/photo-h.jpg").inputStream())
+                .thenAnswer(inv -> new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        when(promptFactory.mainPrompt(false)).thenReturn("PROMPT");
+
+        GeminiTransportSupport.CallResult lowResult = new GeminiTransportSupport.CallResult(
+                new GeminiTransportSupport.Tok(10, 5, 15),
+                "",
+                om.readTree("""
+                        {"foodName":"Rice","quantity":{"value":1,"unit":"BOWL"},
+                         "nutrients":{"kcal":200,"protein":4,"fat":0.5,"carbs":44,"fiber":0.6,"sugar":0,"sodium":2},
+                         "confidence":0.8}
+                        """)
+        );
+        when(transportSupport.callAndExtract(any(GeminiInlineImage.class), eq("PROMPT"), eq("gemini-high"), eq(false), eq("foodlog-h")))
+                .thenAnswer(inv -> {
+                    Thread.sleep(5_000);
+                    throw new IllegalStateException("should have been cancelled");
+                });
+        when(transportSupport.callAndExtract(any(GeminiInlineImage.class), eq("PROMPT"), eq("gemini-low"), eq(false), eq("foodlog-h")))
+                .thenReturn(lowResult);
+
+        GeminiProperties props = new GeminiProperties();
+        props.getHedge().setEnabled(true);
+        props.getHedge().setInitialDelay(Duration.ofMillis(50));
+        props.getHedge().setMinDelay(Duration.ZERO);
+        GeminiHedgedCaller hedgedCaller = new GeminiHedgedCaller(props, modelRouter, telemetry);
+
+        GeminiPhotoAlbumProcessor hedged = new GeminiPhotoAlbumProcessor(
+                transportSupport, jsonParsingSupport, promptFactory, om, telemetry, modelRouter,
+                new FoodImagePreprocessor(null, new ImagePrepProperties()), hedgedCaller);
+
+        ObjectNode effective;
+        try (ProviderCallDeadline.Scope ignored = ProviderCallDeadline.open(Duration.ofSeconds(3))) {
+            effective = extractEffective(hedged.process(entity, storage));
+        }
+
+        assertThat(effective.get("foodName").asText()).isEqualTo("Rice");
+        assertThat(effective.path("aiMeta").path("hedgeDecision").asText()).isEqualTo("HEDGED_HEDGE_WON");
+        assertThat(effective.path("aiMeta").path("servedModelId").asText()).isEqualTo("gemini-low");
+        verify(telemetry).ok(eq("GEMINI"), eq("gemini-low"), eq("PHOTO"), eq("foodlog-h"), anyLong(), eq(10), eq(5), eq(15));
+        verify(telemetry, never()).fail(anyString(), anyString(), anyString(), anyString(), anyLong(), anyString(), any());
+    }
+
     private static FoodLogEntity newEntity(
             String id,
             String method,
@@ -0,0 +1,266 @@
+package com.caloshape.backend.foodlog.provider.gemini.transport;
+
+import com.caloshape.backend.foodlog.model.ModelMode;
+import com.caloshape.backend.foodlog.provider.config.AiModelTiersProperties;
+import com.caloshape.backend.foodlog.provider.gemini.config.GeminiProperties;
+import com.caloshape.backend.foodlog.provider.routing.AiModelTierRouter;
+import com.caloshape.backend.foodlog.provider.spi.ProviderCallDeadline;
+import com.caloshape.backend.foodlog.provider.spi.ProviderHedgeGate;
+import com.caloshape.backend.foodlog.provider.support.ProviderErrorMapper;
+import com.caloshape.backend.foodlog.provider.support.ProviderTelemetry;
+import com.caloshape.backend.foodlog.quota.model.ModelTier;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class GeminiHedgedCallerTest {
+
+    private static final String HIGH = "gemini-high";
+    private static final String LOW = "gemini-low";
+
+    private final ProviderTelemetry telemetry = mock(ProviderTelemetry.class);
+    private final List<String> calledModels = new CopyOnWriteArrayList<>();
+    private GeminiHedgedCaller caller;
+
+    @AfterEach
+    void tearDown() {
+        if (caller != null) caller.shutdown();
+    }
+
+    @Test
+    void fast_primary_should_not_hedge_nor_touch_ai_meta() throws Exception {
+        caller = newCaller(hedge(Duration.ofMillis(200), 0.1, 5));
+
+        GeminiHedgedCaller.Outcome<String> out = caller.call(
+                ModelTier.MODEL_TIER_HIGH, ModelMode.VISION, "log-1", this::respondImmediately, s -> true);
+
+        assertThat(out.decision()).isEqualTo(GeminiHedgedCaller.Decision.NOT_NEEDED);
+        assertThat(out.modelId()).isEqualTo(HIGH);
+        assertThat(calledModels).containsExactly(HIGH);
+
+        ObjectNode eff = JsonNodeFactory.instance.objectNode();
+        out.annotate(eff);
+        assertThat(eff.has("aiMeta")).isFalse();
+    }
+
+    @Test
+    void slow_primary_should_be_hedged_to_low_tier_and_cancelled_when_hedge_wins() throws Exception {
+        caller = newCaller(hedge(Duration.ofMillis(50), 0.1, 5));
+        CountDownLatch primaryInterrupted = new CountDownLatch(1);
+
+        GeminiHedgedCaller.Outcome<String> out = caller.call(
+                ModelTier.MODEL_TIER_HIGH, ModelMode.VISION, "log-1",
+                modelId -> {
+                    calledModels.add(modelId);
+                    if (HIGH.equals(modelId)) {
+                        try {
+                            Thread.sleep(5_000);
+                        } catch (InterruptedException e) {
+                            primaryInterrupted.countDown();
+                            throw e;
+                        }
+                    }
+                    return "from-" + modelId;
+                },
+                s -> true);
+
+        assertThat(out.decision()).isEqualTo(GeminiHedgedCaller.Decision.HEDGED_HEDGE_WON);
+        assertThat(out.value()).isEqualTo("from-" + LOW);
+        assertThat(out.tier()).isEqualTo(ModelTier.MODEL_TIER_LOW);
+        assertThat(calledModels).containsExactly(HIGH, LOW);
+        assertThat(primaryInterrupted.await(2, TimeUnit.SECONDS)).isTrue();
+
+        ObjectNode eff = JsonNodeFactory.instance.objectNode();
+        out.annotate(eff);
+        assertThat(eff.path("aiMeta").path("hedgeDecision").asText()).isEqualTo("HEDGED_HEDGE_WON");
+        assertThat(eff.path("aiMeta").path("servedModelTier").asText()).isEqualTo("MODEL_TIER_LOW");
+        assertThat(eff.path("aiMeta").path("servedModelId").asText()).isEqualTo(LOW);
+        assertThat(eff.path("aiMeta").path("hedgeAfterMs").asLong()).isEqualTo(50L);
+
+        verify(telemetry).hedge(eq("GEMINI"), eq("log-1"), eq("HEDGED_HEDGE_WON"), eq(HIGH), eq(LOW), eq(50L), anyLong());
+    }
+
+    @Test
+    void unusable_hedge_result_should_wait_for_primary() throws Exception {
+        caller = newCaller(hedge(Duration.ofMillis(50), 0.1, 5));
+
+        GeminiHedgedCaller.Outcome<String> out = caller.call(
+                ModelTier.MODEL_TIER_HIGH, ModelMode.VISION, "log-1",
+                modelId -> {
+                    if (HIGH.equals(modelId)) Thread.sleep(300);
+                    return HIGH.equals(modelId) ? "{\"ok\":true}" : "not json";
+                },
+                s -> s.startsWith("{"));
+
+        assertThat(out.decision()).isEqualTo(GeminiHedgedCaller.Decision.HEDGED_PRIMARY_WON);
+        assertThat(out.modelId()).isEqualTo(HIGH);
+        assertThat(out.value()).isEqualTo("{\"ok\":true}");
+    }
+
+    @Test
+    void deadline_should_cancel_and_map_to_provider_timeout() {
+        caller = newCaller(hedge(Duration.ofSeconds(5), 0.1, 5));
+
+        try (ProviderCallDeadline.Scope ignored = ProviderCallDeadline.open(Duration.ofMillis(100))) {
+            assertThatThrownBy(() -> caller.call(
+                    ModelTier.MODEL_TIER_HIGH, ModelMode.VISION, "log-1",
+                    modelId -> {
+                        Thread.sleep(5_000);
+                        return "late";
+                    },
+                    s -> true))
+                    .isInstanceOf(TimeoutException.class)
+                    .satisfies(ex -> assertThat(ProviderErrorMapper.map(ex).code()).isEqualTo("PROVIDER_TIMEOUT"));
+        }
+        assertThat(ProviderCallDeadline.currentOrNull()).isNull();
+    }
+
+    @Test
+    void low_tier_request_should_never_hedge() throws Exception {
+        caller = newCaller(hedge(Duration.ofMillis(10), 0.1, 5));
+
+        try (ProviderCallDeadline.Scope ignored = ProviderCallDeadline.open(Duration.ofSeconds(5))) {
+            GeminiHedgedCaller.Outcome<String> out = caller.call(
+                    ModelTier.MODEL_TIER_LOW, ModelMode.VISION, "log-1",
+                    modelId -> {
+                        calledModels.add(modelId);
+                        Thread.sleep(100);
+                        return "ok";
+                    },
+                    s -> true);
+
+            assertThat(out.decision()).isEqualTo(GeminiHedgedCaller.Decision.NOT_ELIGIBLE);
+        }
+        assertThat(calledModels).containsExactly(LOW);
+    }
+
+    @Test
+    void exhausted_budget_should_skip_hedge_and_wait_for_primary() throws Exception {
+        caller = newCaller(hedge(Duration.ofMillis(20), 0.0, 1));
+        GeminiHedgedCaller.Attempt<String> slowPrimary = modelId -> {
+            calledModels.add(modelId);
+            if (HIGH.equals(modelId)) Thread.sleep(150);
+            return "from-" + modelId;
+        };
+
+        GeminiHedgedCaller.Outcome<String> first = caller.call(
+                ModelTier.MODEL_TIER_HIGH, ModelMode.VISION, "log-1", slowPrimary, s -> true);
+        GeminiHedgedCaller.Outcome<String> second = caller.call(
+                ModelTier.MODEL_TIER_HIGH, ModelMode.VISION, "log-2", slowPrimary, s -> true);
+
+        assertThat(first.decision()).isEqualTo(GeminiHedgedCaller.Decision.HEDGED_HEDGE_WON);
+        assertThat(second.decision()).isEqualTo(GeminiHedgedCaller.Decision.SKIPPED_BUDGET);
+        assertThat(second.modelId()).isEqualTo(HIGH);
+        assertThat(calledModels).containsExactly(HIGH, LOW, HIGH);
+    }
+
+    @Test
+    void no_provider_capacity_should_skip_hedge_without_spending_budget() throws Exception {
+        caller = newCaller(hedge(Duration.ofMillis(20), 0.0, 1));
+        GeminiHedgedCaller.Attempt<String> slowPrimary = modelId -> {
+            calledModels.add(modelId);
+            if (HIGH.equals(modelId)) Thread.sleep(150);
+            return "from-" + modelId;
+        };
+        ProviderHedgeGate.Permit permit = mock(ProviderHedgeGate.Permit.class);
+        List<ProviderHedgeGate.Permit> grants = new ArrayList<>();
+        grants.add(null);   // 第一發：LOW tier 已滿
+        grants.add(permit);
+
+        GeminiHedgedCaller.Outcome<String> full;
+        GeminiHedgedCaller.Outcome<String> granted;
+        try (ProviderHedgeGate.Scope ignored = ProviderHedgeGate.open(tier -> {
+            assertThat(tier).isEqualTo(ModelTier.MODEL_TIER_LOW);
+            return grants.remove(0);
+        })) {
+            full = caller.call(ModelTier.MODEL_TIER_HIGH, ModelMode.VISION, "log-1", slowPrimary, s -> true);
+            granted = caller.call(ModelTier.MODEL_TIER_HIGH, ModelMode.VISION, "log-2", slowPrimary, s -> true);
+        }
+
+        assertThat(full.decision()).isEqualTo(GeminiHedgedCaller.Decision.SKIPPED_CAPACITY);
+        assertThat(full.modelId()).isEqualTo(HIGH);
+        // 沒送出的 hedge 不扣 budget：burst = 1 的下一發仍可 hedge
+        assertThat(granted.decision()).isEqualTo(GeminiHedgedCaller.Decision.HEDGED_HEDGE_WON);
+        assertThat(calledModels).containsExactly(HIGH, HIGH, LOW);
+        verify(telemetry).hedge(eq("GEMINI"), eq("log-1"), eq("SKIPPED_CAPACITY"), eq(HIGH), eq(LOW), eq(20L), anyLong());
+
+        verify(permit).onSuccess(anyLong());
+        verify(permit, never()).onFailure(any());
+        verify(permit).close();
+        assertThat(ProviderHedgeGate.currentOrNull()).isNull();
+    }
+
+    @Test
+    void hedge_delay_should_follow_learned_percentile_within_bounds() {
+        GeminiProperties.Hedge h = hedge(Duration.ofSeconds(8), 0.1, 5);
+        h.setMinDelay(Duration.ofSeconds(1));
+        h.setMaxDelay(Duration.ofSeconds(10));
+        caller = newCaller(h);
+
+        assertThat(caller.hedgeDelayMs(HIGH)).isEqualTo(8_000L);
+
+        for (int i = 1; i <= 100; i++) {
+            caller.recordLatency(HIGH, i * 50L); // 50ms ~ 5000ms
+        }
+        assertThat(caller.hedgeDelayMs(HIGH)).isEqualTo(4_750L);
+
+        for (int i = 0; i < 200; i++) {
+            caller.recordLatency(HIGH, 100L);
+        }
+        assertThat(caller.hedgeDelayMs(HIGH)).isEqualTo(1_000L);
+    }
+
+    private String respondImmediately(String modelId) {
+        calledModels.add(modelId);
+        return "from-" + modelId;
+    }
+
+    private GeminiHedgedCaller newCaller(GeminiProperties.Hedge hedge) {
+        GeminiProperties props = new GeminiProperties();
+        props.setHedge(hedge);
+        return new GeminiHedgedCaller(props, router(), telemetry);
+    }
+
+    private static GeminiProperties.Hedge hedge(Duration initialDelay, double budgetRatio, double budgetBurst) {
+        GeminiProperties.Hedge h = new GeminiProperties.Hedge();
+        h.setEnabled(true);
+        h.setInitialDelay(initialDelay);
+        h.setMinDelay(Duration.ZERO);
+        h.setMaxDelay(Duration.ofSeconds(30));
+        h.setBudgetRatio(budgetRatio);
+        h.setBudgetBurst(budgetBurst);
+        return h;
+    }
+
+    private static AiModelTierRouter router() {
+        AiModelTiersProperties props = new AiModelTiersProperties();
+        Map<String, Map<String, AiModelTiersProperties.TierSpec>> tiers = new HashMap<>();
+        tiers.put("MODEL_TIER_HIGH", Map.of("VISION", spec(HIGH)));
+        tiers.put("MODEL_TIER_LOW", Map.of("VISION", spec(LOW)));
+        props.setModelTiers(tiers);
+        return new AiModelTierRouter(props);
+    }
+
+    private static AiModelTiersProperties.TierSpec spec(String modelId) {
+        AiModelTiersProperties.TierSpec s = new AiModelTiersProperties.TierSpec();
+        s.setProvider("GEMINI");
+        s.setModelId(modelId);
+        return s;
+    }
+}
@@ -0,0 +1,138 @@
+package com.caloshape.backend.foodlog.provider.gemini.transport;
+
+import com.caloshape.backend.foodlog.provider.gemini.config.GeminiProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class GeminiTransportSupportStreamingTest {
+
+    @RegisterExtension
+    static WireMockExtension wm = WireMockExtension.newInstance()
+            .options(wireMockConfig().dynamicPort())
+            .build();
+
+    private final ObjectMapper om = new ObjectMapper();
+
+    @Test
+    void image_should_be_streamed_as_base64_into_request_body() throws Exception {
+        wm.stubFor(post(urlPathMatching("/v1beta/models/.*:generateContent"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("""
+                        {"candidates":[{"content":{"parts":[{"text":"{}"}]},"finishReason":"STOP"}],
+                         "usageMetadata":{"promptTokenCount":1,"candidatesTokenCount":2,"totalTokenCount":3}}
+                        """)));
+
+        int size = 3 * 1024 * 1024 + 1;
+        GeminiTransportSupport transport = newTransport();
+
+        GeminiTransportSupport.CallResult result;
+        try (GeminiInlineImage image = GeminiInlineImage.open(new PatternInputStream(size), null)) {
+            assertEquals("image/jpeg", image.mimeType());
+            result = transport.callAndExtract(image, "PROMPT", "gemini-vision", false, "foodlog-1");
+        }
+
+        assertEquals(3, result.tok().totalTok());
+
+        List<LoggedRequest> requests = wm.findAll(postRequestedFor(urlPathMatching("/v1beta/models/.*")));
+        assertEquals(1, requests.size());
+        LoggedRequest req = requests.get(0);
+
+        // 長度未知 -> chunked，代表 body 是邊寫邊送而不是先組好整包
+        assertEquals("chunked", req.getHeader("Transfer-Encoding"));
+
+        JsonNode body = om.readTree(req.getBodyAsString());
+        JsonNode inline = body.path("contents").get(0).path("parts").get(1).path("inlineData");
+        assertEquals("image/jpeg", inline.path("mimeType").asText());
+        assertEquals("PROMPT", body.path("contents").get(0).path("parts").get(0).path("text").asText());
+
+        byte[] decoded = Base64.getDecoder().decode(inline.path("data").asText());
+        assertEquals(size, decoded.length);
+        assertArrayEquals(sha256(new PatternInputStream(size)), MessageDigest.getInstance("SHA-256").digest(decoded));
+    }
+
+    @Test
+    void open_should_sniff_mime_without_consuming_stream_and_detect_empty() throws Exception {
+        byte[] png = {(byte) 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A, 1, 2, 3};
+        try (GeminiInlineImage image = GeminiInlineImage.open(new ByteArrayInputStream(png), " ")) {
+            assertFalse(image.isEmpty());
+            assertEquals("image/png", image.mimeType());
+
+            String json = om.writeValueAsString(om.createObjectNode().putPOJO("data", image));
+            assertEquals(Base64.getEncoder().encodeToString(png), om.readTree(json).path("data").asText());
+
+            // 串流只能讀一次
+            assertThrows(Exception.class, () -> om.writeValueAsString(om.createObjectNode().putPOJO("data", image)));
+        }
+
+        try (GeminiInlineImage empty = GeminiInlineImage.open(new ByteArrayInputStream(new byte[0]), "image/jpg")) {
+            assertTrue(empty.isEmpty());
+            assertEquals("image/jpeg", empty.mimeType());
+        }
+    }
+
+    private GeminiTransportSupport newTransport() {
+        GeminiProperties props = mock(GeminiProperties.class);
+        when(props.getApiKey()).thenReturn("TEST_API_KEY");
+        when(props.getPhotoAlbum()).thenReturn(new GeminiProperties.RequestTuning(1024, 0.0));
+        when(props.getLabelJson()).thenReturn(new GeminiProperties.RequestTuning(2048, 0.0));
+
+        RestClient http = RestClient.builder()
+                .baseUrl(wm.getRuntimeInfo().getHttpBaseUrl())
+                .requestFactory(new SimpleClientHttpRequestFactory())
+                .build();
+
+        return new GeminiTransportSupport(http, props, new GeminiRequestBuilder(om, props));
+    }
+
+    private static byte[] sha256(InputStream in) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            md.update(buf, 0, n);
+        }
+        return md.digest();
+    }
+
+    /** 不落在 heap 的假圖片：JPEG 檔頭 + 可重現的 pattern */
+    private static final class PatternInputStream extends InputStream {
+        private final int size;
+        private int pos;
+
+        PatternInputStream(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            if (pos >= size) {
+                return -1;
+            }
+            int i = pos++;
+            return switch (i) {
+                case 0 -> 0xFF;
+                case 1 -> 0xD8;
+                case 2 -> 0xFF;
+                default -> (i * 31 + (i >>> 8)) & 0xFF;
+            };
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package com.caloshape.backend.foodlog.provider.gemini.label;
 
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
+import com.caloshape.backend.foodlog.image.FoodImagePreprocessor;
+import com.caloshape.backend.foodlog.image.ImagePrepProperties;
 import com.caloshape.backend.foodlog.provider.gemini.config.GeminiProperties;
 import com.caloshape.backend.foodlog.provider.gemini.support.GeminiJsonParsingSupport;
+import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiHedgedCaller;
+import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiInlineImage;
 import com.caloshape.backend.foodlog.provider.gemini.transport.GeminiTransportSupport;
 import com.caloshape.backend.foodlog.provider.prompt.GeminiPromptFactory;
 import com.caloshape.backend.foodlog.provider.routing.AiModelTierRouter;
@@ -109,8 +113,7 @@ class GeminiLabelProcessorTest {
         when(callResult.tok()).thenReturn(tok);
 
         when(transportSupport.callAndExtract(
-                any(byte[].class),
-                any(),
+                any(GeminiInlineImage.class),
                 any(),
                 eq("gemini-label-test"),
                 anyBoolean(),
@@ -141,6 +144,7 @@ class GeminiLabelProcessorTest {
         verify(telemetry).ok(
                 eq("GEMINI"),
                 eq("gemini-label-test"),
+                eq("LABEL"),
                 eq("label-log-1"),
                 anyLong(),
                 eq(100),
@@ -172,8 +176,7 @@ class GeminiLabelProcessorTest {
         when(callResult.tok()).thenReturn(tok);
 
         when(transportSupport.callAndExtract(
-                any(byte[].class),
-                any(),
+                any(GeminiInlineImage.class),
                 any(),
                 eq("gemini-label-test"),
                 anyBoolean(),
@@ -230,8 +233,7 @@ class GeminiLabelProcessorTest {
         when(callResult.tok()).thenReturn(tok);
 
         when(transportSupport.callAndExtract(
-                any(byte[].class),
-                any(),
+                any(GeminiInlineImage.class),
                 any(),
                 eq("gemini-label-test"),
                 anyBoolean(),
@@ -285,8 +287,7 @@ class GeminiLabelProcessorTest {
         when(callResult.tok()).thenReturn(tok);
 
         when(transportSupport.callAndExtract(
-                any(byte[].class),
-                any(),
+                any(GeminiInlineImage.class),
                 any(),
                 eq("gemini-label-test"),
                 anyBoolean(),
@@ -334,6 +335,10 @@ class GeminiLabelProcessorTest {
                     args[i] = new GeminiLabelFallbackSupport(om);
                 } else if (GeminiProperties.class.isAssignableFrom(t)) {
                     args[i] = props;
+                } else if (FoodImagePreprocessor.class.isAssignableFrom(t)) {
+                    args[i] = new FoodImagePreprocessor(null, new ImagePrepProperties());
+                } else if (GeminiHedgedCaller.class.isAssignableFrom(t)) {
+                    args[i] = new GeminiHedgedCaller(props, modelRouter, telemetry);
                 } else if (t == boolean.class) {
                     args[i] = false;
                 } else if (t == byte.class) {
@@ -0,0 +1,119 @@
+package com.caloshape.backend.foodlog.provider.support;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProviderHttpRequestFactoryTest {
+
+    @RegisterExtension
+    static WireMockExtension wm = WireMockExtension.newInstance()
+            .options(wireMockConfig().dynamicPort())
+            .build();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void stub() {
+        wm.stubFor(post(urlPathEqualTo("/echo"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"ok\":true}")));
+    }
+
+    @Test
+    void permit_should_be_held_until_response_close_and_then_returned() throws Exception {
+        ProviderHttpRequestFactory f = newFactory(1, Duration.ofMillis(50), false);
+        URI uri = URI.create(wm.baseUrl() + "/echo");
+        String host = "localhost:" + wm.getPort();
+
+        ClientHttpResponse first = f.createRequest(uri, HttpMethod.POST).execute();
+        assertThat(f.inFlight(host)).isEqualTo(1);
+        assertThat(gauge("provider.http.inflight")).isEqualTo(1.0);
+
+        assertThatThrownBy(() -> f.createRequest(uri, HttpMethod.POST).execute())
+                .hasMessage("PROVIDER_HTTP_POOL_EXHAUSTED")
+                .hasCauseInstanceOf(TimeoutException.class);
+        assertThat(registry.get("provider.http.rejected").counter().count()).isEqualTo(1.0);
+
+        first.close();
+        first.close(); // 重複 close 不可多還 permit
+        assertThat(f.inFlight(host)).isZero();
+        assertThat(gauge("provider.http.max")).isEqualTo(1.0);
+
+        try (ClientHttpResponse again = f.createRequest(uri, HttpMethod.POST).execute()) {
+            assertThat(again.getStatusCode().value()).isEqualTo(200);
+        }
+        assertThat(f.inFlight(host)).isZero();
+    }
+
+    @Test
+    void exhausted_pool_should_map_to_provider_timeout_through_rest_client() throws Exception {
+        ProviderHttpRequestFactory f = newFactory(1, Duration.ZERO, false);
+        RestClient http = RestClient.builder().baseUrl(wm.baseUrl()).requestFactory(f).build();
+
+        try (ClientHttpResponse ignored = f.createRequest(URI.create(wm.baseUrl() + "/echo"), HttpMethod.POST).execute()) {
+            assertThatThrownBy(() -> http.post().uri("/echo").retrieve().body(String.class))
+                    .isInstanceOf(ResourceAccessException.class)
+                    .satisfies(ex -> assertThat(ProviderErrorMapper.map(ex).code()).isEqualTo("PROVIDER_TIMEOUT"));
+        }
+    }
+
+    @Test
+    void gzip_should_compress_streaming_body_without_buffering_it() throws Exception {
+        ProviderHttpRequestFactory f = newFactory(4, Duration.ofSeconds(1), true);
+        RestClient http = RestClient.builder().baseUrl(wm.baseUrl()).requestFactory(f).build();
+
+        String payload = "{\"data\":\"" + "QUJD".repeat(20_000) + "\"}";
+        String resp = http.post()
+                .uri("/echo")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> out.write(payload.getBytes(StandardCharsets.UTF_8)))
+                .retrieve()
+                .body(String.class);
+        assertThat(resp).contains("ok");
+
+        List<LoggedRequest> requests = wm.findAll(postRequestedFor(urlPathEqualTo("/echo")));
+        assertThat(requests).hasSize(1);
+        LoggedRequest req = requests.get(0);
+        assertThat(req.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(req.getHeader("Transfer-Encoding")).isEqualTo("chunked");
+        assertThat(req.getBodyAsString()).isEqualTo(payload); // WireMock 依 Content-Encoding 解壓後記錄
+        assertThat(f.inFlight("localhost:" + wm.getPort())).isZero();
+    }
+
+    private ProviderHttpRequestFactory newFactory(int max, Duration acquireTimeout, boolean gzip) {
+        return new ProviderHttpRequestFactory(
+                ProviderHttpRequestFactory.jdk(Duration.ofSeconds(2), Duration.ofSeconds(5), false),
+                "test",
+                max,
+                acquireTimeout,
+                gzip,
+                registry
+        );
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).tag("client", "test").gauge().value();
+    }
+
+}
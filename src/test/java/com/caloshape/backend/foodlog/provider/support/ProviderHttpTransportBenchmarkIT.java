@@ -0,0 +1,203 @@
+package com.caloshape.backend.foodlog.provider.support;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 本機 WireMock（TLS）benchmark：舊 HttpURLConnection vs JDK HttpClient HTTP/1.1 vs HTTP/2。
+ *
+ * - 模擬 Gemini 圖片請求：串流送出 ~256KB base64 body，upstream 固定延遲 25ms
+ * - 16 條並行、每種 transport 先暖身再量測；輸出 p50 / p99 latency 與每次呼叫的 process CPU
+ * - CPU 是整個 JVM（含同 JVM 的 WireMock server），只適合互相比較，不是絕對值
+ *
+ * 手動執行：./mvnw test -Dtest=ProviderHttpTransportBenchmarkIT
+ */
+class ProviderHttpTransportBenchmarkIT {
+
+    private static final int CONCURRENCY = 16;
+    private static final int WARMUP_CALLS = 200;
+    private static final int MEASURED_CALLS = 1_600;
+    private static final byte[] BODY = requestBody(256 * 1024);
+
+    @RegisterExtension
+    static WireMockExtension wm = WireMockExtension.newInstance()
+            .options(wireMockConfig()
+                    .dynamicPort()
+                    .dynamicHttpsPort()
+                    .containerThreads(64)
+                    .disableRequestJournal())
+            .build();
+
+    @Test
+    void compare_transports() throws Exception {
+        wm.stubFor(post(urlPathMatching("/v1beta/models/.*:generateContent"))
+                .willReturn(aResponse()
+                        .withFixedDelay(25)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("""
+                        {"candidates":[{"content":{"parts":[{"text":"{}"}]},"finishReason":"STOP"}],
+                         "usageMetadata":{"promptTokenCount":1,"candidatesTokenCount":2,"totalTokenCount":3}}
+                        """)));
+
+        SSLContext ssl = trustAll();
+        HttpClient h2 = jdkClient(ssl, HttpClient.Version.HTTP_2);
+        assertThat(probeVersion(h2)).isEqualTo(HttpClient.Version.HTTP_2);
+
+        List<Result> results = List.of(
+                run("simple (HttpURLConnection)", simple(ssl)),
+                run("jdk HTTP/1.1", new JdkClientHttpRequestFactory(jdkClient(ssl, HttpClient.Version.HTTP_1_1))),
+                run("jdk HTTP/2", new JdkClientHttpRequestFactory(h2))
+        );
+
+        System.out.printf("%n%-28s %10s %10s %14s%n", "transport", "p50(ms)", "p99(ms)", "cpu/call(us)");
+        for (Result r : results) {
+            System.out.printf("%-28s %10.1f %10.1f %14.0f%n", r.name, r.p50Ms, r.p99Ms, r.cpuMicrosPerCall);
+        }
+    }
+
+    private Result run(String name, ClientHttpRequestFactory transport) throws Exception {
+        ProviderHttpRequestFactory f = new ProviderHttpRequestFactory(
+                transport, "bench", CONCURRENCY, Duration.ofSeconds(10), false, new SimpleMeterRegistry());
+        RestClient http = RestClient.builder()
+                .baseUrl("https://localhost:" + wm.getHttpsPort())
+                .requestFactory(f)
+                .build();
+
+        calls(http, WARMUP_CALLS);
+
+        var os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long cpuStart = os.getProcessCpuTime();
+        long[] latencies = calls(http, MEASURED_CALLS);
+        long cpu = os.getProcessCpuTime() - cpuStart;
+
+        Arrays.sort(latencies);
+        return new Result(
+                name,
+                percentileMs(latencies, 0.50),
+                percentileMs(latencies, 0.99),
+                cpu / 1_000.0 / MEASURED_CALLS
+        );
+    }
+
+    private static long[] calls(RestClient http, int n) throws Exception {
+        long[] latencies = new long[n];
+        try (ExecutorService pool = Executors.newFixedThreadPool(CONCURRENCY)) {
+            List<Future<?>> futures = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int idx = i;
+                futures.add(pool.submit(() -> {
+                    long start = System.nanoTime();
+                    String body = http.post()
+                            .uri("/v1beta/models/{model}:generateContent", "gemini-bench")
+                            .header("x-goog-api-key", "dummy")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(out -> out.write(BODY))
+                            .retrieve()
+                            .body(String.class);
+                    latencies[idx] = System.nanoTime() - start;
+                    assertThat(body).contains("candidates");
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        }
+        return latencies;
+    }
+
+    private static double percentileMs(long[] sorted, double p) {
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))] / 1_000_000.0;
+    }
+
+    private static HttpClient.Version probeVersion(HttpClient hc) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(
+                        URI.create("https://localhost:" + wm.getHttpsPort() + "/v1beta/models/probe:generateContent"))
+                .POST(HttpRequest.BodyPublishers.ofString("{}"))
+                .build();
+        return hc.send(req, HttpResponse.BodyHandlers.discarding()).version();
+    }
+
+    private static HttpClient jdkClient(SSLContext ssl, HttpClient.Version version) {
+        return HttpClient.newBuilder()
+                .version(version)
+                .sslContext(ssl)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    private static SimpleClientHttpRequestFactory simple(SSLContext ssl) {
+        SimpleClientHttpRequestFactory f = new SimpleClientHttpRequestFactory() {
+            @Override
+            protected void prepareConnection(HttpURLConnection connection, String httpMethod) throws java.io.IOException {
+                if (connection instanceof HttpsURLConnection https) {
+                    https.setSSLSocketFactory(ssl.getSocketFactory());
+                    https.setHostnameVerifier((h, s) -> true);
+                }
+                super.prepareConnection(connection, httpMethod);
+            }
+        };
+        f.setConnectTimeout(5_000);
+        f.setReadTimeout(30_000);
+        return f;
+    }
+
+    private static byte[] requestBody(int rawImageBytes) {
+        byte[] img = new byte[rawImageBytes];
+        new SecureRandom(new byte[]{1}).nextBytes(img);
+        String json = "{\"contents\":[{\"parts\":[{\"text\":\"PROMPT\"},{\"inlineData\":{\"mimeType\":\"image/jpeg\",\"data\":\""
+                      + Base64.getEncoder().encodeToString(img) + "\"}}]}]}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** WireMock 自簽憑證：benchmark 用，不驗證書也不驗 hostname */
+    private static SSLContext trustAll() throws Exception {
+        X509ExtendedTrustManager tm = new X509ExtendedTrustManager() {
+            @Override public void checkClientTrusted(X509Certificate[] c, String a, Socket s) { }
+            @Override public void checkServerTrusted(X509Certificate[] c, String a, Socket s) { }
+            @Override public void checkClientTrusted(X509Certificate[] c, String a, SSLEngine e) { }
+            @Override public void checkServerTrusted(X509Certificate[] c, String a, SSLEngine e) { }
+            @Override public void checkClientTrusted(X509Certificate[] c, String a) { }
+            @Override public void checkServerTrusted(X509Certificate[] c, String a) { }
+            @Override public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
+        };
+        SSLContext ctx = SSLContext.getInstance("TLS");
+        ctx.init(null, new X509ExtendedTrustManager[]{tm}, null);
+        return ctx;
+    }
+
+    private record Result(String name, double p50Ms, double p99Ms, double cpuMicrosPerCall) {
+    }
+}
@@ -0,0 +1,62 @@
+package com.caloshape.backend.foodlog.provider.support;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProviderTelemetryTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ProviderTelemetry telemetry = new ProviderTelemetry(registry);
+
+    @Test
+    void ok_should_record_latency_and_tokens_tagged_by_provider_model_method() {
+        telemetry.ok("gemini", "gemini-2.5-flash", "photo", "log-1", 1200L, 300, 50, 350);
+
+        Timer timer = registry.get("foodlog.provider.call")
+                .tag("provider", "GEMINI")
+                .tag("model", "gemini-2.5-flash")
+                .tag("method", "PHOTO")
+                .tag("outcome", "ok")
+                .timer();
+        assertThat(timer.count()).isEqualTo(1);
+        assertThat(timer.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(1200d);
+
+        DistributionSummary prompt = registry.get("foodlog.provider.tokens")
+                .tag("method", "PHOTO")
+                .tag("type", "prompt")
+                .summary();
+        assertThat(prompt.totalAmount()).isEqualTo(300d);
+    }
+
+    @Test
+    void refused_error_code_should_be_tagged_as_refused_outcome() {
+        telemetry.fail("GEMINI", "gemini-2.5-flash", "LABEL", "log-1", 800L, "PROVIDER_REFUSED_SAFETY", null);
+        telemetry.fail("GEMINI", "gemini-2.5-flash", "LABEL", "log-2", 900L, "PROVIDER_TIMEOUT", null);
+
+        assertThat(registry.get("foodlog.provider.call")
+                .tag("outcome", "refused")
+                .tag("error", "PROVIDER_REFUSED_SAFETY")
+                .timer().count()).isEqualTo(1);
+        assertThat(registry.get("foodlog.provider.call")
+                .tag("outcome", "error")
+                .tag("error", "PROVIDER_TIMEOUT")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void legacy_overload_without_method_should_tag_unknown() {
+        telemetry.ok("GEMINI", "log-1", 10L, null, null, null);
+
+        assertThat(registry.get("foodlog.provider.call")
+                .tag("method", "UNKNOWN")
+                .tag("model", "UNKNOWN")
+                .timer().count()).isEqualTo(1);
+        assertThat(registry.find("foodlog.provider.tokens").summary()).isNull();
+    }
+}
@@ -4,9 +4,11 @@ import com.caloshape.backend.foodlog.quota.config.AbuseGuardProperties;
 import com.caloshape.backend.foodlog.quota.entity.UserAiQuotaStateEntity;
 import com.caloshape.backend.foodlog.quota.model.CooldownReason;
 import com.caloshape.backend.foodlog.quota.repo.UserAiQuotaStateRepository;
+import com.caloshape.backend.foodlog.quota.service.RedisQuotaEngine;
 import com.caloshape.backend.foodlog.web.error.CooldownActiveException;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.RedisConnectionFailureException;
 
 import java.time.Duration;
 import java.time.Instant;
@@ -15,6 +17,8 @@ import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowableOfType;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class AbuseGuardTxWriterTest {
@@ -27,7 +31,7 @@ class AbuseGuardTxWriterTest {
         props.setCooldown(Duration.ofMinutes(30));
         props.setForceLow(Duration.ofMinutes(30));
 
-        AbuseGuardTxWriter writer = new AbuseGuardTxWriter(repo, props);
+        AbuseGuardTxWriter writer = new AbuseGuardTxWriter(repo, props, mock(RedisQuotaEngine.class));
 
         when(repo.findForUpdate(1L)).thenReturn(Optional.empty());
 
@@ -71,7 +75,7 @@ class AbuseGuardTxWriterTest {
         props.setCooldown(Duration.ofMinutes(30));
         props.setForceLow(Duration.ofMinutes(30));
 
-        AbuseGuardTxWriter writer = new AbuseGuardTxWriter(repo, props);
+        AbuseGuardTxWriter writer = new AbuseGuardTxWriter(repo, props, mock(RedisQuotaEngine.class));
 
         UserAiQuotaStateEntity existing = new UserAiQuotaStateEntity();
         existing.setUserId(1L);
@@ -119,7 +123,7 @@ class AbuseGuardTxWriterTest {
         props.setCooldown(Duration.ofMinutes(30));
         props.setForceLow(Duration.ofMinutes(30));
 
-        AbuseGuardTxWriter writer = new AbuseGuardTxWriter(repo, props);
+        AbuseGuardTxWriter writer = new AbuseGuardTxWriter(repo, props, mock(RedisQuotaEngine.class));
 
         UserAiQuotaStateEntity existing = new UserAiQuotaStateEntity();
         existing.setUserId(99L);
@@ -150,4 +154,32 @@ class AbuseGuardTxWriterTest {
         assertThat(saved.getNextAllowedAtUtc()).isEqualTo(now.plus(Duration.ofMinutes(30)));
         assertThat(saved.getForceLowUntilUtc()).isEqualTo(now.plus(Duration.ofMinutes(30)));
     }
+
+    @Test
+    void redis_mirror_failure_should_move_mysql_to_new_epoch_and_mark_redis_stale() {
+        UserAiQuotaStateRepository repo = mock(UserAiQuotaStateRepository.class);
+        RedisQuotaEngine redisEngine = mock(RedisQuotaEngine.class);
+        when(redisEngine.isEnabled()).thenReturn(true);
+        when(redisEngine.applyAbuse(eq(1L), any(), any(), any(), any()))
+                .thenThrow(new RedisConnectionFailureException("redis down"));
+
+        AbuseGuardProperties props = new AbuseGuardProperties();
+        props.setCooldown(Duration.ofMinutes(30));
+        props.setForceLow(Duration.ofMinutes(30));
+
+        UserAiQuotaStateEntity existing = new UserAiQuotaStateEntity();
+        existing.setUserId(1L);
+        existing.setStateVersion(5L);
+        when(repo.findForUpdate(1L)).thenReturn(Optional.of(existing));
+        when(repo.save(any(UserAiQuotaStateEntity.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        AbuseGuardTxWriter writer = new AbuseGuardTxWriter(repo, props, redisEngine);
+        catchThrowableOfType(
+                CooldownActiveException.class,
+                () -> writer.triggerAbuseAndThrow(1L, Instant.parse("2026-02-24T12:00:00Z"), ZoneId.of("UTC"))
+        );
+
+        assertThat(existing.getStateVersion()).isEqualTo(1L << 32);
+        verify(redisEngine).markStaleAfterCommit(1L, 1L << 32);
+    }
 }
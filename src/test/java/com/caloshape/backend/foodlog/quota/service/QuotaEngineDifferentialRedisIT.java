@@ -0,0 +1,336 @@
+package com.caloshape.backend.foodlog.quota.service;
+
+import com.caloshape.backend.entitlement.service.EntitlementService;
+import com.caloshape.backend.foodlog.quota.config.AbuseGuardProperties;
+import com.caloshape.backend.foodlog.quota.entity.UserAiQuotaStateEntity;
+import com.caloshape.backend.foodlog.quota.guard.AbuseGuardTxWriter;
+import com.caloshape.backend.foodlog.quota.model.CooldownReason;
+import com.caloshape.backend.foodlog.quota.model.ModelTier;
+import com.caloshape.backend.foodlog.quota.repo.UserAiQuotaStateRepository;
+import com.caloshape.backend.foodlog.web.error.CooldownActiveException;
+import com.caloshape.backend.foodlog.web.error.SubscriptionRequiredException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * JPA engine（row lock）與 Redis engine（Lua）的差分測試：同一組隨機操作序列分別餵給兩邊，
+ * 每一步的結果（tier / 冷卻時間 / 等級 / 原因）必須完全相同，最後寫回 MySQL 的狀態也必須相同。
+ *
+ * 兩邊的呼叫方式都和正式環境一致：consume 在交易內（JPA 丟例外會 rollback），
+ * abuse 走 AbuseGuardTxWriter（REQUIRES_NEW + noRollbackFor）。
+ * 操作包含：跨日 / 跨月 / 換時區 / 換方案、外層交易 rollback、ABUSE、寫回後 Redis key 被清掉（從 MySQL 重新 seed）。
+ *
+ * 參數：-Dquota-diff.seed=... -Dquota-diff.users=40 -Dquota-diff.steps=250（失敗訊息會印出 seed）
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Testcontainers
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class QuotaEngineDifferentialRedisIT {
+
+    @Container
+    static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static final long REDIS_USER_OFFSET = 1_000_000L;
+
+    private static final List<ZoneId> ZONES = List.of(
+            ZoneId.of("UTC"),
+            ZoneId.of("Asia/Taipei"),
+            ZoneId.of("America/Los_Angeles"),
+            ZoneId.of("Pacific/Kiritimati")
+    );
+
+    private static final List<EntitlementService.Tier> TIERS = List.of(
+            EntitlementService.Tier.TRIAL,
+            EntitlementService.Tier.MONTHLY,
+            EntitlementService.Tier.YEARLY,
+            EntitlementService.Tier.NONE
+    );
+
+    private static final List<String> REASONS = List.of("OVER_QUOTA", "ABUSE");
+
+    @Autowired
+    private UserAiQuotaStateRepository repo;
+
+    @Autowired
+    private PlatformTransactionManager txManager;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redis;
+    private String prefix;
+    private TransactionTemplate tx;
+    private TransactionTemplate requiresNew;
+
+    private QuotaStateWriteBehind writeBehind;
+    private QuotaService jpa;
+    private QuotaService redisBacked;
+    private AbuseGuardTxWriter jpaAbuse;
+    private AbuseGuardTxWriter redisAbuse;
+
+    @BeforeEach
+    void setUp() {
+        repo.deleteAll();
+
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getMappedPort(6379)),
+                LettuceClientConfiguration.builder().commandTimeout(Duration.ofSeconds(2)).build()
+        );
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redis = new StringRedisTemplate();
+        redis.setConnectionFactory(connectionFactory);
+        redis.afterPropertiesSet();
+        prefix = "caloshape-quota-diff-" + UUID.randomUUID();
+
+        tx = new TransactionTemplate(txManager);
+        requiresNew = new TransactionTemplate(txManager);
+        requiresNew.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+
+        writeBehind = new QuotaStateWriteBehind(repo, new SimpleMeterRegistry(), Clock.systemUTC());
+        RedisQuotaEngine engine = new RedisQuotaEngine(redis, repo, writeBehind, prefix);
+        ReflectionTestUtils.setField(engine, "engine", "redis");
+        // app.ai.quota.engine 預設 jpa：isEnabled=false，只走 MySQL
+        RedisQuotaEngine jpaOnly = new RedisQuotaEngine(redis, repo, writeBehind, prefix);
+
+        jpa = limits(new QuotaService(repo, null, jpaOnly));
+        redisBacked = limits(new QuotaService(repo, null, engine));
+
+        AbuseGuardProperties abuseProps = new AbuseGuardProperties();
+        abuseProps.setCooldown(Duration.ofMinutes(5));
+        abuseProps.setForceLow(Duration.ofMinutes(15));
+        jpaAbuse = new AbuseGuardTxWriter(repo, abuseProps, jpaOnly);
+        redisAbuse = new AbuseGuardTxWriter(repo, abuseProps, engine);
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void redisEngineMatchesJpaEngineDecisionForDecision() {
+        long seed = Long.getLong("quota-diff.seed", System.nanoTime());
+        int users = Integer.getInteger("quota-diff.users", 40);
+        int steps = Integer.getInteger("quota-diff.steps", 250);
+        Random rnd = new Random(seed);
+
+        int decisions = 0;
+        for (long u = 1; u <= users; u++) {
+            Instant now = Instant.parse("2026-01-30T15:00:00Z").plusSeconds(rnd.nextInt(86_400));
+            ZoneId tz = ZONES.get(rnd.nextInt(ZONES.size()));
+            EntitlementService.Tier tier = TIERS.get(rnd.nextInt(3));
+
+            if (rnd.nextInt(10) < 7) {
+                seedRow(u, rnd, now, tz);
+            }
+
+            for (int step = 0; step < steps; step++) {
+                now = now.plusMillis(advanceMillis(rnd));
+                if (rnd.nextInt(50) == 0) tz = ZONES.get(rnd.nextInt(ZONES.size()));
+                if (rnd.nextInt(60) == 0) tier = TIERS.get(rnd.nextInt(TIERS.size()));
+
+                String at = "seed=%d user=%d step=%d now=%s tz=%s tier=%s".formatted(seed, u, step, now, tz, tier);
+                int action = rnd.nextInt(100);
+
+                if (action < 4) {
+                    assertThat(abuse(redisAbuse, u + REDIS_USER_OFFSET, now, tz))
+                            .as(at + " abuse")
+                            .isEqualTo(abuse(jpaAbuse, u, now, tz));
+                } else if (action < 7) {
+                    // 寫回後 Redis key 消失（TTL / failover）：下次從 MySQL seed
+                    writeBehind.flush();
+                    redis.delete(prefix + ":ai:quota:" + (u + REDIS_USER_OFFSET));
+                } else {
+                    boolean rollback = action < 12;
+                    assertThat(consume(redisBacked, u + REDIS_USER_OFFSET, tier, tz, now, rollback))
+                            .as(at + (rollback ? " consume+rollback" : " consume"))
+                            .isEqualTo(consume(jpa, u, tier, tz, now, rollback));
+                    decisions++;
+                }
+            }
+        }
+
+        writeBehind.flush();
+        for (long u = 1; u <= users; u++) {
+            assertThat(persisted(u + REDIS_USER_OFFSET))
+                    .as("seed=%d user=%d final MySQL state", seed, u)
+                    .isEqualTo(persisted(u));
+        }
+        System.out.printf("quota_diff seed=%d users=%d decisions=%d%n", seed, users, decisions);
+    }
+
+    @Test
+    void concurrentBurstFromOneUserGetsSameDecisionsFromBothEngines() throws Exception {
+        Instant now = Instant.parse("2026-03-03T08:00:00Z");
+        ZoneId tz = ZoneId.of("Asia/Taipei");
+        int requests = 12; // trial：premium 2、total 4
+
+        List<Outcome> fromJpa = burst(jpa, 1L, now, tz, requests);
+        List<Outcome> fromRedis = burst(redisBacked, 1L + REDIS_USER_OFFSET, now, tz, requests);
+
+        assertThat(fromRedis).containsExactlyElementsOf(fromJpa);
+        assertThat(fromJpa).filteredOn(o -> o.tier() == ModelTier.MODEL_TIER_HIGH).hasSize(2);
+        assertThat(fromJpa).filteredOn(o -> o.tier() == ModelTier.MODEL_TIER_LOW).hasSize(2);
+
+        writeBehind.flush();
+        assertThat(persisted(1L + REDIS_USER_OFFSET)).isEqualTo(persisted(1L));
+    }
+
+    /** 一次操作的結果；冷卻的 nextAllowed / 秒數 / 等級 / 原因都要一致 */
+    private record Outcome(String kind, ModelTier tier, Instant nextAllowed, int seconds, int level, CooldownReason reason) {
+
+        static Outcome allowed(ModelTier tier) {
+            return new Outcome("ALLOWED", tier, null, 0, 0, null);
+        }
+
+        static Outcome cooldown(CooldownActiveException e) {
+            return new Outcome("COOLDOWN", null, e.nextAllowedAtUtc(), e.cooldownSeconds(), e.cooldownLevel(), e.cooldownReason());
+        }
+
+        static Outcome subscriptionRequired() {
+            return new Outcome("SUBSCRIPTION_REQUIRED", null, null, 0, 0, null);
+        }
+    }
+
+    /** 寫回後可比較的欄位（不含 version / updatedAt） */
+    private record Persisted(
+            String dailyKey, int dailyCount, String monthlyKey, int monthlyCount,
+            int strikes, Instant nextAllowed, Instant forceLow, String reason
+    ) {}
+
+    private Outcome consume(QuotaService svc, long userId, EntitlementService.Tier tier, ZoneId tz, Instant now, boolean rollback) {
+        try {
+            return tx.execute(status -> {
+                QuotaService.Decision d = svc.consumeOperationOrThrow(userId, tier, tz, now);
+                if (rollback) status.setRollbackOnly();
+                return Outcome.allowed(d.tierUsed());
+            });
+        } catch (CooldownActiveException e) {
+            return Outcome.cooldown(e);
+        } catch (SubscriptionRequiredException e) {
+            return Outcome.subscriptionRequired();
+        }
+    }
+
+    /** 同 AbuseGuardTxWriter 的 @Transactional(REQUIRES_NEW, noRollbackFor = CooldownActiveException) */
+    private Outcome abuse(AbuseGuardTxWriter writer, long userId, Instant now, ZoneId tz) {
+        return requiresNew.execute(status -> {
+            try {
+                writer.triggerAbuseAndThrow(userId, now, tz);
+                throw new IllegalStateException("abuse writer must throw");
+            } catch (CooldownActiveException e) {
+                return Outcome.cooldown(e);
+            }
+        });
+    }
+
+    private List<Outcome> burst(QuotaService svc, long userId, Instant now, ZoneId tz, int requests) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<Outcome>> calls = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            calls.add(() -> {
+                start.await();
+                return consume(svc, userId, EntitlementService.Tier.TRIAL, tz, now, false);
+            });
+        }
+
+        List<Outcome> out = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(requests)) {
+            List<Future<Outcome>> futures = new ArrayList<>();
+            for (Callable<Outcome> c : calls) futures.add(pool.submit(c));
+            start.countDown();
+            for (Future<Outcome> f : futures) out.add(f.get());
+        }
+        // 並發下誰先誰後不固定，比較的是結果的多重集合
+        out.sort(Comparator.comparing(Outcome::toString));
+        return out;
+    }
+
+    /** 同一組初始狀態寫給兩邊（涵蓋舊週期、冷卻中 / 已過期、forceLow、各種 reason） */
+    private void seedRow(long u, Random rnd, Instant now, ZoneId tz) {
+        Instant base = now.minus(Duration.ofHours(rnd.nextBoolean() ? 0 : 30));
+        int dailyCount = rnd.nextInt(6);
+        int monthlyCount = rnd.nextInt(9);
+        int strikes = rnd.nextInt(4);
+        Instant next = rnd.nextInt(3) == 0 ? now.plusSeconds(rnd.nextInt(1_800) - 600) : null;
+        Instant forceLow = rnd.nextInt(4) == 0 ? now.plusSeconds(rnd.nextInt(1_800) - 600) : null;
+        String reason = rnd.nextInt(3) == 0 ? null : REASONS.get(rnd.nextInt(REASONS.size()));
+
+        for (long id : new long[]{u, u + REDIS_USER_OFFSET}) {
+            UserAiQuotaStateEntity s = new UserAiQuotaStateEntity();
+            s.setUserId(id);
+            s.setDailyKey(QuotaService.dayKey(base, tz));
+            s.setDailyCount(dailyCount);
+            s.setMonthlyKey(QuotaService.monthKey(base.minus(Duration.ofDays(rnd.nextInt(4) == 0 ? 31 : 0)), tz));
+            s.setMonthlyCount(monthlyCount);
+            s.setCooldownStrikes(strikes);
+            s.setNextAllowedAtUtc(next);
+            s.setForceLowUntilUtc(forceLow);
+            s.setCooldownReason(reason);
+            repo.saveAndFlush(s);
+        }
+    }
+
+    private Persisted persisted(long userId) {
+        UserAiQuotaStateEntity s = repo.findById(userId).orElse(null);
+        if (s == null) return null;
+        return new Persisted(
+                s.getDailyKey(), s.getDailyCount(), s.getMonthlyKey(), s.getMonthlyCount(),
+                s.getCooldownStrikes(), s.getNextAllowedAtUtc(), s.getForceLowUntilUtc(), s.getCooldownReason()
+        );
+    }
+
+    /** 多數是連續上傳（秒級），偶爾等過冷卻（分鐘級）或隔天 / 隔週 */
+    private static long advanceMillis(Random rnd) {
+        int r = rnd.nextInt(100);
+        if (r < 70) return 1 + rnd.nextInt(90_000);
+        if (r < 95) return Duration.ofMinutes(5 + rnd.nextInt(40)).toMillis();
+        return Duration.ofHours(6 + rnd.nextInt(24 * 9)).toMillis();
+    }
+
+    private static QuotaService limits(QuotaService svc) {
+        ReflectionTestUtils.setField(svc, "cooldownStepMinutes", 10);
+        ReflectionTestUtils.setField(svc, "maxCooldownMinutes", 30);
+        ReflectionTestUtils.setField(svc, "trialPremiumLimit", 2);
+        ReflectionTestUtils.setField(svc, "trialTotalLimit", 4);
+        ReflectionTestUtils.setField(svc, "paidPremiumLimit", 3);
+        ReflectionTestUtils.setField(svc, "paidTotalLimit", 6);
+        return svc;
+    }
+}
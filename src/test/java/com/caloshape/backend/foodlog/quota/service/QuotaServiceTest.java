@@ -8,6 +8,7 @@ import com.caloshape.backend.foodlog.quota.repo.UserAiQuotaStateRepository;
 import com.caloshape.backend.foodlog.web.error.CooldownActiveException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.Instant;
@@ -17,6 +18,7 @@ import java.util.Optional;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class QuotaServiceTest {
@@ -29,7 +31,7 @@ class QuotaServiceTest {
     void setUp() {
         repo = mock(UserAiQuotaStateRepository.class);
         entitlementService = mock(EntitlementService.class);
-        service = new QuotaService(repo, entitlementService);
+        service = new QuotaService(repo, entitlementService, mock(RedisQuotaEngine.class));
 
         ReflectionTestUtils.setField(service, "cooldownStepMinutes", 10);
         ReflectionTestUtils.setField(service, "maxCooldownMinutes", 30);
@@ -102,6 +104,38 @@ class QuotaServiceTest {
         )).isInstanceOf(CooldownActiveException.class);
     }
 
+    @Test
+    void consumeOperationOrThrow_should_fall_back_to_row_lock_when_redis_engine_is_unavailable() {
+        RedisQuotaEngine redisEngine = mock(RedisQuotaEngine.class);
+        when(redisEngine.isEnabled()).thenReturn(true);
+        when(redisEngine.consume(eq(1L), any(), any(), any()))
+                .thenThrow(new RedisConnectionFailureException("redis down"));
+        service = new QuotaService(repo, entitlementService, redisEngine);
+        ReflectionTestUtils.setField(service, "trialPremiumLimit", 2);
+        ReflectionTestUtils.setField(service, "trialTotalLimit", 3);
+
+        UserAiQuotaStateEntity s = newState();
+        s.setDailyKey("2026-03-03@UTC");
+        s.setMonthlyKey("2026-03@UTC");
+        when(repo.findForUpdate(1L)).thenReturn(Optional.of(s));
+        when(repo.save(any(UserAiQuotaStateEntity.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        QuotaService.Decision d = service.consumeOperationOrThrow(
+                1L,
+                EntitlementService.Tier.TRIAL,
+                ZoneId.of("UTC"),
+                Instant.parse("2026-03-03T00:00:00Z")
+        );
+
+        assertThat(d.tierUsed()).isEqualTo(ModelTier.MODEL_TIER_HIGH);
+        assertThat(s.getDailyCount()).isEqualTo(1);
+        verify(repo).findForUpdate(1L);
+
+        // MySQL 進到新 epoch：Redis 恢復後舊狀態不能蓋掉這次扣量
+        assertThat(s.getStateVersion()).isEqualTo(1L << 32);
+        verify(redisEngine).markStaleAfterCommit(1L, 1L << 32);
+    }
+
     private static UserAiQuotaStateEntity newState() {
         UserAiQuotaStateEntity s = new UserAiQuotaStateEntity();
         s.setUserId(1L);
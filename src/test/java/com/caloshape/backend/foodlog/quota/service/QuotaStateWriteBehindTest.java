@@ -0,0 +1,103 @@
+package com.caloshape.backend.foodlog.quota.service;
+
+import com.caloshape.backend.foodlog.quota.entity.UserAiQuotaStateEntity;
+import com.caloshape.backend.foodlog.quota.model.QuotaStateSnapshot;
+import com.caloshape.backend.foodlog.quota.repo.UserAiQuotaStateRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class QuotaStateWriteBehindTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-03T00:00:00Z");
+
+    private UserAiQuotaStateRepository repo;
+    private QuotaStateWriteBehind writeBehind;
+
+    @BeforeEach
+    void setUp() {
+        repo = mock(UserAiQuotaStateRepository.class);
+        writeBehind = new QuotaStateWriteBehind(repo, new SimpleMeterRegistry(), Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void flush_should_write_only_the_newest_snapshot_per_user() {
+        when(repo.applySnapshotIfNewer(anyLong(), any(), anyInt(), any(), anyInt(), anyInt(), any(), any(), any(), anyLong(), any()))
+                .thenReturn(1);
+
+        writeBehind.enqueue(snapshot(1L, 5, 2));
+        writeBehind.enqueue(snapshot(1L, 4, 1)); // 較舊的版本晚到
+        writeBehind.enqueue(snapshot(2L, 1, 1));
+        writeBehind.flush();
+
+        verify(repo).applySnapshotIfNewer(eq(1L), any(), eq(2), any(), anyInt(), anyInt(), any(), any(), any(), eq(5L), eq(NOW));
+        verify(repo).applySnapshotIfNewer(eq(2L), any(), eq(1), any(), anyInt(), anyInt(), any(), any(), any(), eq(1L), eq(NOW));
+        assertThat(writeBehind.pendingCount()).isZero();
+    }
+
+    @Test
+    void flush_should_insert_when_row_does_not_exist_yet() {
+        when(repo.applySnapshotIfNewer(anyLong(), any(), anyInt(), any(), anyInt(), anyInt(), any(), any(), any(), anyLong(), any()))
+                .thenReturn(0);
+        when(repo.findStateVersion(1L)).thenReturn(Optional.empty());
+
+        writeBehind.enqueue(snapshot(1L, 3, 2));
+        writeBehind.flush();
+
+        ArgumentCaptor<UserAiQuotaStateEntity> saved = ArgumentCaptor.forClass(UserAiQuotaStateEntity.class);
+        verify(repo).saveAndFlush(saved.capture());
+        assertThat(saved.getValue().getDailyCount()).isEqualTo(2);
+        assertThat(saved.getValue().getStateVersion()).isEqualTo(3L);
+    }
+
+    @Test
+    void flush_should_keep_snapshot_for_next_round_when_mysql_fails() {
+        when(repo.applySnapshotIfNewer(anyLong(), any(), anyInt(), any(), anyInt(), anyInt(), any(), any(), any(), anyLong(), any()))
+                .thenThrow(new QueryTimeoutException("db down"))
+                .thenReturn(1);
+
+        writeBehind.enqueue(snapshot(1L, 3, 2));
+        writeBehind.flush();
+        assertThat(writeBehind.pendingCount()).isEqualTo(1);
+
+        writeBehind.flush();
+        assertThat(writeBehind.pendingCount()).isZero();
+        verify(repo, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void rejected_snapshot_from_older_epoch_should_require_reseed() {
+        when(repo.applySnapshotIfNewer(anyLong(), any(), anyInt(), any(), anyInt(), anyInt(), any(), any(), any(), anyLong(), any()))
+                .thenReturn(0);
+        // Redis 不可用期間 JPA 路徑扣過量：MySQL 在 epoch 1
+        when(repo.findStateVersion(1L)).thenReturn(Optional.of((1L << 32) + 2));
+        when(repo.findStateVersion(2L)).thenReturn(Optional.of(9L));
+
+        writeBehind.enqueue(snapshot(1L, 7, 3));
+        writeBehind.enqueue(snapshot(2L, 8, 3)); // 同 epoch、只是晚到
+        writeBehind.flush();
+
+        assertThat(writeBehind.reseedFloor(1L)).isEqualTo(1L << 32);
+        assertThat(writeBehind.reseedFloor(2L)).isZero();
+        verify(repo, never()).saveAndFlush(any());
+
+        writeBehind.reseedDone(1L, 1L << 32);
+        assertThat(writeBehind.reseedFloor(1L)).isZero();
+    }
+
+    private static QuotaStateSnapshot snapshot(Long userId, long version, int dailyCount) {
+        return new QuotaStateSnapshot(
+                userId, "2026-03-03@UTC", dailyCount, "2026-03@UTC", 0, 0, null, null, null, version);
+    }
+}
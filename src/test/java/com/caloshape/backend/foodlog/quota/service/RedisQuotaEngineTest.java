@@ -0,0 +1,189 @@
+package com.caloshape.backend.foodlog.quota.service;
+
+import com.caloshape.backend.foodlog.quota.entity.UserAiQuotaStateEntity;
+import com.caloshape.backend.foodlog.quota.model.CooldownReason;
+import com.caloshape.backend.foodlog.quota.model.ModelTier;
+import com.caloshape.backend.foodlog.quota.model.QuotaStateSnapshot;
+import com.caloshape.backend.foodlog.quota.repo.UserAiQuotaStateRepository;
+import com.caloshape.backend.foodlog.web.error.CooldownActiveException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.data.Index.atIndex;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class RedisQuotaEngineTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-03T00:00:00Z");
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    private static final RedisQuotaEngine.Limits TRIAL = new RedisQuotaEngine.Limits(true, 2, 3, 10, 30);
+
+    private StringRedisTemplate redis;
+    private UserAiQuotaStateRepository repo;
+    private QuotaStateWriteBehind writeBehind;
+    private RedisQuotaEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        redis = mock(StringRedisTemplate.class);
+        repo = mock(UserAiQuotaStateRepository.class);
+        writeBehind = mock(QuotaStateWriteBehind.class);
+        engine = new RedisQuotaEngine(redis, repo, writeBehind, "caloshape-test:");
+        ReflectionTestUtils.setField(engine, "engine", "redis");
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void consume_should_seed_from_mysql_row_when_redis_key_is_missing() {
+        UserAiQuotaStateEntity row = new UserAiQuotaStateEntity();
+        row.setUserId(1L);
+        row.setDailyKey("2026-03-03@UTC");
+        row.setDailyCount(1);
+        row.setMonthlyKey("2026-03@UTC");
+        row.setMonthlyCount(7);
+        row.setForceLowUntilUtc(NOW.plusNanos(1_500_000)); // 1.5ms → 進位成 2ms
+        row.setStateVersion(41);
+        when(repo.findById(1L)).thenReturn(Optional.of(row));
+
+        stubScript(List.of("MISS"), okReply("HIGH", 42));
+
+        assertThat(engine.consume(1L, TRIAL, UTC, NOW)).isEqualTo(ModelTier.MODEL_TIER_HIGH);
+
+        List<Object[]> calls = scriptArgs(2);
+        assertThat(calls.get(0)).hasSize(8).contains("0", atIndex(7));
+        assertThat(calls.get(1)).hasSize(17);
+        assertThat(List.of(calls.get(1)).subList(7, 17)).containsExactly(
+                "1", "2026-03-03@UTC", "1", "2026-03@UTC", "7", "0", "",
+                Long.toString(NOW.toEpochMilli() + 2), "", "41"
+        );
+        verify(writeBehind).enqueue(any(QuotaStateSnapshot.class));
+    }
+
+    @Test
+    void consume_should_map_cooldown_reply_without_touching_mysql() {
+        Instant next = NOW.plusSeconds(125);
+        stubScript(List.of("COOLDOWN", Long.toString(next.toEpochMilli()), "0", "ABUSE"));
+
+        assertThatThrownBy(() -> engine.consume(1L, TRIAL, UTC, NOW))
+                .isInstanceOfSatisfying(CooldownActiveException.class, ex -> {
+                    assertThat(ex.nextAllowedAtUtc()).isEqualTo(next);
+                    assertThat(ex.cooldownSeconds()).isEqualTo(125);
+                    assertThat(ex.cooldownLevel()).isEqualTo(1);
+                    assertThat(ex.cooldownReason()).isEqualTo(CooldownReason.ABUSE);
+                });
+
+        verifyNoInteractions(repo);
+        verify(writeBehind, never()).enqueue(any());
+    }
+
+    @Test
+    void consume_should_turn_over_reply_into_stepped_over_quota_cooldown() {
+        stubScript(List.of("OVER", "2"));
+
+        assertThatThrownBy(() -> engine.consume(1L, TRIAL, UTC, NOW))
+                .isInstanceOfSatisfying(CooldownActiveException.class, ex -> {
+                    assertThat(ex.nextAllowedAtUtc()).isEqualTo(NOW.plusSeconds(20 * 60));
+                    assertThat(ex.cooldownLevel()).isEqualTo(2);
+                    assertThat(ex.cooldownReason()).isEqualTo(CooldownReason.OVER_QUOTA);
+                });
+        verify(writeBehind, never()).enqueue(any());
+    }
+
+    @Test
+    void consume_should_write_back_after_commit_and_refund_after_rollback() {
+        stubScript(okReply("LOW", 8), okReply("HIGH", 9), refundReply(10));
+        TransactionSynchronizationManager.initSynchronization();
+
+        engine.consume(1L, TRIAL, UTC, NOW);
+        engine.consume(1L, TRIAL, UTC, NOW);
+        List<TransactionSynchronization> syncs = TransactionSynchronizationManager.getSynchronizations();
+        assertThat(syncs).hasSize(2);
+        verify(writeBehind, never()).enqueue(any());
+
+        syncs.get(0).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        syncs.get(1).afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        List<Object[]> calls = scriptArgs(3);
+        // REFUND：扣量後 version、扣量前 8 欄、計數欄位、週期欄位、週期 key、TTL
+        assertThat(List.of(calls.get(2)).subList(0, 1)).containsExactly("9");
+        assertThat(List.of(calls.get(2)).subList(9, 12)).containsExactly("dc", "dk", "2026-03-03@UTC");
+
+        ArgumentCaptor<QuotaStateSnapshot> written = ArgumentCaptor.forClass(QuotaStateSnapshot.class);
+        verify(writeBehind, times(2)).enqueue(written.capture());
+        assertThat(written.getAllValues()).extracting(QuotaStateSnapshot::version).containsExactly(8L, 10L);
+    }
+
+    @Test
+    void consume_should_drop_stale_redis_state_before_running_script_when_reseed_is_required() {
+        when(writeBehind.reseedFloor(1L)).thenReturn(1L << 32);
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(1L)
+                .thenReturn(List.of("MISS"))
+                .thenReturn(okReply("HIGH", (1L << 32) + 1));
+        when(repo.findById(1L)).thenReturn(Optional.empty());
+
+        assertThat(engine.consume(1L, TRIAL, UTC, NOW)).isEqualTo(ModelTier.MODEL_TIER_HIGH);
+
+        List<Object[]> calls = scriptArgs(3);
+        assertThat(calls.get(0)).containsExactly(Long.toString(1L << 32));
+        verify(writeBehind).reseedDone(1L, 1L << 32);
+    }
+
+    @Test
+    void applyAbuse_should_return_null_when_user_has_no_redis_state() {
+        stubScript(List.of("MISS"));
+
+        assertThat(engine.applyAbuse(1L, UTC, NOW, Duration.ofMinutes(30), Duration.ofMinutes(30)))
+                .isNull();
+        verify(writeBehind, never()).enqueue(any());
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    private void stubScript(List<String> first, List<String>... rest) {
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(first, (Object[]) rest);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> scriptArgs(int expectedCalls) {
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(redis, times(expectedCalls)).execute(any(RedisScript.class), anyList(), args.capture());
+        return args.getAllValues();
+    }
+
+    /** {'OK', tier, 寫入後 dk dc mk mc st na fl cr v, 寫入前 dk dc mk mc st na fl cr} */
+    private static List<String> okReply(String tier, long version) {
+        List<String> r = new ArrayList<>(List.of("OK", tier));
+        r.addAll(List.of("2026-03-03@UTC", "2", "2026-03@UTC", "0", "0", "", "", "", Long.toString(version)));
+        r.addAll(List.of("2026-03-03@UTC", "1", "2026-03@UTC", "0", "0", "", "", ""));
+        return r;
+    }
+
+    private static List<String> refundReply(long version) {
+        return List.of("OK", "2026-03-03@UTC", "1", "2026-03@UTC", "0", "0", "", "", "", Long.toString(version));
+    }
+}
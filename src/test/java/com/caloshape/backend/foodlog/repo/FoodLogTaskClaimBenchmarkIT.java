@@ -0,0 +1,202 @@
+package com.caloshape.backend.foodlog.repo;
+
+import com.caloshape.backend.config.database.V1__CaloshapeSchemaBaseline;
+import com.caloshape.backend.config.database.V2__HashStoredAuthTokens;
+import com.caloshape.backend.config.database.V3__FoodLogTaskClaimIndexes;
+import com.caloshape.backend.config.database.V6__FoodLogTaskQueueIndexRetryAt;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * food_log_tasks claim 的延遲 vs 表大小。
+ * 終態列（SUCCEEDED / FAILED 已放棄）越堆越多時，QUEUED claim 應維持走 idx_food_log_tasks_queue、延遲大致持平。
+ * 預設只跑小規模；完整量測：-Dfoodlog.claim-bench.sizes=10000,1000000,5000000
+ */
+@Testcontainers
+class FoodLogTaskClaimBenchmarkIT {
+
+    private static final String DATABASE = "caloshape_claim_bench";
+    private static final int QUEUED_ROWS = 200;
+    private static final int CLAIM_LIMIT = 10;
+    private static final int ROUNDS = 50;
+
+    @Container
+    static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0")
+            .withDatabaseName("caloshape_admin")
+            .withUsername("root")
+            .withPassword("root");
+
+    @Test
+    void queuedClaimStaysOnQueueIndexAsTerminalRowsGrow() throws Exception {
+        createDatabase();
+        Flyway.configure()
+                .dataSource(jdbcUrl(), MYSQL.getUsername(), MYSQL.getPassword())
+                .cleanDisabled(true)
+                .javaMigrations(
+                        new V1__CaloshapeSchemaBaseline(),
+                        new V2__HashStoredAuthTokens(),
+                        new V3__FoodLogTaskClaimIndexes(),
+                        new V6__FoodLogTaskQueueIndexRetryAt()
+                )
+                .load()
+                .migrate();
+
+        List<Long> p50Micros = new ArrayList<>();
+        try (Connection connection = connection()) {
+            seedQueued(connection);
+            long terminalRows = 0;
+            for (long target : sizes()) {
+                terminalRows = growTerminalRows(connection, terminalRows, target);
+                analyze(connection);
+
+                assertThat(explainKey(connection)).isEqualTo("idx_food_log_tasks_queue");
+
+                long p50 = claimP50Micros(connection);
+                p50Micros.add(p50);
+                System.out.printf("food_log_tasks claim terminalRows=%d p50=%dus%n", terminalRows, p50);
+            }
+        }
+
+        // 走索引時 claim 只掃 LIMIT 筆：表長大幾百倍，延遲不應跟著線性成長
+        long smallest = Math.max(p50Micros.get(0), 200L);
+        assertThat(p50Micros.get(p50Micros.size() - 1)).isLessThan(smallest * 10);
+    }
+
+    private static long[] sizes() {
+        String raw = System.getProperty("foodlog.claim-bench.sizes", "10000,200000");
+        return Arrays.stream(raw.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .mapToLong(Long::parseLong)
+                .sorted()
+                .toArray();
+    }
+
+    private static void seedQueued(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+            statement.execute("""
+                    INSERT INTO food_log_tasks (id, food_log_id, task_status, created_at_utc)
+                    WITH RECURSIVE seq (n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM seq WHERE n < %d)
+                    SELECT UUID(), UUID(), 'QUEUED', NOW(6) - INTERVAL n SECOND FROM seq
+                    """.formatted(QUEUED_ROWS));
+            statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+        }
+    }
+
+    /**
+     * 以 INSERT ... SELECT 倍增終態列直到 target（FK 檢查關閉，只量 claim 本身）。
+     */
+    private static long growTerminalRows(Connection connection, long current, long target) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+            if (current == 0 && target > 0) {
+                statement.execute("""
+                        INSERT INTO food_log_tasks (id, food_log_id, task_status, attempts, created_at_utc)
+                        VALUES (UUID(), UUID(), 'SUCCEEDED', 1, NOW(6) - INTERVAL 30 DAY)
+                        """);
+                current = 1;
+            }
+            while (current < target) {
+                long batch = Math.min(current, target - current);
+                statement.execute("""
+                        INSERT INTO food_log_tasks (id, food_log_id, task_status, attempts, created_at_utc)
+                        SELECT UUID(), UUID(),
+                               IF(RAND() < 0.9, 'SUCCEEDED', 'FAILED'),
+                               1,
+                               NOW(6) - INTERVAL 30 DAY + INTERVAL FLOOR(RAND() * 86400) SECOND
+                        FROM food_log_tasks
+                        WHERE task_status IN ('SUCCEEDED', 'FAILED')
+                        LIMIT %d
+                        """.formatted(batch));
+                current += batch;
+            }
+            statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+        }
+        return current;
+    }
+
+    private static void analyze(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE TABLE food_log_tasks");
+        }
+    }
+
+    private static String explainKey(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("EXPLAIN " + claimSql())) {
+            bindClaim(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertThat(rs.next()).isTrue();
+                return rs.getString("key");
+            }
+        }
+    }
+
+    private static long claimP50Micros(Connection connection) throws SQLException {
+        long[] samples = new long[ROUNDS];
+        connection.setAutoCommit(false);
+        try (PreparedStatement ps = connection.prepareStatement(claimSql())) {
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                bindClaim(ps);
+                int claimed = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        claimed++;
+                    }
+                }
+                samples[i] = (System.nanoTime() - start) / 1_000L;
+                connection.rollback();
+                assertThat(claimed).isEqualTo(CLAIM_LIMIT);
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        Arrays.sort(samples);
+        return samples[ROUNDS / 2];
+    }
+
+    private static String claimSql() {
+        return FoodLogTaskRepository.CLAIM_QUEUED_SQL.replace(":now", "?").replace(":limit", "?");
+    }
+
+    private static void bindClaim(PreparedStatement ps) throws SQLException {
+        ps.setTimestamp(1, Timestamp.from(Instant.now()));
+        ps.setInt(2, CLAIM_LIMIT);
+    }
+
+    private static void createDatabase() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(
+                MYSQL.getJdbcUrl(),
+                MYSQL.getUsername(),
+                MYSQL.getPassword()
+        ); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE DATABASE IF NOT EXISTS " + DATABASE);
+        }
+    }
+
+    private static Connection connection() throws SQLException {
+        return DriverManager.getConnection(jdbcUrl(), MYSQL.getUsername(), MYSQL.getPassword());
+    }
+
+    private static String jdbcUrl() {
+        return MYSQL.getJdbcUrl().replace("/caloshape_admin", "/" + DATABASE);
+    }
+}
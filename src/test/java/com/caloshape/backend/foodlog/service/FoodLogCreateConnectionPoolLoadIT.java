@@ -0,0 +1,210 @@
+package com.caloshape.backend.foodlog.service;
+
+import com.caloshape.backend.entitlement.service.EntitlementService;
+import com.caloshape.backend.foodlog.dto.FoodLogEnvelope;
+import com.caloshape.backend.foodlog.entity.FoodLogEntity;
+import com.caloshape.backend.foodlog.job.worker.FoodLogTaskWakeup;
+import com.caloshape.backend.foodlog.model.FoodLogMethod;
+import com.caloshape.backend.foodlog.model.FoodLogStatus;
+import com.caloshape.backend.foodlog.model.TimeSource;
+import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
+import com.caloshape.backend.foodlog.quota.guard.AbuseGuardService;
+import com.caloshape.backend.foodlog.quota.service.QuotaService;
+import com.caloshape.backend.foodlog.repo.FoodLogRepository;
+import com.caloshape.backend.foodlog.repo.FoodLogTaskRepository;
+import com.caloshape.backend.foodlog.service.barcode.FoodLogBarcodeService;
+import com.caloshape.backend.foodlog.service.command.FoodLogRetryService;
+import com.caloshape.backend.foodlog.service.image.FoodLogImageAccessService;
+import com.caloshape.backend.foodlog.service.limiter.UserInFlightLimiter;
+import com.caloshape.backend.foodlog.service.limiter.UserRateLimiter;
+import com.caloshape.backend.foodlog.service.query.FoodLogQueryService;
+import com.caloshape.backend.foodlog.service.request.IdempotencyService;
+import com.caloshape.backend.foodlog.service.support.FoodLogCreateSupport;
+import com.caloshape.backend.foodlog.service.support.FoodLogEnvelopeAssembler;
+import com.caloshape.backend.foodlog.storage.StorageService;
+import com.caloshape.backend.foodlog.time.CapturedTimeResolver;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 很多慢速上傳同時進來時 Hikari pool 的狀況：
+ * - legacy：整個 createAlbum 包在交易內（原本方法上的 @Transactional），上傳期間佔住連線
+ * - staged：只有 dedupe / quota / insert 這段拿連線
+ * DB 用 H2（不需要 Docker），upload 以 sleep 模擬慢速行動網路；其餘依賴皆為 mock。
+ * 參數：-Dfoodlog.pool-load.uploads=64 -Dfoodlog.pool-load.upload-ms=400
+ */
+class FoodLogCreateConnectionPoolLoadIT {
+
+    private static final int POOL_SIZE = 4;
+    private static final Instant NOW = Instant.parse("2026-03-03T00:00:00Z");
+
+    @Test
+    void slowUploadsNoLongerSaturateTheConnectionPool() throws Exception {
+        int uploads = Integer.getInteger("foodlog.pool-load.uploads", 32);
+        long uploadMs = Long.getLong("foodlog.pool-load.upload-ms", 300L);
+
+        Result legacy = run(true, uploads, uploadMs);
+        Result staged = run(false, uploads, uploadMs);
+
+        System.out.printf("create pool-load legacy: %s%n", legacy);
+        System.out.printf("create pool-load staged: %s%n", staged);
+
+        assertThat(legacy.connectionTimeouts()).isPositive();
+        assertThat(staged.connectionTimeouts()).isZero();
+        assertThat(staged.succeeded()).isEqualTo(uploads);
+        assertThat(staged.peakWaiting()).isLessThan(legacy.peakWaiting());
+    }
+
+    private Result run(boolean legacyTx, int uploads, long uploadMs) throws Exception {
+        HikariConfig cfg = new HikariConfig();
+        cfg.setJdbcUrl("jdbc:h2:mem:pool-load-" + legacyTx + ";DB_CLOSE_DELAY=-1");
+        cfg.setMaximumPoolSize(POOL_SIZE);
+        cfg.setConnectionTimeout(uploadMs * 2);
+        cfg.setPoolName("pool-load-" + (legacyTx ? "legacy" : "staged"));
+
+        try (HikariDataSource ds = new HikariDataSource(cfg)) {
+            TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(ds));
+            FoodLogService svc = newService(ds, tx, uploadMs);
+
+            AtomicInteger succeeded = new AtomicInteger();
+            AtomicInteger timeouts = new AtomicInteger();
+            AtomicInteger peakWaiting = new AtomicInteger();
+            AtomicInteger peakActive = new AtomicInteger();
+
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+
+            Thread sampler = Thread.ofVirtual().start(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    peakWaiting.accumulateAndGet(ds.getHikariPoolMXBean().getThreadsAwaitingConnection(), Math::max);
+                    peakActive.accumulateAndGet(ds.getHikariPoolMXBean().getActiveConnections(), Math::max);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+
+            try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < uploads; i++) {
+                    String requestId = "rid-" + i;
+                    futures.add(pool.submit(() -> {
+                        go.await();
+                        try {
+                            MockMultipartFile file = new MockMultipartFile("file", "a.jpg", "image/jpeg", new byte[]{1});
+                            if (legacyTx) {
+                                tx.execute(status -> {
+                                    try {
+                                        return svc.createAlbum(1L, "UTC", "dev-1", file, requestId);
+                                    } catch (Exception ex) {
+                                        throw new IllegalStateException(ex);
+                                    }
+                                });
+                            } else {
+                                svc.createAlbum(1L, "UTC", "dev-1", file, requestId);
+                            }
+                            succeeded.incrementAndGet();
+                        } catch (CannotCreateTransactionException ex) {
+                            timeouts.incrementAndGet();
+                        }
+                        return null;
+                    }));
+                }
+                go.countDown();
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+            } finally {
+                sampler.interrupt();
+            }
+
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000L;
+            return new Result(succeeded.get(), timeouts.get(), peakActive.get(), peakWaiting.get(), elapsedMs);
+        }
+    }
+
+    private static FoodLogService newService(HikariDataSource ds, TransactionTemplate tx, long uploadMs) throws Exception {
+        ProviderClient providerClient = mock(ProviderClient.class);
+        FoodLogRepository repo = mock(FoodLogRepository.class);
+        QuotaService quota = mock(QuotaService.class);
+        IdempotencyService idem = mock(IdempotencyService.class);
+        UserInFlightLimiter inFlight = mock(UserInFlightLimiter.class);
+        Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+        EntitlementService entitlementService = mock(EntitlementService.class);
+        FoodLogCreateSupport createSupport = mock(FoodLogCreateSupport.class);
+        FoodLogEnvelopeAssembler envelopeAssembler = mock(FoodLogEnvelopeAssembler.class);
+
+        when(providerClient.providerCode()).thenReturn("GEMINI");
+        when(envelopeAssembler.assemble(any(), any(), anyString())).thenReturn(mock(FoodLogEnvelope.class));
+        when(entitlementService.resolveTier(anyLong(), any())).thenReturn(EntitlementService.Tier.MONTHLY);
+        when(quota.consumeOperationOrThrow(anyLong(), any(), any(), any())).thenReturn(mock(QuotaService.Decision.class));
+
+        when(createSupport.uploadTempImage(anyLong(), anyString(), any())).thenAnswer(inv -> {
+            Thread.sleep(uploadMs);
+            StorageService.SaveResult saved = new StorageService.SaveResult("tmp/" + inv.getArgument(1), "sha-" + inv.getArgument(1), 1L, "image/jpeg");
+            return new FoodLogCreateSupport.UploadTempResult("tmp/" + inv.getArgument(1), null, saved);
+        });
+        when(createSupport.newBaseEntity(anyLong(), any(FoodLogMethod.class), any(), anyString(), any(LocalDate.class),
+                any(), any(TimeSource.class), org.mockito.ArgumentMatchers.anyBoolean())).thenAnswer(inv -> {
+            FoodLogEntity e = new FoodLogEntity();
+            e.setUserId(1L);
+            e.setStatus(FoodLogStatus.PENDING);
+            return e;
+        });
+        when(repo.findFirstByUserIdAndMethodInAndImageSha256AndStatusInOrderByCreatedAtUtcDesc(
+                anyLong(), anyCollection(), anyString(), anyCollection())).thenReturn(Optional.empty());
+
+        // insert：真的在目前交易的連線上跑一條 SQL，legacy 模式下這條連線從上傳開始就被佔住
+        doAnswer(inv -> {
+            Connection c = DataSourceUtils.getConnection(ds);
+            try (Statement st = c.createStatement()) {
+                st.execute("SELECT 1");
+            } finally {
+                DataSourceUtils.releaseConnection(c, ds);
+            }
+            return inv.getArgument(0);
+        }).when(repo).save(any(FoodLogEntity.class));
+
+        return new FoodLogService(
+                providerClient, repo, mock(FoodLogTaskRepository.class), mock(StorageService.class), quota, idem,
+                inFlight, mock(UserRateLimiter.class), clock, mock(CapturedTimeResolver.class),
+                mock(AbuseGuardService.class), entitlementService, envelopeAssembler,
+                mock(FoodLogQueryService.class), mock(FoodLogImageAccessService.class), mock(FoodLogRetryService.class),
+                mock(FoodLogBarcodeService.class), createSupport, mock(FoodLogTaskWakeup.class), mock(UserDailyNutritionSummaryService.class), tx
+        );
+    }
+
+    private record Result(int succeeded, int connectionTimeouts, int peakActive, int peakWaiting, long elapsedMs) {}
+}
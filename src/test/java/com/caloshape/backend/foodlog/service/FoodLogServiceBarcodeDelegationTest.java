@@ -2,6 +2,7 @@ package com.caloshape.backend.foodlog.service;
 
 import com.caloshape.backend.entitlement.service.EntitlementService;
 import com.caloshape.backend.foodlog.dto.FoodLogEnvelope;
+import com.caloshape.backend.foodlog.job.worker.FoodLogTaskWakeup;
 import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
 import com.caloshape.backend.foodlog.quota.guard.AbuseGuardService;
 import com.caloshape.backend.foodlog.quota.service.QuotaService;
@@ -20,6 +21,8 @@ import com.caloshape.backend.foodlog.storage.StorageService;
 import com.caloshape.backend.foodlog.time.CapturedTimeResolver;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Clock;
 import java.time.Instant;
@@ -72,7 +75,9 @@ class FoodLogServiceBarcodeDelegationTest {
                 retryService,
                 barcodeService,
                 createSupport,
-                dailySummaryService
+                mock(FoodLogTaskWakeup.class),
+                dailySummaryService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class))
         );
     }
 
@@ -4,6 +4,7 @@ import com.caloshape.backend.entitlement.service.EntitlementService;
 import com.caloshape.backend.foodlog.dto.FoodLogEnvelope;
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
 import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.job.worker.FoodLogTaskWakeup;
 import com.caloshape.backend.foodlog.model.FoodLogMethod;
 import com.caloshape.backend.foodlog.model.FoodLogStatus;
 import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
@@ -31,6 +32,8 @@ import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.time.Clock;
@@ -86,6 +89,7 @@ class FoodLogServiceCreateEdgeCaseTest {
     @Mock FoodLogRetryService retryService;
     @Mock FoodLogBarcodeService barcodeService;
     @Mock FoodLogCreateSupport createSupport;
+    @Mock FoodLogTaskWakeup taskWakeup;
     @Mock CapturedTimeResolver timeResolver;
     @Mock UserDailyNutritionSummaryService dailySummaryService;
 
@@ -112,7 +116,9 @@ class FoodLogServiceCreateEdgeCaseTest {
                 retryService,
                 barcodeService,
                 createSupport,
-                dailySummaryService
+                taskWakeup,
+                dailySummaryService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class))
         );
     }
 
@@ -1,6 +1,7 @@
 package com.caloshape.backend.foodlog.service;
 
 import com.caloshape.backend.entitlement.service.EntitlementService;
+import com.caloshape.backend.foodlog.job.worker.FoodLogTaskWakeup;
 import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
 import com.caloshape.backend.foodlog.quota.guard.AbuseGuardService;
 import com.caloshape.backend.foodlog.quota.service.QuotaService;
@@ -23,6 +24,8 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.time.Clock;
@@ -54,6 +57,7 @@ class FoodLogServiceCreateGuardInvalidInputTest {
     @Mock FoodLogRetryService retryService;
     @Mock FoodLogBarcodeService barcodeService;
     @Mock FoodLogCreateSupport createSupport;
+    @Mock FoodLogTaskWakeup taskWakeup;
     @Mock CapturedTimeResolver timeResolver;
     @Mock UserDailyNutritionSummaryService dailySummaryService;
 
@@ -80,7 +84,9 @@ class FoodLogServiceCreateGuardInvalidInputTest {
                 retryService,
                 barcodeService,
                 createSupport,
-                dailySummaryService
+                taskWakeup,
+                dailySummaryService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class))
         );
     }
 
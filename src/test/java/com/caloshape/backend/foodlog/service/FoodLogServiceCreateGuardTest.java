@@ -1,6 +1,7 @@
 package com.caloshape.backend.foodlog.service;
 
 import com.caloshape.backend.entitlement.service.EntitlementService;
+import com.caloshape.backend.foodlog.job.worker.FoodLogTaskWakeup;
 import com.caloshape.backend.foodlog.model.FoodLogMethod;
 import com.caloshape.backend.foodlog.model.TimeSource;
 import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
@@ -26,6 +27,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.time.Clock;
@@ -70,6 +73,7 @@ class FoodLogServiceCreateGuardTest {
     @Mock FoodLogRetryService retryService;
     @Mock FoodLogBarcodeService barcodeService;
     @Mock FoodLogCreateSupport createSupport;
+    @Mock FoodLogTaskWakeup taskWakeup;
     @Mock CapturedTimeResolver timeResolver;
     @Mock UserDailyNutritionSummaryService dailySummaryService;
 
@@ -96,7 +100,9 @@ class FoodLogServiceCreateGuardTest {
                 retryService,
                 barcodeService,
                 createSupport,
-                dailySummaryService
+                taskWakeup,
+                dailySummaryService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class))
         );
     }
 
@@ -4,6 +4,7 @@ import com.caloshape.backend.entitlement.service.EntitlementService;
 import com.caloshape.backend.foodlog.dto.FoodLogEnvelope;
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
 import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.job.worker.FoodLogTaskWakeup;
 import com.caloshape.backend.foodlog.model.FoodLogMethod;
 import com.caloshape.backend.foodlog.model.FoodLogStatus;
 import com.caloshape.backend.foodlog.model.TimeSource;
@@ -34,6 +35,8 @@ import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Clock;
 import java.time.Instant;
@@ -103,6 +106,8 @@ public class FoodLogServiceCreateLabelTest {
     @Mock
     FoodLogCreateSupport createSupport;
     @Mock
+    FoodLogTaskWakeup taskWakeup;
+    @Mock
     CapturedTimeResolver timeResolver;
     @Mock
     UserDailyNutritionSummaryService dailySummaryService;
@@ -130,7 +135,9 @@ public class FoodLogServiceCreateLabelTest {
                 retryService,
                 barcodeService,
                 createSupport,
-                dailySummaryService
+                taskWakeup,
+                dailySummaryService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class))
         );
     }
 
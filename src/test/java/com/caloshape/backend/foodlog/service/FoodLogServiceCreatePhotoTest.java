@@ -4,6 +4,7 @@ import com.caloshape.backend.entitlement.service.EntitlementService;
 import com.caloshape.backend.foodlog.dto.FoodLogEnvelope;
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
 import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.job.worker.FoodLogTaskWakeup;
 import com.caloshape.backend.foodlog.model.FoodLogMethod;
 import com.caloshape.backend.foodlog.model.FoodLogStatus;
 import com.caloshape.backend.foodlog.model.TimeSource;
@@ -32,6 +33,8 @@ import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Clock;
 import java.time.Instant;
@@ -82,6 +85,7 @@ class FoodLogServiceCreatePhotoTest {
     @Mock FoodLogRetryService retryService;
     @Mock FoodLogBarcodeService barcodeService;
     @Mock FoodLogCreateSupport createSupport;
+    @Mock FoodLogTaskWakeup taskWakeup;
     @Mock CapturedTimeResolver timeResolver;
     @Mock UserDailyNutritionSummaryService dailySummaryService;
 
@@ -108,7 +112,9 @@ class FoodLogServiceCreatePhotoTest {
                 retryService,
                 barcodeService,
                 createSupport,
-                dailySummaryService
+                taskWakeup,
+                dailySummaryService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class))
         );
     }
 
@@ -395,6 +401,7 @@ class FoodLogServiceCreatePhotoTest {
 
             verify(createSupport).createQueuedTask("log-new-2");
             verify(taskRepo).save(task);
+            verify(taskWakeup).notifyQueuedAfterCommit();
 
             verify(dailySummaryService, never()).recomputeDay(any(), any());
 
@@ -0,0 +1,223 @@
+package com.caloshape.backend.foodlog.service;
+
+import com.caloshape.backend.entitlement.service.EntitlementService;
+import com.caloshape.backend.foodlog.dto.FoodLogEnvelope;
+import com.caloshape.backend.foodlog.entity.FoodLogEntity;
+import com.caloshape.backend.foodlog.job.worker.FoodLogTaskWakeup;
+import com.caloshape.backend.foodlog.model.FoodLogMethod;
+import com.caloshape.backend.foodlog.model.FoodLogStatus;
+import com.caloshape.backend.foodlog.model.TimeSource;
+import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
+import com.caloshape.backend.foodlog.quota.guard.AbuseGuardService;
+import com.caloshape.backend.foodlog.quota.service.QuotaService;
+import com.caloshape.backend.foodlog.repo.FoodLogRepository;
+import com.caloshape.backend.foodlog.repo.FoodLogTaskRepository;
+import com.caloshape.backend.foodlog.service.barcode.FoodLogBarcodeService;
+import com.caloshape.backend.foodlog.service.command.FoodLogRetryService;
+import com.caloshape.backend.foodlog.service.image.FoodLogImageAccessService;
+import com.caloshape.backend.foodlog.service.limiter.UserInFlightLimiter;
+import com.caloshape.backend.foodlog.service.limiter.UserRateLimiter;
+import com.caloshape.backend.foodlog.service.query.FoodLogQueryService;
+import com.caloshape.backend.foodlog.service.request.IdempotencyService;
+import com.caloshape.backend.foodlog.service.support.FoodLogCreateSupport;
+import com.caloshape.backend.foodlog.service.support.FoodLogEnvelopeAssembler;
+import com.caloshape.backend.foodlog.storage.StorageService;
+import com.caloshape.backend.foodlog.time.CapturedTimeResolver;
+import com.caloshape.backend.foodlog.time.ExifTimeExtractor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * create* 的交易邊界：
+ * 1. upload / EXIF 在交易外（不持有 DB 連線）
+ * 2. dedupe → quota → insert 在同一個交易內；checked exception 也會 rollback，並原樣拋回
+ */
+@ExtendWith(MockitoExtension.class)
+class FoodLogServiceCreateTxBoundaryTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-03T00:00:00Z");
+
+    @Mock ProviderClient providerClient;
+    @Mock FoodLogRepository repo;
+    @Mock FoodLogTaskRepository taskRepo;
+    @Mock StorageService storage;
+    @Mock QuotaService quota;
+    @Mock IdempotencyService idem;
+    @Mock UserInFlightLimiter inFlight;
+    @Mock UserRateLimiter rateLimiter;
+    @Mock Clock clock;
+    @Mock AbuseGuardService abuseGuard;
+    @Mock EntitlementService entitlementService;
+    @Mock FoodLogEnvelopeAssembler envelopeAssembler;
+    @Mock FoodLogQueryService queryService;
+    @Mock FoodLogImageAccessService imageAccessService;
+    @Mock FoodLogRetryService retryService;
+    @Mock FoodLogBarcodeService barcodeService;
+    @Mock FoodLogCreateSupport createSupport;
+    @Mock FoodLogTaskWakeup taskWakeup;
+    @Mock CapturedTimeResolver timeResolver;
+    @Mock UserDailyNutritionSummaryService dailySummaryService;
+
+    private RecordingTxManager txManager;
+    private FoodLogService svc;
+
+    @BeforeEach
+    void setUp() {
+        txManager = new RecordingTxManager();
+        svc = new FoodLogService(
+                providerClient, repo, taskRepo, storage, quota, idem, inFlight, rateLimiter, clock,
+                timeResolver, abuseGuard, entitlementService, envelopeAssembler, queryService,
+                imageAccessService, retryService, barcodeService, createSupport, taskWakeup, dailySummaryService,
+                new TransactionTemplate(txManager)
+        );
+
+        when(clock.instant()).thenReturn(NOW);
+        when(entitlementService.resolveTier(1L, NOW)).thenReturn(EntitlementService.Tier.TRIAL);
+        when(inFlight.acquireOrThrow(1L)).thenReturn(new UserInFlightLimiter.Lease(1L, "lease-1"));
+    }
+
+    @Test
+    void createPhoto_should_upload_and_read_exif_outside_the_transaction() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "meal.jpg", "image/jpeg", new byte[]{1, 2, 3});
+        FoodLogCreateSupport.UploadTempResult upload = upload("user-1/blobs/tmp/rid-1/upload.jpg");
+        FoodLogEntity entity = newEntity();
+
+        when(createSupport.uploadTempImage(1L, "rid-1", file)).thenAnswer(inv -> {
+            assertFalse(txManager.active, "upload must not hold a DB transaction");
+            return upload;
+        });
+        stubResolvedTime();
+        when(repo.findFirstByUserIdAndMethodInAndImageSha256AndStatusInOrderByCreatedAtUtcDesc(
+                eq(1L), anyCollection(), eq("sha-1"), anyCollection())).thenAnswer(inv -> {
+            assertTrue(txManager.active, "dedupe lookup must run inside the create transaction");
+            return Optional.empty();
+        });
+        doReturn(entity).when(createSupport).newBaseEntity(
+                eq(1L), eq(FoodLogMethod.PHOTO), any(Instant.class), eq("UTC"),
+                any(LocalDate.class), eq(NOW), eq(TimeSource.SERVER_RECEIVED), eq(false));
+        when(quota.consumeOperationOrThrow(eq(1L), eq(EntitlementService.Tier.TRIAL), any(), eq(NOW)))
+                .thenReturn(mock(QuotaService.Decision.class));
+        when(providerClient.providerCode()).thenReturn("GEMINI");
+        FoodLogEnvelope expected = mock(FoodLogEnvelope.class);
+        when(envelopeAssembler.assemble(eq(entity), any(), eq("rid-1"))).thenReturn(expected);
+
+        try (MockedStatic<ExifTimeExtractor> exif = mockStatic(ExifTimeExtractor.class)) {
+            exif.when(() -> ExifTimeExtractor.tryReadCapturedAtUtc(storage, upload.tempKey(), ZoneId.of("UTC")))
+                    .thenAnswer(inv -> {
+                        assertFalse(txManager.active, "EXIF must not hold a DB transaction");
+                        return Optional.empty();
+                    });
+
+            assertSame(expected, svc.createPhoto(1L, "UTC", "dev-1", null, file, "rid-1"));
+        }
+
+        assertEquals(1, txManager.begun);
+        assertEquals(1, txManager.committed);
+        assertEquals(0, txManager.rolledBack);
+        verify(inFlight).release(any());
+    }
+
+    @Test
+    void createAlbum_checked_failure_inside_tx_should_roll_back_and_surface_original_exception() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "meal.jpg", "image/jpeg", new byte[]{1, 2, 3});
+        FoodLogCreateSupport.UploadTempResult upload = upload("user-1/blobs/tmp/rid-2/upload.jpg");
+        FoodLogEntity entity = newEntity();
+        IOException storageDown = new IOException("storage down");
+
+        when(createSupport.uploadTempImage(1L, "rid-2", file)).thenReturn(upload);
+        when(repo.findFirstByUserIdAndMethodInAndImageSha256AndStatusInOrderByCreatedAtUtcDesc(
+                eq(1L), anyCollection(), eq("sha-1"), anyCollection())).thenReturn(Optional.empty());
+        doReturn(entity).when(createSupport).newBaseEntity(
+                eq(1L), eq(FoodLogMethod.ALBUM), any(Instant.class), eq("UTC"),
+                any(LocalDate.class), eq(NOW), eq(TimeSource.SERVER_RECEIVED), eq(false));
+        when(quota.consumeOperationOrThrow(eq(1L), eq(EntitlementService.Tier.TRIAL), any(), eq(NOW)))
+                .thenReturn(mock(QuotaService.Decision.class));
+        when(providerClient.providerCode()).thenReturn("GEMINI");
+        doThrow(storageDown).when(createSupport).retainBlobAndAttach(entity, 1L, upload);
+
+        IOException thrown = assertThrows(IOException.class,
+                () -> svc.createAlbum(1L, "UTC", "dev-1", file, "rid-2"));
+
+        assertSame(storageDown, thrown);
+        assertEquals(1, txManager.begun);
+        assertEquals(0, txManager.committed);
+        assertEquals(1, txManager.rolledBack);
+        verify(idem).failAndReleaseIfNeeded(1L, "rid-2", true);
+        verify(storage).delete(upload.tempKey());
+        verify(inFlight).release(any());
+    }
+
+    private static FoodLogCreateSupport.UploadTempResult upload(String tempKey) {
+        StorageService.SaveResult saved = mock(StorageService.SaveResult.class);
+        when(saved.sha256()).thenReturn("sha-1");
+        return new FoodLogCreateSupport.UploadTempResult(tempKey, null, saved);
+    }
+
+    private static FoodLogEntity newEntity() {
+        FoodLogEntity e = new FoodLogEntity();
+        e.setId("log-1");
+        e.setUserId(1L);
+        e.setStatus(FoodLogStatus.PENDING);
+        e.setCapturedLocalDate(LocalDate.of(2026, 3, 3));
+        return e;
+    }
+
+    private void stubResolvedTime() {
+        CapturedTimeResolver.Result resolved = mock(CapturedTimeResolver.Result.class, Answers.RETURNS_DEEP_STUBS);
+        when(resolved.capturedAtUtc()).thenReturn(NOW);
+        when(resolved.source().name()).thenReturn("SERVER_RECEIVED");
+        when(resolved.suspect()).thenReturn(false);
+        when(timeResolver.resolve(any(), any(), eq(NOW))).thenReturn(resolved);
+    }
+
+    /** 只記錄交易開關次數；active = 目前是否在交易內 */
+    private static final class RecordingTxManager implements PlatformTransactionManager {
+        boolean active;
+        int begun;
+        int committed;
+        int rolledBack;
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            active = true;
+            begun++;
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+            active = false;
+            committed++;
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+            active = false;
+            rolledBack++;
+        }
+    }
+}
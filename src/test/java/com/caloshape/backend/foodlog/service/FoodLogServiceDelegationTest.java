@@ -2,6 +2,7 @@ package com.caloshape.backend.foodlog.service;
 
 import com.caloshape.backend.entitlement.service.EntitlementService;
 import com.caloshape.backend.foodlog.dto.FoodLogEnvelope;
+import com.caloshape.backend.foodlog.job.worker.FoodLogTaskWakeup;
 import com.caloshape.backend.foodlog.provider.spi.ProviderClient;
 import com.caloshape.backend.foodlog.quota.guard.AbuseGuardService;
 import com.caloshape.backend.foodlog.quota.service.QuotaService;
@@ -24,14 +25,15 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 import java.time.Clock;
 
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.mock;
 
 /**
  * FoodLogService 單元測試（薄服務委派層）
@@ -99,6 +101,9 @@ class FoodLogServiceDelegationTest {
     @Mock
     private FoodLogCreateSupport createSupport;
 
+    @Mock
+    private FoodLogTaskWakeup taskWakeup;
+
     @Mock
     private CapturedTimeResolver timeResolver;
 
@@ -128,7 +133,9 @@ class FoodLogServiceDelegationTest {
                 retryService,
                 barcodeService,
                 createSupport,
-                dailySummaryService
+                taskWakeup,
+                dailySummaryService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class))
         );
     }
 
@@ -200,7 +207,9 @@ class FoodLogServiceDelegationTest {
         ImageOpenResult expected = new ImageOpenResult(
                 "user-3/blobs/abc.jpg",
                 "image/jpeg",
-                12345L
+                12345L,
+                null,
+                0L
         );
 
         when(imageAccessService.openImage(userId, foodLogId)).thenReturn(expected);
@@ -213,22 +222,6 @@ class FoodLogServiceDelegationTest {
         verify(imageAccessService).openImage(userId, foodLogId);
     }
 
-    @Test
-    void openImageStream_should_delegate_to_imageAccessService() throws Exception {
-        // arrange
-        String objectKey = "user-4/blobs/food.jpg";
-        InputStream expected = new ByteArrayInputStream(new byte[]{1, 2, 3});
-
-        when(imageAccessService.openImageStream(objectKey)).thenReturn(expected);
-
-        // act
-        InputStream actual = service.openImageStream(objectKey);
-
-        // assert
-        assertSame(expected, actual);
-        verify(imageAccessService).openImageStream(objectKey);
-    }
-
     @Test
     void retry_should_delegate_to_retryService() {
         // arrange
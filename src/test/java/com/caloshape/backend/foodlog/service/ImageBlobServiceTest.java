@@ -87,4 +87,29 @@ class ImageBlobServiceTest {
         assertEquals("sha", r.sha256());
         assertEquals(false, r.newlyCreated());
     }
-}
\ No newline at end of file
+
+    @Test
+    void release_last_ref_should_also_delete_registered_derived_blobs() throws Exception {
+        ImageBlobRepository repo = mock(ImageBlobRepository.class);
+        StorageService storage = mock(StorageService.class);
+        Clock clock = Clock.fixed(Instant.parse("2026-03-03T00:00:00Z"), ZoneOffset.UTC);
+
+        ImageBlobEntity row = new ImageBlobEntity();
+        row.setUserId(1L);
+        row.setSha256("sha");
+        row.setObjectKey("user-1/blobs/sha256/sha.jpg");
+        row.setRefCount(1);
+
+        when(repo.findByUserIdAndSha256ForUpdate(1L, "sha")).thenReturn(Optional.of(row));
+        when(repo.getRefCount(1L, "sha")).thenReturn(0);
+        when(repo.deleteIfZero(1L, "sha")).thenReturn(1);
+
+        ImageBlobService svc = new ImageBlobService(repo, storage, clock);
+        svc.registerDerivedVariant("prep-1536q85");
+
+        assertEquals(ImageBlobService.ReleaseOutcome.DELETE_SCHEDULED, svc.release(1L, "sha"));
+
+        verify(storage).delete("user-1/blobs/sha256/sha.jpg");
+        verify(storage).delete("user-1/blobs/sha256/sha.prep-1536q85.jpg");
+    }
+}
@@ -0,0 +1,149 @@
+package com.caloshape.backend.foodlog.service;
+
+import com.caloshape.backend.foodlog.entity.ImageBlobEntity;
+import com.caloshape.backend.foodlog.image.NearDuplicateProperties;
+import com.caloshape.backend.foodlog.image.PerceptualHash;
+import com.caloshape.backend.foodlog.repo.ImageBlobRepository;
+import com.caloshape.backend.foodlog.storage.LocalDiskStorageService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class NearDuplicateImageIndexTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-03T00:00:00Z");
+
+    @TempDir
+    Path baseDir;
+
+    @Test
+    void recompressed_and_slightly_shifted_copy_should_hash_close_while_other_meal_is_far() throws Exception {
+        LocalDiskStorageService storage = new LocalDiskStorageService(baseDir.toString());
+        storage.save("a.png", new ByteArrayInputStream(png(meal(2000, 1500, 0, Color.ORANGE))), "image/png");
+        storage.save("a-recompressed.jpg", new ByteArrayInputStream(jpeg(meal(1600, 1200, 0, Color.ORANGE), 0.5f)), "image/jpeg");
+        storage.save("a-retake.jpg", new ByteArrayInputStream(jpeg(meal(2000, 1500, 12, Color.ORANGE), 0.8f)), "image/jpeg");
+        storage.save("b.jpg", new ByteArrayInputStream(jpeg(otherMeal(2000, 1500), 0.8f)), "image/jpeg");
+
+        NearDuplicateImageIndex index = new NearDuplicateImageIndex(mock(ImageBlobRepository.class), storage, props(true));
+
+        long original = index.computeOrNull("a.png");
+        assertTrue(PerceptualHash.distance(original, index.computeOrNull("a-recompressed.jpg")) <= 6);
+        assertTrue(PerceptualHash.distance(original, index.computeOrNull("a-retake.jpg")) <= 6);
+        assertTrue(PerceptualHash.distance(original, index.computeOrNull("b.jpg")) > 12);
+    }
+
+    @Test
+    void compute_should_return_null_when_disabled_or_unsupported() throws Exception {
+        LocalDiskStorageService storage = new LocalDiskStorageService(baseDir.toString());
+        storage.save("x.heic", new ByteArrayInputStream(new byte[1024]), "image/heic");
+        storage.save("a.png", new ByteArrayInputStream(png(meal(200, 150, 0, Color.ORANGE))), "image/png");
+
+        NearDuplicateImageIndex enabled = new NearDuplicateImageIndex(mock(ImageBlobRepository.class), storage, props(true));
+        assertNull(enabled.computeOrNull("x.heic"));
+        assertNull(enabled.computeOrNull("missing.jpg"));
+
+        NearDuplicateImageIndex disabled = new NearDuplicateImageIndex(mock(ImageBlobRepository.class), storage, props(false));
+        assertNull(disabled.computeOrNull("a.png"));
+    }
+
+    @Test
+    void find_should_pick_closest_candidate_within_distance_and_skip_self() {
+        ImageBlobRepository repo = mock(ImageBlobRepository.class);
+        long probe = 0b1111_0000L;
+        when(repo.findRecentWithPhash(eq(1L), eq(NOW.minusSeconds(600)), any())).thenReturn(List.of(
+                blob("self", probe),
+                blob("far", ~probe),
+                blob("near3", probe ^ 0b0111L),
+                blob("near1", probe ^ 0b1000_0000_0000L)
+        ));
+
+        NearDuplicateImageIndex index = new NearDuplicateImageIndex(repo, null, props(true));
+
+        assertEquals(Optional.of("near1"), index.findNearestSha256(1L, probe, "self", NOW));
+        assertEquals(Optional.empty(), index.findNearestSha256(1L, ~probe ^ 0xFFFF_0000L, "self", NOW));
+    }
+
+    private static ImageBlobEntity blob(String sha, long phash) {
+        ImageBlobEntity b = new ImageBlobEntity();
+        b.setSha256(sha);
+        b.setPhash(phash);
+        return b;
+    }
+
+    private static NearDuplicateProperties props(boolean enabled) {
+        NearDuplicateProperties props = new NearDuplicateProperties();
+        props.setEnabled(enabled);
+        return props;
+    }
+
+    /** 盤子 + 兩塊配菜；shift 模擬手持重拍的些微位移 */
+    private static BufferedImage meal(int w, int h, int shift, Color main) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        // 桌面用漸層：真實照片幾乎沒有完全平的區塊
+        g.setPaint(new GradientPaint(0, 0, new Color(20, 10, 5), w, h, new Color(200, 160, 120)));
+        g.fillRect(0, 0, w, h);
+        g.setColor(Color.WHITE);
+        g.fillOval(w / 8 + shift, h / 8 + shift, w * 3 / 4, h * 3 / 4);
+        g.setColor(main);
+        g.fillOval(w / 4 + shift, h / 4 + shift, w / 4, h / 3);
+        g.setColor(new Color(30, 120, 40));
+        g.fillRect(w / 2 + shift, h / 2 + shift, w / 5, h / 6);
+        g.dispose();
+        return img;
+    }
+
+    private static BufferedImage otherMeal(int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(new Color(230, 230, 220));
+        g.fillRect(0, 0, w, h);
+        g.setColor(new Color(150, 30, 20));
+        g.fillRect(0, h / 2, w, h / 2);
+        g.setColor(new Color(20, 20, 120));
+        g.fillOval(w * 2 / 3, h / 10, w / 4, h / 4);
+        g.dispose();
+        return img;
+    }
+
+    private static byte[] png(BufferedImage img) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", bos);
+        return bos.toByteArray();
+    }
+
+    private static byte[] jpeg(BufferedImage img, float quality) throws Exception {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(bos)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bos.toByteArray();
+    }
+}
@@ -4,6 +4,7 @@ import com.caloshape.backend.entitlement.service.EntitlementService;
 import com.caloshape.backend.foodlog.dto.FoodLogEnvelope;
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
 import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.job.worker.FoodLogTaskWakeup;
 import com.caloshape.backend.foodlog.model.FoodLogErrorCode;
 import com.caloshape.backend.foodlog.model.FoodLogStatus;
 import com.caloshape.backend.foodlog.quota.guard.AbuseGuardService;
@@ -71,7 +72,8 @@ class FoodLogRetryServiceTest {
                 abuseGuard,
                 quota,
                 envelopeAssembler,
-                clock
+                clock,
+                mock(FoodLogTaskWakeup.class)
         );
     }
 
@@ -6,6 +6,8 @@ import com.caloshape.backend.foodlog.web.error.TooManyInFlightException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.RedisScript;
 
@@ -20,8 +22,10 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class UserInFlightLimiterTest {
@@ -39,8 +43,10 @@ class UserInFlightLimiterTest {
                 2,                      // maxInFlight
                 Duration.ofMinutes(5),  // lease ttl
                 "caloshape-test",         // redis prefix
+                false,                  // async release
                 clock,
-                redisTemplate
+                redisTemplate,
+                new SimpleMeterRegistry()
         );
     }
 
@@ -57,11 +63,11 @@ class UserInFlightLimiterTest {
         when(redisTemplate.execute(
                 any(RedisScript.class),
                 anyList(),
-                anyString()
+                any(Object[].class)
         )).thenReturn("1:50", "2:50", "3:50", "4:50");
 
         // free=3/min, paid=20/min
-        UserRateLimiter limiter = new UserRateLimiter(3, 20, "caloshape", redisTemplate);
+        UserRateLimiter limiter = new UserRateLimiter(3, 20, "caloshape", 1, Duration.ZERO, redisTemplate);
 
         Long uid = 1L;
         Instant now = Instant.parse("2026-01-14T00:00:10Z");
@@ -90,11 +96,11 @@ class UserInFlightLimiterTest {
         when(redisTemplate.execute(
                 any(RedisScript.class),
                 anyList(),
-                anyString()
+                any(Object[].class)
         )).thenReturn("1:50", "2:50", "3:50", "4:50", "5:50", "6:50");
 
         // free=3/min, paid=5/min
-        UserRateLimiter limiter = new UserRateLimiter(3, 5, "caloshape", redisTemplate);
+        UserRateLimiter limiter = new UserRateLimiter(3, 5, "caloshape", 1, Duration.ZERO, redisTemplate);
 
         Long uid = 2L;
         Instant now = Instant.parse("2026-01-14T00:00:10Z");
@@ -234,4 +240,76 @@ class UserInFlightLimiterTest {
         assertThatCode(() -> limiter.release(new UserInFlightLimiter.Lease(1L, "   ")))
                 .doesNotThrowAnyException();
     }
+
+    @Test
+    void async_release_should_queue_and_flush_in_one_pipeline() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UserInFlightLimiter async = new UserInFlightLimiter(
+                2, Duration.ofMinutes(1), "caloshape-test", true, clock, redisTemplate, registry);
+
+        when(redisTemplate.execute(
+                Mockito.<RedisScript<String>>any(),
+                anyList(),
+                any(), any(), any(), any(), any()
+        )).thenReturn("1:1:0");
+
+        UserInFlightLimiter.Lease a = async.acquireOrThrow(1L);
+        UserInFlightLimiter.Lease b = async.acquireOrThrow(2L);
+        assertThat(registry.get("foodlog.inflight.leases.active").gauge().value()).isEqualTo(2.0);
+
+        async.release(a);
+        async.release(b);
+
+        // request thread 不碰 Redis
+        verify(redisTemplate, never()).executePipelined(Mockito.<RedisCallback<?>>any());
+        assertThat(registry.get("foodlog.inflight.release.pending").gauge().value()).isEqualTo(2.0);
+
+        assertThat(async.flushPendingReleases(Duration.ofMillis(10))).isEqualTo(2);
+        verify(redisTemplate, times(1)).executePipelined(Mockito.<RedisCallback<?>>any());
+        assertThat(registry.get("foodlog.inflight.leases.active").gauge().value()).isZero();
+        assertThat(registry.get("foodlog.inflight.acquire").tag("result", "acquired").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void renew_should_only_touch_leases_still_held_by_this_pod() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UserInFlightLimiter async = new UserInFlightLimiter(
+                2, Duration.ofMinutes(1), "caloshape-test", true, clock, redisTemplate, registry);
+
+        when(redisTemplate.execute(
+                Mockito.<RedisScript<String>>any(),
+                anyList(),
+                any(), any(), any(), any(), any()
+        )).thenReturn("1:1:0");
+
+        assertThat(async.renewActiveLeases()).isZero();
+
+        UserInFlightLimiter.Lease a = async.acquireOrThrow(1L);
+        async.acquireOrThrow(2L);
+        async.release(a);
+
+        assertThat(async.renewActiveLeases()).isEqualTo(1);
+        assertThat(async.renewInterval()).isEqualTo(Duration.ofSeconds(20));
+    }
+
+    @Test
+    void acquire_metrics_should_count_rejections_and_redis_failures() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UserInFlightLimiter measured = new UserInFlightLimiter(
+                2, Duration.ofMinutes(1), "caloshape-test", false, clock, redisTemplate, registry);
+
+        when(redisTemplate.execute(
+                Mockito.<RedisScript<String>>any(),
+                anyList(),
+                any(), any(), any(), any(), any()
+        )).thenReturn("0:2:7").thenThrow(new RuntimeException("redis down"));
+
+        assertThatThrownBy(() -> measured.acquireOrThrow(1L)).isInstanceOf(TooManyInFlightException.class);
+        assertThatThrownBy(() -> measured.acquireOrThrow(1L)).isInstanceOf(IllegalStateException.class);
+
+        assertThat(registry.get("foodlog.inflight.acquire").tag("result", "rejected").timer().count()).isEqualTo(1);
+        assertThat(registry.get("foodlog.inflight.acquire").tag("result", "error").timer().count()).isEqualTo(1);
+        assertThat(registry.get("foodlog.inflight.redis.failures").tag("op", "acquire").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("foodlog.inflight.leases_per_user").summary().max()).isEqualTo(2.0);
+    }
 }
@@ -0,0 +1,178 @@
+package com.caloshape.backend.foodlog.service.limiter;
+
+import com.caloshape.backend.entitlement.service.EntitlementService;
+import com.caloshape.backend.foodlog.web.error.RateLimitedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 多 pod 共用同一個 Redis 時的 UserRateLimiter：
+ * - 準確度：任意連續 60 秒內放行次數（以實際放行時間計）不超過上限
+ * - 成本：每個請求平均幾次 Redis script 呼叫（逐次查 vs 本機 lease 預檢）
+ * 時間用模擬時鐘推進，同一組請求序列分別跑兩種設定。
+ */
+@Testcontainers
+class UserRateLimiterContentionIT {
+
+    private static final int PODS = 4;
+    private static final int PAID_LIMIT = 20;
+    private static final Instant START = Instant.parse("2026-03-03T00:00:00Z");
+
+    @Container
+    static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private final List<LettuceConnectionFactory> connectionFactories = new ArrayList<>();
+
+    @AfterEach
+    void closeRedisClients() {
+        connectionFactories.forEach(LettuceConnectionFactory::destroy);
+        connectionFactories.clear();
+    }
+
+    @Test
+    void slidingLogNeverExceedsTheLimitAcrossPodsAndLeasesCutRedisCalls() {
+        Run perRequest = run(1, Duration.ZERO);
+        Run leased = run(4, Duration.ofSeconds(5));
+
+        System.out.printf("rate-limiter per-request: %s%n", perRequest);
+        System.out.printf("rate-limiter local-lease: %s%n", leased);
+
+        assertThat(perRequest.maxHeavyIn60s).isLessThanOrEqualTo(PAID_LIMIT);
+        assertThat(leased.maxHeavyIn60s).isLessThanOrEqualTo(PAID_LIMIT);
+        assertThat(perRequest.maxLightIn60s).isLessThanOrEqualTo(PAID_LIMIT);
+        assertThat(leased.maxLightIn60s).isLessThanOrEqualTo(PAID_LIMIT);
+
+        // 低於上限的使用者不該被誤擋
+        assertThat(perRequest.lightRejected).isZero();
+        assertThat(leased.lightRejected).isZero();
+
+        assertThat(leased.redisCallsPerRequest()).isLessThan(perRequest.redisCallsPerRequest());
+    }
+
+    /**
+     * heavy：4 個 pod 輪流，每 250ms 一個請求（240/min，遠超上限）
+     * light：每 6 秒一個請求、隨機落在某個 pod（10/min，上限一半），偶爾連發
+     */
+    private Run run(int leaseMax, Duration leaseTtl) {
+        String prefix = "caloshape-rate-it-" + UUID.randomUUID();
+        AtomicLong redisCalls = new AtomicLong();
+
+        List<UserRateLimiter> pods = new ArrayList<>();
+        for (int i = 0; i < PODS; i++) {
+            pods.add(new UserRateLimiter(6, PAID_LIMIT, prefix, leaseMax, leaseTtl, countingTemplate(redisCalls)));
+        }
+
+        List<Long> heavyAdmitted = new ArrayList<>();
+        List<Long> lightAdmitted = new ArrayList<>();
+        long requests = 0;
+        long lightRejected = 0;
+
+        long durationMs = Duration.ofMinutes(5).toMillis();
+        for (long t = 0; t < durationMs; t += 250) {
+            Instant now = START.plusMillis(t);
+            int tick = (int) (t / 250);
+
+            requests++;
+            if (tryAcquire(pods.get(tick % PODS), 1L, now)) {
+                heavyAdmitted.add(t);
+            }
+
+            if (t % 6_000 == 0 || t % 30_000 == 250) {
+                requests++;
+                if (tryAcquire(pods.get((tick * 7 + 3) % PODS), 2L, now)) {
+                    lightAdmitted.add(t);
+                } else {
+                    lightRejected++;
+                }
+            }
+        }
+
+        return new Run(requests, redisCalls.get(), heavyAdmitted.size(),
+                maxIn60s(heavyAdmitted), maxIn60s(lightAdmitted), lightRejected);
+    }
+
+    private static boolean tryAcquire(UserRateLimiter limiter, long userId, Instant now) {
+        try {
+            limiter.checkOrThrow(userId, EntitlementService.Tier.YEARLY, now);
+            return true;
+        } catch (RateLimitedException ex) {
+            return false;
+        }
+    }
+
+    private static int maxIn60s(List<Long> admittedMs) {
+        int max = 0;
+        int lo = 0;
+        for (int hi = 0; hi < admittedMs.size(); hi++) {
+            while (admittedMs.get(hi) - admittedMs.get(lo) >= 60_000L) {
+                lo++;
+            }
+            max = Math.max(max, hi - lo + 1);
+        }
+        return max;
+    }
+
+    private StringRedisTemplate countingTemplate(AtomicLong calls) {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                REDIS.getHost(),
+                REDIS.getMappedPort(6379)
+        );
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(
+                configuration,
+                LettuceClientConfiguration.builder().commandTimeout(Duration.ofSeconds(2)).build()
+        );
+        factory.afterPropertiesSet();
+        factory.start();
+        connectionFactories.add(factory);
+
+        StringRedisTemplate template = new StringRedisTemplate() {
+            @Override
+            public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+                calls.incrementAndGet();
+                return super.execute(script, keys, args);
+            }
+        };
+        template.setConnectionFactory(factory);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    private record Run(
+            long requests,
+            long redisCalls,
+            int heavyAdmitted,
+            int maxHeavyIn60s,
+            int maxLightIn60s,
+            long lightRejected
+    ) {
+        double redisCallsPerRequest() {
+            return requests == 0 ? 0.0 : (double) redisCalls / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "requests=%d redisCalls=%d redisCallsPerRequest=%.3f heavyAdmitted=%d maxHeavyIn60s=%d maxLightIn60s=%d lightRejected=%d",
+                    requests, redisCalls, redisCallsPerRequest(), heavyAdmitted, maxHeavyIn60s, maxLightIn60s, lightRejected);
+        }
+    }
+}
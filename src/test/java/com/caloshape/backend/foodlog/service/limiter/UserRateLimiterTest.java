@@ -8,12 +8,16 @@ import org.mockito.Mockito;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.RedisScript;
 
+import java.time.Duration;
 import java.time.Instant;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class UserRateLimiterTest {
@@ -29,6 +33,8 @@ class UserRateLimiterTest {
                 6,              // freePerMinuteLimit
                 20,             // paidPerMinuteLimit
                 "caloshape-test", // redisPrefix
+                1,              // localLeaseMax：每個請求都查 Redis
+                Duration.ZERO,  // localLeaseTtl
                 redisTemplate
         );
     }
@@ -39,7 +45,7 @@ class UserRateLimiterTest {
         when(redisTemplate.execute(
                 Mockito.<RedisScript<String>>any(),
                 anyList(),
-                any()
+                any(Object[].class)
         )).thenReturn("1:60");
 
         assertThatCode(() ->
@@ -57,7 +63,7 @@ class UserRateLimiterTest {
         when(redisTemplate.execute(
                 Mockito.<RedisScript<String>>any(),
                 anyList(),
-                any()
+                any(Object[].class)
         )).thenReturn("8:42");
 
         assertThatCode(() ->
@@ -75,7 +81,7 @@ class UserRateLimiterTest {
         when(redisTemplate.execute(
                 Mockito.<RedisScript<String>>any(),
                 anyList(),
-                any()
+                any(Object[].class)
         )).thenReturn("7:15");
 
         assertThatThrownBy(() ->
@@ -95,7 +101,7 @@ class UserRateLimiterTest {
         when(redisTemplate.execute(
                 Mockito.<RedisScript<String>>any(),
                 anyList(),
-                any()
+                any(Object[].class)
         )).thenReturn("21:9");
 
         assertThatThrownBy(() ->
@@ -114,7 +120,7 @@ class UserRateLimiterTest {
         when(redisTemplate.execute(
                 Mockito.<RedisScript<String>>any(),
                 anyList(),
-                any()
+                any(Object[].class)
         )).thenThrow(new RuntimeException("redis down"));
 
         assertThatThrownBy(() ->
@@ -133,7 +139,7 @@ class UserRateLimiterTest {
         when(redisTemplate.execute(
                 Mockito.<RedisScript<String>>any(),
                 anyList(),
-                any()
+                any(Object[].class)
         )).thenReturn("");
 
         assertThatThrownBy(() ->
@@ -152,7 +158,7 @@ class UserRateLimiterTest {
         when(redisTemplate.execute(
                 Mockito.<RedisScript<String>>any(),
                 anyList(),
-                any()
+                any(Object[].class)
         )).thenReturn("bad-format");
 
         assertThatThrownBy(() ->
@@ -176,4 +182,56 @@ class UserRateLimiterTest {
                 )
         ).doesNotThrowAnyException();
     }
+
+    @Test
+    void checkOrThrow_should_serve_leased_quota_locally_until_lease_expires() {
+        UserRateLimiter leasing = new UserRateLimiter(6, 20, "caloshape-test", 4, Duration.ofSeconds(5), redisTemplate);
+
+        // 第一次預留 3 筆（含本次），接下來 2 次不打 Redis
+        when(redisTemplate.execute(
+                Mockito.<RedisScript<String>>any(),
+                anyList(),
+                any(Object[].class)
+        )).thenReturn("3:0:3");
+
+        Instant t0 = Instant.parse("2026-03-03T00:00:10Z");
+        leasing.checkOrThrow(1L, EntitlementService.Tier.NONE, t0);
+        leasing.checkOrThrow(1L, EntitlementService.Tier.NONE, t0.plusSeconds(1));
+        leasing.checkOrThrow(1L, EntitlementService.Tier.NONE, t0.plusSeconds(2));
+        verify(redisTemplate, times(1)).execute(Mockito.<RedisScript<String>>any(), anyList(), any(Object[].class));
+
+        // lease 用完 -> 再打一次 Redis
+        leasing.checkOrThrow(1L, EntitlementService.Tier.NONE, t0.plusSeconds(3));
+        verify(redisTemplate, times(2)).execute(Mockito.<RedisScript<String>>any(), anyList(), any(Object[].class));
+    }
+
+    @Test
+    void checkOrThrow_should_reject_locally_for_at_most_lease_ttl_then_recheck_redis() {
+        UserRateLimiter leasing = new UserRateLimiter(6, 20, "caloshape-test", 4, Duration.ofSeconds(5), redisTemplate);
+
+        when(redisTemplate.execute(
+                Mockito.<RedisScript<String>>any(),
+                anyList(),
+                any(Object[].class)
+        )).thenReturn("7:20:0");
+
+        Instant t0 = Instant.parse("2026-03-03T00:00:10Z");
+        assertThatThrownBy(() -> leasing.checkOrThrow(1L, EntitlementService.Tier.NONE, t0))
+                .isInstanceOf(RateLimitedException.class);
+
+        // lease ttl（5 秒）內不再打 Redis，retryAfter 沿用 Redis 回報的時間遞減
+        assertThatThrownBy(() -> leasing.checkOrThrow(1L, EntitlementService.Tier.NONE, t0.plusSeconds(3)))
+                .isInstanceOfSatisfying(RateLimitedException.class, ex -> assertThat(ex.retryAfterSec()).isEqualTo(17));
+        verify(redisTemplate, times(1)).execute(Mockito.<RedisScript<String>>any(), anyList(), any(Object[].class));
+
+        // 其他 pod 歸還 lease 讓視窗提早空出來：過了 lease ttl 就回 Redis 重查，不必等滿 20 秒
+        when(redisTemplate.execute(
+                Mockito.<RedisScript<String>>any(),
+                anyList(),
+                any(Object[].class)
+        )).thenReturn("6:0:1");
+        assertThatCode(() -> leasing.checkOrThrow(1L, EntitlementService.Tier.NONE, t0.plusSeconds(5)))
+                .doesNotThrowAnyException();
+        verify(redisTemplate, times(2)).execute(Mockito.<RedisScript<String>>any(), anyList(), any(Object[].class));
+    }
 }
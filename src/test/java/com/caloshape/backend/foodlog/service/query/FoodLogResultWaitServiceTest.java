@@ -0,0 +1,100 @@
+package com.caloshape.backend.foodlog.service.query;
+
+import com.caloshape.backend.foodlog.dto.FoodLogEnvelope;
+import com.caloshape.backend.foodlog.job.config.FoodLogTaskWorkerProperties;
+import com.caloshape.backend.foodlog.job.worker.FoodLogResultNotifier;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FoodLogResultWaitServiceTest {
+
+    private final FoodLogQueryService queryService = mock(FoodLogQueryService.class);
+    private final FoodLogResultNotifier notifier =
+            new FoodLogResultNotifier(mock(StringRedisTemplate.class), new FoodLogTaskWorkerProperties());
+
+    @Test
+    void finished_log_should_return_immediately_without_waiting() {
+        when(queryService.getOne(1L, "log1", "rid")).thenReturn(envelope("DRAFT"));
+        FoodLogResultWaitService service = newService(10);
+
+        DeferredResult<FoodLogEnvelope> result = service.await(1L, "log1", 20, "rid");
+
+        assertTrue(result.hasResult());
+        assertEquals("DRAFT", ((FoodLogEnvelope) result.getResult()).status());
+        assertEquals(0, notifier.waiterCount());
+    }
+
+    @Test
+    void pending_log_should_complete_when_worker_notifies() {
+        when(queryService.getOne(1L, "log1", "rid"))
+                .thenReturn(envelope("PENDING"))
+                .thenReturn(envelope("DRAFT"));
+        FoodLogResultWaitService service = newService(10);
+
+        DeferredResult<FoodLogEnvelope> result = service.await(1L, "log1", null, "rid");
+
+        assertFalse(result.hasResult());
+        assertEquals(1, notifier.waiterCount());
+
+        // 別的 food log 完成不影響
+        notifier.signalLocal("log2");
+        assertFalse(result.hasResult());
+
+        notifier.signalLocal("log1");
+        assertTrue(result.hasResult());
+        assertEquals("DRAFT", ((FoodLogEnvelope) result.getResult()).status());
+        assertEquals(0, notifier.waiterCount());
+        verify(queryService, times(2)).getOne(1L, "log1", "rid");
+    }
+
+    @Test
+    void full_waiter_table_or_zero_wait_should_return_current_state() {
+        when(queryService.getOne(1L, "log1", "rid")).thenReturn(envelope("PENDING"));
+
+        DeferredResult<FoodLogEnvelope> full = newService(0).await(1L, "log1", 20, "rid");
+        assertTrue(full.hasResult());
+        assertEquals("PENDING", ((FoodLogEnvelope) full.getResult()).status());
+
+        DeferredResult<FoodLogEnvelope> noWait = newService(10).await(1L, "log1", 0, "rid");
+        assertTrue(noWait.hasResult());
+
+        assertEquals(0, notifier.waiterCount());
+    }
+
+    @Test
+    void not_found_should_propagate_and_leave_no_waiter() {
+        when(queryService.getOne(1L, "missing", "rid")).thenThrow(new IllegalStateException("FOOD_LOG_NOT_FOUND"));
+
+        assertThrows(IllegalStateException.class,
+                () -> newService(10).await(1L, "missing", 20, "rid"));
+        assertEquals(0, notifier.waiterCount());
+    }
+
+    @Test
+    void wait_should_be_capped_by_max_wait() {
+        FoodLogResultWaitService service = newService(10);
+
+        assertEquals(Duration.ofSeconds(25), service.resolveWait(null));
+        assertEquals(Duration.ofSeconds(25), service.resolveWait(600));
+        assertEquals(Duration.ofSeconds(5), service.resolveWait(5));
+        assertEquals(Duration.ZERO, service.resolveWait(-1));
+    }
+
+    private FoodLogResultWaitService newService(int maxWaiters) {
+        return new FoodLogResultWaitService(queryService, notifier, Duration.ofSeconds(25), maxWaiters, Runnable::run);
+    }
+
+    private static FoodLogEnvelope envelope(String status) {
+        return new FoodLogEnvelope(
+                "log1", status, null, null, false, null,
+                null, null, null, null, null, null,
+                null, null, null, null, null
+        );
+    }
+}
@@ -2,11 +2,13 @@ package com.caloshape.backend.foodlog.service.support;
 
 import com.caloshape.backend.foodlog.entity.FoodLogEntity;
 import com.caloshape.backend.foodlog.entity.FoodLogTaskEntity;
+import com.caloshape.backend.foodlog.image.ImageSniffer;
 import com.caloshape.backend.foodlog.model.FoodLogStatus;
 import com.caloshape.backend.foodlog.model.TimeSource;
 import com.caloshape.backend.foodlog.processing.effective.FoodLogEffectivePostProcessor;
 import com.caloshape.backend.foodlog.quota.model.ModelTier;
 import com.caloshape.backend.foodlog.service.ImageBlobService;
+import com.caloshape.backend.foodlog.service.NearDuplicateImageIndex;
 import com.caloshape.backend.foodlog.service.request.IdempotencyService;
 import com.caloshape.backend.foodlog.storage.StorageService;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
@@ -15,9 +17,11 @@ import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class FoodLogCreateSupportTest {
@@ -28,7 +32,8 @@ class FoodLogCreateSupportTest {
                 mock(StorageService.class),
                 mock(IdempotencyService.class),
                 mock(ImageBlobService.class),
-                mock(FoodLogEffectivePostProcessor.class)
+                mock(FoodLogEffectivePostProcessor.class),
+                null
         );
 
         FoodLogEntity e = support.newBaseEntity(
@@ -54,7 +59,8 @@ class FoodLogCreateSupportTest {
                 mock(StorageService.class),
                 mock(IdempotencyService.class),
                 mock(ImageBlobService.class),
-                mock(FoodLogEffectivePostProcessor.class)
+                mock(FoodLogEffectivePostProcessor.class),
+                null
         );
 
         FoodLogEntity e = new FoodLogEntity();
@@ -71,7 +77,8 @@ class FoodLogCreateSupportTest {
                 mock(StorageService.class),
                 mock(IdempotencyService.class),
                 mock(ImageBlobService.class),
-                mock(FoodLogEffectivePostProcessor.class)
+                mock(FoodLogEffectivePostProcessor.class),
+                null
         );
 
         FoodLogTaskEntity t = support.createQueuedTask("log-1");
@@ -89,7 +96,8 @@ class FoodLogCreateSupportTest {
                 mock(StorageService.class),
                 mock(IdempotencyService.class),
                 mock(ImageBlobService.class),
-                postProcessor
+                postProcessor,
+                null
         );
 
         FoodLogEntity e = new FoodLogEntity();
@@ -112,4 +120,42 @@ class FoodLogCreateSupportTest {
         assertEquals("DG-2", e.getDegradeLevel());
         assertEquals(FoodLogStatus.DRAFT, e.getStatus());
     }
+
+    @Test
+    void near_duplicate_should_record_phash_on_blob_and_lookup_by_it() throws Exception {
+        ImageBlobService blobService = mock(ImageBlobService.class);
+        NearDuplicateImageIndex nearDup = mock(NearDuplicateImageIndex.class);
+
+        FoodLogCreateSupport support = new FoodLogCreateSupport(
+                mock(StorageService.class),
+                mock(IdempotencyService.class),
+                blobService,
+                mock(FoodLogEffectivePostProcessor.class),
+                nearDup
+        );
+
+        Instant now = Instant.parse("2026-03-21T10:00:00Z");
+        String sha = "c".repeat(64);
+        FoodLogCreateSupport.UploadTempResult upload = new FoodLogCreateSupport.UploadTempResult(
+                "user-1/blobs/tmp/rid/upload.jpg",
+                new ImageSniffer.Detection(ImageSniffer.ImageType.JPEG),
+                new StorageService.SaveResult("user-1/blobs/tmp/rid/upload.jpg", sha, 100L, "image/jpeg"),
+                42L
+        );
+
+        when(blobService.retainFromTemp(1L, upload.tempKey(), sha, ".jpg", "image/jpeg", 100L))
+                .thenReturn(new ImageBlobService.RetainResult("user-1/blobs/sha256/" + sha + ".jpg", sha, true));
+        when(nearDup.findNearestSha256(1L, 42L, sha, now)).thenReturn(Optional.of("d".repeat(64)));
+
+        FoodLogEntity e = new FoodLogEntity();
+        support.retainBlobAndAttach(e, 1L, upload);
+
+        verify(blobService).recordPerceptualHash(1L, sha, 42L);
+        assertEquals(Optional.of("d".repeat(64)), support.findNearDuplicateSha256(1L, upload, now));
+
+        FoodLogCreateSupport.UploadTempResult noHash = new FoodLogCreateSupport.UploadTempResult(
+                upload.tempKey(), upload.detection(), upload.saved()
+        );
+        assertEquals(Optional.empty(), support.findNearDuplicateSha256(1L, noHash, now));
+    }
 }
@@ -3,6 +3,7 @@ package com.caloshape.backend.foodlog.storage;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -26,4 +27,19 @@ class LocalDiskStorageServiceTest {
 
         storage.delete(saved.objectKey());
     }
+
+    @Test
+    void openResource_should_return_file_resource_and_404_for_missing_object() throws Exception {
+        StorageService storage = new LocalDiskStorageService("./build/test-storage");
+
+        byte[] bytes = "fake-image-bytes".getBytes();
+        storage.save("u1/y/original.jpg", new ByteArrayInputStream(bytes), "image/jpeg");
+
+        var resource = storage.openResource("u1/y/original.jpg");
+        assertTrue(resource.isFile());
+        assertEquals(bytes.length, resource.contentLength());
+
+        storage.delete("u1/y/original.jpg");
+        assertThrows(FileNotFoundException.class, () -> storage.openResource("u1/y/original.jpg"));
+    }
 }
@@ -18,29 +18,25 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.FilterType;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
-import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
-
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.not;
-import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ActiveProfiles("test")
@@ -70,6 +66,7 @@ class FoodLogExceptionAdviceTest {
     @MockitoBean com.caloshape.backend.foodlog.service.FoodLogHistoryService historyService;
     @MockitoBean UserDailyNutritionSummaryService dailySummaryService;
     @MockitoBean ProgressAveragesService progressAveragesService;
+    @MockitoBean com.caloshape.backend.foodlog.service.query.FoodLogResultWaitService resultWaitService;
 
     @Test
     void upload_unsupported_format_should_400_with_requestId() throws Exception {
@@ -140,21 +137,17 @@ class FoodLogExceptionAdviceTest {
     }
 
     @Test
-    void image_happy_path_should_stream_bytes_and_headers() throws Exception {
+    void image_happy_path_should_write_bytes_and_headers() throws Exception {
         Mockito.when(auth.requireUserId()).thenReturn(1L);
 
         Mockito.when(service.openImage(eq(1L), eq("id-1")))
-                .thenReturn(new ImageOpenResult("obj-1", "image/jpeg", 3));
+                .thenReturn(new ImageOpenResult("obj-1", "image/jpeg", 3, null, 0L));
 
-        Mockito.when(service.openImageStream(eq("obj-1")))
-                .thenReturn(new ByteArrayInputStream(new byte[]{9, 8, 7}));
+        Mockito.when(service.openImageResource(eq("obj-1")))
+                .thenReturn(new ByteArrayResource(new byte[]{9, 8, 7}));
 
-        MvcResult result = mvc.perform(get("/api/v1/food-logs/id-1/image")
+        mvc.perform(get("/api/v1/food-logs/id-1/image")
                         .header("X-Request-Id", "RID-200"))
-                .andExpect(request().asyncStarted())
-                .andReturn();
-
-        mvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(header().string("X-Request-Id", "RID-200"))
                 .andExpect(header().string("Content-Type", "image/jpeg"))
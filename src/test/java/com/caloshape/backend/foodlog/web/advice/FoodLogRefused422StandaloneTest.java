@@ -9,6 +9,7 @@ import com.caloshape.backend.foodlog.service.FoodLogOverrideService;
 import com.caloshape.backend.foodlog.service.FoodLogService;
 import com.caloshape.backend.foodlog.service.ProgressAveragesService;
 import com.caloshape.backend.foodlog.service.UserDailyNutritionSummaryService;
+import com.caloshape.backend.foodlog.service.query.FoodLogResultWaitService;
 import com.caloshape.backend.foodlog.web.error.ModelRefusedException;
 import org.junit.jupiter.api.Test;
 import org.springframework.test.web.servlet.MockMvc;
@@ -34,6 +35,7 @@ class FoodLogRefused422StandaloneTest {
         FoodLogOverrideService overrideService = mock(FoodLogOverrideService.class);
         UserDailyNutritionSummaryService dailySummaryService = mock(UserDailyNutritionSummaryService.class);
         ProgressAveragesService progressAveragesService = mock(ProgressAveragesService.class);
+        FoodLogResultWaitService resultWaitService = mock(FoodLogResultWaitService.class);
 
         // 2) 建 controller
         FoodLogController controller = new FoodLogController(
@@ -43,7 +45,8 @@ class FoodLogRefused422StandaloneTest {
                 historyService,
                 overrideService,
                 dailySummaryService,
-                progressAveragesService
+                progressAveragesService,
+                resultWaitService
         );
 
         // 3) standalone MockMvc + 掛上 Advice
@@ -1,6 +1,7 @@
 package com.caloshape.backend.referral.controller;
 
 import com.caloshape.backend.auth.repo.AuthTokenRepo;
+import com.caloshape.backend.auth.security.AccessTokenCache;
 import com.caloshape.backend.auth.security.AuthContext;
 import com.caloshape.backend.common.web.ApiExceptionHandler;
 import com.caloshape.backend.referral.dto.NotificationItemDto;
@@ -44,6 +45,9 @@ class NotificationControllerWebMvcTest {
     @MockitoBean
     private AuthTokenRepo authTokenRepo;
 
+    @MockitoBean
+    private AccessTokenCache accessTokenCache;
+
     @MockitoBean
     private NotificationInboxService notificationInboxService;
 
@@ -7,20 +7,35 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.domain.Pageable;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,31 +49,37 @@ class EmailOutboxSenderWorkerTest {
 
     private EmailOutboxSenderWorker worker;
 
+    /** 每次 send(SimpleMailMessage...) 收到的信 */
+    private final List<SimpleMailMessage> sent = new ArrayList<>();
+
     @BeforeEach
     void setUp() {
         worker = new EmailOutboxSenderWorker(
                 emailOutboxRepository,
                 mailSender,
-                new ObjectMapper().findAndRegisterModules()
+                new ObjectMapper().findAndRegisterModules(),
+                mock(PlatformTransactionManager.class),
+                Clock.systemUTC(),
+                Runnable::run
         );
 
         ReflectionTestUtils.setField(worker, "emailEnabled", true);
         ReflectionTestUtils.setField(worker, "sender", "no-reply@caloshape.app");
         ReflectionTestUtils.setField(worker, "batchSize", 20);
         ReflectionTestUtils.setField(worker, "maxRetries", 5);
+        ReflectionTestUtils.setField(worker, "concurrency", 2);
     }
 
     @Test
     void sendPendingEmails_shouldMarkPendingEmailAsSentAfterSuccessfulSend() {
         EmailOutboxEntity item = pendingItem();
-        when(emailOutboxRepository.findPendingToSend(eq(5), any(Pageable.class))).thenReturn(List.of(item));
+        claimReturns(item);
+        recordSends();
 
         worker.sendPendingEmails();
 
-        ArgumentCaptor<SimpleMailMessage> messageCaptor = ArgumentCaptor.forClass(SimpleMailMessage.class);
-        verify(mailSender).send(messageCaptor.capture());
-
-        SimpleMailMessage message = messageCaptor.getValue();
+        assertThat(sent).hasSize(1);
+        SimpleMailMessage message = sent.getFirst();
         assertThat(message.getFrom()).isEqualTo("no-reply@caloshape.app");
         assertThat(message.getTo()).containsExactly("inviter@example.com");
         assertThat(message.getSubject()).isEqualTo("You earned 30 free days of CaloShape Premium 🎉");
@@ -73,59 +94,143 @@ class EmailOutboxSenderWorkerTest {
                 .contains("CaloShape → Settings → Inbox")
                 .contains("Thanks for sharing CaloShape with your friends. Keep inviting to earn more Premium days! 💪");
 
-        verify(emailOutboxRepository).save(item);
-        assertThat(item.getStatus()).isEqualTo("SENT");
-        assertThat(item.getSentAtUtc()).isNotNull();
+        ArgumentCaptor<String> token = ArgumentCaptor.forClass(String.class);
+        verify(emailOutboxRepository).markSending(eq(List.of(1L)), token.capture(), any(Instant.class), any(Instant.class));
+        verify(emailOutboxRepository).markSent(eq(List.of(1L)), eq(token.getValue()), any(Instant.class));
+        verify(emailOutboxRepository, never()).markAttemptFailed(any(), any(), any(), anyInt(), any());
     }
 
     @Test
-    void sendPendingEmails_shouldIncrementRetryAndKeepPendingBeforeMaxRetries() {
+    void sendPendingEmails_shouldIncrementRetryAndBackOffBeforeMaxRetries() {
         EmailOutboxEntity item = pendingItem();
         item.setRetryCount(3);
+        claimReturns(item);
+        doThrow(new MailSendException("smtp unavailable")).when(mailSender).send(any(SimpleMailMessage[].class));
 
-        when(emailOutboxRepository.findPendingToSend(eq(5), any(Pageable.class))).thenReturn(List.of(item));
-        doThrow(new RuntimeException("smtp unavailable")).when(mailSender).send(any(SimpleMailMessage.class));
-
+        Instant before = Instant.now();
         worker.sendPendingEmails();
 
-        verify(emailOutboxRepository).save(item);
-        assertThat(item.getRetryCount()).isEqualTo(4);
-        assertThat(item.getStatus()).isEqualTo("PENDING");
-        assertThat(item.getSentAtUtc()).isNull();
+        ArgumentCaptor<Instant> nextAttempt = ArgumentCaptor.forClass(Instant.class);
+        verify(emailOutboxRepository).markAttemptFailed(eq(1L), anyString(), eq("PENDING"), eq(4), nextAttempt.capture());
+        // 第 4 次失敗：1m * 2^3 = 8m，再加最多 20% jitter
+        assertThat(nextAttempt.getValue())
+                .isAfterOrEqualTo(before.plus(Duration.ofMinutes(8)))
+                .isBefore(Instant.now().plus(Duration.ofMinutes(8)).plus(Duration.ofSeconds(97)));
+        verify(emailOutboxRepository, never()).markSent(any(), any(), any());
     }
 
     @Test
     void sendPendingEmails_shouldMarkFailedWhenRetryCountReachesMaxRetries() {
         EmailOutboxEntity item = pendingItem();
         item.setRetryCount(4);
-
-        when(emailOutboxRepository.findPendingToSend(eq(5), any(Pageable.class))).thenReturn(List.of(item));
-        doThrow(new RuntimeException("smtp unavailable")).when(mailSender).send(any(SimpleMailMessage.class));
+        claimReturns(item);
+        doThrow(new RuntimeException("smtp unavailable")).when(mailSender).send(any(SimpleMailMessage[].class));
 
         worker.sendPendingEmails();
 
-        verify(emailOutboxRepository).save(item);
-        assertThat(item.getRetryCount()).isEqualTo(5);
-        assertThat(item.getStatus()).isEqualTo("FAILED");
-        assertThat(item.getSentAtUtc()).isNull();
+        verify(emailOutboxRepository).markAttemptFailed(eq(1L), anyString(), eq("FAILED"), eq(5), any(Instant.class));
+        verify(emailOutboxRepository, never()).markSent(any(), any(), any());
     }
 
     @Test
     void sendPendingEmails_shouldFallbackToRawUtcFieldsWhenLocalFieldsAreMissing() {
         EmailOutboxEntity item = pendingItemWithoutLocalFields();
-        when(emailOutboxRepository.findPendingToSend(eq(5), any(Pageable.class))).thenReturn(List.of(item));
+        claimReturns(item);
+        recordSends();
 
         worker.sendPendingEmails();
 
-        ArgumentCaptor<SimpleMailMessage> messageCaptor = ArgumentCaptor.forClass(SimpleMailMessage.class);
-        verify(mailSender).send(messageCaptor.capture());
-
-        assertThat(messageCaptor.getValue().getText())
+        assertThat(sent.getFirst().getText())
                 .contains("- Previous expiry: 2026-05-01T00:00:00Z")
                 .contains("- New expiry: 2026-05-31T00:00:00Z")
                 .contains("- Granted at: 2026-05-10T00:00:00Z");
     }
 
+    @Test
+    void sendPendingEmails_shouldSplitBatchAndRetryOnlyFailedMessages() {
+        EmailOutboxEntity a = pendingItem();
+        EmailOutboxEntity b = pendingItem();
+        b.setId(2L);
+        b.setToEmail("bounce@example.com");
+        EmailOutboxEntity c = pendingItem();
+        c.setId(3L);
+        claimReturns(a, b, c);
+
+        // concurrency=2 → [a, c] 與 [b] 兩份；b 那份的 SMTP 回報 b 失敗
+        doAnswer(inv -> {
+            List<SimpleMailMessage> batch = messages(inv.getArguments());
+            sent.addAll(batch);
+            for (SimpleMailMessage m : batch) {
+                if ("bounce@example.com".equals(m.getTo()[0])) {
+                    throw new MailSendException(Map.of(m, new RuntimeException("550 mailbox unavailable")));
+                }
+            }
+            return null;
+        }).when(mailSender).send(any(SimpleMailMessage[].class));
+
+        worker.sendPendingEmails();
+
+        assertThat(sent).hasSize(3);
+        verify(mailSender, times(2)).send(any(SimpleMailMessage[].class));
+        verify(emailOutboxRepository).markSent(eq(List.of(1L, 3L)), anyString(), any(Instant.class));
+        verify(emailOutboxRepository).markAttemptFailed(eq(2L), anyString(), eq("PENDING"), eq(1), any(Instant.class));
+    }
+
+    @Test
+    void sendPendingEmails_shouldDoNothingWhenNothingIsClaimed() {
+        when(emailOutboxRepository.claimSendableIdsForUpdate(any(Instant.class), eq(5), eq(20))).thenReturn(List.of());
+
+        worker.sendPendingEmails();
+
+        verify(emailOutboxRepository, never()).markSending(any(), any(), any(), any());
+        verifyNoInteractions(mailSender);
+    }
+
+    @Test
+    void sendPendingEmails_shouldFailExpiredLeasesWithNoRetriesLeftBeforeClaiming() {
+        when(emailOutboxRepository.claimSendableIdsForUpdate(any(Instant.class), eq(5), eq(20))).thenReturn(List.of());
+
+        worker.sendPendingEmails();
+
+        InOrder order = inOrder(emailOutboxRepository);
+        order.verify(emailOutboxRepository).failExpiredLeasesOutOfRetries(any(Instant.class), eq(5));
+        order.verify(emailOutboxRepository).claimSendableIdsForUpdate(any(Instant.class), eq(5), eq(20));
+    }
+
+    @Test
+    void backoff_shouldGrowExponentiallyAndStopAtMax() {
+        assertThat(worker.backoff(1)).isBetween(Duration.ofMinutes(1), Duration.ofSeconds(72));
+        assertThat(worker.backoff(3)).isBetween(Duration.ofMinutes(4), Duration.ofSeconds(288));
+        assertThat(worker.backoff(30)).isBetween(Duration.ofHours(6), Duration.ofMinutes(432));
+    }
+
+    private void claimReturns(EmailOutboxEntity... items) {
+        List<Long> ids = java.util.Arrays.stream(items).map(EmailOutboxEntity::getId).toList();
+        when(emailOutboxRepository.claimSendableIdsForUpdate(any(Instant.class), eq(5), eq(20))).thenReturn(ids);
+        when(emailOutboxRepository.markSending(eq(ids), anyString(), any(Instant.class), any(Instant.class)))
+                .thenAnswer(inv -> {
+                    for (EmailOutboxEntity item : items) item.setClaimToken(inv.getArgument(1));
+                    return items.length;
+                });
+        when(emailOutboxRepository.findAllById(ids)).thenReturn(List.of(items));
+    }
+
+    private void recordSends() {
+        doAnswer(inv -> {
+            sent.addAll(messages(inv.getArguments()));
+            return null;
+        }).when(mailSender).send(any(SimpleMailMessage[].class));
+    }
+
+    private static List<SimpleMailMessage> messages(Object[] args) {
+        List<SimpleMailMessage> out = new ArrayList<>();
+        for (Object arg : args) {
+            if (arg instanceof SimpleMailMessage m) out.add(m);
+            else if (arg instanceof SimpleMailMessage[] arr) out.addAll(List.of(arr));
+        }
+        return out;
+    }
+
     private EmailOutboxEntity pendingItem() {
         EmailOutboxEntity item = basePendingItem();
         item.setTemplatePayloadJson("""
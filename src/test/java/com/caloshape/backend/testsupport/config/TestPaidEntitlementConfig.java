@@ -2,6 +2,7 @@ package com.caloshape.backend.testsupport.config;
 
 import com.caloshape.backend.entitlement.repo.UserEntitlementRepository;
 import com.caloshape.backend.entitlement.service.EntitlementService;
+import com.caloshape.backend.entitlement.service.EntitlementTierCache;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -18,8 +19,8 @@ public class TestPaidEntitlementConfig {
 
     @Bean
     @Primary
-    public EntitlementService entitlementService(UserEntitlementRepository repo) {
-        return new EntitlementService(repo) {
+    public EntitlementService entitlementService(UserEntitlementRepository repo, EntitlementTierCache tierCache) {
+        return new EntitlementService(repo, tierCache) {
             @Override
             public Tier resolveTier(Long userId, Instant nowUtc) {
                 return Tier.MONTHLY; // 或 YEARLY
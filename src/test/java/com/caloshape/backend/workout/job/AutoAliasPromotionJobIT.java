@@ -12,12 +12,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
 import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
-@SpringBootTest(classes = BackendApplication.class)
+// pageSize=1：每個候選片語一頁，順便走過 keyset 分頁
+@SpringBootTest(classes = BackendApplication.class, properties = "alias.promotion.pageSize=1")
 class AutoAliasPromotionJobIT {
 
     @Autowired AutoAliasPromotionJob job;
@@ -97,4 +99,77 @@ class AutoAliasPromotionJobIT {
         assertThat(a.getConfidenceMedian()).isGreaterThanOrEqualTo(0.88);
         assertThat(a.getLastSeen()).isNotNull();
     }
+
+    @Test
+    void should_skip_when_even_count_median_is_below_threshold() {
+        final String lang = "th";
+        final String phrase = ("median-" + UUID.randomUUID()).toLowerCase();
+        final WorkoutDictionary dict = dictRepo.findAll().getFirst();
+
+        // 4 users × 2 events：分數 0.95 ×4、0.5 ×4 → 中位數 (0.5 + 0.95) / 2 = 0.725 < 0.88
+        for (long uid = 20; uid < 24; uid++) {
+            saveEvent(uid, lang, phrase, dict, 0.95);
+            saveEvent(uid, lang, phrase, dict, 0.5);
+        }
+        // 對照組：同一輪會升級；等它出現就代表 job 已跑完（run 是 @Async）
+        final String control = ("control-" + UUID.randomUUID()).toLowerCase();
+        for (long uid = 20; uid < 27; uid++) {
+            saveEvent(uid, lang, control, dict, 0.95);
+        }
+        eventRepo.flush();
+
+        job.run();
+
+        assertThat(awaitAlias(lang, control)).isPresent();
+        assertThat(aliasRepo.findAnyByLangAndPhrase(lang, phrase)).isEmpty();
+    }
+
+    @Test
+    void should_point_to_most_matched_dictionary() {
+        final String lang = "th";
+        final String phrase = ("dict-" + UUID.randomUUID()).toLowerCase();
+        final List<WorkoutDictionary> dicts = dictRepo.findAll();
+        final WorkoutDictionary minority = dicts.get(0);
+        final WorkoutDictionary majority = dicts.get(1);
+
+        for (long uid = 30; uid < 35; uid++) {
+            saveEvent(uid, lang, phrase, majority, 0.93);
+        }
+        for (long uid = 35; uid < 38; uid++) {
+            saveEvent(uid, lang, phrase, minority, 0.90);
+        }
+        eventRepo.flush();
+
+        job.run();
+
+        var a = awaitAlias(lang, phrase).orElseThrow();
+        assertThat(a.getStatus()).isEqualTo("APPROVED");
+        assertThat(a.getDictionary().getId()).isEqualTo(majority.getId());
+        assertThat(a.getTotalCount()).isEqualTo(8);
+        assertThat(a.getDistinctUsers()).isEqualTo(8);
+        // 8 筆：0.90 ×3、0.93 ×5 → 第 4、5 名皆為 0.93
+        assertThat(a.getConfidenceMedian()).isEqualTo(0.93);
+    }
+
+    private java.util.Optional<com.caloshape.backend.workout.entity.WorkoutAlias> awaitAlias(String lang, String phrase) {
+        var opt = java.util.Optional.<com.caloshape.backend.workout.entity.WorkoutAlias>empty();
+        for (int i = 0; i < 50; i++) {
+            opt = aliasRepo.findAnyByLangAndPhrase(lang, phrase);
+            if (opt.isPresent()) break;
+            try { Thread.sleep(100); } catch (InterruptedException ignored) {}
+        }
+        return opt;
+    }
+
+    private void saveEvent(long uid, String lang, String phrase, WorkoutDictionary dict, double score) {
+        WorkoutAliasEvent e = new WorkoutAliasEvent();
+        e.setUserId(uid);
+        e.setLangTag(lang);
+        e.setPhraseLower(phrase);
+        e.setMatchedDict(dict);
+        e.setScore(score);
+        e.setUsedGeneric(false);
+        e.setCreatedAt(Instant.now().minusSeconds(60));
+        eventRepo.save(e);
+    }
 }
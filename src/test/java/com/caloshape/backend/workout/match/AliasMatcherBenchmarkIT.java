@@ -0,0 +1,434 @@
+package com.caloshape.backend.workout.match;
+
+import com.caloshape.backend.workout.entity.WorkoutDictionary;
+import com.caloshape.backend.workout.nlp.Similarity;
+import com.caloshape.backend.workout.nlp.TextNorm;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * AliasMatcher.best() 在正式字典大小下的延遲：
+ * - legacy：每個 request findAll 後 new 一個 matcher，比對時對每筆名稱 / 同義詞重跑 TextNorm
+ * - indexed：WorkoutMatcherIndex 共用的預先正規化 matcher
+ * 字典取自 sql/caloshape/workout_dictionary.sql 的 seed（不起 Spring context）。
+ * 同時做差異比對：所有片語在兩種實作下的候選、分數、kind 必須一致。
+ * 另有十倍字典（每筆再加 9 個變體名稱與同義詞）：倒排索引剪枝的結果必須與逐筆掃描一致，
+ * 並印出 1x / 10x 的延遲，看 best() 是否隨字典線性變慢。
+ * 次數：-Dworkout.matcher-bench.rounds=5
+ */
+class AliasMatcherBenchmarkIT {
+
+    private static final Path SEED = Path.of("src/main/resources/sql/caloshape/workout_dictionary.sql");
+    private static final Pattern ROW = Pattern.compile(
+            "\\(\\s*(?:\\d+\\s*,\\s*)?'([a-z0-9_]+)'\\s*,\\s*'([^']*)'\\s*,\\s*([0-9.]+)\\s*,\\s*'([^']*)'\\s*\\)"
+    );
+
+    private static final List<String> SAMPLE_PHRASES = List.of(
+            "running", "jog", "morning run", "table tennis", "pingpong", "weight lifting", "yoga flow",
+            "hiking uphill", "swimming laps", "bike ride", "zumba", "hiit", "plank", "push-ups",
+            "paddle boarding", "core training", "golf", "xyz", "workout",
+            "慢跑", "跑步", "騎車", "游泳", "달리기", "자전거", "ジョグ", "natación", "course à pied", "correr",
+            "runningabc", "跑步abc", "tennis2", "basket ball", "soccer match"
+    );
+
+    /** 十倍字典用的變體後綴（每筆 seed 產生 9 個變體） */
+    private static final List<String> GROWTH_SUFFIXES = List.of(
+            "intervals", "drills", "class", "session", "outdoor", "indoor", "light", "vigorous", "team"
+    );
+
+    @Test
+    void indexedMatcherMatchesLegacyAndIsFaster() throws Exception {
+        int rounds = Integer.getInteger("workout.matcher-bench.rounds", 5);
+        List<WorkoutDictionary> dictionary = loadSeedDictionary();
+        Map<String, List<String>> synonyms = WorkoutMatcherIndex.BUILTIN_SYNONYMS;
+        assertThat(dictionary).hasSizeGreaterThan(100);
+
+        List<String> phrases = new ArrayList<>(SAMPLE_PHRASES);
+        for (WorkoutDictionary d : dictionary) {
+            phrases.add(d.getDisplayNameEn());
+        }
+        synonyms.values().forEach(phrases::addAll);
+        List<String> normalized = phrases.stream().map(TextNorm::normalize).toList();
+
+        AliasMatcher indexed = new AliasMatcher(dictionary, synonyms);
+        String[] locales = {"en", "zh-TW", "es", "ko"};
+
+        // 差異比對
+        for (String phrase : normalized) {
+            for (String locale : locales) {
+                AliasMatcher.Candidate expected = new LegacyAliasMatcher(dictionary, synonyms).best(phrase, locale);
+                AliasMatcher.Candidate actual = indexed.best(phrase, locale);
+                if (expected == null) {
+                    assertThat(actual).as("phrase=%s locale=%s", phrase, locale).isNull();
+                    continue;
+                }
+                assertThat(actual).as("phrase=%s locale=%s", phrase, locale).isNotNull();
+                assertThat(actual.dict().getCanonicalKey()).as("phrase=%s", phrase)
+                        .isEqualTo(expected.dict().getCanonicalKey());
+                assertThat(actual.score()).as("phrase=%s", phrase).isEqualTo(expected.score());
+                assertThat(actual.kind()).as("phrase=%s", phrase).isEqualTo(expected.kind());
+            }
+        }
+
+        // warm-up
+        for (int i = 0; i < 3; i++) {
+            measureLegacy(dictionary, synonyms, normalized);
+            measureIndexed(indexed, normalized);
+        }
+
+        long[] legacyNanos = new long[rounds * normalized.size()];
+        long[] indexedNanos = new long[rounds * normalized.size()];
+        for (int r = 0; r < rounds; r++) {
+            System.arraycopy(measureLegacy(dictionary, synonyms, normalized), 0,
+                    legacyNanos, r * normalized.size(), normalized.size());
+            System.arraycopy(measureIndexed(indexed, normalized), 0,
+                    indexedNanos, r * normalized.size(), normalized.size());
+        }
+
+        Arrays.sort(legacyNanos);
+        Arrays.sort(indexedNanos);
+        System.out.printf(
+                "alias_matcher_bench dictionary=%d phrases=%d rounds=%d legacy_p50_us=%.1f legacy_p99_us=%.1f "
+                        + "indexed_p50_us=%.1f indexed_p99_us=%.1f%n",
+                dictionary.size(), normalized.size(), rounds,
+                percentile(legacyNanos, 0.50) / 1_000.0, percentile(legacyNanos, 0.99) / 1_000.0,
+                percentile(indexedNanos, 0.50) / 1_000.0, percentile(indexedNanos, 0.99) / 1_000.0
+        );
+
+        assertThat(percentile(indexedNanos, 0.50)).isLessThan(percentile(legacyNanos, 0.50));
+    }
+
+    @Test
+    void prunedMatcherStaysExactWhenDictionaryGrowsTenfold() throws Exception {
+        int rounds = Integer.getInteger("workout.matcher-bench.rounds", 5);
+        List<WorkoutDictionary> seed = loadSeedDictionary();
+        Map<String, List<String>> seedSynonyms = WorkoutMatcherIndex.BUILTIN_SYNONYMS;
+
+        List<WorkoutDictionary> grown = new ArrayList<>(seed);
+        Map<String, List<String>> grownSynonyms = new HashMap<>(seedSynonyms);
+        long id = seed.size() + 1;
+        for (String suffix : GROWTH_SUFFIXES) {
+            for (WorkoutDictionary d : seed) {
+                WorkoutDictionary v = new WorkoutDictionary();
+                v.setId(id++);
+                v.setCanonicalKey(d.getCanonicalKey() + "_" + suffix);
+                v.setDisplayNameEn(d.getDisplayNameEn() + " " + suffix);
+                v.setMetValue(d.getMetValue());
+                v.setIconKey(d.getIconKey());
+                grown.add(v);
+
+                List<String> syns = seedSynonyms.getOrDefault(d.getCanonicalKey(), List.of());
+                if (!syns.isEmpty()) {
+                    grownSynonyms.put(v.getCanonicalKey(), syns.stream().map(x -> x + " " + suffix).toList());
+                }
+            }
+        }
+        assertThat(grown).hasSize(seed.size() * (GROWTH_SUFFIXES.size() + 1));
+
+        List<String> phrases = new ArrayList<>(SAMPLE_PHRASES);
+        for (WorkoutDictionary d : grown) {
+            phrases.add(d.getDisplayNameEn());
+        }
+        grownSynonyms.values().forEach(phrases::addAll);
+        List<String> normalized = phrases.stream().map(TextNorm::normalize).toList();
+
+        AliasMatcher small = new AliasMatcher(seed, seedSynonyms);
+        AliasMatcher large = new AliasMatcher(grown, grownSynonyms);
+
+        // 剪枝 vs 逐筆掃描
+        for (String phrase : normalized) {
+            for (String locale : new String[]{"en", "zh-TW", "es", "ko"}) {
+                AliasMatcher.Candidate expected = large.bestExhaustive(phrase, locale);
+                AliasMatcher.Candidate actual = large.best(phrase, locale);
+                if (expected == null) {
+                    assertThat(actual).as("phrase=%s locale=%s", phrase, locale).isNull();
+                    continue;
+                }
+                assertThat(actual).as("phrase=%s locale=%s", phrase, locale).isNotNull();
+                assertThat(actual.dict()).as("phrase=%s locale=%s", phrase, locale).isSameAs(expected.dict());
+                assertThat(actual.score()).as("phrase=%s locale=%s", phrase, locale).isEqualTo(expected.score());
+                assertThat(actual.kind()).as("phrase=%s locale=%s", phrase, locale).isEqualTo(expected.kind());
+            }
+        }
+
+        List<String> seedPhrases = normalized.subList(0, SAMPLE_PHRASES.size() + seed.size());
+        for (int i = 0; i < 3; i++) {
+            measureIndexed(small, seedPhrases);
+            measureIndexed(large, seedPhrases);
+            measureExhaustive(large, seedPhrases);
+        }
+        long[] smallNanos = new long[rounds * seedPhrases.size()];
+        long[] largeNanos = new long[rounds * seedPhrases.size()];
+        long[] scanNanos = new long[rounds * seedPhrases.size()];
+        for (int r = 0; r < rounds; r++) {
+            System.arraycopy(measureIndexed(small, seedPhrases), 0, smallNanos, r * seedPhrases.size(), seedPhrases.size());
+            System.arraycopy(measureIndexed(large, seedPhrases), 0, largeNanos, r * seedPhrases.size(), seedPhrases.size());
+            System.arraycopy(measureExhaustive(large, seedPhrases), 0, scanNanos, r * seedPhrases.size(), seedPhrases.size());
+        }
+        Arrays.sort(smallNanos);
+        Arrays.sort(largeNanos);
+        Arrays.sort(scanNanos);
+
+        System.out.printf(
+                "alias_matcher_growth dictionary_1x=%d dictionary_10x=%d phrases=%d rounds=%d "
+                        + "pruned_1x_p50_us=%.1f pruned_10x_p50_us=%.1f pruned_10x_p99_us=%.1f "
+                        + "scan_10x_p50_us=%.1f scan_10x_p99_us=%.1f%n",
+                seed.size(), grown.size(), seedPhrases.size(), rounds,
+                percentile(smallNanos, 0.50) / 1_000.0,
+                percentile(largeNanos, 0.50) / 1_000.0, percentile(largeNanos, 0.99) / 1_000.0,
+                percentile(scanNanos, 0.50) / 1_000.0, percentile(scanNanos, 0.99) / 1_000.0
+        );
+        assertThat(percentile(largeNanos, 0.50)).isLessThan(percentile(scanNanos, 0.50));
+    }
+
+    private static long[] measureExhaustive(AliasMatcher matcher, List<String> phrases) {
+        long[] out = new long[phrases.size()];
+        for (int i = 0; i < phrases.size(); i++) {
+            long t0 = System.nanoTime();
+            matcher.bestExhaustive(phrases.get(i), "en");
+            out[i] = System.nanoTime() - t0;
+        }
+        return out;
+    }
+
+    private static long[] measureLegacy(
+            List<WorkoutDictionary> dictionary,
+            Map<String, List<String>> synonyms,
+            List<String> phrases
+    ) {
+        long[] out = new long[phrases.size()];
+        for (int i = 0; i < phrases.size(); i++) {
+            long t0 = System.nanoTime();
+            new LegacyAliasMatcher(dictionary, synonyms).best(phrases.get(i), "en");
+            out[i] = System.nanoTime() - t0;
+        }
+        return out;
+    }
+
+    private static long[] measureIndexed(AliasMatcher matcher, List<String> phrases) {
+        long[] out = new long[phrases.size()];
+        for (int i = 0; i < phrases.size(); i++) {
+            long t0 = System.nanoTime();
+            matcher.best(phrases.get(i), "en");
+            out[i] = System.nanoTime() - t0;
+        }
+        return out;
+    }
+
+    private static long percentile(long[] sorted, double q) {
+        int idx = (int) Math.min(sorted.length - 1, Math.ceil(q * sorted.length) - 1);
+        return sorted[Math.max(0, idx)];
+    }
+
+    private static List<WorkoutDictionary> loadSeedDictionary() throws Exception {
+        String sql = Files.readString(SEED, StandardCharsets.UTF_8);
+        Map<String, WorkoutDictionary> byKey = new LinkedHashMap<>();
+        Matcher m = ROW.matcher(sql);
+        long id = 1;
+        while (m.find()) {
+            WorkoutDictionary d = new WorkoutDictionary();
+            d.setId(id++);
+            d.setCanonicalKey(m.group(1));
+            d.setDisplayNameEn(m.group(2));
+            d.setMetValue(Double.parseDouble(m.group(3)));
+            d.setIconKey(m.group(4));
+            byKey.putIfAbsent(d.getCanonicalKey(), d);
+        }
+        return List.copyOf(byKey.values());
+    }
+
+    /** 改版前的 AliasMatcher（每次比對都重新正規化），只給差異比對與基準用 */
+    private static final class LegacyAliasMatcher {
+
+        private static final double TRUSTED_TOKEN_SCORE = 0.89;
+
+        private final Map<String, List<String>> synonymsByCanonical;
+        private final List<WorkoutDictionary> dictionaries;
+
+        LegacyAliasMatcher(List<WorkoutDictionary> dictionaries,
+                            Map<String, List<String>> synonymsByCanonical) {
+            this.dictionaries = dictionaries;
+            this.synonymsByCanonical = synonymsByCanonical != null ? synonymsByCanonical : Map.of();
+        }
+
+        /** 比對 displayNameEn + 同義詞，加上語言別加權 */
+        AliasMatcher.Candidate best(String phrase, String localeTag) {
+            String p = TextNorm.normalize(phrase);
+            if (hasSuspiciousAsciiGlue(p, dictionaries, synonymsByCanonical)) {
+                return null;
+            }
+
+            AliasMatcher.Candidate best = null;
+
+            for (WorkoutDictionary d : dictionaries) {
+                String base = TextNorm.normalize(d.getDisplayNameEn());
+
+                double sName = hasAsciiJunkAdjacentToEmbeddedToken(p, base)
+                        ? 0.0
+                        : Similarity.jaroWinkler(p, base);
+                double sToken = containsTrustedToken(p, base) ? TRUSTED_TOKEN_SCORE : 0.0;
+                double sMax = Math.max(sName, sToken);
+                String why = sToken > sName ? "token" : "name";
+
+                List<String> syns = synonymsByCanonical.getOrDefault(d.getCanonicalKey(), List.of());
+                for (String syn : syns) {
+                    double sv = hasAsciiJunkAdjacentToEmbeddedToken(p, syn)
+                            ? 0.0
+                            : Similarity.jaroWinkler(p, syn);
+                    if (sv > sMax) { sMax = sv; why = "syn"; }
+                    if (containsTrustedToken(p, syn) && TRUSTED_TOKEN_SCORE > sMax) {
+                        sMax = TRUSTED_TOKEN_SCORE;
+                        why = "token";
+                    }
+                }
+
+                // 額外同義詞 token 加權（按語言）
+                double boost = Similarity.boostBySynonyms(localeTag == null ? "*" : localeTag, p, d.getCanonicalKey());
+                double finalScore = Math.min(1.0, sMax + boost); // 封頂 1.0
+
+                if (best == null || finalScore > best.score()) {
+                    best = new AliasMatcher.Candidate(d, finalScore, why);
+                }
+            }
+            return best;
+        }
+
+        private static boolean containsTrustedToken(String phrase, String token) {
+            String p = TextNorm.normalize(phrase);
+            String t = TextNorm.normalize(token);
+            if (p.isBlank() || t.isBlank()) return false;
+            if (t.contains(" ") || !isAsciiLetters(t)) {
+                return containsTrustedPhrase(p, t);
+            }
+
+            String tokenized = p.replaceAll("[^\\p{L}\\p{N}]+", " ");
+            for (String word : tokenized.split("\\s+")) {
+                if (word.equals(t)) return true;
+            }
+            return false;
+        }
+
+        private static boolean containsTrustedPhrase(String phrase, String token) {
+            String p = TextNorm.normalize(phrase);
+            String t = TextNorm.normalize(token);
+            int start = 0;
+            while (!p.isBlank() && !t.isBlank()) {
+                int idx = p.indexOf(t, start);
+                if (idx < 0) return false;
+                int before = idx - 1;
+                int after = idx + t.length();
+                if (!isAsciiLetterOrDigitAt(p, before) && !isAsciiLetterOrDigitAt(p, after)) {
+                    return true;
+                }
+                start = idx + Math.max(1, t.length());
+            }
+            return false;
+        }
+
+        private static boolean hasAsciiJunkAdjacentToEmbeddedToken(String phrase, String token) {
+            String p = TextNorm.normalize(phrase);
+            String t = TextNorm.normalize(token);
+            if (p.isBlank() || t.isBlank() || p.equals(t)) return false;
+            if (containsNonAsciiLetter(t) && p.contains(t) && hasAsciiAdjacentToNonAsciiLetter(p)) {
+                return true;
+            }
+
+            int start = 0;
+            while (true) {
+                int idx = p.indexOf(t, start);
+                if (idx < 0) return false;
+                int before = idx - 1;
+                int after = idx + t.length();
+                if (isAsciiLetterOrDigitAt(p, before) || isAsciiLetterOrDigitAt(p, after)) {
+                    return true;
+                }
+                start = idx + Math.max(1, t.length());
+            }
+        }
+
+        private static boolean isAsciiLetterOrDigitAt(String s, int idx) {
+            if (idx < 0 || idx >= s.length()) return false;
+            char c = s.charAt(idx);
+            return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+        }
+
+        private static boolean hasSuspiciousAsciiGlue(
+                String phrase,
+                List<WorkoutDictionary> dictionaries,
+                Map<String, List<String>> synonymsByCanonical
+        ) {
+            if (hasAsciiAdjacentToNonAsciiLetter(phrase)) {
+                return true;
+            }
+
+            Set<String> trustedAsciiTokens = new HashSet<>();
+            for (WorkoutDictionary d : dictionaries) {
+                addAsciiToken(trustedAsciiTokens, d.getDisplayNameEn());
+                for (String syn : synonymsByCanonical.getOrDefault(d.getCanonicalKey(), List.of())) {
+                    addAsciiToken(trustedAsciiTokens, syn);
+                }
+            }
+            if (trustedAsciiTokens.isEmpty()) return false;
+
+            for (String word : phrase.replaceAll("[^\\p{L}\\p{N}]+", " ").split("\\s+")) {
+                if (word.isBlank() || !isAsciiLetters(word) || trustedAsciiTokens.contains(word)) {
+                    continue;
+                }
+                for (String token : trustedAsciiTokens) {
+                    if (word.contains(token)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static void addAsciiToken(Set<String> tokens, String raw) {
+            String token = TextNorm.normalize(raw);
+            if (isAsciiLetters(token)) {
+                tokens.add(token);
+            }
+        }
+
+        private static boolean hasAsciiAdjacentToNonAsciiLetter(String s) {
+            for (int i = 0; i < s.length(); ) {
+                int cp = s.codePointAt(i);
+                int before = i - 1;
+                int after = i + Character.charCount(cp);
+                if (Character.isLetter(cp) && cp > 127
+                        && (isAsciiLetterOrDigitAt(s, before) || isAsciiLetterOrDigitAt(s, after))) {
+                    return true;
+                }
+                i = after;
+            }
+            return false;
+        }
+
+        private static boolean containsNonAsciiLetter(String s) {
+            for (int i = 0; i < s.length(); ) {
+                int cp = s.codePointAt(i);
+                if (Character.isLetter(cp) && cp > 127) {
+                    return true;
+                }
+                i += Character.charCount(cp);
+            }
+            return false;
+        }
+
+        private static boolean isAsciiLetters(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 'a' || c > 'z') return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.caloshape.backend.workout.match;
+
+import com.caloshape.backend.workout.entity.WorkoutDictionary;
+import com.caloshape.backend.workout.repo.WorkoutDictionaryRepo;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class WorkoutMatcherIndexTest {
+
+    @Test
+    void matcher_should_be_built_once_and_swapped_only_when_dictionary_changes() {
+        WorkoutDictionaryRepo repo = mock(WorkoutDictionaryRepo.class);
+        WorkoutDictionary running = dict(1L, "running", "Running");
+        WorkoutDictionary other = dict(2L, "other_exercise", "Other Exercise");
+        when(repo.findAll()).thenReturn(List.of(running, other));
+
+        WorkoutMatcherIndex index = new WorkoutMatcherIndex(repo);
+        index.load();
+
+        AliasMatcher first = index.matcher();
+        assertSame(first, index.matcher());
+        assertEquals("running", first.best("running", "en").dict().getCanonicalKey());
+        assertSame(other, first.dictionary("other_exercise"));
+        verify(repo, times(1)).findAll();
+
+        // 內容沒變：不重建
+        index.refreshIfChanged();
+        assertSame(first, index.matcher());
+
+        // 新增一筆：換成新的 matcher，舊的 instance 不受影響
+        WorkoutDictionary yoga = dict(3L, "yoga", "Yoga");
+        when(repo.findAll()).thenReturn(List.of(running, other, yoga));
+        index.refreshIfChanged();
+
+        AliasMatcher second = index.matcher();
+        assertNotSame(first, second);
+        assertEquals(3, second.size());
+        assertEquals(2, first.size());
+        assertEquals("yoga", second.best("yoga", "en").dict().getCanonicalKey());
+    }
+
+    @Test
+    void startup_failure_should_build_lazily_on_first_use() {
+        WorkoutDictionaryRepo repo = mock(WorkoutDictionaryRepo.class);
+        when(repo.findAll())
+                .thenThrow(new IllegalStateException("db down"))
+                .thenReturn(List.of(dict(1L, "running", "Running")));
+
+        WorkoutMatcherIndex index = new WorkoutMatcherIndex(repo);
+        index.load();
+
+        assertEquals(1, index.matcher().size());
+    }
+
+    private static WorkoutDictionary dict(Long id, String key, String name) {
+        WorkoutDictionary d = new WorkoutDictionary();
+        d.setId(id);
+        d.setCanonicalKey(key);
+        d.setDisplayNameEn(name);
+        d.setMetValue(5.0);
+        d.setIconKey(key);
+        return d;
+    }
+}
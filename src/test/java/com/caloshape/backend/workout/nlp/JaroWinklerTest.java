@@ -0,0 +1,45 @@
+package com.caloshape.backend.workout.nlp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JaroWinklerTest {
+
+    @Test
+    void known_pairs_should_match_reference() {
+        String[][] pairs = {
+                {"martha", "marhta"}, {"dixon", "dicksonx"}, {"running", "runing"}, {"jog", "jogging"},
+                {"", ""}, {"", "a"}, {"abc", ""}, {"慢跑", "跑步"}, {"swim", "swimming laps"},
+                {"a", "a"}, {"ab", "ba"}, {"table tennis", "tennis table"}
+        };
+        for (String[] p : pairs) {
+            assertEquals(LegacyJaroWinkler.similarity(p[0], p[1]), JaroWinkler.similarity(p[0], p[1]),
+                    () -> p[0] + " / " + p[1]);
+        }
+        assertEquals(0.0, JaroWinkler.similarity(null, "a"));
+    }
+
+    @Test
+    void random_pairs_should_match_reference_including_long_strings() {
+        Random random = new Random(42L);
+        String alphabet = "abcdeir 跑步";
+        for (int n = 0; n < 100_000; n++) {
+            // 偶爾超過 64 字，走 boolean[] 版本
+            int max = n % 10 == 0 ? 100 : 20;
+            String a = randomString(random, alphabet, random.nextInt(max));
+            String b = randomString(random, alphabet, random.nextInt(max));
+            assertEquals(LegacyJaroWinkler.similarity(a, b), JaroWinkler.similarity(a, b), () -> a + " / " + b);
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int len) {
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
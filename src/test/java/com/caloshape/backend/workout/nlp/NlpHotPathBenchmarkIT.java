@@ -0,0 +1,114 @@
+package com.caloshape.backend.workout.nlp;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * TextNorm / JaroWinkler 熱路徑的吞吐量與配置量：
+ * - TextNorm：normalizeReference（regex 版本）vs normalize（單趟）
+ * - JaroWinkler：改版前 boolean[] 版本 vs bitmask 版本
+ * 語料：sql/caloshape/workout_dictionary.sql 的 displayNameEn + 多語片語；JW 比對為片語 × 字典名稱。
+ * 先做差異比對（結果必須逐字 / 逐位相同），再量 ops/s 與每次呼叫配置的 bytes（ThreadMXBean）。
+ * 次數：-Dworkout.nlp-bench.rounds=5
+ */
+class NlpHotPathBenchmarkIT {
+
+    private static final Path SEED = Path.of("src/main/resources/sql/caloshape/workout_dictionary.sql");
+    private static final Pattern NAME = Pattern.compile("'[a-z0-9_]+'\\s*,\\s*'([^']*)'\\s*,\\s*[0-9.]+\\s*,");
+
+    private static final List<String> PHRASES = List.of(
+            "running", "Morning Run!!", "table tennis", "weight lifting", "yoga flow", "hiking uphill",
+            "慢跑 30 分鐘", "跑步", "騎車", "游泳", "달리기", "자전거", "ジョグ", "natación", "course à pied",
+            "Tiếng Việt chạy bộ", "ＴＥＮＮＩＳ", "٣٠ دقيقة مشي", "३० मिनट योग", "push-ups", "core training"
+    );
+
+    @Test
+    void fastPathsMatchReferenceAndAllocateLess() throws Exception {
+        int rounds = Integer.getInteger("workout.nlp-bench.rounds", 5);
+
+        List<String> corpus = new ArrayList<>(PHRASES);
+        Matcher m = NAME.matcher(Files.readString(SEED, StandardCharsets.UTF_8));
+        while (m.find()) {
+            corpus.add(m.group(1));
+        }
+        assertThat(corpus).hasSizeGreaterThan(100);
+
+        for (String s : corpus) {
+            assertThat(TextNorm.normalize(s)).as("input=%s", s).isEqualTo(TextNorm.normalizeReference(s));
+        }
+        List<String> normalized = corpus.stream().map(TextNorm::normalize).toList();
+        List<String> phrases = PHRASES.stream().map(TextNorm::normalize).toList();
+        for (String p : phrases) {
+            for (String n : normalized) {
+                assertThat(JaroWinkler.similarity(p, n)).as("%s / %s", p, n)
+                        .isEqualTo(LegacyJaroWinkler.similarity(p, n));
+            }
+        }
+
+        Result normRef = measure(rounds, corpus.size(),
+                () -> corpus.forEach(s -> blackhole += TextNorm.normalizeReference(s).length()));
+        Result normFast = measure(rounds, corpus.size(),
+                () -> corpus.forEach(s -> blackhole += TextNorm.normalize(s).length()));
+        // 第二次正規化（AliasMatcher 的 stableNormalize）：輸入已是正規形式
+        Result renormFast = measure(rounds, normalized.size(),
+                () -> normalized.forEach(s -> blackhole += TextNorm.normalize(s).length()));
+
+        int pairs = phrases.size() * normalized.size();
+        Result jwLegacy = measure(rounds, pairs, () -> {
+            for (String p : phrases) for (String n : normalized) blackhole += (long) (LegacyJaroWinkler.similarity(p, n) * 1e6);
+        });
+        Result jwFast = measure(rounds, pairs, () -> {
+            for (String p : phrases) for (String n : normalized) blackhole += (long) (JaroWinkler.similarity(p, n) * 1e6);
+        });
+
+        System.out.printf(
+                "nlp_hot_path_bench corpus=%d pairs=%d rounds=%d%n"
+                        + "  textnorm_reference ops_per_s=%.0f bytes_per_op=%.1f%n"
+                        + "  textnorm_fast      ops_per_s=%.0f bytes_per_op=%.1f%n"
+                        + "  textnorm_renorm    ops_per_s=%.0f bytes_per_op=%.1f%n"
+                        + "  jw_legacy          ops_per_s=%.0f bytes_per_op=%.1f%n"
+                        + "  jw_fast            ops_per_s=%.0f bytes_per_op=%.1f%n",
+                corpus.size(), pairs, rounds,
+                normRef.opsPerSec(), normRef.bytesPerOp(),
+                normFast.opsPerSec(), normFast.bytesPerOp(),
+                renormFast.opsPerSec(), renormFast.bytesPerOp(),
+                jwLegacy.opsPerSec(), jwLegacy.bytesPerOp(),
+                jwFast.opsPerSec(), jwFast.bytesPerOp()
+        );
+
+        assertThat(normFast.bytesPerOp()).isLessThan(normRef.bytesPerOp());
+        assertThat(jwFast.bytesPerOp()).isLessThan(jwLegacy.bytesPerOp());
+    }
+
+    private record Result(double opsPerSec, double bytesPerOp) {}
+
+    /** 結果累加到這裡，避免 JIT 把整段呼叫消掉 */
+    private static long blackhole;
+
+    /** 3 輪暖身後量 rounds 輪 */
+    private static Result measure(int rounds, int opsPerRound, Runnable body) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        for (int i = 0; i < 3; i++) body.run();
+
+        long tid = Thread.currentThread().threadId();
+        long bytes0 = mx.getThreadAllocatedBytes(tid);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < rounds; i++) body.run();
+        long nanos = System.nanoTime() - t0;
+        long bytes = mx.getThreadAllocatedBytes(tid) - bytes0;
+
+        long ops = (long) rounds * opsPerRound;
+        return new Result(ops * 1e9 / nanos, (double) bytes / ops);
+    }
+}
@@ -0,0 +1,59 @@
+package com.caloshape.backend.workout.nlp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextNormTest {
+
+    /** 隨機字串的字元來源：ASCII、標點、各種空白/控制字元、拉丁重音、結合符號、CJK、韓、天城文、阿拉伯、全形、İ/Σ、surrogate pair */
+    private static final String[] ALPHABET = {
+            "a", "Z", "m", "0", "9", " ", "  ", "\t", "\n", "\u000B", "\f", "\r", "\u0001", "\u001F", " ",
+            "!", "-", "_", "'", ".", "/", "@", "[", "`", "{", "~", "，", "。", "！", "？", "・", "·", "、", "؛", "،", "﹑",
+            "é", "Ñ", "ø", "ß", "ǅ", "ẞ", "ệ", "Ⱥ", "é", "ö", "́", "⃝",
+            "跑", "步", "慢", "ラ", "ン", "달", "리", "기", "ก", "ิ", "न", "ि", "ी",
+            "٣", "٠", "९", "१", "ع", "َ", "Ａ", "１", "！", "ｶ", "ﬁ", "①", "㎞",
+            "İ", "Σ", "σ", "ς", "Ω", "Ϊ", "𝐀", "𐐀", "🏃"
+    };
+
+    @Test
+    void common_inputs_should_match_reference() {
+        String[] samples = {
+                null, "", " ", "running", "Running", "  Morning   Run!! ", "跑步 30 分鐘", "Tiếng Việt phút giờ nửa",
+                "Café Crème", "ＴＥＮＮＩＳ", "٣٠ دقيقة", "३० मिनट", "ΣΟΦΊΑ ΣΟΦΊΑΣ", "İstanbul", "push-ups",
+                "a\u0001 b", "\u0001running\u0001", "naïve—test", "hiit\t\tclass", "달리기", "ﬁtness"
+        };
+        for (String s : samples) {
+            assertEquals(TextNorm.normalizeReference(s), TextNorm.normalize(s), () -> "input=" + s);
+        }
+    }
+
+    @Test
+    void random_inputs_should_match_reference() {
+        Random random = new Random(20241017L);
+        for (int n = 0; n < 50_000; n++) {
+            StringBuilder sb = new StringBuilder();
+            int len = random.nextInt(12);
+            for (int i = 0; i < len; i++) {
+                sb.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+            }
+            String s = sb.toString();
+            assertEquals(TextNorm.normalizeReference(s), TextNorm.normalize(s), () -> "input=" + escape(s));
+        }
+    }
+
+    @Test
+    void already_normalized_ascii_should_be_returned_as_is() {
+        String s = "morning run 5k";
+        assertSame(s, TextNorm.normalize(s));
+        assertEquals("morning run 5k", TextNorm.normalize("Morning  run, 5K"));
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder();
+        s.chars().forEach(c -> sb.append(c < 0x20 || c > 0x7E ? String.format("\\u%04X", c) : String.valueOf((char) c)));
+        return sb.toString();
+    }
+}